@@ -16,7 +16,9 @@ rem   See the License for the specific language governing permissions and
 rem   limitations under the License.
 
 rem   Run the JMeter mirror server in non-GUI mode
-rem   P1 = port to use (default 8080)
+rem   P1 = port to use (default 8081)
+rem   P2 = -nio to use the non-blocking server, followed by optional
+rem        response length (-1 = echo), latency (ms) and statistics interval (s)
 
 setlocal
 
@@ -25,6 +27,6 @@ cd /D %~dp0
 set CP=..\lib\ext\ApacheJMeter_http.jar;..\lib\ext\ApacheJMeter_core.jar;..\lib\jorphan.jar
 set CP=%CP%;..\lib\logkit-2.0.jar;..\lib\avalon-framework-4.1.4.jar;..\lib\oro-2.0.8.jar
 
-java -cp %CP% org.apache.jmeter.protocol.http.control.HttpMirrorServer %1
+java -cp %CP% org.apache.jmeter.protocol.http.control.HttpMirrorServer %*
 
 pause
@@ -16,11 +16,13 @@
 ##   limitations under the License.
 
 #   Run the JMeter mirror server in non-GUI mode
-#   P1 = port to use (default 8080)
+#   P1 = port to use (default 8081)
+#   P2 = -nio to use the non-blocking server, followed by optional
+#        response length (-1 = echo), latency (ms) and statistics interval (s)
 
 cd `dirname $0`
 
 CP=../lib/ext/ApacheJMeter_http.jar:../lib/ext/ApacheJMeter_core.jar:../lib/jorphan.jar
 CP=${CP}:../lib/logkit-2.0.jar:../lib/avalon-framework-4.1.4.jar:../lib/oro-2.0.8.jar
 
-java -cp $CP org.apache.jmeter.protocol.http.control.HttpMirrorServer $1
+java -cp $CP org.apache.jmeter.protocol.http.control.HttpMirrorServer "$@"
@@ -19,6 +19,7 @@
 package org.apache.jmeter.control;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jmeter.engine.event.LoopIterationEvent;
 import org.apache.jmeter.engine.event.LoopIterationListener;
@@ -59,27 +60,14 @@ public class ThroughputController extends GenericController implements Serializa
 
     private static final String PERCENTTHROUGHPUT = "ThroughputController.percentThroughput";// $NON-NLS-1$
 
-    private static class MutableInteger{
-        private int integer;
-        MutableInteger(int value){
-            integer=value;
-        }
-        int incr(){
-            return ++integer;
-        }
-        public int intValue() {
-            return integer;
-        }
-    }
-
-    // These items are shared between threads in a group by the clone() method
-    // They are initialised by testStarted() so don't need to be serialised
-    private transient MutableInteger globalNumExecutions;
-
-    private transient MutableInteger globalIteration;
-
-    private String counterLock = ""; // ensure counts are updated correctly
-    // Need to use something that is serializable, so Object is no use
+    /*
+     * The global iteration index (plus one) and number of executions, packed into
+     * a single long, so that they can be updated together without a lock:
+     * the iteration is in the high 32 bits and the executions in the low 32 bits.
+     * This is shared between threads in a group by the clone() method.
+     * It is initialised by testStarted() so does not need to be serialised.
+     */
+    private transient AtomicLong globalCounters;
 
     /**
      * Number of iterations on which we've chosen to deliver samplers.
@@ -174,15 +162,25 @@ public class ThroughputController extends GenericController implements Serializa
         return retVal;
     }
 
-    private int getExecutions() {
+    int getExecutions() {
         if (!isPerThread()) {
-            synchronized (counterLock) {
-                return globalNumExecutions.intValue();
-            }
+            return getGlobalExecutions(globalCounters.get());
         }
         return numExecutions;
     }
 
+    private static long packCounters(int iterations, int executions) {
+        return ((long) (iterations + 1) << 32) | (executions & 0xFFFFFFFFL);
+    }
+
+    private static int getGlobalIteration(long counters) {
+        return (int) (counters >>> 32) - 1;
+    }
+
+    private static int getGlobalExecutions(long counters) {
+        return (int) counters;
+    }
+
     /**
      * @see org.apache.jmeter.control.Controller#next()
      */
@@ -225,22 +223,26 @@ public class ThroughputController extends GenericController implements Serializa
         clone.numExecutions = numExecutions;
         clone.iteration = iteration;
         clone.runThisTime = false;
-        // Ensure global counters and lock are shared across threads in the group
-        clone.globalIteration = globalIteration;
-        clone.globalNumExecutions = globalNumExecutions;
-        clone.counterLock = counterLock;
+        // Ensure global counters are shared across threads in the group
+        clone.globalCounters = globalCounters;
         return clone;
     }
 
     public void iterationStart(LoopIterationEvent iterEvent) {
         if (!isPerThread()) {
-            synchronized (counterLock) {
-                globalIteration.incr();
-                runThisTime = decide(globalNumExecutions.intValue(), globalIteration.intValue());
-                if (runThisTime) {
-                    globalNumExecutions.incr();
-                }
-            }
+            // The decision must be based on the counters as they are updated,
+            // so retry if another thread got there first
+            boolean run;
+            long current;
+            long next;
+            do {
+                current = globalCounters.get();
+                int iterations = getGlobalIteration(current) + 1;
+                int executions = getGlobalExecutions(current);
+                run = decide(executions, iterations);
+                next = packCounters(iterations, run ? executions + 1 : executions);
+            } while (!globalCounters.compareAndSet(current, next));
+            runThisTime = run;
         } else {
             iteration++;
             runThisTime = decide(numExecutions, iteration);
@@ -251,10 +253,7 @@ public class ThroughputController extends GenericController implements Serializa
     }
 
     public void testStarted() {
-        synchronized (counterLock) {
-            globalNumExecutions = new MutableInteger(0);
-            globalIteration = new MutableInteger(-1);
-        }
+        globalCounters = new AtomicLong(packCounters(-1, 0));
     }
 
     public void testStarted(String host) {
@@ -20,6 +20,7 @@ package org.apache.jmeter.modifiers;
 
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jmeter.engine.event.LoopIterationEvent;
 import org.apache.jmeter.engine.event.LoopIterationListener;
@@ -57,8 +58,7 @@ public class CounterConfig extends AbstractTestElement
 	private static final boolean RESET_ON_THREAD_GROUP_ITERATION_DEFAULT = false;
 
     // This class is not cloned per thread, so this is shared
-	//@GuardedBy("this")
-    private long globalCounter = Long.MIN_VALUE;
+    private transient AtomicLong globalCounter;
 
     // Used for per-thread/user numbers
     private transient ThreadLocal<Long> perTheadNumber;
@@ -69,6 +69,7 @@ public class CounterConfig extends AbstractTestElement
 	private static final Logger log = LoggingManager.getLoggerForClass();
 
     private void init() {
+        globalCounter = new AtomicLong(Long.MIN_VALUE);
         perTheadNumber = new ThreadLocal<Long>() {
             @Override
             protected Long initialValue() {
@@ -103,13 +104,16 @@ public class CounterConfig extends AbstractTestElement
         long end = getEnd();
         long increment = getIncrement();
         if (!isPerUser()) {
-        	synchronized (this) {
-                if (globalCounter == Long.MIN_VALUE || globalCounter > end) {
-                    globalCounter = start;
+            long current;
+            long value;
+            do {
+                current = globalCounter.get();
+                value = current;
+                if (value == Long.MIN_VALUE || value > end) {
+                    value = start;
                 }
-                variables.put(getVarName(), formatNumber(globalCounter));
-                globalCounter += increment;				
-			}
+            } while (!globalCounter.compareAndSet(current, value + increment));
+            variables.put(getVarName(), formatNumber(value));
         } else {
         	long current = perTheadNumber.get().longValue();
         	if(isResetOnThreadGroupIteration()) {
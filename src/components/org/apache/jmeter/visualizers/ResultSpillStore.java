@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.visualizers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Append-only store of serialized SampleResults in a temporary file.
+ * <p>
+ * Only a compact index is kept in memory: the file offset, label and
+ * status of each entry, in primitive arrays. Labels are shared between entries.
+ * Entries are numbered from 0 in the order they were added, and are read back
+ * one at a time when needed.
+ */
+class ResultSpillStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final Map<String, String> labels = new HashMap<String, String>();
+
+    // All the following are protected by this
+
+    private long[] offsets = new long[INITIAL_CAPACITY];
+
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    private String[] entryLabels = new String[INITIAL_CAPACITY];
+
+    private boolean[] successes = new boolean[INITIAL_CAPACITY];
+
+    private int size;
+
+    private long fileLength;
+
+    /**
+     * Creates the store in a new temporary file, which is deleted by {@link #close()}
+     * or when the JVM exits.
+     *
+     * @throws IOException if the file cannot be created
+     */
+    ResultSpillStore() throws IOException {
+        file = File.createTempFile("jmeter-results", ".ser"); // $NON-NLS-1$ $NON-NLS-2$
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw"); // $NON-NLS-1$
+    }
+
+    /**
+     * Appends a result.
+     *
+     * @param result the result to store
+     * @return the index of the entry
+     * @throws IOException if the result cannot be serialized or written
+     */
+    int add(SampleResult result) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(result);
+        oos.close();
+        byte[] bytes = bos.toByteArray();
+        String label = result.getSampleLabel();
+        synchronized (this) {
+            if (size == offsets.length) {
+                grow();
+            }
+            raf.seek(fileLength);
+            raf.write(bytes);
+            offsets[size] = fileLength;
+            lengths[size] = bytes.length;
+            entryLabels[size] = intern(label);
+            successes[size] = result.isSuccessful();
+            fileLength += bytes.length;
+            return size++;
+        }
+    }
+
+    private String intern(String label) {
+        if (label == null) {
+            return null;
+        }
+        String shared = labels.get(label);
+        if (shared == null) {
+            labels.put(label, label);
+            shared = label;
+        }
+        return shared;
+    }
+
+    private void grow() {
+        int capacity = offsets.length * 2;
+        long[] o = new long[capacity];
+        int[] l = new int[capacity];
+        String[] s = new String[capacity];
+        boolean[] b = new boolean[capacity];
+        System.arraycopy(offsets, 0, o, 0, size);
+        System.arraycopy(lengths, 0, l, 0, size);
+        System.arraycopy(entryLabels, 0, s, 0, size);
+        System.arraycopy(successes, 0, b, 0, size);
+        offsets = o;
+        lengths = l;
+        entryLabels = s;
+        successes = b;
+    }
+
+    /**
+     * Reads an entry back from the file.
+     *
+     * @param index the entry number
+     * @return the result
+     * @throws IOException if the entry cannot be read or deserialized
+     */
+    SampleResult get(int index) throws IOException {
+        byte[] buffer;
+        synchronized (this) {
+            checkIndex(index);
+            buffer = new byte[lengths[index]];
+            raf.seek(offsets[index]);
+            raf.readFully(buffer);
+        }
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buffer));
+        try {
+            return (SampleResult) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            IOException ioe = new IOException("Cannot read entry " + index + ": " + e);
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * @param index the entry number
+     * @return the sample label of the entry
+     */
+    synchronized String getLabel(int index) {
+        checkIndex(index);
+        return entryLabels[index];
+    }
+
+    /**
+     * @param index the entry number
+     * @return whether the entry was successful
+     */
+    synchronized boolean isSuccessful(int index) {
+        checkIndex(index);
+        return successes[index];
+    }
+
+    /**
+     * @return the number of entries
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes written to the file
+     */
+    synchronized long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    synchronized void close() {
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -25,6 +25,8 @@ import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -41,6 +43,7 @@ import javax.swing.table.TableCellRenderer;
 //import javax.swing.table.AbstractTableModel;
 //import javax.swing.table.TableModel;
 
+import org.apache.jmeter.gui.util.CoalescingRefresher;
 import org.apache.jmeter.gui.util.FileDialoger;
 import org.apache.jmeter.gui.util.HeaderAsPropertyRenderer;
 import org.apache.jmeter.samplers.Clearable;
@@ -113,6 +116,20 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
     private final Map<String, SamplingStatCalculator> tableRows =
         new ConcurrentHashMap<String, SamplingStatCalculator>();
 
+    /**
+     * Rows which have been created by add() but not yet added to the model; protected by lock
+     */
+    private final transient List<SamplingStatCalculator> newRows = new ArrayList<SamplingStatCalculator>();
+
+    /**
+     * Samples are aggregated on the calling thread; the table is repainted periodically
+     */
+    private final transient CoalescingRefresher refresher = new CoalescingRefresher(new Runnable() {
+        public void run() {
+            refreshTable();
+        }
+    });
+
     public StatVisualizer() {
         super();
         model = new ObjectTableModel(COLUMNS,
@@ -164,31 +181,40 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
     }
 
     public void add(final SampleResult res) {
-        JMeterUtils.runSafe(new Runnable() {
-            public void run() {
-                SamplingStatCalculator row = null;
-                final String sampleLabel = res.getSampleLabel(useGroupName.isSelected());
-                synchronized (lock) {
-                    row = tableRows.get(sampleLabel);
-                    if (row == null) {
-                        row = new SamplingStatCalculator(sampleLabel);
-                        tableRows.put(row.getLabel(), row);
-                        model.insertRow(row, model.getRowCount() - 1);
-                    }
-                }
-                /*
-                 * Synch is needed because multiple threads can update the counts.
-                 */
-                synchronized(row) {
-                    row.addSample(res);
-                }
-                SamplingStatCalculator tot = tableRows.get(TOTAL_ROW_LABEL);
-                synchronized(tot) {
-                    tot.addSample(res);
-                }
-                model.fireTableDataChanged();                
+        final String sampleLabel = res.getSampleLabel(useGroupName.isSelected());
+        SamplingStatCalculator row = null;
+        synchronized (lock) {
+            row = tableRows.get(sampleLabel);
+            if (row == null) {
+                row = new SamplingStatCalculator(sampleLabel);
+                tableRows.put(row.getLabel(), row);
+                newRows.add(row); // added to the model by the next refresh
+            }
+        }
+        /*
+         * Synch is needed because multiple threads can update the counts.
+         */
+        synchronized(row) {
+            row.addSample(res);
+        }
+        SamplingStatCalculator tot = tableRows.get(TOTAL_ROW_LABEL);
+        synchronized(tot) {
+            tot.addSample(res);
+        }
+        refresher.requestRefresh();
+    }
+
+    /**
+     * Adds any new rows to the model and repaints the table; runs on the event thread.
+     */
+    private void refreshTable() {
+        synchronized (lock) {
+            for (SamplingStatCalculator row : newRows) {
+                model.insertRow(row, model.getRowCount() - 1);
             }
-        });
+            newRows.clear();
+        }
+        model.fireTableDataChanged();
     }
 
     /**
@@ -198,6 +224,7 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
         synchronized (lock) {
             model.clearData();
             tableRows.clear();
+            newRows.clear();
             tableRows.put(TOTAL_ROW_LABEL, new SamplingStatCalculator(TOTAL_ROW_LABEL));
             model.addRow(tableRows.get(TOTAL_ROW_LABEL));
         }
@@ -25,6 +25,8 @@ import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,6 +41,7 @@ import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.TableCellRenderer;
 
+import org.apache.jmeter.gui.util.CoalescingRefresher;
 import org.apache.jmeter.gui.util.FileDialoger;
 import org.apache.jmeter.gui.util.HeaderAsPropertyRenderer;
 import org.apache.jmeter.samplers.Clearable;
@@ -110,6 +113,20 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
     private final Map<String, Calculator> tableRows =
         new ConcurrentHashMap<String, Calculator>();
 
+    /**
+     * Rows which have been created by add() but not yet added to the model; protected by lock
+     */
+    private final transient List<Calculator> newRows = new ArrayList<Calculator>();
+
+    /**
+     * Samples are aggregated on the calling thread; the table is repainted periodically
+     */
+    private final transient CoalescingRefresher refresher = new CoalescingRefresher(new Runnable() {
+        public void run() {
+            refreshTable();
+        }
+    });
+
     // Column renderers
     private static final TableCellRenderer[] RENDERERS =
         new TableCellRenderer[]{
@@ -161,30 +178,39 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
 
     public void add(final SampleResult res) {
         final String sampleLabel = res.getSampleLabel(useGroupName.isSelected());
-        JMeterUtils.runSafe(new Runnable() {
-            public void run() {
-                Calculator row = null;
-                synchronized (lock) {
-                    row = tableRows.get(sampleLabel);
-                    if (row == null) {
-                        row = new Calculator(sampleLabel);
-                        tableRows.put(row.getLabel(), row);
-                        model.insertRow(row, model.getRowCount() - 1);
-                    }
-                }
-                /*
-                 * Synch is needed because multiple threads can update the counts.
-                 */
-                synchronized(row) {
-                    row.addSample(res);
-                }
-                Calculator tot = tableRows.get(TOTAL_ROW_LABEL);
-                synchronized(tot) {
-                    tot.addSample(res);
-                }
-                model.fireTableDataChanged();                
+        Calculator row = null;
+        synchronized (lock) {
+            row = tableRows.get(sampleLabel);
+            if (row == null) {
+                row = new Calculator(sampleLabel);
+                tableRows.put(row.getLabel(), row);
+                newRows.add(row); // added to the model by the next refresh
+            }
+        }
+        /*
+         * Synch is needed because multiple threads can update the counts.
+         */
+        synchronized(row) {
+            row.addSample(res);
+        }
+        Calculator tot = tableRows.get(TOTAL_ROW_LABEL);
+        synchronized(tot) {
+            tot.addSample(res);
+        }
+        refresher.requestRefresh();
+    }
+
+    /**
+     * Adds any new rows to the model and repaints the table; runs on the event thread.
+     */
+    private void refreshTable() {
+        synchronized (lock) {
+            for (Calculator row : newRows) {
+                model.insertRow(row, model.getRowCount() - 1);
             }
-        });
+            newRows.clear();
+        }
+        model.fireTableDataChanged();
     }
 
     /**
@@ -195,6 +221,7 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
         synchronized (lock) {
             model.clearData();
             tableRows.clear();
+            newRows.clear();
             tableRows.put(TOTAL_ROW_LABEL, new Calculator(TOTAL_ROW_LABEL));
             model.addRow(tableRows.get(TOTAL_ROW_LABEL));
         }
@@ -23,6 +23,10 @@ import java.awt.Color;
 import java.awt.FlowLayout;
 import java.text.Format;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -36,6 +40,7 @@ import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.TableCellRenderer;
 
+import org.apache.jmeter.gui.util.CoalescingRefresher;
 import org.apache.jmeter.gui.util.HeaderAsPropertyRenderer;
 import org.apache.jmeter.gui.util.HorizontalPanel;
 import org.apache.jmeter.samplers.Clearable;
@@ -102,6 +107,19 @@ public class TableVisualizer extends AbstractVisualizer implements Clearable {
 
     private transient Calculator calc = new Calculator();
 
+    /** Rows waiting to be added to the table by the next refresh */
+    private final transient Queue<TableSample> newRows = new ConcurrentLinkedQueue<TableSample>();
+
+    /** The most recent sample, for the text fields */
+    private transient volatile SampleResult lastSample;
+
+    /** Samples are added on the calling thread; the table is updated periodically */
+    private final transient CoalescingRefresher refresher = new CoalescingRefresher(new Runnable() {
+        public void run() {
+            refreshTable();
+        }
+    });
+
     private Format format = new SimpleDateFormat("HH:mm:ss.SSS"); //$NON-NLS-1$
 
     // Column renderers
@@ -156,40 +174,58 @@ public class TableVisualizer extends AbstractVisualizer implements Clearable {
     }
 
     public void add(final SampleResult res) {
-        JMeterUtils.runSafe(new Runnable() {
-            public void run() {
-                if (childSamples.isSelected()) {
-                    SampleResult[] subResults = res.getSubResults();
-                    if (subResults.length > 0) {
-                        for (SampleResult sr : subResults) {
-                            add(sr);
-                        }
-                        return;
-                    }
-                }
-                synchronized (calc) {
-                    calc.addSample(res);
-                    int count = calc.getCount();
-                    TableSample newS = new TableSample(
-                            count, 
-                            res.getSampleCount(), 
-                            res.getStartTime(), 
-                            res.getThreadName(), 
-                            res.getSampleLabel(),
-                            res.getTime(),
-                            res.isSuccessful(),
-                            res.getBytes());
-                    model.addRow(newS);
-                }
-                updateTextFields(res);
-                if (autoscroll.isSelected()) {
-                    table.scrollRectToVisible(table.getCellRect(table.getRowCount() - 1, 0, true));
+        if (childSamples.isSelected()) {
+            SampleResult[] subResults = res.getSubResults();
+            if (subResults.length > 0) {
+                for (SampleResult sr : subResults) {
+                    add(sr);
                 }
+                return;
             }
-        });
+        }
+        synchronized (calc) {
+            calc.addSample(res);
+            int count = calc.getCount();
+            TableSample newS = new TableSample(
+                    count, 
+                    res.getSampleCount(), 
+                    res.getStartTime(), 
+                    res.getThreadName(), 
+                    res.getSampleLabel(),
+                    res.getTime(),
+                    res.isSuccessful(),
+                    res.getBytes());
+            // Queued in order, as the sample numbers are allocated under the same lock
+            newRows.add(newS);
+            lastSample = res;
+        }
+        refresher.requestRefresh();
+    }
+
+    /**
+     * Adds the queued rows to the table; runs on the event thread.
+     */
+    private void refreshTable() {
+        List<TableSample> rows = new ArrayList<TableSample>();
+        TableSample row;
+        while ((row = newRows.poll()) != null) {
+            rows.add(row);
+        }
+        model.addRows(rows);
+        SampleResult res = lastSample;
+        if (res != null) {
+            updateTextFields(res);
+        }
+        if (autoscroll.isSelected()) {
+            table.scrollRectToVisible(table.getCellRect(table.getRowCount() - 1, 0, true));
+        }
     }
 
     public synchronized void clearData() {
+        synchronized (calc) {
+            newRows.clear();
+            lastSample = null;
+        }
         model.clearData();
         calc.clear();
         noSamplesField.setText("0"); // $NON-NLS-1$
@@ -43,8 +43,10 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTree;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
@@ -65,7 +67,7 @@ import org.apache.log.Logger;
  *
  */
 public class ViewResultsFullVisualizer extends AbstractVisualizer
-implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
+implements ActionListener, TreeSelectionListener, Clearable, ItemListener, TreeWillExpandListener {
 
     private static final long serialVersionUID = 7338676747296593842L;
 
@@ -107,8 +109,25 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
     private static final int MAX_DISPLAY_SIZE =
         JMeterUtils.getPropDefault("view.results.tree.max_size", 200 * 1024); // $NON-NLS-1$
 
+    // Maximum number of results kept in the tree (0 = no limit)
+    private static final int MAX_RESULTS =
+        JMeterUtils.getPropDefault("view.results.tree.max_results", 500); // $NON-NLS-1$
+
+    // Whether results removed from the tree are written to a temporary file
+    private static final boolean SPILL_RESULTS =
+        JMeterUtils.getPropDefault("view.results.tree.spill", false); // $NON-NLS-1$
+
+    // Number of spilled results shown in each page node
+    private static final int SPILL_PAGE_SIZE = 100;
+
     private ResultRenderer resultsRender = null;
 
+    // Results removed from the tree; only used if SPILL_RESULTS is true
+    private ResultSpillStore spillStore;
+
+    // First child of root, holding the pages of spilled results; null if there are none
+    private DefaultMutableTreeNode spillNode;
+
     private TreeSelectionEvent lastSelectionEvent;
 
     private JCheckBox autoScrollCB;
@@ -134,6 +153,11 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
      * Update the visualizer with new data.
      */
     private synchronized void updateGui(SampleResult res) {
+        if (MAX_RESULTS > 0) {
+            while (getResultCount() >= MAX_RESULTS) {
+                evictOldest();
+            }
+        }
         // Add sample
         DefaultMutableTreeNode currNode = new DefaultMutableTreeNode(res);
         treeModel.insertNodeInto(currNode, root, root.getChildCount());
@@ -159,6 +183,81 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
         }
     }
 
+    /**
+     * @return the number of results in the tree, not counting spilled results
+     */
+    private int getResultCount() {
+        return root.getChildCount() - (spillNode == null ? 0 : 1);
+    }
+
+    /**
+     * Removes the oldest result from the tree, and writes it to the spill store if enabled.
+     */
+    private void evictOldest() {
+        DefaultMutableTreeNode oldest = (DefaultMutableTreeNode) root.getChildAt(spillNode == null ? 0 : 1);
+        treeModel.removeNodeFromParent(oldest);
+        if (!SPILL_RESULTS) {
+            return;
+        }
+        try {
+            if (spillStore == null) {
+                spillStore = new ResultSpillStore();
+            }
+            spillStore.add((SampleResult) oldest.getUserObject());
+        } catch (IOException e) {
+            log.warn("Could not write result to spill file: " + e);
+            return;
+        }
+        if (spillNode == null) {
+            spillNode = new DefaultMutableTreeNode(new SpillSummary());
+            spillNode.add(new DefaultMutableTreeNode()); // placeholder, so the node can be expanded
+            treeModel.insertNodeInto(spillNode, root, 0);
+        } else {
+            treeModel.nodeChanged(spillNode);
+        }
+    }
+
+    /**
+     * Creates the page nodes of spilled results, or the result nodes of a page, when it is expanded.
+     * {@inheritDoc}
+     */
+    public void treeWillExpand(TreeExpansionEvent event) {
+        DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        Object userObject = node.getUserObject();
+        if (userObject instanceof SpillSummary) {
+            node.removeAllChildren();
+            int count = spillStore.size();
+            for (int first = 0; first < count; first += SPILL_PAGE_SIZE) {
+                DefaultMutableTreeNode page = new DefaultMutableTreeNode(
+                        new SpillPage(first, Math.min(count, first + SPILL_PAGE_SIZE)));
+                page.add(new DefaultMutableTreeNode()); // placeholder
+                node.add(page);
+            }
+            treeModel.nodeStructureChanged(node);
+        } else if (userObject instanceof SpillPage) {
+            SpillPage page = (SpillPage) userObject;
+            node.removeAllChildren();
+            for (int i = page.first; i < page.end; i++) {
+                node.add(new DefaultMutableTreeNode(new SpilledResult(i), false));
+            }
+            treeModel.nodeStructureChanged(node);
+        }
+    }
+
+    /**
+     * Releases the nodes of a spilled page or summary when it is collapsed.
+     * {@inheritDoc}
+     */
+    public void treeWillCollapse(TreeExpansionEvent event) {
+        DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+        Object userObject = node.getUserObject();
+        if (userObject instanceof SpillSummary || userObject instanceof SpillPage) {
+            node.removeAllChildren();
+            node.add(new DefaultMutableTreeNode()); // placeholder
+            treeModel.nodeStructureChanged(node);
+        }
+    }
+
     private void addSubResults(DefaultMutableTreeNode currNode, SampleResult res) {
         SampleResult[] subResults = res.getSubResults();
 
@@ -195,6 +294,11 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
             // removed the nth node will become (n-1)th
             treeModel.removeNodeFromParent((DefaultMutableTreeNode) root.getChildAt(0));
         }
+        spillNode = null;
+        if (spillStore != null) {
+            spillStore.close();
+            spillStore = null;
+        }
         resultsRender.clearData();
     }
 
@@ -235,6 +339,9 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
                 resultsRender.setLastSelectedTab(rightSide.getSelectedIndex());
             }
             Object userObject = node.getUserObject();
+            if (userObject instanceof SpilledResult) {
+                userObject = readSpilledResult((SpilledResult) userObject);
+            }
             resultsRender.setSamplerResult(userObject);
             resultsRender.setupTabPane(); // Processes Assertions
             // display a SampleResult
@@ -252,6 +359,18 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
         }
     }
 
+    private synchronized Object readSpilledResult(SpilledResult spilled) {
+        if (spillStore == null) { // cleared since the node was created
+            return null;
+        }
+        try {
+            return spillStore.get(spilled.index);
+        } catch (IOException e) {
+            log.warn("Could not read result from spill file: " + e);
+            return null;
+        }
+    }
+
     private synchronized Component createLeftPanel() {
         SampleResult rootSampleResult = new SampleResult();
         rootSampleResult.setSampleLabel("Root");
@@ -263,6 +382,7 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
         jTree.setCellRenderer(new ResultsNodeRenderer());
         jTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
         jTree.addTreeSelectionListener(this);
+        jTree.addTreeWillExpandListener(this);
         jTree.setRootVisible(false);
         jTree.setShowsRootHandles(true);
         JScrollPane treePane = new JScrollPane(jTree);
@@ -372,6 +492,52 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
         return response;
     }
 
+    /** User object of the node which holds the pages of spilled results */
+    private class SpillSummary {
+        @Override
+        public String toString() {
+            ResultSpillStore store = spillStore;
+            return JMeterUtils.getResString("view_results_spilled") + (store == null ? 0 : store.size()); //$NON-NLS-1$
+        }
+    }
+
+    /** User object of a node holding a range of spilled results */
+    private static class SpillPage {
+        private final int first;
+
+        private final int end;
+
+        SpillPage(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return (first + 1) + " - " + end; //$NON-NLS-1$
+        }
+    }
+
+    /** User object of a spilled result; the result itself is only read when it is selected */
+    private class SpilledResult {
+        private final int index;
+
+        SpilledResult(int index) {
+            this.index = index;
+        }
+
+        boolean isSuccessful() {
+            ResultSpillStore store = spillStore;
+            return store != null && index < store.size() && store.isSuccessful(index);
+        }
+
+        @Override
+        public String toString() {
+            ResultSpillStore store = spillStore;
+            return store != null && index < store.size() ? store.getLabel(index) : ""; //$NON-NLS-1$
+        }
+    }
+
     private static class ResultsNodeRenderer extends DefaultTreeCellRenderer {
         private static final long serialVersionUID = 4159626601097711565L;
 
@@ -381,8 +547,13 @@ implements ActionListener, TreeSelectionListener, Clearable, ItemListener {
             super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, focus);
             boolean failure = true;
             Object userObject = ((DefaultMutableTreeNode) value).getUserObject();
+            if (userObject instanceof SpillSummary || userObject instanceof SpillPage) {
+                return this; // default folder icons
+            }
             if (userObject instanceof SampleResult) {
                 failure = !(((SampleResult) userObject).isSuccessful());
+            } else if (userObject instanceof SpilledResult) {
+                failure = !((SpilledResult) userObject).isSuccessful();
             } else if (userObject instanceof AssertionResult) {
                 AssertionResult assertion = (AssertionResult) userObject;
                 failure = assertion.isError() || assertion.isFailure();
@@ -83,6 +83,8 @@ import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.collections.SearchByClass;
 import org.apache.jorphan.gui.ComponentUtil;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.reflect.ClassFinder;
+import org.apache.jorphan.reflect.ClassIndex;
 import org.apache.jorphan.reflect.ClassTools;
 import org.apache.jorphan.util.JMeterException;
 import org.apache.jorphan.util.JOrphanUtils;
@@ -288,7 +290,9 @@ public class JMeter implements JMeterPlugin {
             return;
         }
         try {
+            final long startTime = System.currentTimeMillis();
             initializeProperties(parser); // Also initialises JMeter logging
+            final long propertiesTime = System.currentTimeMillis();
 
             /*
              * The following is needed for HTTPClient.
@@ -329,6 +333,8 @@ public class JMeter implements JMeterPlugin {
             setProxy(parser);
 
             updateClassLoader();
+            initClassIndex();
+            final long classpathTime = System.currentTimeMillis();
             if (log.isDebugEnabled())
             {
                 String jcp=System.getProperty("java.class.path");// $NON-NLS-1$
@@ -387,6 +393,12 @@ public class JMeter implements JMeterPlugin {
                     startOptionalServers();
                 }
             }
+            final long endTime = System.currentTimeMillis();
+            log.info("Startup timing: properties=" + (propertiesTime - startTime) + "ms"
+                    + " classpath=" + (classpathTime - propertiesTime) + "ms"
+                    + " start=" + (endTime - classpathTime) + "ms"
+                    + " total=" + (endTime - startTime) + "ms"
+                    + "; class search: " + ClassFinder.getSearchStatistics());
         } catch (IllegalUserActionException e) {
             System.out.println(e.getMessage());
             System.out.println("Incorrect Usage");
@@ -402,6 +414,22 @@ public class JMeter implements JMeterPlugin {
         }
     }
 
+    // Use an index of the classes found in each jar, so unchanged jars are not scanned again
+    private void initClassIndex() {
+        if (!JMeterUtils.getPropDefault("classfinder.index", true)) { // $NON-NLS-1$
+            log.info("Class index is disabled");
+            return;
+        }
+        String name = JMeterUtils.getPropDefault("classfinder.index.file", "classfinder.index"); // $NON-NLS-1$ // $NON-NLS-2$
+        File file = new File(name);
+        if (!file.isAbsolute()) {
+            file = new File(JMeterUtils.getJMeterBinDir(), name);
+        }
+        ClassIndex classIndex = new ClassIndex(file);
+        log.info("Using class index: " + file + " (" + classIndex.size() + " entries)");
+        ClassFinder.setIndex(classIndex);
+    }
+
     // Update classloader if necessary
     private void updateClassLoader() {
             updatePath("search_paths",";"); //$NON-NLS-1$//$NON-NLS-2$
@@ -727,7 +755,6 @@ public class JMeter implements JMeterPlugin {
 
     // run test in batch mode
     private void runNonGui(String testFile, String logFile, boolean remoteStart, String remote_hosts_string) {
-        FileInputStream reader = null;
         try {
             File f = new File(testFile);
             if (!f.exists() || !f.isFile()) {
@@ -736,10 +763,9 @@ public class JMeter implements JMeterPlugin {
             }
             FileServer.getFileServer().setBaseForScript(f);
 
-            reader = new FileInputStream(f);
             log.info("Loading file: " + f);
 
-            HashTree tree = SaveService.loadTree(reader);
+            HashTree tree = SaveService.loadTree(f);
 
             @SuppressWarnings("deprecation") // Deliberate use of deprecated ctor
             JMeterTreeModel treeModel = new JMeterTreeModel(new Object());// Create non-GUI version to avoid headless problems
@@ -820,8 +846,6 @@ public class JMeter implements JMeterPlugin {
         } catch (Exception e) {
             System.out.println("Error in NonGUIDriver " + e.toString());
             log.error("Error in NonGUIDriver", e);
-        } finally {
-            JOrphanUtils.closeQuietly(reader);
         }
     }
 
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Background monitor of the health of the load generator itself, started by
+ * {@link StandardJMeterEngine} if the property generator.health.interval is positive.
+ * <p>
+ * The monitor thread wakes up every generator.health.tick milliseconds and measures how
+ * late it was woken; this scheduling lag is a direct measure of how late the test threads
+ * are likely to be scheduled. At each interval it also reads the GC time, the heap usage
+ * and the process CPU usage from the platform MXBeans, and reports all of these as a
+ * SampleResult with the label {@link #LABEL}:
+ * <ul>
+ * <li>the elapsed time is the maximum scheduling lag in the interval, in milliseconds</li>
+ * <li>the latency is the time spent in garbage collection in the interval, in milliseconds</li>
+ * <li>the response message has all the values, e.g. "lag=2ms gc=5ms/3 heap=120/494MB cpu=35%"</li>
+ * <li>the sample fails if the lag exceeds generator.health.max_lag milliseconds</li>
+ * </ul>
+ * The sample is sent to the test plan level listeners which are shared between threads
+ * (e.g. Simple Data Writer and Summariser), so it appears in the result files.
+ */
+public class GeneratorHealthMonitor implements Runnable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /** Label of the health samples */
+    public static final String LABEL = "JMeter generator health"; // $NON-NLS-1$
+
+    private static final String THREAD_NAME = "JMeter health monitor"; // $NON-NLS-1$
+
+    private static final long INTERVAL =
+        JMeterUtils.getPropDefault("generator.health.interval", 0L); // $NON-NLS-1$
+
+    private static final long TICK =
+        JMeterUtils.getPropDefault("generator.health.tick", 100L); // $NON-NLS-1$
+
+    private static final long MAX_LAG =
+        JMeterUtils.getPropDefault("generator.health.max_lag", 100L); // $NON-NLS-1$
+
+    private static final long MB = 1024 * 1024;
+
+    private final long interval;
+
+    private final long tick;
+
+    private final long maxLag;
+
+    private final List<SampleListener> listeners;
+
+    private final ListenerNotifier notifier = new ListenerNotifier();
+
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+
+    // com.sun.management.OperatingSystemMXBean#getProcessCpuTime(), if available
+    private final Method processCpuTime;
+
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    // The following are only used by the monitor thread
+
+    private long lastGcTime;
+
+    private long lastGcCount;
+
+    private long lastCpuTime;
+
+    private long lastWallTime;
+
+    /**
+     * @param interval the reporting interval in milliseconds
+     * @param tick the scheduling lag measurement period in milliseconds
+     * @param maxLag the lag above which the health sample is marked as failed
+     * @param listeners the listeners which receive the health samples
+     */
+    public GeneratorHealthMonitor(long interval, long tick, long maxLag, List<SampleListener> listeners) {
+        this.interval = interval;
+        this.tick = Math.max(1, Math.min(tick, interval));
+        this.maxLag = maxLag;
+        this.listeners = listeners;
+        this.processCpuTime = getProcessCpuTimeMethod();
+    }
+
+    /**
+     * Starts the monitor, if enabled by the property generator.health.interval.
+     *
+     * @param testLevelElements the elements at the test plan level; shared sample listeners
+     *        among them receive the health samples
+     * @return the started monitor, or null if it is disabled
+     */
+    public static GeneratorHealthMonitor startIfEnabled(List<?> testLevelElements) {
+        if (INTERVAL <= 0) {
+            return null;
+        }
+        List<SampleListener> listeners = new ArrayList<SampleListener>();
+        for (Object o : testLevelElements) {
+            // only notify listeners which are shared by the threads, as they must be thread-safe
+            if (o instanceof SampleListener && o instanceof NoThreadClone) {
+                listeners.add((SampleListener) o);
+            }
+        }
+        GeneratorHealthMonitor monitor = new GeneratorHealthMonitor(INTERVAL, TICK, MAX_LAG, listeners);
+        monitor.start();
+        return monitor;
+    }
+
+    /**
+     * Starts the monitor thread.
+     */
+    public void start() {
+        log.info("Starting generator health monitor: interval=" + interval + "ms tick=" + tick
+                + "ms max_lag=" + maxLag + "ms listeners=" + listeners.size());
+        thread = new Thread(this, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the monitor thread and waits for it to finish.
+     */
+    public void stop() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(tick + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void run() {
+        initCounters();
+        long intervalStart = System.currentTimeMillis();
+        long maxIntervalLag = 0;
+        while (running) {
+            long intended = System.nanoTime() + tick * 1000000L;
+            try {
+                Thread.sleep(tick);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long lag = (System.nanoTime() - intended) / 1000000L;
+            if (lag > maxIntervalLag) {
+                maxIntervalLag = lag;
+            }
+            long now = System.currentTimeMillis();
+            if (now - intervalStart >= interval) {
+                SampleResult result = createSample(maxIntervalLag);
+                notifier.notifyListeners(new SampleEvent(result, THREAD_NAME), listeners);
+                intervalStart = now;
+                maxIntervalLag = 0;
+            }
+        }
+    }
+
+    private void initCounters() {
+        lastGcTime = getGcTime();
+        lastGcCount = getGcCount();
+        lastCpuTime = getProcessCpuTime();
+        lastWallTime = System.nanoTime();
+    }
+
+    /**
+     * Creates the health sample for an interval, and updates the counters for the next one.
+     *
+     * @param lag the maximum scheduling lag in the interval, in milliseconds
+     * @return the health sample
+     */
+    SampleResult createSample(long lag) {
+        long gcTime = getGcTime();
+        long gcCount = getGcCount();
+        long cpuTime = getProcessCpuTime();
+        long wallTime = System.nanoTime();
+        long gcDelta = gcTime - lastGcTime;
+        long gcCountDelta = gcCount - lastGcCount;
+        int cpu = -1;
+        if (cpuTime >= 0 && lastCpuTime >= 0 && wallTime > lastWallTime) {
+            cpu = (int) ((cpuTime - lastCpuTime) * 100 / ((wallTime - lastWallTime) * processors));
+        }
+        lastGcTime = gcTime;
+        lastGcCount = gcCount;
+        lastCpuTime = cpuTime;
+        lastWallTime = wallTime;
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        StringBuilder sb = new StringBuilder();
+        sb.append("lag=").append(lag).append("ms"); // $NON-NLS-1$ $NON-NLS-2$
+        sb.append(" gc=").append(gcDelta).append("ms/").append(gcCountDelta); // $NON-NLS-1$ $NON-NLS-2$
+        sb.append(" heap=").append(heap.getUsed() / MB).append('/').append(max / MB).append("MB"); // $NON-NLS-1$ $NON-NLS-2$
+        sb.append(" cpu=").append(cpu >= 0 ? cpu + "%" : "n/a"); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+        String message = sb.toString();
+
+        SampleResult result = new SampleResult(System.currentTimeMillis(), lag);
+        result.setSampleLabel(LABEL);
+        result.setThreadName(THREAD_NAME);
+        result.setLatency(gcDelta);
+        result.setResponseMessage(message);
+        result.setResponseData(message, null);
+        result.setDataType(SampleResult.TEXT);
+        if (lag > maxLag) {
+            result.setSuccessful(false);
+            result.setResponseCode("Overloaded"); // $NON-NLS-1$
+            log.warn("Generator may be overloaded: " + message);
+        } else {
+            result.setSuccessful(true);
+            result.setResponseCodeOK();
+            if (log.isDebugEnabled()) {
+                log.debug("Generator health: " + message);
+            }
+        }
+        return result;
+    }
+
+    private long getGcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : gcBeans) {
+            long t = gc.getCollectionTime();
+            if (t > 0) {
+                total += t;
+            }
+        }
+        return total;
+    }
+
+    private long getGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : gcBeans) {
+            long c = gc.getCollectionCount();
+            if (c > 0) {
+                total += c;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the CPU time used by the process in nanoseconds, or -1 if not available
+     */
+    private long getProcessCpuTime() {
+        if (processCpuTime != null) {
+            try {
+                return ((Long) processCpuTime.invoke(osBean)).longValue();
+            } catch (Exception e) {
+                log.debug("Could not get process CPU time: " + e.toString());
+            }
+        }
+        return -1;
+    }
+
+    // The method is only available on some JVMs, so must be looked up by reflection
+    private Method getProcessCpuTimeMethod() {
+        try {
+            Class<?> clazz = Class.forName("com.sun.management.OperatingSystemMXBean"); // $NON-NLS-1$
+            if (clazz.isInstance(osBean)) {
+                return clazz.getMethod("getProcessCpuTime"); // $NON-NLS-1$
+            }
+        } catch (Exception e) {
+            log.info("Process CPU time is not available: " + e.toString());
+        }
+        return null;
+    }
+}
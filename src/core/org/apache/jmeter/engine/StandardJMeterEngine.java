@@ -40,6 +40,7 @@ import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jmeter.threads.JMeterThread;
 import org.apache.jmeter.threads.JMeterThreadMonitor;
 import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jmeter.threads.PhaseTimings;
 import org.apache.jmeter.threads.TestCompiler;
 import org.apache.jmeter.threads.AbstractThreadGroup;
 import org.apache.jmeter.threads.SetupThreadGroup;
@@ -360,6 +361,8 @@ public class StandardJMeterEngine implements JMeterEngine, JMeterThreadMonitor,
         test.traverse(postSearcher);
         
         TestCompiler.initialize();
+        PhaseTimings.testStarted();
+        GeneratorHealthMonitor healthMonitor = GeneratorHealthMonitor.startIfEnabled(testLevelElements);
         // for each thread group, generate threads
         // hand each thread the sampler controller
         // and the listeners, and the timer
@@ -451,6 +454,10 @@ public class StandardJMeterEngine implements JMeterEngine, JMeterThreadMonitor,
             waitThreadsStopped(); // wait for Post threads to stop
         }
 
+        if (healthMonitor != null) {
+            healthMonitor.stop();
+        }
+        PhaseTimings.testEnded();
         notifyTestListenersOfEnd(testListenersSave);
     }
 
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.gui.util;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Runs a GUI refresh task at a fixed interval, but only if something has changed.
+ * <p>
+ * Listeners which receive samples from many threads call {@link #requestRefresh()}
+ * after updating their data, which only sets a flag, instead of queuing work
+ * on the Swing event thread for every sample. The refresh task then runs on the
+ * event thread at most once per period (property <code>jmeter.gui.refresh_period</code>,
+ * default 500 ms), however many samples arrived in between.
+ * <p>
+ * The timer only holds a weak reference to this object, and stops once the
+ * component that owns it has been garbage collected.
+ */
+public class CoalescingRefresher {
+
+    /** Period between refreshes (ms) */
+    public static final int REFRESH_PERIOD =
+        JMeterUtils.getPropDefault("jmeter.gui.refresh_period", 500); // $NON-NLS-1$
+
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    private final Runnable refresh;
+
+    /**
+     * Creates and starts the refresher.
+     *
+     * @param refresh the task to run on the event thread when a refresh has been requested
+     */
+    public CoalescingRefresher(Runnable refresh) {
+        this.refresh = refresh;
+        Timer timer = new Timer(Math.max(1, REFRESH_PERIOD), new Tick(this));
+        timer.setCoalesce(true);
+        timer.start();
+    }
+
+    /**
+     * Requests that the refresh task is run at the next tick. Can be called from any thread.
+     */
+    public void requestRefresh() {
+        dirty.set(true);
+    }
+
+    /**
+     * Runs the refresh task if a refresh has been requested since it last ran.
+     * Must be called on the event thread.
+     */
+    public void refreshIfNeeded() {
+        if (dirty.getAndSet(false)) {
+            refresh.run();
+        }
+    }
+
+    private static class Tick implements ActionListener {
+        private final WeakReference<CoalescingRefresher> ref;
+
+        Tick(CoalescingRefresher refresher) {
+            this.ref = new WeakReference<CoalescingRefresher>(refresher);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            CoalescingRefresher refresher = ref.get();
+            if (refresher == null) {
+                ((Timer) e.getSource()).stop();
+            } else {
+                refresher.refreshIfNeeded();
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Statistical batch reporting for remote testing, where the batches are sent
+ * by a background thread.
+ * <p>
+ * Samples are aggregated as for {@link StatisticalSampleSender}, but each key
+ * has its own accumulator (and lock), so sampling threads only contend if they
+ * are adding to the same key. When the number of samples reaches the threshold,
+ * the sampling thread just wakes the flusher thread; the flusher also runs when
+ * the time threshold expires. The RMI call to the client is always made by the flusher,
+ * so a slow network or client delays the batches, but not the sampling threads.
+ * Samples which arrive while a batch is being sent go into the next batch.
+ */
+public class AsynchStatisticalSampleSender extends AbstractSampleSender implements Serializable {
+    private static final long serialVersionUID = 240L;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int DEFAULT_NUM_SAMPLE_THRESHOLD = 100;
+
+    private static final long DEFAULT_TIME_THRESHOLD = 60000L;
+
+    // Static fields are set by the server when the class is constructed
+
+    private static final int NUM_SAMPLES_THRESHOLD = JMeterUtils.getPropDefault(
+            "num_sample_threshold", DEFAULT_NUM_SAMPLE_THRESHOLD); // $NON-NLS-1$
+
+    private static final long TIME_THRESHOLD_MS = JMeterUtils.getPropDefault("time_threshold", // $NON-NLS-1$
+            DEFAULT_TIME_THRESHOLD);
+
+    private static final boolean KEY_ON_THREADNAME = JMeterUtils.getPropDefault("key_on_threadname", false); // $NON-NLS-1$
+
+    // Instance fields are constructed by the client when the instance is created in the test plan
+    // and the field values are then transferred to the server copy by RMI serialisation/deserialisation
+
+    private final int clientConfiguredNumSamplesThreshold = JMeterUtils.getPropDefault(
+            "num_sample_threshold", DEFAULT_NUM_SAMPLE_THRESHOLD); // $NON-NLS-1$
+
+    private final long clientConfiguredTimeThresholdMs = JMeterUtils.getPropDefault("time_threshold", // $NON-NLS-1$
+            DEFAULT_TIME_THRESHOLD);
+
+    private final boolean clientConfiguredKeyOnThreadName = JMeterUtils.getPropDefault("key_on_threadname", false); // $NON-NLS-1$
+
+    private final RemoteSampleListener listener;
+
+    // Server-side state, created by readResolve
+
+    private transient ConcurrentMap<String, Accumulator> accumulators;
+
+    private transient AtomicInteger sampleCount;
+
+    private transient Object signal;
+
+    private transient Flusher flusher;
+
+    private transient int numSamplesThreshold;
+
+    private transient long timeThresholdMs;
+
+    private transient boolean keyOnThreadName;
+
+    /**
+     * @deprecated only for use by test code
+     */
+    @Deprecated
+    public AsynchStatisticalSampleSender(){
+        this(null);
+        log.warn("Constructor only intended for use in testing"); // $NON-NLS-1$
+    }
+
+    // Created by SampleSenderFactory
+    protected AsynchStatisticalSampleSender(RemoteSampleListener listener) {
+        this.listener = listener;
+        if (isClientConfigured()) {
+            log.info("Using AsynchStatisticalSampleSender (client settings) for this run."
+                    + " Thresholds: num=" + clientConfiguredNumSamplesThreshold
+                    + ", time=" + clientConfiguredTimeThresholdMs
+                    + ". Key uses ThreadName: " + clientConfiguredKeyOnThreadName);
+        } else {
+            log.info("Using AsynchStatisticalSampleSender (server settings) for this run.");
+        }
+    }
+
+    /**
+     * Processed by the RMI server code; acts as testStarted().
+     * @throws ObjectStreamException
+     */
+    private Object readResolve() throws ObjectStreamException{
+        if (isClientConfigured()) {
+            numSamplesThreshold = clientConfiguredNumSamplesThreshold;
+            timeThresholdMs = clientConfiguredTimeThresholdMs;
+            keyOnThreadName = clientConfiguredKeyOnThreadName;
+        } else {
+            numSamplesThreshold = NUM_SAMPLES_THRESHOLD;
+            timeThresholdMs = TIME_THRESHOLD_MS;
+            keyOnThreadName = KEY_ON_THREADNAME;
+        }
+        log.info("Using AsynchStatisticalSampleSender for this run."
+                + (isClientConfigured() ? " Client config: " : " Server config: ")
+                + " Thresholds: num=" + numSamplesThreshold
+                + ", time=" + timeThresholdMs
+                + ". Key uses ThreadName: " + keyOnThreadName);
+        accumulators = new ConcurrentHashMap<String, Accumulator>();
+        sampleCount = new AtomicInteger();
+        signal = new Object();
+        flusher = new Flusher();
+        flusher.setDaemon(true);
+        flusher.start();
+        return this;
+    }
+
+    /**
+     * Adds the sample to the accumulator for its key, and wakes up the flusher
+     * if the sample threshold has been reached. Never calls the listener.
+     *
+     * @param e a Sample Event
+     */
+    public void sampleOccurred(SampleEvent e) {
+        final SampleResult res = e.getResult();
+        final String key = StatisticalSampleResult.getKey(e, keyOnThreadName);
+        while (true) {
+            Accumulator acc = accumulators.get(key);
+            if (acc == null) {
+                Accumulator created = new Accumulator(new StatisticalSampleResult(res, keyOnThreadName),
+                        e.getThreadGroup());
+                acc = accumulators.putIfAbsent(key, created);
+                if (acc == null) {
+                    acc = created;
+                }
+            }
+            if (acc.add(res)) {
+                break;
+            }
+            // The flusher took this accumulator just before we added to it; use a new one
+        }
+        if (sampleCount.incrementAndGet() == numSamplesThreshold) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops the flusher, sends any remaining samples and informs the listener
+     * that the test has ended.
+     *
+     * @param host the hostname that the test has ended on.
+     */
+    public void testEnded(String host) {
+        log.info("Test Ended on " + host);
+        flusher.shutdown();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted waiting for flusher to end");
+        }
+        try {
+            flush();
+            listener.testEnded(host);
+        } catch (RemoteException err) {
+            log.warn("testEnded(hostname)", err);
+        }
+        log.info("Batches sent: " + flusher.batches + ", largest: " + flusher.maxBatchSize
+                + " events, longest send: " + flusher.maxSendTime + "ms");
+    }
+
+    /**
+     * Takes all the current accumulators and sends them to the listener.
+     *
+     * @return the number of events sent
+     * @throws RemoteException if the listener could not be called
+     */
+    private int flush() throws RemoteException {
+        sampleCount.set(0);
+        List<SampleEvent> batch = new ArrayList<SampleEvent>(accumulators.size());
+        for (Map.Entry<String, Accumulator> entry : accumulators.entrySet()) {
+            Accumulator acc = entry.getValue();
+            if (accumulators.remove(entry.getKey(), acc)) {
+                SampleEvent event = acc.close();
+                if (event != null) {
+                    batch.add(event);
+                }
+            }
+        }
+        if (batch.size() > 0) {
+            listener.processBatch(batch);
+        }
+        return batch.size();
+    }
+
+    /**
+     * The samples for one key. Once closed, no more samples can be added.
+     */
+    private static class Accumulator {
+        private final StatisticalSampleResult result; // @GuardedBy("this")
+
+        private final String threadGroup;
+
+        private boolean closed; // @GuardedBy("this")
+
+        private boolean empty = true; // @GuardedBy("this")
+
+        Accumulator(StatisticalSampleResult result, String threadGroup) {
+            this.result = result;
+            this.threadGroup = threadGroup;
+        }
+
+        /**
+         * @return false if the accumulator has been closed, and the sample was not added
+         */
+        synchronized boolean add(SampleResult res) {
+            if (closed) {
+                return false;
+            }
+            result.add(res);
+            empty = false;
+            return true;
+        }
+
+        /**
+         * @return the event to send, or null if no samples were added
+         */
+        synchronized SampleEvent close() {
+            closed = true;
+            return empty ? null : new SampleEvent(result, threadGroup);
+        }
+    }
+
+    /**
+     * Sends a batch whenever the sample threshold is reached or the time threshold expires.
+     */
+    private class Flusher extends Thread {
+        private volatile boolean running = true;
+
+        // Statistics, only updated by this thread; read after join()
+        private int batches;
+
+        private int maxBatchSize;
+
+        private long maxSendTime;
+
+        Flusher() {
+            super("AsynchStatisticalSampleSender"); // $NON-NLS-1$
+        }
+
+        void shutdown() {
+            running = false;
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            long nextSend = timeThresholdMs > 0 ? System.currentTimeMillis() + timeThresholdMs : Long.MAX_VALUE;
+            while (running) {
+                try {
+                    synchronized (signal) {
+                        // Re-check under the lock, so a notification cannot be missed
+                        while (running && !thresholdReached() && System.currentTimeMillis() < nextSend) {
+                            if (nextSend == Long.MAX_VALUE) {
+                                signal.wait();
+                            } else {
+                                signal.wait(Math.max(1, nextSend - System.currentTimeMillis()));
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!running) {
+                    break;
+                }
+                long start = System.currentTimeMillis();
+                try {
+                    int size = flush();
+                    if (size > 0) {
+                        batches++;
+                        maxBatchSize = Math.max(maxBatchSize, size);
+                    }
+                } catch (RemoteException err) {
+                    log.warn("Failed to send batch", err);
+                }
+                long now = System.currentTimeMillis();
+                maxSendTime = Math.max(maxSendTime, now - start);
+                if (timeThresholdMs > 0) {
+                    nextSend = now + timeThresholdMs;
+                }
+            }
+            log.debug("Flusher ended");
+        }
+
+        private boolean thresholdReached() {
+            return numSamplesThreshold > 0 && sampleCount.get() >= numSamplesThreshold;
+        }
+    }
+}
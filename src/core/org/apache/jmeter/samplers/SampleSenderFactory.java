@@ -44,6 +44,8 @@ public class SampleSenderFactory {
 
     private static final String MODE_DISKSTORE = "DiskStore"; // $NON-NLS-1$
 
+    private static final String MODE_ASYNCH_STATISTICAL = "AsynchStatistical"; // $NON-NLS-1$
+
     /**
      * Checks for the Jmeter property mode and returns the required class.
      *
@@ -78,6 +80,8 @@ public class SampleSenderFactory {
             return new AsynchSampleSender(listener);
         } else if(type.equalsIgnoreCase(MODE_DISKSTORE)){
             return new DiskStoreSampleSender(listener);
+        } else if(type.equalsIgnoreCase(MODE_ASYNCH_STATISTICAL)){
+            return new AsynchStatisticalSampleSender(listener);
         } else {
             // should be a user provided class name
             SampleSender s = null;
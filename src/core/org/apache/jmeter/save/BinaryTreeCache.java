@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.MultiProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.reflect.ClassIndex;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Stores the tree loaded from a JMX file in Java serialized form, in a file beside the JMX,
+ * so that later loads of the same file can skip the XML parse.
+ * <p>
+ * The cache file starts with a header containing the JMeter version, a key for the jars
+ * on the class path (including lib/ext and search_paths) and the SHA-1 hash of the JMX
+ * content; it is only used if all of these match, so editing the JMX, upgrading JMeter
+ * or replacing a plugin jar simply causes the cache to be rewritten. Any problem reading
+ * the cache is treated as a miss. Trees which cannot be serialized are not cached.
+ * <p>
+ * Deserialization does not run constructors or field initializers, so transient fields
+ * of the elements would be left null. The loaded tree is therefore rebuilt from new
+ * instances of its elements, which are created in the same way as when the XML is parsed.
+ */
+class BinaryTreeCache {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int MAGIC = 0x4A4D5843; // "JMXC"
+
+    private static final int FORMAT_VERSION = 2;
+
+    static final String SUFFIX = ".cache"; // $NON-NLS-1$
+
+    private final File cacheFile;
+
+    private final String hash;
+
+    private BinaryTreeCache(File jmxFile, String hash) {
+        this.cacheFile = new File(jmxFile.getPath() + SUFFIX);
+        this.hash = hash;
+    }
+
+    /**
+     * @param jmxFile the JMX file
+     * @param content the content of the file
+     * @return the cache for this content
+     */
+    static BinaryTreeCache forContent(File jmxFile, byte[] content) {
+        return new BinaryTreeCache(jmxFile, hash(content));
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return JOrphanUtils.baToHexString(MessageDigest.getInstance("SHA-1").digest(content)); // $NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static String getVersion() {
+        return JMeterUtils.getJMeterVersion() + " " + SaveService.getPropertiesVersion(); // $NON-NLS-1$
+    }
+
+    /**
+     * @return a key which changes if any jar on the class path is added, removed or replaced
+     */
+    private static String getClassPathKey() {
+        List<File> jars = new ArrayList<File>();
+        StringTokenizer tok = new StringTokenizer(System.getProperty("java.class.path", ""), File.pathSeparator); // $NON-NLS-1$ // $NON-NLS-2$
+        while (tok.hasMoreTokens()) {
+            jars.add(new File(tok.nextToken()));
+        }
+        return ClassIndex.getDependencyKey(jars);
+    }
+
+    File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * @return the cached tree, or null if there is no valid cache for the content
+     */
+    HashTree load() {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(cacheFile));
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != MAGIC || header.readInt() != FORMAT_VERSION
+                    || !getVersion().equals(header.readUTF()) || !getClassPathKey().equals(header.readUTF())
+                    || !hash.equals(header.readUTF())) {
+                log.info("Cache is out of date: " + cacheFile);
+                return null;
+            }
+            ObjectInputStream ois = new ContextObjectInputStream(new GZIPInputStream(in));
+            return reinitialize((HashTree) ois.readObject());
+        } catch (Exception e) { // ClassNotFound, InvalidClass, IO, ClassCast
+            log.warn("Could not read cache " + cacheFile + " " + e.toString());
+            return null;
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the tree to the cache file. Failures are logged and otherwise ignored.
+     *
+     * @param tree the tree, which must not yet have been modified by the caller
+     */
+    void save(HashTree tree) {
+        File tmp = null;
+        OutputStream out = null;
+        try {
+            tmp = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile()); // $NON-NLS-1$
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeUTF(getVersion());
+            header.writeUTF(getClassPathKey());
+            header.writeUTF(hash);
+            header.flush();
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            ObjectOutputStream oos = new ObjectOutputStream(gzip);
+            oos.writeObject(tree);
+            oos.flush();
+            gzip.finish();
+            out.close();
+            out = null;
+            if (!tmp.renameTo(cacheFile) && (!cacheFile.delete() || !tmp.renameTo(cacheFile))) {
+                throw new IOException("Could not rename " + tmp + " to " + cacheFile);
+            }
+            log.info("Saved cache: " + cacheFile);
+        } catch (IOException e) { // includes NotSerializableException
+            log.warn("Could not save cache " + cacheFile + " " + e.toString());
+            JOrphanUtils.closeQuietly(out);
+            out = null;
+            if (tmp != null) {
+                tmp.delete();
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Copies the tree, replacing each element by a new instance with the same properties.
+     *
+     * @param tree the deserialized tree
+     * @return a copy of the tree with the same structure and order
+     */
+    static HashTree reinitialize(HashTree tree) throws InstantiationException, IllegalAccessException {
+        ListedHashTree result = new ListedHashTree();
+        for (Object key : tree.list()) {
+            Object copy = key instanceof TestElement ? reinitialize((TestElement) key) : key;
+            result.set(copy, reinitialize(tree.getTree(key)));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the element with its constructor, so that its transient fields are initialised,
+     * and then sets the properties, as TestElementConverter does.
+     */
+    private static TestElement reinitialize(TestElement element) throws InstantiationException, IllegalAccessException {
+        TestElement copy = element.getClass().newInstance();
+        PropertyIterator iter = element.propertyIterator();
+        while (iter.hasNext()) {
+            JMeterProperty prop = iter.next();
+            reinitialize(prop);
+            copy.setProperty(prop);
+        }
+        return copy;
+    }
+
+    /**
+     * Replaces any elements held by the property, e.g. the Loop Controller of a Thread Group.
+     */
+    private static void reinitialize(JMeterProperty prop) throws InstantiationException, IllegalAccessException {
+        if (prop instanceof TestElementProperty) {
+            TestElementProperty elementProp = (TestElementProperty) prop;
+            elementProp.setElement(reinitialize(elementProp.getElement()));
+        } else if (prop instanceof MultiProperty) {
+            PropertyIterator iter = ((MultiProperty) prop).iterator();
+            while (iter.hasNext()) {
+                reinitialize(iter.next());
+            }
+        }
+    }
+
+    /**
+     * Resolves classes using the context class loader, which includes the
+     * jars added by JMeter (lib/ext, search_paths), as when loading the JMX.
+     */
+    private static class ContextObjectInputStream extends ObjectInputStream {
+        ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, loader);
+                } catch (ClassNotFoundException e) {
+                    // fall through to the default, which handles primitive types
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
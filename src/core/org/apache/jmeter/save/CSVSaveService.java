@@ -20,9 +20,11 @@ package org.apache.jmeter.save;
 
 import java.io.BufferedReader;
 import java.io.CharArrayWriter;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -34,6 +36,7 @@ import java.util.List;
 import javax.swing.table.DefaultTableModel;
 
 import org.apache.commons.collections.map.LinkedMap;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang.CharUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.jmeter.assertions.AssertionResult;
@@ -146,30 +149,70 @@ public final class CSVSaveService {
                 dataReader.reset(); // restart from beginning
                 lineNumber = 0;
             }
-            String[] parts;
-            final char delim = saveConfig.getDelimiter().charAt(0);
-            // TODO: does it matter that an empty line will terminate the loop?
-            // CSV output files should never contain empty lines, so probably
-            // not
-            // If so, then need to check whether the reader is at EOF
-            while ((parts = csvReadFile(dataReader, delim)).length != 0) {
-                lineNumber++;
-                SampleEvent event = CSVSaveService
-                        .makeResultFromDelimitedString(parts, saveConfig,
-                                lineNumber);
-                if (event != null) {
-                    final SampleResult result = event.getResult();
-                    if (ResultCollector.isSampleWanted(result.isSuccessful(),
-                            errorsOnly, successOnly)) {
-                        visualizer.add(result);
-                    }
-                }
-            }
+            readSamples(dataReader, saveConfig, lineNumber, visualizer, errorsOnly, successOnly);
         } finally {
             JOrphanUtils.closeQuietly(dataReader);
         }
     }
 
+    /**
+     * Read Samples from part of a CSV file; handles quoted strings.
+     * The range must start at the beginning of a line (and after any header line)
+     * and end at the end of a line, so that a large file can be split into
+     * ranges which are read in parallel. Line numbers in log messages are relative
+     * to the start of the range.
+     * 
+     * @param filename
+     *            input file
+     * @param saveConfig
+     *            the configuration determined from the header line; this may be
+     *            updated, so each thread must use its own copy
+     * @param start
+     *            offset of the first byte to read
+     * @param end
+     *            offset of the byte after the last byte to read
+     * @param visualizer
+     *            where to send the results
+     * @throws IOException
+     */
+    public static void processSamples(String filename, SampleSaveConfiguration saveConfig,
+            long start, long end, Visualizer visualizer) throws IOException {
+        BufferedReader dataReader = null;
+        try {
+            FileInputStream fis = new FileInputStream(filename);
+            dataReader = new BufferedReader(new InputStreamReader( // TODO Charset ?
+                    new BoundedInputStream(fis, end - start)));
+            fis.getChannel().position(start);
+            readSamples(dataReader, saveConfig, 0, visualizer, false, false);
+        } finally {
+            JOrphanUtils.closeQuietly(dataReader);
+        }
+    }
+
+    private static void readSamples(BufferedReader dataReader, SampleSaveConfiguration saveConfig,
+            long lineNumber, Visualizer visualizer, boolean errorsOnly, boolean successOnly)
+            throws IOException {
+        String[] parts;
+        final char delim = saveConfig.getDelimiter().charAt(0);
+        // TODO: does it matter that an empty line will terminate the loop?
+        // CSV output files should never contain empty lines, so probably
+        // not
+        // If so, then need to check whether the reader is at EOF
+        while ((parts = csvReadFile(dataReader, delim)).length != 0) {
+            lineNumber++;
+            SampleEvent event = CSVSaveService
+                    .makeResultFromDelimitedString(parts, saveConfig,
+                            lineNumber);
+            if (event != null) {
+                final SampleResult result = event.getResult();
+                if (ResultCollector.isSampleWanted(result.isSuccessful(),
+                        errorsOnly, successOnly)) {
+                    visualizer.add(result);
+                }
+            }
+        }
+    }
+
     /**
      * Make a SampleResult given a set of tokens
      * 
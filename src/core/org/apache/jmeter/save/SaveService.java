@@ -19,6 +19,8 @@
 package org.apache.jmeter.save;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.jmeter.reporters.ResultCollectorHelper;
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.testelement.TestElement;
@@ -517,6 +520,42 @@ public class SaveService {
         }
     }
 
+    /**
+     * Load a Test tree (JMX file).
+     * <p>
+     * If the JMeter property <code>testplan.binary_cache</code> is true, the loaded tree is
+     * also stored in serialized form in a file beside the JMX (with the suffix <code>.cache</code>),
+     * and later loads of the same content are read from there, which is much faster than
+     * parsing the XML for large test plans.
+     *
+     * @param file the JMX file
+     * @return the loaded tree
+     * @throws Exception if there is a problem reading the file or processing it
+     */
+    public static HashTree loadTree(File file) throws Exception {
+        if (!JMeterUtils.getPropDefault("testplan.binary_cache", false)) { // $NON-NLS-1$
+            InputStream reader = null;
+            try {
+                reader = new FileInputStream(file);
+                return loadTree(reader);
+            } finally {
+                JOrphanUtils.closeQuietly(reader);
+            }
+        }
+        byte[] content = FileUtils.readFileToByteArray(file);
+        BinaryTreeCache cache = BinaryTreeCache.forContent(file, content);
+        HashTree tree = cache.load();
+        if (tree != null) {
+            log.info("Loaded test plan from cache: " + cache.getCacheFile());
+            return tree;
+        }
+        tree = loadTree(new ByteArrayInputStream(content));
+        if (tree != null) {
+            cache.save(tree);
+        }
+        return tree;
+    }
+
     private static InputStreamReader getInputStreamReader(InputStream inStream) {
         // Check if we have a encoding to use from properties
         Charset charset = getFileEncodingCharset();
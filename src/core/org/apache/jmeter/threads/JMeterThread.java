@@ -20,9 +20,12 @@ package org.apache.jmeter.threads;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.jmeter.assertions.Assertion;
@@ -130,6 +133,17 @@ public class JMeterThread implements Runnable, Interruptible {
 
     private final ReentrantLock interruptLock = new ReentrantLock(); // ensure that interrupt cannot overlap with shutdown
 
+    /*
+     * The following are only used if phase timing is enabled, and only by this thread.
+     */
+    private final boolean phaseTiming = PhaseTimings.isEnabled();
+
+    // time spent in each phase for the current sample (for listeners, the previous sample)
+    private final long[] phaseNanos = new long[PhaseTimings.Phase.values().length];
+
+    // cache of the shared statistics for each element, indexed by phase
+    private final Map<Object, PhaseTimings.Stat[]> phaseStats = new IdentityHashMap<Object, PhaseTimings.Stat[]>();
+
     public JMeterThread(HashTree test, JMeterThreadMonitor monitor, ListenerNotifier note) {
         this.monitor = monitor;
         threadVars = new JMeterVariables();
@@ -424,6 +438,9 @@ public class JMeterThread implements Runnable, Interruptible {
                 threadContext.setCurrentSampler(current);
                 // Get the sampler ready to sample
                 SamplePackage pack = compiler.configureSampler(current);
+                if (phaseTiming) {
+                    startPhaseTimes();
+                }
                 runPreProcessors(pack.getPreProcessors());
 
                 // Hack: save the package for any transaction controllers
@@ -435,12 +452,14 @@ public class JMeterThread implements Runnable, Interruptible {
                 // TODO should this set the thread names for all the subsamples?
                 // might be more efficient than fetching the name elsewehere
                 sampler.setThreadName(threadName);
+                long start = phaseStart();
                 TestBeanHelper.prepare(sampler);
 
                 // Perform the actual sample
                 currentSampler = sampler;
                 SampleResult result = sampler.sample(null);
                 currentSampler = null;
+                phaseEnd(PhaseTimings.Phase.SAMPLER, sampler, start);
                 // TODO: remove this useless Entry parameter
 
                 // If we got any results, then perform processing on the result
@@ -453,6 +472,9 @@ public class JMeterThread implements Runnable, Interruptible {
                     checkAssertions(pack.getAssertions(), result, threadContext);
                     // Do not send subsamples to listeners which receive the transaction sample
                     List<SampleListener> sampleListeners = getSampleListeners(pack, transactionPack, transactionSampler);
+                    if (phaseTiming) {
+                        putPhaseTimes();
+                    }
                     notifyListeners(sampleListeners, result);
                     compiler.done(pack);
                     // Add the result as subsample of transaction if we are in a transaction
@@ -674,6 +696,7 @@ public class JMeterThread implements Runnable, Interruptible {
     @SuppressWarnings("deprecation") // OK to call TestBeanHelper.prepare()
     private void checkAssertions(List<Assertion> assertions, SampleResult parent, JMeterContext threadContext) {
         for (Assertion assertion : assertions) {
+            long start = phaseStart();
             TestBeanHelper.prepare((TestElement) assertion);
             if (assertion instanceof AbstractScopedAssertion){
                 AbstractScopedAssertion scopedAssertion = (AbstractScopedAssertion) assertion;
@@ -701,6 +724,7 @@ public class JMeterThread implements Runnable, Interruptible {
             } else {
                 processAssertion(parent, assertion);
             }
+            phaseEnd(PhaseTimings.Phase.ASSERTION, assertion, start);
         }
         threadContext.getVariables().put(LAST_SAMPLE_OK, Boolean.toString(parent.isSuccessful()));
     }
@@ -733,13 +757,17 @@ public class JMeterThread implements Runnable, Interruptible {
             iter = extractors.listIterator(extractors.size());// start at the end
             while (iter.hasPrevious()) {
                 PostProcessor ex = iter.previous();
+                long start = phaseStart();
                 TestBeanHelper.prepare((TestElement) ex);
                 ex.process();
+                phaseEnd(PhaseTimings.Phase.POST_PROCESSOR, ex, start);
             }
         } else {
             for (PostProcessor ex : extractors) {
+                long start = phaseStart();
                 TestBeanHelper.prepare((TestElement) ex);
                 ex.process();
+                phaseEnd(PhaseTimings.Phase.POST_PROCESSOR, ex, start);
             }
         }
     }
@@ -750,8 +778,10 @@ public class JMeterThread implements Runnable, Interruptible {
             if (log.isDebugEnabled()) {
                 log.debug("Running preprocessor: " + ((AbstractTestElement) ex).getName());
             }
+            long start = phaseStart();
             TestBeanHelper.prepare((TestElement) ex);
             ex.process();
+            phaseEnd(PhaseTimings.Phase.PRE_PROCESSOR, ex, start);
         }
     }
 
@@ -759,8 +789,10 @@ public class JMeterThread implements Runnable, Interruptible {
     private void delay(List<Timer> timers) {
         long sum = 0;
         for (Timer timer : timers) {
+            long start = phaseStart();
             TestBeanHelper.prepare((TestElement) timer);
             sum += timer.delay();
+            phaseEnd(PhaseTimings.Phase.TIMER, timer, start); // excludes the delay itself
         }
         if (sum > 0) {
             try {
@@ -785,8 +817,65 @@ public class JMeterThread implements Runnable, Interruptible {
 
     private void notifyListeners(List<SampleListener> listeners, SampleResult result) {
         SampleEvent event = new SampleEvent(result, threadGroup.getName(), threadVars);
-        notifier.notifyListeners(event, listeners);
+        if (phaseTiming) {
+            phaseNanos[PhaseTimings.Phase.LISTENER.ordinal()] = 0;
+            for (SampleListener listener : listeners) {
+                long start = System.nanoTime();
+                notifier.notifyListeners(event, Collections.singletonList(listener));
+                phaseEnd(PhaseTimings.Phase.LISTENER, listener, start);
+            }
+        } else {
+            notifier.notifyListeners(event, listeners);
+        }
+    }
+
+    /**
+     * @return the start time of a phase, or 0 if phase timing is disabled
+     */
+    private long phaseStart() {
+        return phaseTiming ? System.nanoTime() : 0;
+    }
 
+    /**
+     * Records the time spent by an element in a phase, if phase timing is enabled.
+     */
+    private void phaseEnd(PhaseTimings.Phase phase, Object element, long start) {
+        if (!phaseTiming) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        phaseNanos[phase.ordinal()] += elapsed;
+        PhaseTimings.Stat[] stats = phaseStats.get(element);
+        if (stats == null) {
+            stats = new PhaseTimings.Stat[phaseNanos.length];
+            phaseStats.put(element, stats);
+        }
+        PhaseTimings.Stat stat = stats[phase.ordinal()];
+        if (stat == null) {
+            stat = PhaseTimings.getStat(threadGroup.getName(), phase, element);
+            stats[phase.ordinal()] = stat;
+        }
+        stat.add(elapsed);
+    }
+
+    /**
+     * Clears the phase times for a new sample, except for the listener time of the previous sample.
+     */
+    private void startPhaseTimes() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            if (i != PhaseTimings.Phase.LISTENER.ordinal()) {
+                phaseNanos[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Stores the phase times of the current sample in the thread variables, so they can be saved with the sample.
+     */
+    private void putPhaseTimes() {
+        for (PhaseTimings.Phase phase : PhaseTimings.Phase.values()) {
+            threadVars.put(phase.getVariableName(), Long.toString(phaseNanos[phase.ordinal()] / 1000L));
+        }
     }
 
     public void setInitialDelay(int delay) {
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Optional instrumentation of the phases of {@link JMeterThread} sample processing:
+ * pre-processors, timers, the sampler, post-processors, assertions and listeners.
+ * <p>
+ * Enabled by the property jmeterthread.phase_timing. The time spent in each test element
+ * is aggregated per thread group and per element, and a summary of the costliest elements
+ * is logged every jmeterthread.phase_timing.interval seconds and at the end of the test.
+ * <p>
+ * For timers, only the calculation of the delay is counted, not the delay itself.
+ * <p>
+ * In addition, the times for each sample are stored in the thread variables named by
+ * the VAR_ constants, in microseconds, so they can be added to the JTL with the
+ * sample_variables property. As listeners are notified after the sample has been saved,
+ * the listener time is the one for the previous sample of the thread.
+ */
+public final class PhaseTimings {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /**
+     * The phases of sample processing.
+     */
+    public enum Phase {
+        PRE_PROCESSOR("phase_pre_us"), // $NON-NLS-1$
+        TIMER("phase_timer_us"), // $NON-NLS-1$
+        SAMPLER("phase_sampler_us"), // $NON-NLS-1$
+        POST_PROCESSOR("phase_post_us"), // $NON-NLS-1$
+        ASSERTION("phase_assertion_us"), // $NON-NLS-1$
+        LISTENER("phase_listener_us"); // $NON-NLS-1$
+
+        private final String variableName;
+
+        private Phase(String variableName) {
+            this.variableName = variableName;
+        }
+
+        /**
+         * @return the name of the thread variable which holds the time for the current sample
+         */
+        public String getVariableName() {
+            return variableName;
+        }
+    }
+
+    private static final boolean ENABLED =
+        JMeterUtils.getPropDefault("jmeterthread.phase_timing", false); // $NON-NLS-1$
+
+    private static final long INTERVAL =
+        JMeterUtils.getPropDefault("jmeterthread.phase_timing.interval", 60) * 1000L; // $NON-NLS-1$
+
+    private static final int TOP =
+        JMeterUtils.getPropDefault("jmeterthread.phase_timing.top", 10); // $NON-NLS-1$
+
+    // Key is thread group name, phase and element name
+    private static final ConcurrentMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+    private static final Object summaryLock = new Object();
+
+    // Protected by summaryLock
+    private static Thread summaryThread;
+
+    private PhaseTimings() {
+    }
+
+    /**
+     * The accumulated time spent in one element, in one phase, by the threads of one thread group.
+     */
+    public static final class Stat {
+        private final String threadGroup;
+
+        private final Phase phase;
+
+        private final String element;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        Stat(String threadGroup, Phase phase, String element) {
+            this.threadGroup = threadGroup;
+            this.phase = phase;
+            this.element = element;
+        }
+
+        /**
+         * @param elapsed the time spent in the element, in nanoseconds
+         */
+        public void add(long elapsed) {
+            count.incrementAndGet();
+            nanos.addAndGet(elapsed);
+        }
+
+        public String getThreadGroup() {
+            return threadGroup;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        public String getElement() {
+            return element;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getNanos() {
+            return nanos.get();
+        }
+    }
+
+    /**
+     * @return true if phase timing is enabled by the property jmeterthread.phase_timing
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the statistics for an element.
+     * The result should be cached by the caller, as it involves building a key.
+     *
+     * @param threadGroup the name of the thread group
+     * @param phase the phase
+     * @param element the test element
+     * @return the shared statistics for the element
+     */
+    public static Stat getStat(String threadGroup, Phase phase, Object element) {
+        String name;
+        if (element instanceof TestElement) {
+            name = ((TestElement) element).getName() + " (" + element.getClass().getSimpleName() + ")"; // $NON-NLS-1$ $NON-NLS-2$
+        } else {
+            name = element.getClass().getSimpleName();
+        }
+        String key = threadGroup + '\n' + phase + '\n' + name;
+        Stat stat = stats.get(key);
+        if (stat == null) {
+            stat = new Stat(threadGroup, phase, name);
+            Stat prev = stats.putIfAbsent(key, stat);
+            if (prev != null) {
+                stat = prev;
+            }
+        }
+        return stat;
+    }
+
+    /**
+     * @return a snapshot of the statistics, ordered by decreasing total time
+     */
+    public static List<Stat> getStats() {
+        List<Stat> list = new ArrayList<Stat>(stats.values());
+        Collections.sort(list, new Comparator<Stat>() {
+            public int compare(Stat o1, Stat o2) {
+                long n1 = o1.getNanos();
+                long n2 = o2.getNanos();
+                return n1 < n2 ? 1 : (n1 == n2 ? 0 : -1);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Discards the statistics.
+     */
+    public static void clear() {
+        stats.clear();
+    }
+
+    /**
+     * Called by the engine when a test starts; clears the statistics and
+     * starts the periodic summary if enabled.
+     */
+    public static void testStarted() {
+        if (!ENABLED) {
+            return;
+        }
+        clear();
+        if (INTERVAL <= 0) {
+            return;
+        }
+        synchronized (summaryLock) {
+            if (summaryThread != null) {
+                return;
+            }
+            summaryThread = new Thread("PhaseTimingSummary") { // $NON-NLS-1$
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            Thread.sleep(INTERVAL);
+                            logSummary();
+                        }
+                    } catch (InterruptedException e) {
+                        // stopped at end of test
+                    }
+                }
+            };
+            summaryThread.setDaemon(true);
+            summaryThread.start();
+        }
+    }
+
+    /**
+     * Called by the engine when a test ends; stops the periodic summary and logs the final one.
+     */
+    public static void testEnded() {
+        if (!ENABLED) {
+            return;
+        }
+        synchronized (summaryLock) {
+            if (summaryThread != null) {
+                summaryThread.interrupt();
+                summaryThread = null;
+            }
+        }
+        logSummary();
+    }
+
+    /**
+     * Logs the total time per phase for each thread group, and the costliest elements.
+     */
+    public static void logSummary() {
+        log.info(getSummary());
+    }
+
+    /**
+     * @return the summary which is logged
+     */
+    public static String getSummary() {
+        List<Stat> list = getStats();
+        Map<String, long[]> groups = new LinkedHashMap<String, long[]>();
+        for (Stat stat : list) {
+            long[] totals = groups.get(stat.getThreadGroup());
+            if (totals == null) {
+                totals = new long[Phase.values().length];
+                groups.put(stat.getThreadGroup(), totals);
+            }
+            totals[stat.getPhase().ordinal()] += stat.getNanos();
+        }
+        StringBuilder sb = new StringBuilder("Phase timing summary (ms):"); // $NON-NLS-1$
+        for (Map.Entry<String, long[]> entry : groups.entrySet()) {
+            sb.append("\n  ").append(entry.getKey()).append(':'); // $NON-NLS-1$
+            long[] totals = entry.getValue();
+            for (Phase phase : Phase.values()) {
+                sb.append(' ').append(phase.name().toLowerCase(Locale.ENGLISH)).append('=');
+                sb.append(totals[phase.ordinal()] / 1000000L);
+            }
+        }
+        int n = Math.min(TOP, list.size());
+        if (n > 0) {
+            sb.append("\n Top ").append(n).append(" elements:"); // $NON-NLS-1$ $NON-NLS-2$
+        }
+        for (int i = 0; i < n; i++) {
+            Stat stat = list.get(i);
+            long count = stat.getCount();
+            sb.append("\n  ").append(stat.getThreadGroup()); // $NON-NLS-1$
+            sb.append(" / ").append(stat.getPhase()); // $NON-NLS-1$
+            sb.append(" / ").append(stat.getElement()); // $NON-NLS-1$
+            sb.append(": count=").append(count); // $NON-NLS-1$
+            sb.append(" total=").append(stat.getNanos() / 1000000L).append("ms"); // $NON-NLS-1$ $NON-NLS-2$
+            sb.append(" mean=").append(count == 0 ? 0 : stat.getNanos() / count / 1000L).append("us"); // $NON-NLS-1$ $NON-NLS-2$
+        }
+        return sb.toString();
+    }
+}
@@ -77,6 +77,7 @@ public class HttpSSLProtocolSocketFactory
             throw new IllegalArgumentException("Expected SSLSocket");
         }
         SSLSocket sock = (SSLSocket) socket;
+        SSLHandshakeCounter.register(sock);
         if (protocolList.length() > 0) {
             try {
                 sock.setEnabledProtocols(protocols);
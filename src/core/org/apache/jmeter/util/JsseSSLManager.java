@@ -33,6 +33,7 @@ import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509KeyManager;
@@ -68,11 +69,20 @@ public class JsseSSLManager extends SSLManager {
     private static final boolean SHARED_SESSION_CONTEXT =
         JMeterUtils.getPropDefault("https.sessioncontext.shared",false); // $NON-NLS-1$
 
+    // Maximum number of cached client sessions per context; negative means use the JSSE default
+    private static final int SESSION_CACHE_SIZE =
+        JMeterUtils.getPropDefault("https.sessioncontext.cache_size", -1); // $NON-NLS-1$
+
+    // Lifetime (seconds) of cached client sessions; negative means use the JSSE default
+    private static final int SESSION_TIMEOUT =
+        JMeterUtils.getPropDefault("https.sessioncontext.timeout", -1); // $NON-NLS-1$
+
     private static final int cps;
 
     static {
         log.info("Using default SSL protocol: "+DEFAULT_SSL_PROTOCOL);
-        log.info("SSL session context: "+(SHARED_SESSION_CONTEXT ? "shared" : "per-thread"));
+        log.info("SSL session context: "+(SHARED_SESSION_CONTEXT ? "shared" : "per-thread")
+                +", cache size: "+SESSION_CACHE_SIZE+", timeout: "+SESSION_TIMEOUT);
         cps = JMeterUtils.getPropDefault("httpclient.socket.https.cps", 0); // $NON-NLS-1$
 
         if (cps > 0) {
@@ -256,6 +266,15 @@ public class JsseSSLManager extends SSLManager {
             }
         }
         context.init(managers, trustmanagers, this.rand);
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            if (SESSION_CACHE_SIZE >= 0) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            }
+            if (SESSION_TIMEOUT >= 0) {
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+            }
+        }
         if (log.isDebugEnabled()){
             String[] dCiphers = context.getSocketFactory().getDefaultCipherSuites();
             String[] sCiphers = context.getSocketFactory().getSupportedCipherSuites();
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.jorphan.util.JOrphanUtils;
+
+/**
+ * Counts the SSL handshakes of the sockets created by {@link HttpSSLProtocolSocketFactory},
+ * distinguishing full handshakes from those which resumed a cached session.
+ * <p>
+ * The counts are kept for each thread which creates sockets, and in total.
+ * A handshake is counted as resumed if its session ID (and peer) has already been seen by an earlier handshake.
+ * This detects session resumption in TLS 1.2 and earlier; TLS 1.3 resumes sessions with pre-shared keys
+ * rather than session IDs, so such handshakes are counted as full.
+ * Sessions without an ID are always counted as full.
+ * Handshake completion is notified by JSSE on a separate thread, so a handshake is
+ * normally - but not necessarily - counted before the response is read.
+ */
+public final class SSLHandshakeCounter {
+
+    private static final AtomicLong TOTAL_FULL = new AtomicLong();
+
+    private static final AtomicLong TOTAL_RESUMED = new AtomicLong();
+
+    // Maximum number of session IDs remembered; the oldest are forgotten first
+    private static final int MAX_SEEN_SESSIONS = 10000;
+
+    // Keys of sessions which have been seen by a handshake, see sessionKey()
+    private static final Map<String, Boolean> SEEN_SESSIONS = new LinkedHashMap<String, Boolean>() { // Protected by itself
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEEN_SESSIONS;
+        }
+    };
+
+    private static final ThreadLocal<Counts> THREAD_COUNTS = new ThreadLocal<Counts>() {
+        @Override
+        protected Counts initialValue() {
+            return new Counts();
+        }
+    };
+
+    /**
+     * The handshake counts for one thread.
+     */
+    static final class Counts implements HandshakeCompletedListener {
+        private final AtomicLong full = new AtomicLong();
+
+        private final AtomicLong resumed = new AtomicLong();
+
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            countHandshake(event.getSession(), this);
+        }
+    }
+
+    private SSLHandshakeCounter() {
+    }
+
+    /**
+     * Count the handshakes of the socket against the current thread.
+     *
+     * @param socket a newly created socket
+     */
+    public static void register(SSLSocket socket) {
+        socket.addHandshakeCompletedListener(THREAD_COUNTS.get());
+    }
+
+    // package-private for unit tests
+    static void countHandshake(SSLSession session, Counts counts) {
+        boolean resumed = false;
+        String key = sessionKey(session);
+        if (key != null) {
+            synchronized (SEEN_SESSIONS) {
+                resumed = SEEN_SESSIONS.put(key, Boolean.TRUE) != null;
+            }
+        }
+        if (resumed) {
+            counts.resumed.incrementAndGet();
+            TOTAL_RESUMED.incrementAndGet();
+        } else {
+            counts.full.incrementAndGet();
+            TOTAL_FULL.incrementAndGet();
+        }
+    }
+
+    /**
+     * A resumed handshake may return a different session object, so sessions are identified
+     * by their ID, qualified by the peer as IDs are only unique for each server.
+     *
+     * @return the key for the session, or null if it has no ID
+     */
+    private static String sessionKey(SSLSession session) {
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            return null;
+        }
+        return session.getPeerHost() + ":" + session.getPeerPort() + ":" + JOrphanUtils.baToHexString(id); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    // package-private for unit tests
+    static Counts getCounts() {
+        return THREAD_COUNTS.get();
+    }
+
+    /**
+     * @return the number of full handshakes of sockets created by the current thread
+     */
+    public static long getFullHandshakes() {
+        return THREAD_COUNTS.get().full.get();
+    }
+
+    /**
+     * @return the number of resumed handshakes of sockets created by the current thread
+     */
+    public static long getResumedHandshakes() {
+        return THREAD_COUNTS.get().resumed.get();
+    }
+
+    /**
+     * @return the number of full handshakes of all sockets
+     */
+    public static long getTotalFullHandshakes() {
+        return TOTAL_FULL.get();
+    }
+
+    /**
+     * @return the number of resumed handshakes of all sockets
+     */
+    public static long getTotalResumedHandshakes() {
+        return TOTAL_RESUMED.get();
+    }
+}
@@ -175,6 +175,40 @@ public class SamplingStatCalculator {
         return s;
     }
 
+    /**
+     * Adds the samples recorded by another calculator, for example one which
+     * aggregated a different part of the same results file.
+     * The current sample reflects the combined totals.
+     * <p>
+     * The maximum throughput depends on the order in which samples were added,
+     * so the merged value is the larger of the two maxima rather than the value
+     * a single calculator would have reached.
+     *
+     * @param other the calculator to merge; it must not be updated concurrently
+     */
+    public void merge(SamplingStatCalculator other) {
+        synchronized (calculator) {
+            calculator.merge(other.calculator);
+            if (other.firstTime < firstTime) {
+                firstTime = other.firstTime;
+            }
+            if (other.maxThroughput > maxThroughput) {
+                maxThroughput = other.maxThroughput;
+            }
+            Sample mine = getCurrentSample();
+            Sample theirs = other.getCurrentSample();
+            long endTime = Math.max(mine.getEndTime(), theirs.getEndTime());
+            long count = calculator.getCount();
+            long howLongRunning = endTime - firstTime;
+            double throughput = howLongRunning > 0 ? ((double) count / (double) howLongRunning) * 1000.0 : 0.0;
+            Sample last = mine.getEndTime() >= theirs.getEndTime() ? mine : theirs;
+            currentSample = new Sample(null, last.getData(), (long) calculator.getMean(),
+                    (long) calculator.getStandardDeviation(), calculator.getMedian().longValue(),
+                    calculator.getPercentPoint(0.500).longValue(), throughput,
+                    mine.getErrorCount() + theirs.getErrorCount(), last.isSuccess(), count, endTime);
+        }
+    }
+
     private long getEndTime(SampleResult res) {
         long endTime = res.getEndTime();
         long lastTime = getCurrentSample().getEndTime();
@@ -20,6 +20,7 @@ package org.apache.jorphan.gui;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -141,6 +142,29 @@ public class ObjectTableModel extends DefaultTableModel {
 
     public void addRow(Object value) {
         log.debug("Adding row value: " + value);
+        checkClass(value);
+        objects.add(value);
+        super.fireTableRowsInserted(objects.size() - 1, objects.size());
+    }
+
+    /**
+     * Appends several rows, firing a single event.
+     *
+     * @param values the row objects to append
+     */
+    public void addRows(Collection<?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        for (Object value : values) {
+            checkClass(value);
+        }
+        int first = objects.size();
+        objects.addAll(values);
+        super.fireTableRowsInserted(first, objects.size() - 1);
+    }
+
+    private void checkClass(Object value) {
         if (objectClass != null) {
             final Class<?> valueClass = value.getClass();
             if (!objectClass.isAssignableFrom(valueClass)){
@@ -148,8 +172,6 @@ public class ObjectTableModel extends DefaultTableModel {
                         +"; expecting class: "+objectClass.getName());
             }
         }
-        objects.add(value);
-        super.fireTableRowsInserted(objects.size() - 1, objects.size());
     }
 
     public void insertRow(Object value, int index) {
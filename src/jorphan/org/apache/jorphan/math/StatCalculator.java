@@ -99,6 +99,36 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
         }
     }
 
+    /**
+     * Adds all the values and byte counts of another calculator to this one.
+     * Unlike {@link #addAll(StatCalculator)}, the running totals are combined
+     * directly, so merging partial results gives exactly the same statistics as
+     * adding all the values to a single calculator.
+     *
+     * @param calc the calculator to merge; it must not be updated concurrently
+     */
+    public void merge(StatCalculator<T> calc) {
+        if (calc.count == 0) {
+            bytes += calc.bytes;
+            return;
+        }
+        for(Entry<T, MutableLong> ent : calc.valuesMap.entrySet()) {
+            updateValueCount(ent.getKey(), ent.getValue().longValue());
+        }
+        count += calc.count;
+        sum += calc.sum;
+        sumOfSquares += calc.sumOfSquares;
+        bytes += calc.bytes;
+        if (calc.max.compareTo(max) > 0){
+            max=calc.max;
+        }
+        if (calc.min.compareTo(min) < 0){
+            min=calc.min;
+        }
+        mean = sum / count;
+        deviation = Math.sqrt((sumOfSquares / count) - (mean * mean));
+    }
+
     public T getMedian() {
         return getPercentPoint(0.5);
     }
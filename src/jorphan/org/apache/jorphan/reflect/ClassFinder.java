@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -50,6 +52,13 @@ public final class ClassFinder {
     private static final String DOT_CLASS = ".class"; // $NON-NLS-1$
     private static final int DOT_CLASS_LEN = DOT_CLASS.length();
 
+    private static volatile ClassIndex index;
+
+    // Statistics, for the startup timing log
+    private static final AtomicInteger searchCount = new AtomicInteger();
+
+    private static final AtomicLong searchTime = new AtomicLong();
+
     // static only
     private ClassFinder() {
     }
@@ -279,15 +288,45 @@ public final class ClassFinder {
             }
         }
 
-        @SuppressWarnings("unchecked") // Should only be called with classes that extend annotations
-        final Class<? extends Annotation>[] annoclassNames = (Class<? extends Annotation>[]) classNames;
-        Set<String> listClasses =
-            annotations ?
-                new AnnoFilterTreeSet(annoclassNames, innerClasses)
-                :
-                new FilterTreeSet(classNames, innerClasses, contains, notContains);
-        // first get all the classes
-        findClassesInPaths(listPaths, listClasses);
+        final long start = System.currentTimeMillis();
+        Set<String> listClasses = createFilterSet(classNames, innerClasses, contains, notContains, annotations);
+        final ClassIndex classIndex = index;
+        final String searchKey = classIndex == null ? null
+                : ClassIndex.getSearchKey(classNames, innerClasses, contains, notContains, annotations);
+        if (searchKey == null) {
+            // first get all the classes
+            findClassesInPaths(listPaths, listClasses);
+        } else {
+            // Jars are looked up in the index, and only scanned if they, or the jars they depend on, have changed
+            final String dependencyKey = ClassIndex.getDependencyKey(getDependencies(listPaths));
+            Set<String> indexedClasses = new TreeSet<String>();
+            for (String path : listPaths) {
+                File file = new File(path);
+                if (file.isFile()) {
+                    List<String> found = classIndex.get(file, searchKey, dependencyKey);
+                    if (found == null) {
+                        Set<String> jarClasses =
+                            createFilterSet(classNames, innerClasses, contains, notContains, annotations);
+                        findClassesInOnePath(path, jarClasses);
+                        classIndex.put(file, searchKey, dependencyKey, jarClasses);
+                        found = new ArrayList<String>(jarClasses);
+                    }
+                    indexedClasses.addAll(found);
+                } else {
+                    findClassesInOnePath(path, listClasses);
+                }
+            }
+            indexedClasses.addAll(listClasses);
+            listClasses = indexedClasses;
+            classIndex.save();
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        searchCount.incrementAndGet();
+        searchTime.addAndGet(elapsed);
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + listClasses.size() + " classes for " + Arrays.toString(classNames)
+                    + " in " + elapsed + "ms");
+        }
         if (log.isDebugEnabled()) {
             log.debug("listClasses.size()="+listClasses.size());
             for (String clazz : listClasses) {
@@ -308,6 +347,65 @@ public final class ClassFinder {
         return new ArrayList<String>(listClasses);//subClassList);
     }
 
+    private static Set<String> createFilterSet(Class<?>[] classNames, boolean innerClasses,
+            String contains, String notContains, boolean annotations) {
+        if (annotations) {
+            @SuppressWarnings("unchecked") // Should only be called with classes that extend annotations
+            final Class<? extends Annotation>[] annoclassNames = (Class<? extends Annotation>[]) classNames;
+            return new AnnoFilterTreeSet(annoclassNames, innerClasses);
+        }
+        return new FilterTreeSet(classNames, innerClasses, contains, notContains);
+    }
+
+    /**
+     * Returns the jars which may contain the parent classes of the classes in the search path,
+     * i.e. the jars in the search path and in the class path.
+     */
+    private static List<File> getDependencies(List<String> listPaths) {
+        Set<String> paths = new TreeSet<String>(listPaths);
+        StringTokenizer stPaths = new StringTokenizer(System.getProperty("java.class.path"), // $NON-NLS-1$
+                System.getProperty("path.separator")); // $NON-NLS-1$
+        while (stPaths.hasMoreTokens()) {
+            paths.add(fixPathEntry(stPaths.nextToken()));
+        }
+        List<File> jars = new ArrayList<File>(paths.size());
+        for (String path : paths) {
+            jars.add(new File(path));
+        }
+        return jars;
+    }
+
+    /**
+     * Sets the index used to avoid scanning jars which have not changed.
+     *
+     * @param classIndex the index, or null to always scan
+     */
+    public static void setIndex(ClassIndex classIndex) {
+        index = classIndex;
+    }
+
+    /**
+     * @return the index in use, or null if there is none
+     */
+    public static ClassIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return a summary of the searches made so far, e.g. "searches=5 time=350ms index hits=40 misses=2"
+     */
+    public static String getSearchStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("searches=").append(searchCount.get()); // $NON-NLS-1$
+        sb.append(" time=").append(searchTime.get()).append("ms"); // $NON-NLS-1$ // $NON-NLS-2$
+        ClassIndex classIndex = index;
+        if (classIndex != null) {
+            sb.append(" index hits=").append(classIndex.getHits()); // $NON-NLS-1$
+            sb.append(" misses=").append(classIndex.getMisses()); // $NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
     /*
      * Returns the classpath entries that match the search list of jars and paths
      */
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.reflect;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Persistent index of the results of {@link ClassFinder} searches, so that
+ * jars do not have to be opened, nor their classes loaded, every time JMeter starts.
+ * <p>
+ * Results are stored per jar and per search (the parent classes or annotations
+ * and the name filters). An entry is only used if the jar still has the same
+ * modification time and length as when the entry was created, and if the jars
+ * it depends on are unchanged; otherwise the jar is scanned again and the entry
+ * is replaced. Whether a class matches also depends on its parent classes,
+ * which may be in other jars, so the dependencies are all the jars on the
+ * search path and the class path; see {@link #getDependencyKey(Collection)}.
+ * Directories are never indexed, as their contents may change at any time.
+ * <p>
+ * The index is stored in a text file, one entry per line:
+ * <pre>
+ * jar TAB lastModified TAB length TAB dependencies TAB search TAB class,class,...
+ * </pre>
+ * Deleting the file simply causes the index to be rebuilt.
+ */
+public class ClassIndex {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String HEADER = "# JMeter ClassFinder index, version 2"; // $NON-NLS-1$
+
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    private static final char SEPARATOR = '\t';
+
+    private final File file;
+
+    // Protected by this
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    // Protected by this
+    private boolean dirty;
+
+    // Protected by this
+    private int hits;
+
+    // Protected by this
+    private int misses;
+
+    /**
+     * Creates the index and loads any entries already stored in the file.
+     *
+     * @param file the index file; it need not exist
+     */
+    public ClassIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Builds the key which identifies a search.
+     *
+     * @param classNames the parent classes or annotations
+     * @param innerClasses true if inner classes are included
+     * @param contains required class name fragment, may be null
+     * @param notContains excluded class name fragment, may be null
+     * @param annotations true if classNames are annotations
+     * @return the key, or null if the search cannot be indexed
+     */
+    public static String getSearchKey(Class<?>[] classNames, boolean innerClasses,
+            String contains, String notContains, boolean annotations) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(annotations ? "@" : "^"); // $NON-NLS-1$ // $NON-NLS-2$
+        for (int i = 0; i < classNames.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(classNames[i].getName());
+        }
+        sb.append(innerClasses ? "|inner" : "|"); // $NON-NLS-1$ // $NON-NLS-2$
+        sb.append('|');
+        if (contains != null) {
+            sb.append('+').append(contains);
+        }
+        sb.append('|');
+        if (notContains != null) {
+            sb.append('-').append(notContains);
+        }
+        String key = sb.toString();
+        if (key.indexOf(SEPARATOR) != -1 || key.indexOf('\n') != -1 || key.indexOf('\r') != -1) {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     * Builds a key which changes whenever one of the jars is replaced,
+     * i.e. its modification time or length changes. Directories are ignored.
+     *
+     * @param jars the jars which the classes in an indexed jar may depend on
+     * @return the key
+     */
+    public static String getDependencyKey(Collection<File> jars) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1"); // $NON-NLS-1$
+            for (File jar : jars) {
+                if (jar.isFile()) {
+                    digest.update((jar.getPath() + SEPARATOR + jar.lastModified() + SEPARATOR + jar.length() + '\n')
+                            .getBytes(ENCODING));
+                }
+            }
+            return JOrphanUtils.baToHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available: " + e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(ENCODING + " is not available: " + e);
+        }
+    }
+
+    /**
+     * Returns the stored result of a search in a jar.
+     *
+     * @param jar the jar file
+     * @param searchKey the key returned by {@link #getSearchKey(Class[], boolean, String, String, boolean)}
+     * @param dependencyKey the key returned by {@link #getDependencyKey(Collection)}
+     * @return the matching class names, or null if there is no valid entry
+     */
+    public synchronized List<String> get(File jar, String searchKey, String dependencyKey) {
+        Entry entry = entries.get(entryKey(jar.getPath(), searchKey));
+        if (entry == null || entry.lastModified != jar.lastModified() || entry.length != jar.length()
+                || !entry.dependencyKey.equals(dependencyKey)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.classes;
+    }
+
+    /**
+     * Stores the result of a search in a jar, replacing any previous entry.
+     *
+     * @param jar the jar file
+     * @param searchKey the key returned by {@link #getSearchKey(Class[], boolean, String, String, boolean)}
+     * @param dependencyKey the key returned by {@link #getDependencyKey(Collection)}
+     * @param classes the matching class names
+     */
+    public synchronized void put(File jar, String searchKey, String dependencyKey, Collection<String> classes) {
+        String path = jar.getPath();
+        if (path.indexOf(SEPARATOR) != -1 || path.indexOf('\n') != -1 || path.indexOf('\r') != -1) {
+            return;
+        }
+        entries.put(entryKey(path, searchKey),
+                new Entry(path, jar.lastModified(), jar.length(), dependencyKey, searchKey,
+                        new ArrayList<String>(classes)));
+        dirty = true;
+    }
+
+    private static String entryKey(String path, String searchKey) {
+        return path + SEPARATOR + searchKey;
+    }
+
+    /**
+     * @return the number of lookups that were answered from the index
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that required the jar to be scanned
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private synchronized void load() {
+        if (!file.canRead()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                log.info("Ignoring index with unknown format: " + file);
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    entries.put(entryKey(entry.path, entry.searchKey), entry);
+                }
+            }
+            log.debug("Loaded " + entries.size() + " entries from " + file);
+        } catch (IOException e) {
+            log.warn("Could not read class index " + file + " " + e.toString());
+            entries.clear();
+        } finally {
+            JOrphanUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Writes the index to its file if it has changed since it was loaded or last saved.
+     * Entries for jars that no longer exist are dropped.
+     * The file is written to a new temporary file in the same directory first, so neither
+     * a concurrent reader nor another JMeter instance saving at the same time sees a partial index.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (!new File(it.next().path).exists()) {
+                it.remove();
+            }
+        }
+        File tmp = null;
+        Writer writer = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile()); // $NON-NLS-1$
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Entry entry : entries.values()) {
+                entry.write(writer);
+            }
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file)) {
+                // Windows will not rename over an existing file
+                if (!file.delete() || !tmp.renameTo(file)) {
+                    throw new IOException("Could not rename " + tmp + " to " + file);
+                }
+            }
+            log.debug("Saved " + entries.size() + " entries to " + file);
+        } catch (IOException e) {
+            log.warn("Could not save class index " + file + " " + e.toString());
+        } finally {
+            JOrphanUtils.closeQuietly(writer);
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * The result of one search in one jar.
+     */
+    private static class Entry {
+        private final String path;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final String dependencyKey;
+
+        private final String searchKey;
+
+        private final List<String> classes;
+
+        Entry(String path, long lastModified, long length, String dependencyKey, String searchKey,
+                List<String> classes) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.dependencyKey = dependencyKey;
+            this.searchKey = searchKey;
+            this.classes = Collections.unmodifiableList(classes);
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split("\t", -1); // $NON-NLS-1$
+            if (fields.length != 6) {
+                return null;
+            }
+            try {
+                List<String> classes = new ArrayList<String>();
+                if (fields[5].length() > 0) {
+                    String[] names = fields[5].split(","); // $NON-NLS-1$
+                    for (int i = 0; i < names.length; i++) {
+                        classes.add(names[i]);
+                    }
+                }
+                return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3], fields[4],
+                        classes);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        void write(Writer writer) throws IOException {
+            writer.write(path);
+            writer.write(SEPARATOR);
+            writer.write(Long.toString(lastModified));
+            writer.write(SEPARATOR);
+            writer.write(Long.toString(length));
+            writer.write(SEPARATOR);
+            writer.write(dependencyKey);
+            writer.write(SEPARATOR);
+            writer.write(searchKey);
+            writer.write(SEPARATOR);
+            for (int i = 0; i < classes.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(classes.get(i));
+            }
+            writer.write('\n');
+        }
+    }
+}
@@ -21,8 +21,11 @@ package org.apache.jorphan.util;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -440,6 +443,24 @@ public final class JOrphanUtils {
         return hb;
     }
 
+    /**
+     * Returns the SHA-1 hash of a string, so that a secret such as a password
+     * can be part of a key without the key holding the secret itself.
+     *
+     * @param value the string; null is hashed as "null"
+     * @return hex representation of the hash of the UTF-8 encoded value
+     */
+    public static String sha1Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1"); // $NON-NLS-1$
+            return baToHexString(digest.digest(String.valueOf(value).getBytes("UTF-8"))); // $NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available: " + e); // $NON-NLS-1$
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available: " + e); // $NON-NLS-1$
+        }
+    }
+
     private static byte toHexChar(byte in){
         if (in < 10) return (byte) (in+'0');
         return (byte) ((in-10)+'a');
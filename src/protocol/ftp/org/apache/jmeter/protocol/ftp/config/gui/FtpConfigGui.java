@@ -54,6 +54,10 @@ public class FtpConfigGui extends AbstractConfigGui {
 
     private JCheckBox saveResponseData;
 
+    private JCheckBox useMD5;
+
+    private JCheckBox keepAlive;
+
     private boolean displayName = true;
 
     private JRadioButton getBox;
@@ -84,6 +88,8 @@ public class FtpConfigGui extends AbstractConfigGui {
         inputData.setText(element.getPropertyAsString(FTPSampler.INPUT_DATA));
         binaryMode.setSelected(element.getPropertyAsBoolean(FTPSampler.BINARY_MODE, false));
         saveResponseData.setSelected(element.getPropertyAsBoolean(FTPSampler.SAVE_RESPONSE, false));
+        useMD5.setSelected(element.getPropertyAsBoolean(FTPSampler.MD5, false));
+        keepAlive.setSelected(element.getPropertyAsBoolean(FTPSampler.KEEP_ALIVE, false));
         final boolean uploading = element.getPropertyAsBoolean(FTPSampler.UPLOAD_FILE,false);
         if (uploading){
             putBox.setSelected(true);
@@ -113,6 +119,8 @@ public class FtpConfigGui extends AbstractConfigGui {
         element.setProperty(FTPSampler.INPUT_DATA,inputData.getText());
         element.setProperty(FTPSampler.BINARY_MODE,binaryMode.isSelected());
         element.setProperty(FTPSampler.SAVE_RESPONSE, saveResponseData.isSelected());
+        element.setProperty(FTPSampler.MD5, useMD5.isSelected(), false);
+        element.setProperty(FTPSampler.KEEP_ALIVE, keepAlive.isSelected(), false);
         element.setProperty(FTPSampler.UPLOAD_FILE,putBox.isSelected());
     }
 
@@ -130,6 +138,8 @@ public class FtpConfigGui extends AbstractConfigGui {
         inputData.setText(""); //$NON-NLS-1$
         binaryMode.setSelected(false);
         saveResponseData.setSelected(false);
+        useMD5.setSelected(false);
+        keepAlive.setSelected(false);
         getBox.setSelected(true);
         putBox.setSelected(false);
     }
@@ -208,6 +218,8 @@ public class FtpConfigGui extends AbstractConfigGui {
 
         binaryMode = new JCheckBox(JMeterUtils.getResString("ftp_binary_mode")); //$NON-NLS-1$
         saveResponseData = new JCheckBox(JMeterUtils.getResString("ftp_save_response_data")); //$NON-NLS-1$
+        useMD5 = new JCheckBox(JMeterUtils.getResString("response_save_as_md5")); //$NON-NLS-1$
+        keepAlive = new JCheckBox(JMeterUtils.getResString("use_keepalive")); //$NON-NLS-1$
 
 
         JPanel optionsPanel = new HorizontalPanel();
@@ -215,6 +227,8 @@ public class FtpConfigGui extends AbstractConfigGui {
         optionsPanel.add(putBox);
         optionsPanel.add(binaryMode);
         optionsPanel.add(saveResponseData);
+        optionsPanel.add(useMD5);
+        optionsPanel.add(keepAlive);
         return optionsPanel;
     }
     private void init() {
@@ -28,8 +28,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
@@ -44,14 +49,22 @@ import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.ThreadListener;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
 
 /**
  * A sampler which understands FTP file requests.
- *
+ * <p>
+ * If keep-alive is selected, the logged-in control connection is kept open and
+ * shared by the FTP samplers of a thread which use the same server, port, user and password,
+ * so that the samples measure the transfers rather than the connection setup.
+ * A connection which has been idle for longer than ftp.keepalive.check_idle ms
+ * is checked with NOOP before it is reused, and replaced if the check fails.
  */
-public class FTPSampler extends AbstractSampler implements Interruptible {
+public class FTPSampler extends AbstractSampler implements Interruptible, ThreadListener {
 
     private static final long serialVersionUID = 240L;
 
@@ -84,6 +97,39 @@ public class FTPSampler extends AbstractSampler implements Interruptible {
     // Should the file data be saved in the response?
     public final static String SAVE_RESPONSE = "FTPSampler.saveresponse"; // $NON-NLS-1$
 
+    // Should the control connection be kept open between samples?
+    public final static String KEEP_ALIVE = "FTPSampler.keepalive"; // $NON-NLS-1$
+
+    // Should the MD5 hash of the file be saved instead of the file?
+    public final static String MD5 = "FTPSampler.md5"; // $NON-NLS-1$
+
+    // Idle time (ms) after which a kept-alive connection is checked with NOOP before use
+    private static final long CHECK_IDLE =
+        JMeterUtils.getPropDefault("ftp.keepalive.check_idle", 5000L); // $NON-NLS-1$
+
+    /**
+     * A logged-in control connection, which may be reused by later samples in the same thread.
+     */
+    private static class Session {
+        private final FTPClient client;
+
+        private int fileType = FTP.ASCII_FILE_TYPE;
+
+        private long lastUsed;
+
+        Session(FTPClient client) {
+            this.client = client;
+        }
+    }
+
+    // The kept-alive sessions for the current thread, by server, port, user and password hash
+    private static final ThreadLocal<Map<String, Session>> SESSIONS = new ThreadLocal<Map<String, Session>>() {
+        @Override
+        protected Map<String, Session> initialValue() {
+            return new HashMap<String, Session>();
+        }
+    };
+
     private transient volatile FTPClient savedClient; // used for interrupting the sampler
 
     public FTPSampler() {
@@ -141,6 +187,14 @@ public class FTPSampler extends AbstractSampler implements Interruptible {
         return getPropertyAsBoolean(UPLOAD_FILE,false);
     }
 
+    public boolean isKeepAlive(){
+        return getPropertyAsBoolean(KEEP_ALIVE,false);
+    }
+
+    public boolean isMD5(){
+        return getPropertyAsBoolean(MD5,false);
+    }
+
 
     /**
      * Returns a formatted string label describing this sampler Example output:
@@ -182,116 +236,228 @@ public class FTPSampler extends AbstractSampler implements Interruptible {
         InputStream input = null;
         OutputStream output = null;
 
+        final boolean keepAlive = isKeepAlive();
+        final String sessionKey = keepAlive ? getSessionKey() : null;
+        // Done before the sample starts, as the check is not part of the transfer
+        Session session = keepAlive ? getLiveSession(sessionKey) : null;
+        boolean keepSession = false;
+
         res.sampleStart();
-        FTPClient ftp = new FTPClient();
+        FTPClient ftp = session != null ? session.client : new FTPClient();
         try {
             savedClient = ftp;
-            final int port = getPortAsInt();
-            if (port > 0){
-                ftp.connect(getServer(),port);
-            } else {
-                ftp.connect(getServer());
+            final boolean reused = session != null;
+            boolean loggedIn = reused;
+            if (!reused) {
+                final int port = getPortAsInt();
+                if (port > 0){
+                    ftp.connect(getServer(),port);
+                } else {
+                    ftp.connect(getServer());
+                }
+                res.latencyEnd();
+                int reply = ftp.getReplyCode();
+                if (FTPReply.isPositiveCompletion(reply))
+                {
+                    if (ftp.login( getUsername(), getPassword())){
+                        loggedIn = true;
+                        ftp.enterLocalPassiveMode();// should probably come from the setup dialog
+                        session = new Session(ftp);
+                    } else {
+                        res.setResponseCode(Integer.toString(ftp.getReplyCode()));
+                        res.setResponseMessage(ftp.getReplyString());
+                    }
+                } else {
+                    res.setResponseCode("501"); // TODO
+                    res.setResponseMessage("Could not connect");
+                    //res.setResponseCode(Integer.toString(ftp.getReplyCode()));
+                    res.setResponseMessage(ftp.getReplyString());
+                }
             }
-            res.latencyEnd();
-            int reply = ftp.getReplyCode();
-            if (FTPReply.isPositiveCompletion(reply))
-            {
-                if (ftp.login( getUsername(), getPassword())){
-                    if (binaryTransfer) {
-                        ftp.setFileType(FTP.BINARY_FILE_TYPE);
+            if (loggedIn) {
+                final int fileType = binaryTransfer ? FTP.BINARY_FILE_TYPE : FTP.ASCII_FILE_TYPE;
+                if (session.fileType != fileType) {
+                    ftp.setFileType(fileType);
+                    session.fileType = fileType;
+                }
+                boolean ftpOK=false;
+                if (isUpload()) {
+                    String contents=getLocalFileContents();
+                    if (contents.length() > 0){
+                        byte bytes[] = contents.getBytes(); // TODO - charset?
+                        input = new ByteArrayInputStream(bytes);
+                        res.setBytes(bytes.length);
+                    } else {
+                        File infile = new File(local);
+                        res.setBytes((int)infile.length());
+                        input = new FileInputStream(infile);
+                    }
+                    if (reused) {
+                        res.latencyEnd();
+                    }
+                    ftpOK = ftp.storeFile(remote, input);
+                } else {
+                    final boolean saveResponse = isSaveResponse();
+                    final boolean md5 = isMD5();
+                    ByteArrayOutputStream baos=null; // No need to close this
+                    MessageDigest digest=null;
+                    OutputStream target=null; // No need to close this
+                    if (md5) {
+                        digest = createMD5Digest();
+                    }
+                    if (digest != null) {
+                        target = new DigestOutputStream(new NullOutputStream(), digest);
+                    } else if (saveResponse){
+                        baos  = new ByteArrayOutputStream();
+                        target=baos;
                     }
-                    ftp.enterLocalPassiveMode();// should probably come from the setup dialog
-                    boolean ftpOK=false;
-                    if (isUpload()) {
-                        String contents=getLocalFileContents();
-                        if (contents.length() > 0){
-                            byte bytes[] = contents.getBytes(); // TODO - charset?
-                            input = new ByteArrayInputStream(bytes);
-                            res.setBytes(bytes.length);
+                    if (local.length()>0){
+                        output=new FileOutputStream(local);
+                        if (target==null) {
+                            target=output;
                         } else {
-                            File infile = new File(local);
-                            res.setBytes((int)infile.length());
-                            input = new FileInputStream(infile);
+                            target = new TeeOutputStream(output,target);
                         }
-                        ftpOK = ftp.storeFile(remote, input);
+                    }
+                    if (target == null){
+                        target=new NullOutputStream();
+                    }
+                    input = ftp.retrieveFileStream(remote);
+                    if (reused) {
+                        res.latencyEnd();
+                    }
+                    if (input == null){// Could not access file or other error
+                        res.setResponseCode(Integer.toString(ftp.getReplyCode()));
+                        res.setResponseMessage(ftp.getReplyString());
                     } else {
-                        final boolean saveResponse = isSaveResponse();
-                        ByteArrayOutputStream baos=null; // No need to close this
-                        OutputStream target=null; // No need to close this
-                        if (saveResponse){
-                            baos  = new ByteArrayOutputStream();
-                            target=baos;
+                        long bytes = IOUtils.copyLarge(input,target);
+                        input.close();
+                        input = null;
+                        ftpOK = bytes > 0;
+                        if (keepAlive) {
+                            // Read the transfer completion reply, so the connection can be used again
+                            ftpOK = ftp.completePendingCommand() && ftpOK;
                         }
-                        if (local.length()>0){
-                            output=new FileOutputStream(local);
-                            if (target==null) {
-                                target=output;
-                            } else {
-                                target = new TeeOutputStream(output,baos);
+                        if (digest != null) {
+                            res.setResponseData(JOrphanUtils.baToHexBytes(digest.digest()));
+                            res.setDataType(SampleResult.TEXT);
+                            // the response is the hash, so the sizes must be set explicitly
+                            res.setBodySize((int) bytes);
+                            res.setBytes((int) bytes);
+                        } else if (saveResponse && baos != null){
+                            res.setResponseData(baos.toByteArray());
+                            if (!binaryTransfer) {
+                                res.setDataType(SampleResult.TEXT);
                             }
-                        }
-                        if (target == null){
-                            target=new NullOutputStream();
-                        }
-                        input = ftp.retrieveFileStream(remote);
-                        if (input == null){// Could not access file or other error
-                            res.setResponseCode(Integer.toString(ftp.getReplyCode()));
-                            res.setResponseMessage(ftp.getReplyString());
                         } else {
-                            long bytes = IOUtils.copy(input,target);
-                            ftpOK = bytes > 0;
-                            if (saveResponse && baos != null){
-                                res.setResponseData(baos.toByteArray());
-                                if (!binaryTransfer) {
-                                    res.setDataType(SampleResult.TEXT);
-                                }
-                            } else {
-                                res.setBytes((int) bytes);
-                            }
+                            res.setBytes((int) bytes);
                         }
                     }
+                }
 
-                    if (ftpOK) {
-                        res.setResponseCodeOK();
-                        res.setResponseMessageOK();
-                        res.setSuccessful(true);
-                    } else {
-                        res.setResponseCode(Integer.toString(ftp.getReplyCode()));
-                        res.setResponseMessage(ftp.getReplyString());
-                    }
+                if (ftpOK) {
+                    res.setResponseCodeOK();
+                    res.setResponseMessageOK();
+                    res.setSuccessful(true);
                 } else {
                     res.setResponseCode(Integer.toString(ftp.getReplyCode()));
                     res.setResponseMessage(ftp.getReplyString());
                 }
-            } else {
-                res.setResponseCode("501"); // TODO
-                res.setResponseMessage("Could not connect");
-                //res.setResponseCode(Integer.toString(ftp.getReplyCode()));
-                res.setResponseMessage(ftp.getReplyString());
+                // A failed transfer does not make the connection unusable, unless the server closed it
+                keepSession = keepAlive && ftp.isConnected();
             }
         } catch (IOException ex) {
             res.setResponseCode("000"); // TODO
             res.setResponseMessage(ex.toString());
         } finally {
             savedClient = null;
-            if (ftp.isConnected()) {
-                try {
-                    ftp.logout();
-                } catch (IOException ignored) {
-                }
-                try {
-                    ftp.disconnect();
-                } catch (IOException ignored) {
-                }
-            }
             IOUtils.closeQuietly(input);
             IOUtils.closeQuietly(output);
+            if (keepSession) {
+                session.lastUsed = System.currentTimeMillis();
+                SESSIONS.get().put(sessionKey, session);
+            } else {
+                close(ftp);
+            }
         }
 
         res.sampleEnd();
         return res;
     }
 
+    private String getSessionKey() {
+        return getServer() + ":" + getPortAsInt() + ":" + getUsername() + ":" + JOrphanUtils.sha1Hex(getPassword()); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    }
+
+    /**
+     * Removes the kept-alive session for the key from the thread's sessions,
+     * checking it with NOOP if it has been idle for a while.
+     *
+     * @return the session, or null if there is no usable session
+     */
+    private Session getLiveSession(String key) {
+        Session session = SESSIONS.get().remove(key);
+        if (session == null) {
+            return null;
+        }
+        FTPClient ftp = session.client;
+        if (!ftp.isConnected()) { // e.g. interrupted
+            return null;
+        }
+        if (System.currentTimeMillis() - session.lastUsed > CHECK_IDLE) {
+            try {
+                if (!ftp.sendNoOp()) {
+                    log.debug("NOOP failed, reconnecting: " + ftp.getReplyString());
+                    close(ftp);
+                    return null;
+                }
+            } catch (IOException ex) {
+                log.debug("NOOP failed, reconnecting: " + ex.toString());
+                close(ftp);
+                return null;
+            }
+        }
+        return session;
+    }
+
+    private static MessageDigest createMD5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            log.error("Should not happen - could not find MD5 digest", e);
+            return null;
+        }
+    }
+
+    private static void close(FTPClient ftp) {
+        if (ftp.isConnected()) {
+            try {
+                ftp.logout();
+            } catch (IOException ignored) {
+            }
+            try {
+                ftp.disconnect();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void threadStarted() {
+    }
+
+    /**
+     * Closes the kept-alive connections of the current thread.
+     * {@inheritDoc}
+     */
+    public void threadFinished() {
+        Map<String, Session> sessions = SESSIONS.get();
+        for (Session session : sessions.values()) {
+            close(session.client);
+        }
+        sessions.clear();
+    }
+
     /** {@inheritDoc} */
     public boolean interrupt() {
         FTPClient client = savedClient;
@@ -46,6 +46,12 @@ public class HttpMirrorControl extends AbstractTestElement {
 
     public static final String MAX_QUEUE_SIZE = "HttpMirrorControlGui.maxQueueSize"; // $NON-NLS-1$
 
+    public static final String NIO = "HttpMirrorControlGui.nio"; // $NON-NLS-1$
+
+    public static final String RESPONSE_LENGTH = "HttpMirrorControlGui.responseLength"; // $NON-NLS-1$
+
+    public static final String LATENCY = "HttpMirrorControlGui.latency"; // $NON-NLS-1$
+
     public static final int DEFAULT_MAX_POOL_SIZE = 0;
 
     public static final int DEFAULT_MAX_QUEUE_SIZE = 25;
@@ -121,12 +127,72 @@ public class HttpMirrorControl extends AbstractTestElement {
         setProperty(MAX_QUEUE_SIZE, maxQueueSize);
     }
     
+    /**
+     * @return true if the non-blocking (NIO) server is to be used
+     */
+    public boolean isNio() {
+        return getPropertyAsBoolean(NIO, false);
+    }
+
+    /**
+     * @param nio true to use the non-blocking (NIO) server
+     */
+    public void setNio(boolean nio) {
+        setProperty(NIO, nio, false);
+    }
+
+    /**
+     * @return Response length (NIO server only); empty to echo the request
+     */
+    public String getResponseLengthAsString() {
+        return getPropertyAsString(RESPONSE_LENGTH);
+    }
+
+    /**
+     * @return Response length (NIO server only), or -1 to echo the request
+     */
+    private int getResponseLength() {
+        return getPropertyAsInt(RESPONSE_LENGTH, -1);
+    }
+
+    /**
+     * @param responseLength Response length (NIO server only); empty to echo the request
+     */
+    public void setResponseLength(String responseLength) {
+        setProperty(RESPONSE_LENGTH, responseLength, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return Latency (ms) added to every response (NIO server only)
+     */
+    public String getLatencyAsString() {
+        return getPropertyAsString(LATENCY);
+    }
+
+    /**
+     * @return Latency (ms) added to every response (NIO server only)
+     */
+    private long getLatency() {
+        return getPropertyAsLong(LATENCY, 0);
+    }
+
+    /**
+     * @param latency Latency (ms) added to every response (NIO server only)
+     */
+    public void setLatency(String latency) {
+        setProperty(LATENCY, latency, ""); // $NON-NLS-1$
+    }
+
     public int getDefaultPort() {
         return DEFAULT_PORT;
     }
 
     public void startHttpMirror() {
-        server = new HttpMirrorServer(getPort(), getMaxPoolSize(), getMaxQueueSize());
+        if (isNio()) {
+            server = new HttpMirrorNioServer(getPort(), getResponseLength(), getLatency());
+        } else {
+            server = new HttpMirrorServer(getPort(), getMaxPoolSize(), getMaxQueueSize());
+        }
         server.start();
         GuiPackage instance = GuiPackage.getInstance();
         if (instance != null) {
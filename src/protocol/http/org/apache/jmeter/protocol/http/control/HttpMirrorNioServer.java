@@ -0,0 +1,675 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.control;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Mirror server which handles all connections on a single thread using a Selector,
+ * so it can serve many thousands of requests per second, e.g. as a local target
+ * when benchmarking the HTTP samplers.
+ * <p>
+ * Unlike {@link HttpMirrorThread}, this server supports HTTP/1.1 keep-alive (and HTTP/1.0
+ * if the client asks for it), pipelined requests and chunked request bodies.
+ * Responses always have a Content-Length.
+ * <p>
+ * By default the response body is the complete request, as for the standard mirror.
+ * If a response length is set, a body of that many bytes is sent instead.
+ * A fixed latency can be added to every response; as for the standard mirror, the
+ * X-Sleep request header adds a delay and the X-SetCookie header is returned as Set-Cookie.
+ * The X-ResponseLength request header overrides the response length for a single request;
+ * it must not be larger than 16MB.
+ * Requests with an invalid length are answered with 400 Bad Request and the connection is closed.
+ * Delays do not block the server; the response is just written later.
+ */
+public class HttpMirrorNioServer extends HttpMirrorServer {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ISO_8859_1 = "ISO-8859-1"; //$NON-NLS-1$
+
+    private static final int SELECT_TIMEOUT = 1000;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Protect against clients which send an endless request
+    private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+    // Largest body which can be requested with X-ResponseLength
+    private static final int MAX_RESPONSE_LENGTH = 16 * 1024 * 1024;
+
+    private static final byte FILL_BYTE = 'a';
+
+    /** Returned by {@link #findRequestEnd} if the request has an invalid length */
+    static final int BAD_REQUEST = -2;
+
+    private final int port;
+
+    private final int responseLength;
+
+    private final long latency;
+
+    private volatile long statisticsInterval;
+
+    private volatile boolean running;
+
+    private volatile Exception except;
+
+    private volatile Selector selector;
+
+    // Only used by the server thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // Only used by the server thread; responses which are waiting for their latency to expire
+    private final PriorityQueue<Delayed> delayed = new PriorityQueue<Delayed>();
+
+    // Only used by the server thread; shared body for fixed-length responses
+    private byte[] filler = new byte[0];
+
+    // Statistics
+
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private volatile long startTime;
+
+    /**
+     * @param port the port to listen on
+     * @param responseLength the length of the response body, or a negative value to echo the request
+     * @param latency the time (ms) to wait before sending each response
+     */
+    public HttpMirrorNioServer(int port, int responseLength, long latency) {
+        super(port);
+        setName("HttpMirrorNioServer"); // $NON-NLS-1$
+        this.port = port;
+        this.responseLength = responseLength;
+        this.latency = latency;
+    }
+
+    /**
+     * @param interval how often (ms) the throughput is logged while the server is running; 0 to disable
+     */
+    public void setStatisticsInterval(long interval) {
+        this.statisticsInterval = interval;
+    }
+
+    /**
+     * Listen on the port and handle requests until {@link #stopServer()} is called or an error occurs.
+     */
+    @Override
+    public void run() {
+        except = null;
+        running = true;
+        ServerSocketChannel serverChannel = null;
+        try {
+            log.info("Creating HttpMirror (NIO) ... on port " + port
+                    + (responseLength >= 0 ? ", response length: " + responseLength : "")
+                    + (latency > 0 ? ", latency: " + latency + "ms" : ""));
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            startTime = System.currentTimeMillis();
+            long nextStatistics = startTime + statisticsInterval;
+            log.info("HttpMirror up and running!");
+            while (running) {
+                long now = System.currentTimeMillis();
+                long timeout = SELECT_TIMEOUT;
+                Delayed first = delayed.peek();
+                if (first != null) {
+                    timeout = Math.max(1, Math.min(timeout, first.due - now));
+                }
+                selector.select(timeout);
+                now = System.currentTimeMillis();
+                while ((first = delayed.peek()) != null && first.due <= now) {
+                    delayed.poll().connection.enableWrite();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+                long interval = statisticsInterval;
+                if (interval > 0 && now >= nextStatistics) {
+                    log.info(getStatistics());
+                    nextStatistics = now + interval;
+                }
+            }
+            log.info("HttpMirror Server stopped " + getStatistics());
+        } catch (Exception e) {
+            except = e;
+            log.warn("HttpMirror Server stopped", e);
+        } finally {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    JOrphanUtils.closeQuietly(key.channel());
+                }
+                try {
+                    selector.close(); // Selector is not Closeable before Java 7
+                } catch (IOException e) {
+                    log.debug("Error closing selector " + e.toString());
+                }
+            }
+            JOrphanUtils.closeQuietly(serverChannel);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept((ServerSocketChannel) key.channel());
+            return;
+        }
+        Connection conn = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                conn.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                conn.write();
+            }
+        } catch (IOException e) {
+            log.debug("Closing connection: " + e.toString());
+            conn.close();
+        } catch (RuntimeException e) {
+            // Only this connection is affected; keep serving the others
+            log.warn("Closing connection after unexpected error", e);
+            conn.close();
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key));
+                connectionCount.incrementAndGet();
+                openConnections.incrementAndGet();
+            }
+        } catch (IOException e) {
+            log.warn("Could not accept connection " + e.toString());
+        }
+    }
+
+    /**
+     * Stops the server; it closes all its connections before the thread ends.
+     */
+    @Override
+    public void stopServer() {
+        running = false;
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    @Override
+    public Exception getException() {
+        return except;
+    }
+
+    /**
+     * @return the number of connections accepted
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the number of connections currently open
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return the number of responses sent
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the counters and the average request rate since the server started, suitable for logging
+     */
+    public String getStatistics() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        long requests = requestCount.get();
+        return "requests=" + requests
+            + " rate=" + (elapsed > 0 ? requests * 1000 / elapsed : 0) + "/s"
+            + " connections=" + connectionCount.get()
+            + " open=" + openConnections.get()
+            + " bytesRead=" + bytesRead.get()
+            + " bytesWritten=" + bytesWritten.get();
+    }
+
+    private byte[] getFiller(int length) {
+        if (filler.length < length) {
+            filler = new byte[length];
+            Arrays.fill(filler, FILL_BYTE);
+        }
+        return filler;
+    }
+
+    /**
+     * Finds the end of the request which starts at <code>start</code>.
+     *
+     * @return the offset just after the request, -1 if the request is not complete,
+     * or {@link #BAD_REQUEST} if the Content-Length or a chunk size is invalid
+     */
+    static int findRequestEnd(byte[] buf, int start, int len, String headers, int headerEnd) {
+        String contentLength = getHeader(headers, "Content-Length"); // $NON-NLS-1$
+        if (contentLength != null) {
+            long length = parseLength(contentLength, 10);
+            if (length < 0) {
+                return BAD_REQUEST;
+            }
+            long end = headerEnd + length;
+            return end <= len ? (int) end : -1;
+        }
+        String transferEncoding = getHeader(headers, "Transfer-Encoding"); // $NON-NLS-1$
+        if (transferEncoding != null && "chunked".equalsIgnoreCase(transferEncoding.trim())) { // $NON-NLS-1$
+            int pos = headerEnd;
+            while (true) {
+                int lineEnd = indexOfCrlf(buf, pos, len);
+                if (lineEnd < 0) {
+                    return -1;
+                }
+                String sizeLine = new String(buf, pos, lineEnd - pos); // hex digits, always ASCII
+                int semi = sizeLine.indexOf(';');
+                if (semi >= 0) {
+                    sizeLine = sizeLine.substring(0, semi);
+                }
+                long size = parseLength(sizeLine, 16);
+                if (size < 0) {
+                    return BAD_REQUEST;
+                }
+                pos = lineEnd + 2;
+                if (size == 0) {
+                    // Skip any trailers, up to and including the empty line
+                    while (true) {
+                        lineEnd = indexOfCrlf(buf, pos, len);
+                        if (lineEnd < 0) {
+                            return -1;
+                        }
+                        if (lineEnd == pos) {
+                            return pos + 2;
+                        }
+                        pos = lineEnd + 2;
+                    }
+                }
+                if (size > len - pos - 2) {
+                    return -1;
+                }
+                pos += (int) size + 2;
+            }
+        }
+        return headerEnd;
+    }
+
+    /**
+     * @return the length, or -1 if it is not a number, is negative, or is larger than the maximum request size
+     */
+    private static long parseLength(String value, int radix) {
+        String digits = value.trim();
+        if (digits.length() == 0 || digits.charAt(0) == '-' || digits.charAt(0) == '+') {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(digits, radix);
+            return length <= MAX_REQUEST_SIZE ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the offset of the next CRLF at or after start, or -1
+     */
+    static int indexOfCrlf(byte[] buf, int start, int len) {
+        for (int i = start; i < len - 1; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the offset just after the blank line which ends the headers, or -1
+     */
+    static int findHeaderEnd(byte[] buf, int start, int len) {
+        for (int i = start; i < len - 3; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value of the first header with the name (case-insensitive), or null
+     */
+    static String getHeader(String headers, String name) {
+        int lineStart = headers.indexOf('\n') + 1; // skip the request line
+        while (lineStart > 0 && lineStart < headers.length()) {
+            int lineEnd = headers.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = headers.length();
+            }
+            int colon = headers.indexOf(':', lineStart);
+            if (colon > 0 && colon < lineEnd && colon - lineStart == name.length()
+                    && headers.regionMatches(true, lineStart, name, 0, name.length())) {
+                return headers.substring(colon + 1, lineEnd).trim();
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * A response waiting for its latency to expire.
+     */
+    private static class Delayed implements Comparable<Delayed> {
+        private final long due;
+
+        private final Connection connection;
+
+        Delayed(long due, Connection connection) {
+            this.due = due;
+            this.connection = connection;
+        }
+
+        public int compareTo(Delayed other) {
+            return due < other.due ? -1 : (due == other.due ? 0 : 1);
+        }
+    }
+
+    /**
+     * A response, which is sent when it is due and all previous responses on the connection have been sent.
+     */
+    private static class Response {
+        private final ByteBuffer[] data;
+
+        private final long due;
+
+        private final boolean close;
+
+        Response(ByteBuffer[] data, long due, boolean close) {
+            this.data = data;
+            this.due = due;
+            this.close = close;
+        }
+    }
+
+    /**
+     * State of one client connection; only used by the server thread.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+
+        private final SelectionKey key;
+
+        private final LinkedList<Response> responses = new LinkedList<Response>();
+
+        private byte[] buf = new byte[4096];
+
+        private int len;
+
+        private boolean closing; // a response with "Connection: close" has been queued
+
+        private boolean inputClosed;
+
+        private boolean closed;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            int n;
+            while ((n = channel.read(readBuffer)) > 0) {
+                bytesRead.addAndGet(n);
+                readBuffer.flip();
+                if (!closing) {
+                    append(readBuffer);
+                }
+                readBuffer.clear();
+            }
+            if (n < 0) {
+                inputClosed = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            parseRequests();
+            if (inputClosed && responses.isEmpty()) {
+                close();
+            }
+        }
+
+        private void append(ByteBuffer data) throws IOException {
+            int n = data.remaining();
+            if (len + n > buf.length) {
+                if (len + n > MAX_REQUEST_SIZE) {
+                    throw new IOException("Request too large");
+                }
+                byte[] grown = new byte[Math.max(buf.length * 2, len + n)];
+                System.arraycopy(buf, 0, grown, 0, len);
+                buf = grown;
+            }
+            data.get(buf, len, n);
+            len += n;
+        }
+
+        private void parseRequests() throws IOException {
+            int start = 0;
+            while (!closing && start < len) {
+                int headerEnd = findHeaderEnd(buf, start, len);
+                if (headerEnd < 0) {
+                    break;
+                }
+                String headers = new String(buf, start, headerEnd - start, ISO_8859_1);
+                int end = findRequestEnd(buf, start, len, headers, headerEnd);
+                if (end == BAD_REQUEST) {
+                    addBadRequest("Invalid request length"); // $NON-NLS-1$
+                    break;
+                }
+                if (end < 0) {
+                    break;
+                }
+                addResponse(headers, start, end);
+                start = end;
+            }
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, len - start);
+                len -= start;
+            }
+        }
+
+        private void addResponse(String headers, int start, int end) throws UnsupportedEncodingException {
+            int lineEnd = headers.indexOf('\r');
+            String requestLine = lineEnd > 0 ? headers.substring(0, lineEnd) : headers;
+            boolean http10 = requestLine.endsWith("HTTP/1.0"); // $NON-NLS-1$
+            String connection = getHeader(headers, "Connection"); // $NON-NLS-1$
+            boolean keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connection) // $NON-NLS-1$
+                    : !"close".equalsIgnoreCase(connection); // $NON-NLS-1$
+
+            long delay = latency;
+            String sleep = getHeader(headers, "X-Sleep"); // $NON-NLS-1$
+            if (sleep != null) {
+                try {
+                    delay += Long.parseLong(sleep);
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid X-Sleep: " + sleep);
+                }
+            }
+            int length = responseLength;
+            String lengthHeader = getHeader(headers, "X-ResponseLength"); // $NON-NLS-1$
+            if (lengthHeader != null) {
+                try {
+                    length = Integer.parseInt(lengthHeader);
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid X-ResponseLength: " + lengthHeader);
+                }
+                if (length > MAX_RESPONSE_LENGTH) {
+                    addBadRequest("X-ResponseLength must not be larger than " + MAX_RESPONSE_LENGTH); // $NON-NLS-1$
+                    return;
+                }
+            }
+            ByteBuffer body;
+            if (length >= 0) {
+                body = ByteBuffer.wrap(getFiller(length), 0, length);
+            } else {
+                byte[] echo = new byte[end - start];
+                System.arraycopy(buf, start, echo, 0, echo.length);
+                body = ByteBuffer.wrap(echo);
+            }
+
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("HTTP/1.1 200 OK\r\n"); // $NON-NLS-1$
+            sb.append("Content-Type: text/plain\r\n"); // $NON-NLS-1$
+            sb.append("Content-Length: ").append(body.remaining()).append("\r\n"); // $NON-NLS-1$ // $NON-NLS-2$
+            String cookie = getHeader(headers, "X-SetCookie"); // $NON-NLS-1$
+            if (cookie != null) {
+                sb.append("Set-Cookie: ").append(cookie).append("\r\n"); // $NON-NLS-1$ // $NON-NLS-2$
+            }
+            if (!keepAlive) {
+                sb.append("Connection: close\r\n"); // $NON-NLS-1$
+            } else if (http10) {
+                sb.append("Connection: keep-alive\r\n"); // $NON-NLS-1$
+            }
+            sb.append("\r\n"); // $NON-NLS-1$
+            ByteBuffer head = ByteBuffer.wrap(sb.toString().getBytes(ISO_8859_1));
+
+            queue(new Response(new ByteBuffer[] { head, body },
+                    System.currentTimeMillis() + Math.max(0, delay), !keepAlive));
+        }
+
+        /**
+         * Queues a 400 response and closes the connection once it has been sent;
+         * the rest of the input is ignored.
+         */
+        private void addBadRequest(String reason) throws UnsupportedEncodingException {
+            log.debug("Bad request: " + reason);
+            byte[] body = reason.getBytes(ISO_8859_1);
+            String head = "HTTP/1.1 400 Bad Request\r\n" // $NON-NLS-1$
+                + "Content-Type: text/plain\r\n" // $NON-NLS-1$
+                + "Content-Length: " + body.length + "\r\n" // $NON-NLS-1$ // $NON-NLS-2$
+                + "Connection: close\r\n\r\n"; // $NON-NLS-1$
+            queue(new Response(new ByteBuffer[] { ByteBuffer.wrap(head.getBytes(ISO_8859_1)), ByteBuffer.wrap(body) },
+                    System.currentTimeMillis(), true));
+        }
+
+        private void queue(Response response) {
+            boolean first = responses.isEmpty();
+            responses.add(response);
+            if (response.close) {
+                closing = true;
+            }
+            if (first) {
+                schedule(response.due);
+            }
+        }
+
+        private void schedule(long due) {
+            if (due <= System.currentTimeMillis()) {
+                enableWrite();
+            } else {
+                delayed.add(new Delayed(due, this));
+            }
+        }
+
+        void enableWrite() {
+            if (!closed && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void write() throws IOException {
+            long now = System.currentTimeMillis();
+            Response response;
+            while ((response = responses.peek()) != null && response.due <= now) {
+                bytesWritten.addAndGet(channel.write(response.data));
+                if (response.data[response.data.length - 1].hasRemaining()) {
+                    return; // socket buffer is full; wait to be selected again
+                }
+                responses.poll();
+                requestCount.incrementAndGet();
+                if (response.close) {
+                    close();
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (response != null) {
+                schedule(response.due);
+            } else if (inputClosed) {
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                openConnections.decrementAndGet();
+                key.cancel();
+                JOrphanUtils.closeQuietly(channel);
+            }
+        }
+    }
+}
@@ -158,6 +158,12 @@ public class HttpMirrorServer extends Thread implements Stoppable {
         return except;
     }
 
+    /**
+     * Usage: HttpMirrorServer [port] [-nio [responseLength [latency [statisticsInterval]]]]
+     * <p>
+     * The -nio option starts the {@link HttpMirrorNioServer}; a responseLength of -1 echoes the request,
+     * the latency is in milliseconds and the throughput is logged every statisticsInterval seconds.
+     */
     public static void main(String args[]){
         int port = HttpMirrorControl.DEFAULT_PORT;
         if (args.length > 0){
@@ -165,7 +171,16 @@ public class HttpMirrorServer extends Thread implements Stoppable {
         }
         LoggingManager.setPriority("INFO"); // default level
         LoggingManager.setLoggingLevels(System.getProperties() ); // allow override by system properties
-        HttpMirrorServer serv = new HttpMirrorServer(port);
+        HttpMirrorServer serv;
+        if (args.length > 1 && "-nio".equals(args[1])) { // $NON-NLS-1$
+            HttpMirrorNioServer nio = new HttpMirrorNioServer(port,
+                    args.length > 2 ? Integer.parseInt(args[2]) : -1,
+                    args.length > 3 ? Long.parseLong(args[3]) : 0);
+            nio.setStatisticsInterval(args.length > 4 ? Long.parseLong(args[4]) * 1000 : 0);
+            serv = nio;
+        } else {
+            serv = new HttpMirrorServer(port);
+        }
         serv.start();
     }
 }
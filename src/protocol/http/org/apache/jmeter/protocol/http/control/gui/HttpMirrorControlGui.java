@@ -27,6 +27,7 @@ import java.util.Collection;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -55,6 +56,12 @@ public class HttpMirrorControlGui extends LogicControllerGui
 
     private JTextField maxQueueSizeField;
 
+    private JCheckBox nioCheckBox;
+
+    private JTextField responseLengthField;
+
+    private JTextField latencyField;
+
     private JButton stop, start;
 
     private static final String ACTION_STOP = "stop"; // $NON-NLS-1$
@@ -91,6 +98,9 @@ public class HttpMirrorControlGui extends LogicControllerGui
             mirrorController.setPort(portField.getText());
             mirrorController.setMaxPoolSize(maxPoolSizeField.getText());
             mirrorController.setMaxQueueSize(maxQueueSizeField.getText());
+            mirrorController.setNio(nioCheckBox.isSelected());
+            mirrorController.setResponseLength(responseLengthField.getText());
+            mirrorController.setLatency(latencyField.getText());
         }
     }
 
@@ -112,6 +122,9 @@ public class HttpMirrorControlGui extends LogicControllerGui
         portField.setText(mirrorController.getPortString());
         maxPoolSizeField.setText(mirrorController.getMaxPoolSizeAsString());
         maxQueueSizeField.setText(mirrorController.getMaxQueueSizeAsString());
+        nioCheckBox.setSelected(mirrorController.isNio());
+        responseLengthField.setText(mirrorController.getResponseLengthAsString());
+        latencyField.setText(mirrorController.getLatencyAsString());
         repaint();
     }
 
@@ -141,6 +154,7 @@ public class HttpMirrorControlGui extends LogicControllerGui
 
         Box myBox = Box.createVerticalBox();
         myBox.add(createPortPanel());
+        myBox.add(createNioPanel());
         mainPanel.add(myBox, BorderLayout.NORTH);
 
         mainPanel.add(createControls(), BorderLayout.CENTER);
@@ -202,10 +216,46 @@ public class HttpMirrorControlGui extends LogicControllerGui
         return panel;
     }
 
+    private JPanel createNioPanel() {
+        nioCheckBox = new JCheckBox(JMeterUtils.getResString("httpmirror_nio")); // $NON-NLS-1$
+        nioCheckBox.setName(HttpMirrorControl.NIO);
+
+        responseLengthField = new JTextField(8);
+        responseLengthField.setName(HttpMirrorControl.RESPONSE_LENGTH);
+
+        JLabel rlLabel = new JLabel(JMeterUtils.getResString("httpmirror_response_length")); // $NON-NLS-1$
+        rlLabel.setLabelFor(responseLengthField);
+
+        latencyField = new JTextField(8);
+        latencyField.setName(HttpMirrorControl.LATENCY);
+
+        JLabel latencyLabel = new JLabel(JMeterUtils.getResString("httpmirror_latency")); // $NON-NLS-1$
+        latencyLabel.setLabelFor(latencyField);
+
+        HorizontalPanel panel = new HorizontalPanel();
+        panel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+                JMeterUtils.getResString("httpmirror_nio_settings"))); // $NON-NLS-1$
+
+        panel.add(nioCheckBox);
+
+        panel.add(rlLabel);
+        panel.add(responseLengthField);
+
+        panel.add(latencyLabel);
+        panel.add(latencyField);
+
+        panel.add(Box.createHorizontalStrut(10));
+
+        return panel;
+    }
+
     @Override
     public void clearGui(){
         super.clearGui();
         portField.setText(HttpMirrorControl.DEFAULT_PORT_S);
         maxPoolSizeField.setText(Integer.toString(HttpMirrorControl.DEFAULT_MAX_POOL_SIZE));
+        nioCheckBox.setSelected(false);
+        responseLengthField.setText(""); // $NON-NLS-1$
+        latencyField.setText(""); // $NON-NLS-1$
     }
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ package org.apache.jmeter.protocol.http.sampler;
 import org.apache.jmeter.protocol.http.control.CookieManager;
 import org.apache.jmeter.protocol.http.util.accesslog.Filter;
 import org.apache.jmeter.protocol.http.util.accesslog.LogParser;
+import org.apache.jmeter.protocol.http.util.accesslog.LogReplayScheduler;
+import org.apache.jmeter.protocol.http.util.accesslog.TimestampedLogParser;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testbeans.TestBean;
@@ -61,6 +63,12 @@ import org.apache.log.Logger;
  * traffic using production logs. This way, JMeter can record when problems
  * occur and provide a way to match the server logs.
  * <p>
+ * If a replay speed is set and the parser implements {@link TimestampedLogParser},
+ * each entry is held back until its original log time (scaled by the speed)
+ * has been reached, so the original traffic shape is reproduced. The lag between
+ * the intended and actual start of each entry is stored in the variable
+ * {@link #SCHEDULE_LAG_VAR} and summarised in the log at the end of the test.
+ * <p>
  * Created on: Jun 26, 2003
  *
  */
@@ -71,6 +79,9 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
 
     public static final String DEFAULT_CLASS = "org.apache.jmeter.protocol.http.util.accesslog.TCLogParser"; // $NON-NLS-1$
 
+    /** Name of the variable holding the schedule lag (ms) of the last timestamp replay sample */
+    public static final String SCHEDULE_LAG_VAR = "AccessLogSampler.schedule_lag"; // $NON-NLS-1$
+
     /** private members used by class * */
     private transient LogParser PARSER = null;
 
@@ -83,6 +94,14 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
 
     private boolean started = false;
 
+    private double replaySpeed;
+
+    /** Shared by all clones; only set when timestamp replay is enabled */
+    private transient LogReplayScheduler replayScheduler;
+
+    /** The thread waiting for the next entry to become due, if any */
+    private transient volatile Thread replayWaiter;
+
     /**
      * Set the path where XML messages are stored for random selection.
      */
@@ -118,6 +137,23 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
         return parserClassName;
     }
 
+    /**
+     * @return the speed multiplier used to replay log entries at their original
+     *         times; 0 means entries are sent as fast as the threads loop
+     */
+    public double getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    /**
+     * @param replaySpeed
+     *            the speed multiplier, e.g. 2 replays the log in half the
+     *            original time; 0 disables timestamp replay
+     */
+    public void setReplaySpeed(double replaySpeed) {
+        this.replaySpeed = replaySpeed;
+    }
+
     /**
      * sample gets a new HTTPSampler from the generator and calls it's sample()
      * method.
@@ -162,6 +198,9 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
                 return errorResult(new Error("No entries found"), new HTTPSampleResult());
             }
             count = thisCount;
+            if (!waitForReplayTime()) {
+                return null; // interrupted, i.e. the test is stopping
+            }
             res = sample();
             res.setSampleLabel(toString());
         } catch (Exception e) {
@@ -171,6 +210,53 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
         return res;
     }
 
+    /**
+     * Waits until the entry just configured by the parser is due, if timestamp
+     * replay is enabled. Entries without a timestamp are sent immediately.
+     *
+     * @return false if the wait was interrupted
+     */
+    private boolean waitForReplayTime() {
+        if (replayScheduler == null || !(PARSER instanceof TimestampedLogParser)) {
+            return true;
+        }
+        long entryTime = ((TimestampedLogParser) PARSER).getLastTimestamp();
+        if (entryTime < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        final long due = replayScheduler.getDueTime(entryTime, now);
+        replayWaiter = Thread.currentThread();
+        try {
+            while (now < due) {
+                Thread.sleep(due - now);
+                now = System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            replayWaiter = null;
+        }
+        long lag = now - due;
+        replayScheduler.recordLag(lag);
+        JMeterContextService.getContext().getVariables().put(SCHEDULE_LAG_VAR, Long.toString(lag));
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Also wakes up a thread waiting for its entry to become due.
+     */
+    @Override
+    public boolean interrupt() {
+        Thread waiter = replayWaiter;
+        if (waiter != null) {
+            waiter.interrupt();
+            return true;
+        }
+        return super.interrupt();
+    }
+
     /**
      * sample(Entry e) simply calls sample().
      *
@@ -295,6 +381,7 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
     @Override
     public Object clone() {
         AccessLogSampler s = (AccessLogSampler) super.clone();
+        s.replayScheduler = replayScheduler;
         if (started) {
             if (filterClassName != null && filterClassName.length() > 0) {
 
@@ -330,6 +417,10 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
         }
         filter = null;
         started = false;
+        if (replayScheduler != null) {
+            log.info("Access log replay finished: " + replayScheduler);
+            replayScheduler = null;
+        }
         super.testEnded();
     }
 
@@ -339,6 +430,9 @@ public class AccessLogSampler extends HTTPSampler implements TestBean,ThreadList
     @Override
     public void testStarted() {
         started = true;
+        if (replaySpeed > 0) {
+            replayScheduler = new LogReplayScheduler(replaySpeed);
+        }
         super.testStarted();
     }
 
@@ -51,6 +51,9 @@ public class AccessLogSamplerBeanInfo extends BeanInfoSupport {
             createPropertyGroup("accesslogfile",  // $NON-NLS-1$
                     new String[] { "logFile" }); // $NON-NLS-1$
 
+            createPropertyGroup("replay",  // $NON-NLS-1$
+                    new String[] { "replaySpeed" }); // $NON-NLS-1$
+
             PropertyDescriptor p;
 
             p = property("parserClassName");
@@ -77,6 +80,10 @@ public class AccessLogSamplerBeanInfo extends BeanInfoSupport {
             p.setValue(DEFAULT, "");
             p.setPropertyEditorClass(FileEditor.class);
 
+            p = property("replaySpeed"); // $NON-NLS-1$
+            p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+            p.setValue(DEFAULT, Double.valueOf(0.0));
+
             p = property("domain"); // $NON-NLS-1$
             p.setValue(NOT_UNDEFINED, Boolean.TRUE);
             p.setValue(DEFAULT, "");
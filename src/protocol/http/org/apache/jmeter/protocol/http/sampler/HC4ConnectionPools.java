@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.jmeter.threads.AbstractThreadGroup;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Connection managers shared by all the threads of a thread group, used by
+ * {@link HTTPHC4Impl} if <code>httpclient4.connection_pool</code> is true.
+ * <p>
+ * Each thread still has its own HttpClient instances (so credentials and
+ * other client state are not shared), but they lease their connections from
+ * the pool of the thread group. Connections which have been idle for longer than
+ * <code>httpclient4.pool.idle_timeout</code> are closed by a background thread.
+ * <p>
+ * The time each thread spends waiting to lease a connection is recorded,
+ * so that it can be reported with the sample.
+ */
+final class HC4ConnectionPools {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    static final boolean ENABLED = JMeterUtils.getPropDefault("httpclient4.connection_pool", false); // $NON-NLS-1$
+
+    private static final int MAX_PER_ROUTE = JMeterUtils.getPropDefault("httpclient4.pool.max_per_route", 20); // $NON-NLS-1$
+
+    private static final int MAX_TOTAL = JMeterUtils.getPropDefault("httpclient4.pool.max_total", 200); // $NON-NLS-1$
+
+    private static final long IDLE_TIMEOUT = JMeterUtils.getPropDefault("httpclient4.pool.idle_timeout", 30000L); // $NON-NLS-1$
+
+    private static final long TIME_TO_LIVE = JMeterUtils.getPropDefault("httpclient4.pool.time_to_live", 0L); // $NON-NLS-1$
+
+    /** Maximum time (ms) to wait for a connection; 0 waits forever */
+    static final long LEASE_TIMEOUT = JMeterUtils.getPropDefault("httpclient4.pool.timeout", 0L); // $NON-NLS-1$
+
+    // thread group name => connection manager
+    private static final ConcurrentMap<String, Pool> POOLS = new ConcurrentHashMap<String, Pool>();
+
+    // Time (ms) spent by the current thread waiting for connections since the last reset
+    private static final ThreadLocal<long[]> LEASE_TIME = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private static ScheduledExecutorService evictor; // Protected by HC4ConnectionPools.class
+
+    static {
+        if (ENABLED) {
+            log.info("Using shared HC4 connection pools: max_per_route=" + MAX_PER_ROUTE + " max_total=" + MAX_TOTAL
+                    + " idle_timeout=" + IDLE_TIMEOUT + " time_to_live=" + TIME_TO_LIVE + " timeout=" + LEASE_TIMEOUT);
+        }
+    }
+
+    private HC4ConnectionPools() {
+    }
+
+    /**
+     * Get the connection manager for the thread group of the current thread, creating it if necessary.
+     *
+     * @param schemeRegistry the schemes to use if the manager has to be created
+     * @return the shared connection manager
+     */
+    static PoolingClientConnectionManager getConnectionManager(SchemeRegistry schemeRegistry) {
+        AbstractThreadGroup group = JMeterContextService.getContext().getThreadGroup();
+        String name = group == null ? "" : group.getName(); // $NON-NLS-1$
+        Pool pool = POOLS.get(name);
+        if (pool == null) {
+            Pool newPool = new Pool(schemeRegistry);
+            pool = POOLS.putIfAbsent(name, newPool);
+            if (pool == null) {
+                pool = newPool;
+                log.info("Created HC4 connection pool for thread group: '" + name + "'");
+                startEvictor();
+            } else {
+                newPool.shutdown();
+            }
+        }
+        return pool;
+    }
+
+    private static synchronized void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HC4 idle connection evictor"); // $NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(1000L, IDLE_TIMEOUT / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                for (Pool pool : POOLS.values()) {
+                    pool.closeExpiredConnections();
+                    if (IDLE_TIMEOUT > 0) {
+                        pool.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shut down all the connection managers, closing their connections.
+     */
+    static void closeAll() {
+        for (Iterator<Pool> it = POOLS.values().iterator(); it.hasNext();) {
+            Pool pool = it.next();
+            it.remove();
+            pool.shutdown();
+        }
+        synchronized (HC4ConnectionPools.class) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+        }
+    }
+
+    /**
+     * Reset the lease time of the current thread.
+     */
+    static void resetLeaseTime() {
+        LEASE_TIME.get()[0] = 0;
+    }
+
+    /**
+     * @return the time (ms) spent by the current thread waiting for connections since the last reset
+     */
+    static long getLeaseTime() {
+        return LEASE_TIME.get()[0];
+    }
+
+    /**
+     * @param manager the connection manager
+     * @return the pool statistics, e.g. "Pool: wait=2ms leased=5 available=3 pending=0"
+     */
+    static String getStatistics(PoolingClientConnectionManager manager) {
+        PoolStats stats = manager.getTotalStats();
+        return "Pool: wait=" + getLeaseTime() + "ms leased=" + stats.getLeased() // $NON-NLS-1$ $NON-NLS-2$
+            + " available=" + stats.getAvailable() + " pending=" + stats.getPending(); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    /**
+     * Records the time taken to lease each connection.
+     */
+    private static class Pool extends PoolingClientConnectionManager {
+
+        Pool(SchemeRegistry schemeRegistry) {
+            super(schemeRegistry, TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+            setMaxTotal(MAX_TOTAL);
+            setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ClientConnectionRequest request = super.requestConnection(route, state);
+            return new ClientConnectionRequest() {
+                public ManagedClientConnection getConnection(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ConnectionPoolTimeoutException {
+                    long start = System.currentTimeMillis();
+                    try {
+                        return request.getConnection(timeout, tunit);
+                    } finally {
+                        LEASE_TIME.get()[0] += System.currentTimeMillis() - start;
+                    }
+                }
+
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+    }
+}
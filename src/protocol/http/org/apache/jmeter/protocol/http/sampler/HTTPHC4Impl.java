@@ -66,6 +66,7 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.params.CookiePolicy;
 import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -81,6 +82,8 @@ import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreConnectionPNames;
@@ -152,6 +155,9 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
     // We always want to override the HTTPS scheme, because we want to trust all certificates and hosts
     private static final Scheme HTTPS_SCHEME;
 
+    // Schemes for the shared connection managers, or null if they are not used
+    private static final SchemeRegistry SHARED_SCHEMES;
+
     /*
      * Create a set of default parameters from the ones initially created.
      * This allows the defaults to be overridden if necessary from the properties file.
@@ -198,6 +204,17 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
             }
         }
         HTTPS_SCHEME = https;
+        if (HC4ConnectionPools.ENABLED) {
+            SHARED_SCHEMES = SchemeRegistryFactory.createDefault();
+            if (SLOW_HTTP != null) {
+                SHARED_SCHEMES.register(SLOW_HTTP);
+            }
+            if (HTTPS_SCHEME != null) {
+                SHARED_SCHEMES.register(HTTPS_SCHEME);
+            }
+        } else {
+            SHARED_SCHEMES = null;
+        }
         if (localAddress != null){
             DEFAULT_HTTP_PARAMS.setParameter(ConnRoutePNames.LOCAL_ADDRESS, localAddress);
         }
@@ -275,7 +292,11 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
                 String putBody = sendPutData((HttpPut)httpRequest);
                 res.setQueryString(putBody);
             }
+            if (SHARED_SCHEMES != null) {
+                HC4ConnectionPools.resetLeaseTime();
+            }
             HttpResponse httpResponse = httpClient.execute(httpRequest, localContext); // perform the sample
+            setPoolStatistics(httpClient, res);
 
             // Needs to be done after execute to pick up all the headers
             res.setRequestHeaders(getConnectionHeaders((HttpRequest) localContext.getAttribute(ExecutionContext.HTTP_REQUEST)));
@@ -351,6 +372,7 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
 
         } catch (IOException e) {
             res.sampleEnd();
+            setPoolStatistics(httpClient, res);
             errorResult(e, res);
             return res;
         } catch (RuntimeException e) {
@@ -363,6 +385,19 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
         return res;
     }
 
+    /**
+     * If the client uses a shared connection manager, add the time taken
+     * to lease the connection and the state of the pool to the sampler data.
+     */
+    private void setPoolStatistics(HttpClient httpClient, HTTPSampleResult res) {
+        if (SHARED_SCHEMES != null) {
+            ClientConnectionManager manager = httpClient.getConnectionManager();
+            if (manager instanceof PoolingClientConnectionManager) {
+                res.addSamplerData(HC4ConnectionPools.getStatistics((PoolingClientConnectionManager) manager));
+            }
+        }
+    }
+
     /**
      * Holder class for all fields that define an HttpClient instance;
      * used as the key to the ThreadLocal map of HttpClient instances.
@@ -462,8 +497,17 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
         if (httpClient == null){ // One-time init for this client
 
             HttpParams clientParams = new DefaultedHttpParams(new BasicHttpParams(), DEFAULT_HTTP_PARAMS);
+
+            // If null, the client creates its own single connection manager
+            ClientConnectionManager connManager = null;
+            if (SHARED_SCHEMES != null) {
+                connManager = HC4ConnectionPools.getConnectionManager(SHARED_SCHEMES);
+                if (HC4ConnectionPools.LEASE_TIMEOUT > 0) {
+                    clientParams.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, HC4ConnectionPools.LEASE_TIMEOUT);
+                }
+            }
             
-            httpClient = new DefaultHttpClient(clientParams){
+            httpClient = new DefaultHttpClient(connManager, clientParams){
                 @Override
                 protected HttpRequestRetryHandler createHttpRequestRetryHandler() {
                     return new DefaultHttpRequestRetryHandler(RETRY_COUNT, false) {
@@ -510,15 +554,17 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
             ((AbstractHttpClient) httpClient).addResponseInterceptor(METRICS_SAVER); // HACK
             ((AbstractHttpClient) httpClient).addRequestInterceptor(METRICS_RESETTER); 
             
-            // Override the defualt schemes as necessary
-            SchemeRegistry schemeRegistry = httpClient.getConnectionManager().getSchemeRegistry();
+            // Override the defualt schemes as necessary (already done for shared connection managers)
+            if (connManager == null) {
+                SchemeRegistry schemeRegistry = httpClient.getConnectionManager().getSchemeRegistry();
 
-            if (SLOW_HTTP != null){
-                schemeRegistry.register(SLOW_HTTP);
-            }
+                if (SLOW_HTTP != null){
+                    schemeRegistry.register(SLOW_HTTP);
+                }
 
-            if (HTTPS_SCHEME != null){
-                schemeRegistry.register(HTTPS_SCHEME);
+                if (HTTPS_SCHEME != null){
+                    schemeRegistry.register(HTTPS_SCHEME);
+                }
             }
 
             // Set up proxy details
@@ -1135,7 +1181,10 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
             for ( HttpClient cl : map.values() ) {
             	((AbstractHttpClient) cl).clearRequestInterceptors(); 
             	((AbstractHttpClient) cl).clearResponseInterceptors(); 
-                cl.getConnectionManager().shutdown();
+                // Shared connection managers are shut down at the end of the test
+                if (SHARED_SCHEMES == null) {
+                    cl.getConnectionManager().shutdown();
+                }
             }
             map.clear();
         }
@@ -0,0 +1,893 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.jmeter.protocol.http.control.AuthManager;
+import org.apache.jmeter.protocol.http.control.Authorization;
+import org.apache.jmeter.protocol.http.control.CacheManager;
+import org.apache.jmeter.protocol.http.control.CookieManager;
+import org.apache.jmeter.protocol.http.control.HeaderManager;
+import org.apache.jmeter.protocol.http.util.Base64Encoder;
+import org.apache.jmeter.protocol.http.util.ConversionUtils;
+import org.apache.jmeter.protocol.http.util.HTTPArgument;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * HTTP Sampler using non-blocking I/O.
+ * <p>
+ * The connections of all the JMeter threads are multiplexed on a small number of
+ * shared {@link HttpNioReactor} threads (property httpclient.nio.reactors), rather than
+ * each sampler blocking in a socket read.
+ * <p>
+ * By default the JMeter thread waits for its own response, so the thread group behaves as
+ * it does with the other implementations. If the property httpclient.nio.max_in_flight is
+ * more than 1, each call to sample() starts a request and returns the result of any request
+ * which has completed (null if there is none), only waiting when that many requests are in flight.
+ * Each response then goes through the normal post-processor, assertion and listener path
+ * as its own sample, but in a later iteration of the thread than the request.
+ * <p>
+ * Each JMeter thread keeps its own keep-alive connections; a connection carries one request at a time.
+ * Only plain HTTP is handled here; HTTPS requests, multipart POSTs and file uploads
+ * are delegated to the HttpClient4 implementation.
+ * Automatic redirects are followed for GET and HEAD, and for 303 responses.
+ * The response timeout applies to the whole response, rather than to each read.
+ * Responses are held in memory until they are complete.
+ */
+public class HTTPNioImpl extends HTTPHCAbstractImpl {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ISO_8859_1 = "ISO-8859-1"; //$NON-NLS-1$
+
+    private static final String HEADER_PROXY_AUTHORIZATION = "Proxy-Authorization"; // $NON-NLS-1$
+
+    private static final String ENCODING_DEFLATE = "deflate"; // $NON-NLS-1$
+
+    private static final String CRLF = "\r\n"; // $NON-NLS-1$
+
+    // Methods which may be sent again if a kept-alive connection fails, as for HttpClient's retry handler
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(
+            Arrays.asList(new String[] { GET, HEAD, OPTIONS, TRACE, PUT, DELETE }));
+
+    // Idle keep-alive connections, by target; does not need to be synchronised, as all access is from the same thread
+    private static final ThreadLocal<Map<String, LinkedList<HttpNioConnection>>> CONNECTIONS =
+        new ThreadLocal<Map<String, LinkedList<HttpNioConnection>>>(){
+        @Override
+        protected Map<String, LinkedList<HttpNioConnection>> initialValue() {
+            return new HashMap<String, LinkedList<HttpNioConnection>>();
+        }
+    };
+
+    private final int maxInFlight;
+
+    private volatile HttpNioConnection currentConnection; // used by interrupt()
+
+    // Requests started by sampleAsync() whose results have not been returned; only used by the sampler thread
+    private final Set<Pending> inFlight = new HashSet<Pending>();
+
+    // Requests which have ended, added by the reactor threads
+    private final BlockingQueue<Pending> completed = new LinkedBlockingQueue<Pending>();
+
+    private volatile Thread waitingThread; // used by interrupt()
+
+    // Handles the requests which are not supported here; created on first use
+    private HTTPHC4Impl fallback;
+
+    protected HTTPNioImpl(HTTPSamplerBase testElement) {
+        super(testElement);
+        maxInFlight = Math.max(1, JMeterUtils.getPropDefault("httpclient.nio.max_in_flight", 1)); // $NON-NLS-1$
+    }
+
+    @Override
+    protected HTTPSampleResult sample(URL url, String method,
+            boolean areFollowingRedirect, int frameDepth) {
+
+        if (!isSupported(url, method)) {
+            return getFallback().sample(url, method, areFollowingRedirect, frameDepth);
+        }
+        if (maxInFlight > 1 && !areFollowingRedirect && frameDepth == 0) {
+            return sampleAsync(url, method);
+        }
+
+        HTTPSampleResult res = createResult(url, method);
+        res.sampleStart();
+        if (isCached(url, method, res)) {
+            return res;
+        }
+
+        try {
+            HttpNioConnection.Exchange exchange = execute(url, method, res);
+            return finish(res, url, method, exchange, areFollowingRedirect, frameDepth);
+        } catch (IOException e) {
+            return failed(res, e);
+        } catch (RuntimeException e) {
+            return failed(res, e);
+        } finally {
+            currentConnection = null;
+        }
+    }
+
+    private HTTPSampleResult createResult(URL url, String method) {
+        HTTPSampleResult res = new HTTPSampleResult();
+        res.setMonitor(isMonitor());
+
+        res.setSampleLabel(url.toString()); // May be replaced later
+        res.setHTTPMethod(method);
+        res.setURL(url);
+        return res;
+    }
+
+    /**
+     * Completes the result if the Cache Manager says the URL need not be fetched.
+     *
+     * @return true if the result is complete
+     */
+    private boolean isCached(URL url, String method, HTTPSampleResult res) {
+        final CacheManager cacheManager = getCacheManager();
+        if (cacheManager != null && GET.equalsIgnoreCase(method)) {
+           if (cacheManager.inCache(url)) {
+               res.sampleEnd();
+               res.setResponseNoContent();
+               res.setSuccessful(true);
+               return true;
+           }
+        }
+        return false;
+    }
+
+    private HTTPSampleResult failed(HTTPSampleResult res, Exception e) {
+        if (res.getEndTime() == 0) {
+            res.sampleEnd();
+        }
+        errorResult(e, res);
+        return res;
+    }
+
+    /**
+     * Starts a request, and returns the result of one which has completed, waiting
+     * for one to complete if the maximum number of requests are in flight.
+     *
+     * @return the result of a completed request, or null if none has completed
+     */
+    private HTTPSampleResult sampleAsync(URL url, String method) {
+        HTTPSampleResult res = createResult(url, method);
+        res.sampleStart();
+        if (isCached(url, method, res)) {
+            return res;
+        }
+        try {
+            Request request = prepare(url, method, res);
+            HttpNioConnection conn = acquire(request);
+            int rto = getResponseTimeout();
+            long deadline = rto > 0 ? System.currentTimeMillis() + Math.max(0, getConnectTimeout()) + rto : 0;
+            Pending pending = new Pending(res, url, method, request.key, conn, deadline);
+            pending.exchange = conn.execute(ByteBuffer.wrap(request.bytes), request.head, request.keepAlive, pending);
+            inFlight.add(pending);
+        } catch (IOException e) {
+            return failed(res, e);
+        } catch (RuntimeException e) {
+            return failed(res, e);
+        }
+
+        Pending done = completed.poll();
+        if (done == null && inFlight.size() >= maxInFlight) {
+            waitingThread = Thread.currentThread();
+            try {
+                while (done == null) {
+                    long now = System.currentTimeMillis();
+                    long next = expireRequests(now);
+                    if (next == Long.MAX_VALUE) {
+                        done = completed.take();
+                    } else {
+                        done = completed.poll(next - now, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for a response");
+            } finally {
+                waitingThread = null;
+            }
+        } else {
+            expireRequests(System.currentTimeMillis());
+        }
+        if (done == null) {
+            return null;
+        }
+        inFlight.remove(done);
+        return complete(done);
+    }
+
+    /**
+     * Aborts the requests in flight which have passed their deadline.
+     *
+     * @return the earliest deadline of the requests which are still running, or Long.MAX_VALUE if there is none
+     */
+    private long expireRequests(long now) {
+        long next = Long.MAX_VALUE;
+        for (Pending pending : inFlight) {
+            if (pending.deadline == 0 || pending.timedOut) {
+                continue;
+            }
+            if (pending.deadline <= now) {
+                pending.timedOut = true;
+                pending.conn.abort();
+            } else {
+                next = Math.min(next, pending.deadline);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Creates the result of a request started by {@link #sampleAsync(URL, String)}.
+     */
+    private HTTPSampleResult complete(Pending pending) {
+        HTTPSampleResult res = pending.res;
+        HttpNioConnection.Exchange exchange = pending.exchange;
+        try {
+            IOException failure = exchange.getFailure();
+            if (failure == null) {
+                release(pending.key, pending.conn);
+            } else if (pending.timedOut) {
+                res.setEndTime(toResultTime(res, exchange.getDoneNanos()));
+                throw new SocketTimeoutException("No complete response within " + getResponseTimeout() + "ms");
+            } else if (exchange.isReused() && !exchange.isResponseStarted() && isIdempotent(pending.method)) {
+                // The server may have closed the idle connection just as the request was sent
+                log.debug("Retrying request on a new connection: " + failure.toString());
+                exchange = execute(pending.url, pending.method, res);
+            } else {
+                res.setEndTime(toResultTime(res, exchange.getDoneNanos()));
+                throw failure;
+            }
+            return finish(res, pending.url, pending.method, exchange, false, 0);
+        } catch (IOException e) {
+            return failed(res, e);
+        } catch (RuntimeException e) {
+            return failed(res, e);
+        } finally {
+            currentConnection = null;
+        }
+    }
+
+    /**
+     * Follows any automatic redirects, and fills in the result from the final response.
+     */
+    private HTTPSampleResult finish(HTTPSampleResult res, URL url, String method, HttpNioConnection.Exchange first,
+            boolean areFollowingRedirect, int frameDepth) throws IOException {
+        URL target = url;
+        String targetMethod = method;
+        HttpNioConnection.Exchange exchange = first;
+        List<String[]> headers;
+        long connectNanos = 0;
+        int redirects = 0;
+        while (true) {
+            connectNanos += exchange.getConnectNanos();
+            headers = parseHeaders(exchange.getResponseHead());
+            // Store any cookies received in the cookie manager
+            saveConnectionCookies(headers, target, getCookieManager());
+            int statusCode = HttpNioConnection.getStatusCode(exchange.getResponseHead());
+            String location = getHeader(headers, HEADER_LOCATION);
+            if (!getAutoRedirects() || !isRedirect(statusCode) || location == null || redirects >= HTTPSamplerBase.MAX_REDIRECTS) {
+                break;
+            }
+            if (statusCode == 303) {
+                targetMethod = GET;
+            } else if (!GET.equals(targetMethod) && !HEAD.equals(targetMethod)) {
+                break; // as for HttpClient, other methods are only redirected by the user
+            }
+            target = ConversionUtils.makeRelativeURL(target, location);
+            redirects++;
+            exchange = execute(target, targetMethod, res);
+        }
+        // The reactor cannot use the clock of the result, so work back from the current time
+        res.setLatency(Math.max(0, toResultTime(res, exchange.getFirstByteNanos()) - res.getStartTime()));
+        res.setEndTime(toResultTime(res, exchange.getDoneNanos())); // Done with the sampling proper.
+
+        String contentType = getHeader(headers, HEADER_CONTENT_TYPE);
+        if (contentType != null){
+            res.setContentType(contentType);
+            res.setEncodingAndType(contentType);
+        }
+        res.setResponseData(decode(exchange.getResponseBody(), getHeader(headers, HEADER_CONTENT_ENCODING)));
+
+        // Now collect the results into the HTTPSampleResult:
+        String head = exchange.getResponseHead();
+        String statusLine = head.substring(0, head.indexOf(CRLF));
+        int statusCode = HttpNioConnection.getStatusCode(head);
+        res.setResponseCode(Integer.toString(statusCode));
+        // e.g. HTTP/1.1 200 OK
+        int messageStart = statusLine.indexOf(' ') + 5;
+        res.setResponseMessage(messageStart < statusLine.length() ? statusLine.substring(messageStart) : ""); // $NON-NLS-1$
+        res.setSuccessful(isSuccessCode(statusCode));
+
+        res.setResponseHeaders(head.substring(0, head.length() - CRLF.length()).replace(CRLF, "\n")); // $NON-NLS-1$
+        if (res.isRedirect()) {
+            final String headerLocation = getHeader(headers, HEADER_LOCATION);
+            if (headerLocation == null) { // HTTP protocol violation, but avoids NPE
+                throw new IllegalArgumentException("Missing location header");
+            }
+            res.setRedirectLocation(headerLocation);
+        }
+
+        // record some sizes to allow HTTPSampleResult.getBytes() with different options
+        res.setHeadersSize(exchange.getHeaderSize());
+        res.setBodySize((int) exchange.getBodySize());
+        if (log.isDebugEnabled()) {
+            log.debug("ResponseHeadersSize=" + res.getHeadersSize() + " Content-Length=" + res.getBodySize()
+                    + " Total=" + (res.getHeadersSize() + res.getBodySize()));
+        }
+        if (connectNanos > 0) {
+            res.addSamplerData("Connect: " + (connectNanos / 1000000) + "ms"); // $NON-NLS-1$ $NON-NLS-2$
+        }
+
+        // If we redirected automatically, the URL may have changed
+        res.setURL(target);
+
+        // Save cache information
+        final CacheManager cacheManager = getCacheManager();
+        if (cacheManager != null){
+            cacheManager.saveDetails(createResponse(statusCode, res.getResponseMessage(), headers), res);
+        }
+
+        // Follow redirects and download page resources if appropriate:
+        return resultProcessing(areFollowingRedirect, frameDepth, res);
+    }
+
+    /**
+     * @return the time, on the clock of the result, at which System.nanoTime() had the value
+     */
+    private static long toResultTime(HTTPSampleResult res, long nanos) {
+        return res.currentTimeInMillis() - (System.nanoTime() - nanos) / 1000000;
+    }
+
+    /**
+     * @return true if the request can be sent by this implementation
+     */
+    private boolean isSupported(URL url, String method) {
+        if (!PROTOCOL_HTTP.equalsIgnoreCase(url.getProtocol())) {
+            return false;
+        }
+        if (POST.equals(method) || PUT.equals(method)) {
+            return !getUseMultipartForPost() && getHTTPFiles().length == 0;
+        }
+        return true;
+    }
+
+    private HTTPHC4Impl getFallback() {
+        if (fallback == null) {
+            fallback = new HTTPHC4Impl(testElement);
+        }
+        return fallback;
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307;
+    }
+
+    static boolean isIdempotent(String method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * Sends the request on one of the thread's connections, and waits for the response.
+     * A request which fails on a kept-alive connection before any response is received
+     * is retried once on a new connection, unless it is a POST.
+     *
+     * @return the completed exchange
+     */
+    private HttpNioConnection.Exchange execute(URL url, String method, HTTPSampleResult res) throws IOException {
+        Request request = prepare(url, method, res);
+        boolean retried = false;
+        while (true) {
+            HttpNioConnection conn = acquire(request);
+            currentConnection = conn;
+            HttpNioConnection.Exchange exchange = conn.execute(ByteBuffer.wrap(request.bytes), request.head, request.keepAlive, null);
+            try {
+                int cto = getConnectTimeout();
+                if (!exchange.awaitConnected(cto)) {
+                    conn.abort();
+                    throw new SocketTimeoutException("Connect timed out after " + cto + "ms to " + request.host + ":" + request.port);
+                }
+                int rto = getResponseTimeout();
+                if (!exchange.awaitDone(rto)) {
+                    conn.abort();
+                    throw new SocketTimeoutException("No complete response within " + rto + "ms");
+                }
+            } catch (InterruptedException e) {
+                conn.abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the response");
+            }
+            IOException failure = exchange.getFailure();
+            if (failure == null) {
+                release(request.key, conn);
+                return exchange;
+            }
+            // The server may have closed the idle connection just as the request was sent
+            if (!retried && exchange.isReused() && !exchange.isResponseStarted() && isIdempotent(method)) {
+                log.debug("Retrying request on a new connection: " + failure.toString());
+                retried = true;
+                continue;
+            }
+            throw failure;
+        }
+    }
+
+    /**
+     * @return an idle connection to the target of the request, or a new one
+     */
+    private HttpNioConnection acquire(Request request) throws IOException {
+        LinkedList<HttpNioConnection> idle = CONNECTIONS.get().get(request.key);
+        if (idle != null) {
+            HttpNioConnection conn;
+            while ((conn = idle.poll()) != null) {
+                if (conn.isOpen()) {
+                    return conn;
+                }
+            }
+        }
+        InetSocketAddress address = new InetSocketAddress(request.host, request.port);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(request.host);
+        }
+        return new HttpNioConnection(HttpNioReactor.getReactor(), address, request.local);
+    }
+
+    /**
+     * Keeps the connection for the next request to the same target, if it is still open.
+     */
+    private void release(String key, HttpNioConnection conn) {
+        if (!conn.isOpen()) {
+            return;
+        }
+        Map<String, LinkedList<HttpNioConnection>> connections = CONNECTIONS.get();
+        LinkedList<HttpNioConnection> idle = connections.get(key);
+        if (idle == null) {
+            idle = new LinkedList<HttpNioConnection>();
+            connections.put(key, idle);
+        }
+        idle.add(conn);
+    }
+
+    /**
+     * Creates the bytes of the request, and sets the request details of the result.
+     */
+    private Request prepare(URL url, String method, HTTPSampleResult res) throws IOException {
+        String host = url.getHost();
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+
+        String connectHost = host;
+        int connectPort = port;
+        String proxyUser = null;
+        String proxyPass = null;
+        final String proxyHost = getProxyHost();
+        final int proxyPort = getProxyPortInt();
+        boolean useProxy = false;
+        if (isDynamicProxy(proxyHost, proxyPort)) {
+            useProxy = true;
+            connectHost = proxyHost;
+            connectPort = proxyPort;
+            proxyUser = getProxyUser();
+            proxyPass = getProxyPass();
+        } else if (isStaticProxy(host)) {
+            useProxy = true;
+            connectHost = PROXY_HOST;
+            connectPort = PROXY_PORT;
+            proxyUser = PROXY_USER;
+            proxyPass = PROXY_PASS;
+        }
+
+        InetAddress local = localAddress;
+        final String ipSource = getIpSource();
+        if (ipSource.length() > 0) {// Use special field ip source address (for pseudo 'ip spoofing')
+            local = InetAddress.getByName(ipSource);
+        }
+
+        final boolean keepAlive = getUseKeepAlive();
+        List<String[]> headers = new ArrayList<String[]>();
+        setHeader(headers, HEADER_HOST, port == url.getDefaultPort() ? host : host + ":" + port); // $NON-NLS-1$
+        if (keepAlive) {
+            if ("1.0".equals(HTTP_VERSION)) { // $NON-NLS-1$
+                setHeader(headers, HEADER_CONNECTION, KEEP_ALIVE);
+            }
+        } else {
+            setHeader(headers, HEADER_CONNECTION, CONNECTION_CLOSE);
+        }
+        setConnectionHeaders(headers, url, getHeaderManager(), getCacheManager());
+        byte[] body = null;
+        if (POST.equals(method) || PUT.equals(method)) {
+            body = getRequestBody(headers, res);
+            setHeader(headers, HEADER_CONTENT_LENGTH, Integer.toString(body.length));
+        }
+        setConnectionAuthorization(headers, url, getAuthManager());
+        if (useProxy && proxyUser.length() > 0) {
+            setHeader(headers, HEADER_PROXY_AUTHORIZATION, "Basic " + Base64Encoder.encode(proxyUser + ":" + proxyPass)); // $NON-NLS-1$ $NON-NLS-2$
+        }
+        res.setRequestHeaders(getConnectionHeaders(headers));
+        String cookies = setConnectionCookie(headers, url, getCookieManager());
+        res.setCookies(cookies);
+
+        String requestUri;
+        if (useProxy) {
+            requestUri = url.toExternalForm();
+            int fragment = requestUri.indexOf('#');
+            if (fragment >= 0) {
+                requestUri = requestUri.substring(0, fragment);
+            }
+        } else {
+            requestUri = url.getFile();
+            if (requestUri.length() == 0) {
+                requestUri = "/"; // $NON-NLS-1$
+            }
+        }
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(method).append(' ').append(requestUri).append(" HTTP/").append(HTTP_VERSION).append(CRLF); // $NON-NLS-1$
+        for (String[] header : headers) {
+            sb.append(header[0]).append(": ").append(header[1]).append(CRLF); // $NON-NLS-1$
+        }
+        sb.append(CRLF);
+        byte[] requestHead = sb.toString().getBytes(ISO_8859_1);
+        byte[] bytes = requestHead;
+        if (body != null && body.length > 0) {
+            bytes = new byte[requestHead.length + body.length];
+            System.arraycopy(requestHead, 0, bytes, 0, requestHead.length);
+            System.arraycopy(body, 0, bytes, requestHead.length, body.length);
+        }
+
+        Request request = new Request();
+        request.bytes = bytes;
+        request.key = connectHost + ":" + connectPort + (local == null ? "" : "@" + local.getHostAddress()); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+        request.host = connectHost;
+        request.port = connectPort;
+        request.local = local;
+        request.keepAlive = keepAlive;
+        request.head = HEAD.equals(method);
+        return request;
+    }
+
+    /**
+     * Creates the body of a POST or PUT, in the same way as the Java implementation.
+     * Also sets the Content-Type header if it has not been set, and the query string of the result.
+     */
+    private byte[] getRequestBody(List<String[]> headers, HTTPSampleResult res) throws IOException {
+        String contentEncoding = getContentEncoding();
+        if (isNullOrEmptyTrimmed(contentEncoding)) {
+            contentEncoding = PostWriter.ENCODING;
+        }
+        String postBody;
+        if (!getSendParameterValuesAsPostBody()) {
+            // It is a normal post request, with parameter names and values
+            postBody = testElement.getQueryString(contentEncoding);
+        } else {
+            // Just append all the parameter values, and use that as the post body
+            StringBuilder postBodyBuffer = new StringBuilder();
+            PropertyIterator args = getArguments().iterator();
+            while (args.hasNext()) {
+                HTTPArgument arg = (HTTPArgument) args.next().getObjectValue();
+                postBodyBuffer.append(arg.getEncodedValue(contentEncoding));
+            }
+            postBody = postBodyBuffer.toString();
+        }
+        if (getHeader(headers, HEADER_CONTENT_TYPE) == null && postBody.length() > 0) {
+            setHeader(headers, HEADER_CONTENT_TYPE, APPLICATION_X_WWW_FORM_URLENCODED);
+        }
+        res.setQueryString(postBody);
+        return postBody.getBytes(contentEncoding);
+    }
+
+    /**
+     * Adds the headers of the Header Manager, and any conditional headers from the Cache Manager.
+     */
+    private void setConnectionHeaders(List<String[]> headers, URL url, HeaderManager headerManager, CacheManager cacheManager)
+        throws IOException {
+        if (headerManager != null) {
+            CollectionProperty managerHeaders = headerManager.getHeaders();
+            if (managerHeaders != null) {
+                PropertyIterator i = managerHeaders.iterator();
+                while (i.hasNext()) {
+                    org.apache.jmeter.protocol.http.control.Header header
+                    = (org.apache.jmeter.protocol.http.control.Header)
+                       i.next().getObjectValue();
+                    String n = header.getName();
+                    // Don't allow override of Content-Length
+                    if (! HEADER_CONTENT_LENGTH.equalsIgnoreCase(n)){
+                        setHeader(headers, n, header.getValue());
+                    }
+                }
+            }
+        }
+        if (cacheManager != null) {
+            HttpGet request;
+            try {
+                request = new HttpGet(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid URL: " + url + " " + e.getMessage()); // $NON-NLS-1$
+            }
+            cacheManager.setHeaders(url, request);
+            for (Header header : request.getAllHeaders()) {
+                setHeader(headers, header.getName(), header.getValue());
+            }
+        }
+    }
+
+    private void setConnectionAuthorization(List<String[]> headers, URL url, AuthManager authManager) {
+        if (authManager != null) {
+            Authorization auth = authManager.getAuthForURL(url);
+            if (auth != null) {
+                setHeader(headers, HEADER_AUTHORIZATION, auth.toBasicHeader());
+            }
+        }
+    }
+
+    private String setConnectionCookie(List<String[]> headers, URL url, CookieManager cookieManager) {
+        String cookieHeader = null;
+        if (cookieManager != null) {
+            cookieHeader = cookieManager.getCookieHeaderForURL(url);
+            if (cookieHeader != null) {
+                setHeader(headers, HEADER_COOKIE, cookieHeader);
+            }
+        }
+        return cookieHeader;
+    }
+
+    private void saveConnectionCookies(List<String[]> headers, URL u, CookieManager cookieManager) {
+        if (cookieManager != null) {
+            for (String[] header : headers) {
+                if (HEADER_SET_COOKIE.equalsIgnoreCase(header[0])) {
+                    cookieManager.addCookieFromHeader(header[1], u);
+                }
+            }
+        }
+    }
+
+    private static String getConnectionHeaders(List<String[]> headers) {
+        StringBuilder hdrs = new StringBuilder(100);
+        for (String[] header : headers) {
+            // Exclude the COOKIE header, since cookie is reported separately in the sample
+            if (!HEADER_COOKIE.equalsIgnoreCase(header[0])) {
+                hdrs.append(header[0]);
+                hdrs.append(": "); // $NON-NLS-1$
+                hdrs.append(header[1]);
+                hdrs.append("\n"); // $NON-NLS-1$
+            }
+        }
+        return hdrs.toString();
+    }
+
+    /**
+     * Replaces the value of the header if it is present (ignoring case), otherwise adds it.
+     */
+    private static void setHeader(List<String[]> headers, String name, String value) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                header[1] = value;
+                return;
+            }
+        }
+        headers.add(new String[] { name, value });
+    }
+
+    /**
+     * @return the value of the last header with the name (ignoring case), or null
+     */
+    private static String getHeader(List<String[]> headers, String name) {
+        String value = null;
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                value = header[1];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param head the status line and headers of a response
+     * @return the name and value of each header, in the order received
+     */
+    static List<String[]> parseHeaders(String head) {
+        List<String[]> headers = new ArrayList<String[]>();
+        int lineStart = head.indexOf(CRLF) + CRLF.length(); // skip the status line
+        int lineEnd;
+        while ((lineEnd = head.indexOf(CRLF, lineStart)) > lineStart) {
+            int colon = head.indexOf(':', lineStart);
+            if (colon > lineStart && colon < lineEnd) {
+                headers.add(new String[] { head.substring(lineStart, colon).trim(), head.substring(colon + 1, lineEnd).trim() });
+            }
+            lineStart = lineEnd + CRLF.length();
+        }
+        return headers;
+    }
+
+    private static byte[] decode(byte[] body, String contentEncoding) throws IOException {
+        if (contentEncoding == null || body.length == 0) {
+            return body;
+        }
+        InputStream in;
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            in = new GZIPInputStream(new ByteArrayInputStream(body));
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            in = new InflaterInputStream(new ByteArrayInputStream(body));
+        } else {
+            return body;
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return the response in the form needed by the CacheManager
+     */
+    private static BasicHttpResponse createResponse(int statusCode, String message, List<String[]> headers) {
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, message));
+        for (String[] header : headers) {
+            response.addHeader(header[0], header[1]);
+        }
+        return response;
+    }
+
+    @Override
+    public void threadFinished() {
+        log.debug("Thread Finished");
+        closeThreadLocalConnections();
+        if (fallback != null) {
+            fallback.threadFinished();
+        }
+    }
+
+    private void closeThreadLocalConnections() {
+        if (!inFlight.isEmpty()) {
+            log.warn("Abandoning " + inFlight.size() + " request(s) in flight; their results are not reported");
+            for (Pending pending : inFlight) {
+                pending.conn.abort();
+            }
+            inFlight.clear();
+        }
+        completed.clear();
+        Map<String, LinkedList<HttpNioConnection>> connections = CONNECTIONS.get();
+        for (LinkedList<HttpNioConnection> idle : connections.values()) {
+            for (HttpNioConnection conn : idle) {
+                conn.abort();
+            }
+        }
+        connections.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Aborts the request being waited for, or stops waiting for a request in flight to complete.
+     */
+    public boolean interrupt() {
+        HttpNioConnection conn = currentConnection;
+        if (conn != null) {
+            currentConnection = null; // don't try twice
+            conn.abort();
+        }
+        boolean interrupted = conn != null;
+        Thread thrd = waitingThread; // take copy so cannot get NPE
+        if (thrd != null) {
+            thrd.interrupt();
+            interrupted = true;
+        }
+        if (fallback != null) {
+            interrupted |= fallback.interrupt();
+        }
+        return interrupted;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void notifySSLContextWasReset() {
+        if (fallback != null) {
+            fallback.notifySSLContextWasReset();
+        }
+    }
+
+    /**
+     * A request ready to be sent, and where to send it.
+     */
+    private static final class Request {
+        private byte[] bytes;
+
+        private String key;
+
+        private String host;
+
+        private int port;
+
+        private InetAddress local;
+
+        private boolean keepAlive;
+
+        private boolean head;
+    }
+
+    /**
+     * A request started by {@link HTTPNioImpl#sampleAsync(URL, String)}.
+     * When the exchange ends, the reactor thread runs it, which queues it for the sampler thread.
+     */
+    private final class Pending implements Runnable {
+        private final HTTPSampleResult res;
+
+        private final URL url;
+
+        private final String method;
+
+        private final String key;
+
+        private final HttpNioConnection conn;
+
+        private final long deadline; // 0 if there is no response timeout
+
+        // The following are only used by the sampler thread
+        private HttpNioConnection.Exchange exchange;
+
+        private boolean timedOut;
+
+        Pending(HTTPSampleResult res, URL url, String method, String key, HttpNioConnection conn, long deadline) {
+            this.res = res;
+            this.url = url;
+            this.method = method;
+            this.key = key;
+            this.conn = conn;
+            this.deadline = deadline;
+        }
+
+        public void run() {
+            completed.add(this);
+        }
+    }
+}
@@ -139,6 +139,20 @@ public class HTTPSampleResult extends SampleResult {
         return sb.toString();
     }
 
+    /**
+     * Add a line of information to the sampler data; this is shown after the request details.
+     *
+     * @param line the information to add
+     */
+    public void addSamplerData(String line) {
+        final String sampData = super.getSamplerData();
+        if (sampData == null || sampData.length() == 0) {
+            setSamplerData(line);
+        } else {
+            setSamplerData(sampData + "\n" + line); // $NON-NLS-1$
+        }
+    }
+
     /**
      * @return cookies as a string
      */
@@ -1058,7 +1058,9 @@ public abstract class HTTPSamplerBase extends AbstractSampler
         SampleResult res = null;
         try {
             res = sample(getUrl(), getMethod(), false, 0);
-            res.setSampleLabel(getName());
+            if (res != null) { // the NIO implementation can return null while requests are in flight
+                res.setSampleLabel(getName());
+            }
             return res;
         } catch (Exception e) {
             return errorResult(e, new HTTPSampleResult());
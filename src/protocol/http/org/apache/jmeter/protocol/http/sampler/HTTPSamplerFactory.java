@@ -41,6 +41,8 @@ public class HTTPSamplerFactory {
     public static final String IMPL_HTTP_CLIENT3_1 = "HttpClient3.1"; // $NON-NLS-1$
     
     public static final String IMPL_JAVA = "Java"; // $NON-NLS-1$
+
+    public static final String IMPL_NIO = "NIO"; // $NON-NLS-1$
     //- JMX
 
     public static final String DEFAULT_CLASSNAME =
@@ -62,7 +64,7 @@ public class HTTPSamplerFactory {
     /**
      * Create a new instance of the required sampler type
      *
-     * @param alias HTTP_SAMPLER or HTTP_SAMPLER_APACHE or IMPL_HTTP_CLIENT3_1 or IMPL_HTTP_CLIENT4
+     * @param alias HTTP_SAMPLER or HTTP_SAMPLER_APACHE or IMPL_HTTP_CLIENT3_1 or IMPL_HTTP_CLIENT4 or IMPL_NIO
      * @return the appropriate sampler
      * @throws UnsupportedOperationException if alias is not recognised
      */
@@ -79,11 +81,14 @@ public class HTTPSamplerFactory {
         if (alias.equals(IMPL_HTTP_CLIENT4)) {
             return new HTTPSamplerProxy(IMPL_HTTP_CLIENT4);
         }
+        if (alias.equals(IMPL_NIO)) {
+            return new HTTPSamplerProxy(IMPL_NIO);
+        }
         throw new IllegalArgumentException("Unknown sampler type: '" + alias+"'");
     }
 
     public static String[] getImplementations(){
-        return new String[]{IMPL_JAVA, IMPL_HTTP_CLIENT3_1, IMPL_HTTP_CLIENT4};
+        return new String[]{IMPL_JAVA, IMPL_HTTP_CLIENT3_1, IMPL_HTTP_CLIENT4, IMPL_NIO};
     }
 
     public static HTTPAbstractImpl getImplementation(String impl, HTTPSamplerBase base){
@@ -99,6 +104,8 @@ public class HTTPSamplerFactory {
             return new HTTPHC3Impl(base);                
         } else if (IMPL_HTTP_CLIENT4.equals(impl)) {
             return new HTTPHC4Impl(base);
+        } else if (IMPL_NIO.equals(impl)) {
+            return new HTTPNioImpl(base);
         } else {
             throw new IllegalArgumentException("Unknown implementation type: '"+impl+"'");
         }
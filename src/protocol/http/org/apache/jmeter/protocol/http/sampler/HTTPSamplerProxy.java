@@ -21,6 +21,7 @@ package org.apache.jmeter.protocol.http.sampler;
 import java.net.URL;
 
 import org.apache.jmeter.samplers.Interruptible;
+import org.apache.jmeter.util.SSLHandshakeCounter;
 
 /**
  * Proxy class that dispatches to the appropriate HTTP sampler.
@@ -59,7 +60,22 @@ public final class HTTPSamplerProxy extends HTTPSamplerBase implements Interrupt
                 return errorResult(ex, new HTTPSampleResult());
             }
         }
-        return impl.sample(u, method, areFollowingRedirect, depth);
+        final long full = SSLHandshakeCounter.getFullHandshakes();
+        final long resumed = SSLHandshakeCounter.getResumedHandshakes();
+        HTTPSampleResult res = impl.sample(u, method, areFollowingRedirect, depth);
+        setHandshakeCounts(res, SSLHandshakeCounter.getFullHandshakes() - full,
+                SSLHandshakeCounter.getResumedHandshakes() - resumed);
+        return res;
+    }
+
+    /**
+     * Add the number of SSL handshakes performed by the sample (if any) to the sampler data.
+     */
+    private void setHandshakeCounts(HTTPSampleResult res, long full, long resumed) {
+        if (res == null || (full == 0 && resumed == 0)) {
+            return;
+        }
+        res.addSamplerData("SSL handshakes: full=" + full + " resumed=" + resumed); // $NON-NLS-1$ $NON-NLS-2$
     }
 
     // N.B. It's not possible to forward threadStarted() to the implementation class.
@@ -72,6 +88,17 @@ public final class HTTPSamplerProxy extends HTTPSamplerBase implements Interrupt
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Closes the connection pools shared by HttpClient 4 threads, if they are used.
+     */
+    @Override
+    public void testEnded() {
+        if (HC4ConnectionPools.ENABLED) {
+            HC4ConnectionPools.closeAll();
+        }
+    }
+
     public boolean interrupt() {
         if (impl != null) {
             return impl.interrupt(); // Forward to sampler
@@ -0,0 +1,653 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.protocol.http.util.HTTPConstants;
+import org.apache.jorphan.util.JOrphanUtils;
+
+/**
+ * A non-blocking HTTP connection, used by the {@link HTTPNioImpl} of a single JMeter thread.
+ * <p>
+ * All the I/O is done by the {@link HttpNioReactor} which owns the connection: the JMeter
+ * thread passes a complete request to {@link #execute(ByteBuffer, boolean, boolean, Runnable)},
+ * and either waits on the returned {@link Exchange} or is told by the listener when the
+ * response has been read.
+ * Between requests the connection stays registered for reading, so that it is closed
+ * as soon as the server closes its end.
+ */
+final class HttpNioConnection {
+
+    private static final String ISO_8859_1 = "ISO-8859-1"; //$NON-NLS-1$
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    // Protect against servers which send endless headers
+    private static final int MAX_HEADER_SIZE = 1024 * 1024;
+
+    /** How the end of the response body is found */
+    private enum Framing { LENGTH, CHUNKED, UNTIL_CLOSE }
+
+    private final HttpNioReactor reactor;
+
+    private final InetSocketAddress address;
+
+    private final InetAddress localAddress;
+
+    private volatile boolean closed;
+
+    // The following are only used by the reactor thread
+
+    private SocketChannel channel;
+
+    private SelectionKey key;
+
+    private Exchange exchange;
+
+    private ByteBuffer request;
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+
+    private int len;
+
+    private int headerEnd = -1;
+
+    private String head;
+
+    private Framing framing;
+
+    private int contentLength;
+
+    /**
+     * @param reactor the reactor which performs the I/O
+     * @param address the (resolved) address of the server or proxy
+     * @param localAddress the local address to bind to, may be null
+     */
+    HttpNioConnection(HttpNioReactor reactor, InetSocketAddress address, InetAddress localAddress) {
+        this.reactor = reactor;
+        this.address = address;
+        this.localAddress = localAddress;
+    }
+
+    /**
+     * @return false if the connection has been closed by either side, or after an error
+     */
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Sends a request on the connection, which is opened if necessary.
+     * Only one request may be outstanding at a time.
+     *
+     * @param requestBytes the complete request
+     * @param head true if the request was a HEAD, so the response has no body
+     * @param keepAlive false if the connection must be closed after the response
+     * @param listener run by the reactor thread when the exchange ends, may be null; it must not block
+     * @return the exchange to wait on
+     */
+    Exchange execute(final ByteBuffer requestBytes, boolean head, boolean keepAlive, Runnable listener) {
+        final Exchange ex = new Exchange(head, keepAlive, listener);
+        reactor.execute(new Runnable() {
+            public void run() {
+                start(ex, requestBytes);
+            }
+        });
+        return ex;
+    }
+
+    /**
+     * Closes the connection, failing the current exchange if there is one.
+     * May be called from any thread.
+     */
+    void abort() {
+        closed = true;
+        reactor.execute(new Runnable() {
+            public void run() {
+                close(new IOException("Connection aborted")); // $NON-NLS-1$
+            }
+        });
+    }
+
+    private void start(Exchange ex, ByteBuffer requestBytes) {
+        exchange = ex;
+        request = requestBytes;
+        ex.startNanos = System.nanoTime();
+        try {
+            if (closed) {
+                throw new IOException("Connection closed"); // $NON-NLS-1$
+            }
+            if (channel == null) {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                if (localAddress != null) {
+                    channel.socket().bind(new InetSocketAddress(localAddress, 0));
+                }
+                key = channel.register(reactor.getSelector(), 0, this);
+                if (channel.connect(address)) {
+                    connected();
+                } else {
+                    key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } else {
+                ex.reused = true;
+                connected();
+            }
+        } catch (IOException e) {
+            close(e);
+        } catch (RuntimeException e) {
+            closeAfterError(e);
+        }
+    }
+
+    private void connected() {
+        exchange.connectedNanos = System.nanoTime();
+        exchange.connectedLatch.countDown();
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Called by the reactor when the channel is ready.
+     */
+    void handle(SelectionKey selected) {
+        try {
+            if (selected.isConnectable()) {
+                if (channel.finishConnect()) {
+                    connected();
+                }
+                return;
+            }
+            if (selected.isWritable()) {
+                channel.write(request);
+                if (!request.hasRemaining()) {
+                    request = null;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if (selected.isValid() && selected.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            close(e);
+        } catch (RuntimeException e) {
+            // Must not reach the reactor loop, which would leave the connection open
+            closeAfterError(e);
+        }
+    }
+
+    private void read() throws IOException {
+        ByteBuffer readBuffer = reactor.getReadBuffer();
+        int n;
+        while ((n = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            append(readBuffer);
+            readBuffer.clear();
+        }
+        boolean eof = n < 0;
+        if (exchange == null) {
+            // Idle connection: the server has closed it, or sent something unexpected
+            close(null);
+            return;
+        }
+        if (len > 0 && !exchange.responseStarted) {
+            exchange.responseStarted = true;
+            exchange.firstByteNanos = System.nanoTime();
+        }
+        if (parseResponse(eof)) {
+            return;
+        }
+        if (eof) {
+            close(new EOFException("Connection closed by server after " + len + " bytes of response")); // $NON-NLS-1$
+        }
+    }
+
+    private void append(ByteBuffer data) {
+        int n = data.remaining();
+        if (len + n > buf.length) {
+            byte[] grown = new byte[Math.max(buf.length * 2, len + n)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+        data.get(buf, len, n);
+        len += n;
+    }
+
+    /**
+     * Parses the buffered response, and completes the exchange if it is all there.
+     *
+     * @return true if the exchange was completed
+     */
+    private boolean parseResponse(boolean eof) throws IOException {
+        while (headerEnd < 0) {
+            int end = findHeaderEnd(buf, 0, len);
+            if (end < 0) {
+                if (len > MAX_HEADER_SIZE) {
+                    throw new IOException("Response headers exceed " + MAX_HEADER_SIZE + " bytes"); // $NON-NLS-1$
+                }
+                return false;
+            }
+            String headers = new String(buf, 0, end, ISO_8859_1);
+            int code = getStatusCode(headers);
+            if (code >= 100 && code < 200 && code != 101) {
+                // Skip interim responses such as 100 Continue
+                System.arraycopy(buf, end, buf, 0, len - end);
+                len -= end;
+                continue;
+            }
+            headerEnd = end;
+            head = headers;
+            contentLength = 0;
+            if (exchange.head || code == 204 || code == 304) {
+                framing = Framing.LENGTH;
+            } else {
+                String transferEncoding = getHeader(headers, HTTPConstants.TRANSFER_ENCODING);
+                String length = getHeader(headers, HTTPConstants.HEADER_CONTENT_LENGTH);
+                if (transferEncoding != null && !"identity".equalsIgnoreCase(transferEncoding)) { // $NON-NLS-1$
+                    framing = Framing.CHUNKED;
+                } else if (length != null) {
+                    framing = Framing.LENGTH;
+                    contentLength = parseContentLength(length);
+                } else {
+                    framing = Framing.UNTIL_CLOSE;
+                }
+            }
+        }
+        int end;
+        byte[] body;
+        if (framing == Framing.CHUNKED) {
+            end = findChunkedEnd(buf, headerEnd, len);
+            if (end < 0) {
+                return false;
+            }
+            body = decodeChunked(buf, headerEnd, end);
+        } else {
+            if (framing == Framing.UNTIL_CLOSE) {
+                if (!eof) {
+                    return false;
+                }
+                end = len;
+            } else if (len - headerEnd >= contentLength) {
+                end = headerEnd + contentLength;
+            } else {
+                return false;
+            }
+            body = new byte[end - headerEnd];
+            System.arraycopy(buf, headerEnd, body, 0, body.length);
+        }
+
+        Exchange ex = exchange;
+        boolean keepAlive = ex.keepAlive && !eof && framing != Framing.UNTIL_CLOSE && end == len && isKeepAlive(head);
+        ex.responseHead = head;
+        ex.responseBody = body;
+        ex.headerSize = headerEnd;
+        ex.bodySize = end - headerEnd;
+        exchange = null;
+        len = 0;
+        headerEnd = -1;
+        head = null;
+        if (buf.length > INITIAL_BUFFER_SIZE) {
+            buf = new byte[INITIAL_BUFFER_SIZE];
+        }
+        if (!keepAlive) {
+            close(null);
+        }
+        ex.done();
+        return true;
+    }
+
+    /**
+     * @return the Content-Length, which must fit in a byte array
+     * @throws IOException if the value is not a number, is negative, or is too large
+     */
+    static int parseContentLength(String value) throws IOException {
+        long length;
+        try {
+            length = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length: " + value); // $NON-NLS-1$
+        }
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid Content-Length: " + value); // $NON-NLS-1$
+        }
+        return (int) length;
+    }
+
+    private void closeAfterError(RuntimeException cause) {
+        IOException failure = new IOException("Unexpected error on connection: " + cause.toString()); // $NON-NLS-1$
+        failure.initCause(cause);
+        close(failure);
+    }
+
+    private void close(IOException cause) {
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        JOrphanUtils.closeQuietly(channel);
+        Exchange ex = exchange;
+        exchange = null;
+        if (ex != null) {
+            ex.failure = cause != null ? cause : new IOException("Connection closed"); // $NON-NLS-1$
+            ex.connectedLatch.countDown();
+            ex.done();
+        }
+    }
+
+    private static boolean isKeepAlive(String headers) {
+        String connection = getHeader(headers, HTTPConstants.HEADER_CONNECTION);
+        if (headers.startsWith("HTTP/1.0")) { // $NON-NLS-1$
+            return HTTPConstants.KEEP_ALIVE.equalsIgnoreCase(connection);
+        }
+        return !HTTPConstants.CONNECTION_CLOSE.equalsIgnoreCase(connection);
+    }
+
+    /**
+     * @param headers the status line and headers
+     * @return the status code
+     * @throws IOException if the status line is invalid
+     */
+    static int getStatusCode(String headers) throws IOException {
+        int lineEnd = headers.indexOf('\r');
+        String statusLine = lineEnd >= 0 ? headers.substring(0, lineEnd) : headers;
+        int space = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || space < 0 || statusLine.length() < space + 4) { // $NON-NLS-1$
+            throw new IOException("Invalid status line: " + statusLine); // $NON-NLS-1$
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(space + 1, space + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status line: " + statusLine); // $NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return the value of the last header with the name (case-insensitive), or null
+     */
+    static String getHeader(String headers, String name) {
+        String value = null;
+        int lineStart = headers.indexOf('\n') + 1; // skip the status line
+        while (lineStart > 0 && lineStart < headers.length()) {
+            int lineEnd = headers.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = headers.length();
+            }
+            int colon = headers.indexOf(':', lineStart);
+            if (colon > 0 && colon < lineEnd && colon - lineStart == name.length()
+                    && headers.regionMatches(true, lineStart, name, 0, name.length())) {
+                value = headers.substring(colon + 1, lineEnd).trim();
+            }
+            lineStart = lineEnd + 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return the offset after the blank line which ends the headers, or -1 if it has not been received
+     */
+    static int findHeaderEnd(byte[] buf, int start, int len) {
+        for (int i = start; i < len - 3; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the offset after the last chunk and trailers, or -1 if they have not all been received
+     * @throws IOException if a chunk size is invalid
+     */
+    static int findChunkedEnd(byte[] buf, int start, int len) throws IOException {
+        int pos = start;
+        while (true) {
+            int lineEnd = indexOfCrlf(buf, pos, len);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            int size = getChunkSize(buf, pos, lineEnd);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                // Skip any trailers, up to and including the empty line
+                while (true) {
+                    lineEnd = indexOfCrlf(buf, pos, len);
+                    if (lineEnd < 0) {
+                        return -1;
+                    }
+                    if (lineEnd == pos) {
+                        return pos + 2;
+                    }
+                    pos = lineEnd + 2;
+                }
+            }
+            // Compare before adding, as a huge size would overflow
+            if (size > len - pos - 2) {
+                return -1;
+            }
+            pos += size + 2; // chunk data and CRLF
+        }
+    }
+
+    /**
+     * @return the data of the chunks in a complete chunked body, as found by {@link #findChunkedEnd(byte[], int, int)}
+     * @throws IOException if a chunk size is invalid
+     */
+    static byte[] decodeChunked(byte[] buf, int start, int end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(end - start);
+        int pos = start;
+        while (true) {
+            int lineEnd = indexOfCrlf(buf, pos, end);
+            int size = getChunkSize(buf, pos, lineEnd);
+            if (size == 0) {
+                return out.toByteArray();
+            }
+            out.write(buf, lineEnd + 2, size);
+            pos = lineEnd + 2 + size + 2;
+        }
+    }
+
+    private static int getChunkSize(byte[] buf, int start, int lineEnd) throws IOException {
+        String sizeLine;
+        try {
+            sizeLine = new String(buf, start, lineEnd - start, ISO_8859_1);
+        } catch (UnsupportedEncodingException e) {
+            throw new IOException(e.toString()); // ISO-8859-1 is always supported
+        }
+        int semi = sizeLine.indexOf(';');
+        if (semi >= 0) {
+            sizeLine = sizeLine.substring(0, semi);
+        }
+        try {
+            int size = Integer.parseInt(sizeLine.trim(), 16);
+            if (size < 0) {
+                throw new NumberFormatException(sizeLine);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + sizeLine); // $NON-NLS-1$
+        }
+    }
+
+    private static int indexOfCrlf(byte[] buf, int start, int len) {
+        for (int i = start; i < len - 1; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A request and its response.
+     * The fields are written by the reactor thread before the corresponding latch is released
+     * (and before the listener is run).
+     */
+    static final class Exchange {
+        private final CountDownLatch connectedLatch = new CountDownLatch(1);
+
+        private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+        private final boolean keepAlive;
+
+        private final boolean head;
+
+        private final Runnable listener;
+
+        private boolean reused;
+
+        private long startNanos;
+
+        private long connectedNanos;
+
+        private long doneNanos;
+
+        private boolean responseStarted;
+
+        private long firstByteNanos;
+
+        private String responseHead;
+
+        private byte[] responseBody;
+
+        private int headerSize;
+
+        private long bodySize;
+
+        private IOException failure;
+
+        private Exchange(boolean head, boolean keepAlive, Runnable listener) {
+            this.head = head;
+            this.keepAlive = keepAlive;
+            this.listener = listener;
+        }
+
+        private void done() {
+            doneNanos = System.nanoTime();
+            doneLatch.countDown();
+            if (listener != null) {
+                listener.run();
+            }
+        }
+
+        /**
+         * @param timeout the maximum time to wait (ms); 0 or less waits forever
+         * @return false if the timeout expired
+         */
+        boolean awaitConnected(long timeout) throws InterruptedException {
+            return await(connectedLatch, timeout);
+        }
+
+        /**
+         * @param timeout the maximum time to wait (ms); 0 or less waits forever
+         * @return false if the timeout expired
+         */
+        boolean awaitDone(long timeout) throws InterruptedException {
+            return await(doneLatch, timeout);
+        }
+
+        private static boolean await(CountDownLatch latch, long timeout) throws InterruptedException {
+            if (timeout > 0) {
+                return latch.await(timeout, TimeUnit.MILLISECONDS);
+            }
+            latch.await();
+            return true;
+        }
+
+        /**
+         * @return true if the request was sent on a connection which had already been used
+         */
+        boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * @return the time taken to open the connection (ns), or 0 if an open connection was reused
+         */
+        long getConnectNanos() {
+            return reused ? 0 : connectedNanos - startNanos;
+        }
+
+        /**
+         * @return the value of System.nanoTime() when the exchange ended
+         */
+        long getDoneNanos() {
+            return doneNanos;
+        }
+
+        /**
+         * @return true if any of the response has been received
+         */
+        boolean isResponseStarted() {
+            return responseStarted;
+        }
+
+        /**
+         * @return the value of System.nanoTime() when the first byte of the response was received
+         */
+        long getFirstByteNanos() {
+            return firstByteNanos;
+        }
+
+        /**
+         * @return the error which ended the exchange, or null if the response was received
+         */
+        IOException getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return the status line and headers, each line ending with CRLF, followed by a blank line
+         */
+        String getResponseHead() {
+            return responseHead;
+        }
+
+        /**
+         * @return the response body, with any chunked encoding removed
+         */
+        byte[] getResponseBody() {
+            return responseBody;
+        }
+
+        /**
+         * @return the number of bytes in the status line and headers
+         */
+        int getHeaderSize() {
+            return headerSize;
+        }
+
+        /**
+         * @return the number of bytes in the response body as received
+         */
+        long getBodySize() {
+            return bodySize;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * I/O thread shared by the {@link HTTPNioImpl} samplers of all JMeter threads.
+ * <p>
+ * Each reactor owns a Selector, and performs all the channel operations of the
+ * {@link HttpNioConnection}s which are registered with it. Other threads hand work
+ * to the reactor with {@link #execute(Runnable)}.
+ * The reactors are created on first use, and are daemon threads which run until JMeter exits.
+ */
+final class HttpNioReactor implements Runnable {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int REACTOR_COUNT =
+        JMeterUtils.getPropDefault("httpclient.nio.reactors", Runtime.getRuntime().availableProcessors()); // $NON-NLS-1$
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final AtomicInteger nextReactor = new AtomicInteger();
+
+    // Protected by HttpNioReactor.class
+    private static HttpNioReactor[] reactors;
+
+    private final Selector selector;
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // Only used by the reactor thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private HttpNioReactor() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Returns one of the reactors; successive calls cycle through all of them.
+     *
+     * @return the reactor to use for a new connection
+     * @throws IOException if the reactors could not be started
+     */
+    static HttpNioReactor getReactor() throws IOException {
+        HttpNioReactor[] all = getReactors();
+        return all[(nextReactor.getAndIncrement() & Integer.MAX_VALUE) % all.length];
+    }
+
+    private static synchronized HttpNioReactor[] getReactors() throws IOException {
+        if (reactors == null) {
+            int count = Math.max(1, REACTOR_COUNT);
+            HttpNioReactor[] created = new HttpNioReactor[count];
+            for (int i = 0; i < count; i++) {
+                created[i] = new HttpNioReactor();
+                Thread thread = new Thread(created[i], "HTTP NIO reactor-" + (i + 1)); // $NON-NLS-1$
+                thread.setDaemon(true);
+                thread.start();
+            }
+            reactors = created;
+            log.info("Started " + count + " HTTP NIO reactor thread(s)");
+        }
+        return reactors;
+    }
+
+    /**
+     * Runs the task in the reactor thread.
+     * The task must not block, and should not throw any exceptions.
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * @return the selector; channels must only be registered from the reactor thread
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * @return the buffer to read into; must only be used from the reactor thread
+     */
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) {
+                        ((HttpNioConnection) key.attachment()).handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error in HTTP NIO reactor", e);
+            } catch (RuntimeException e) {
+                log.error("Error in HTTP NIO reactor", e);
+            }
+        }
+    }
+}
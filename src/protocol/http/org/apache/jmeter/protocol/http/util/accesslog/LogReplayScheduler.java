@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.util.accesslog;
+
+/**
+ * Maps the original timestamps of access log entries onto the wall clock,
+ * so that entries can be replayed with their recorded inter-arrival times.
+ * <p>
+ * The first entry that is scheduled defines the origin: it is due
+ * immediately, and every later entry is due at
+ * <code>origin + (entryTime - firstEntryTime) / speed</code>.
+ * A speed of 2 therefore replays the log twice as fast as it was recorded.
+ * <p>
+ * A single instance is shared by all the threads replaying the same log.
+ * Each thread takes the next entry from the parser and then waits until it is due,
+ * so the threads of the Thread Group act as the worker pool; if there are not enough
+ * threads to keep up, entries start late and this shows up in the lag statistics.
+ */
+public class LogReplayScheduler {
+
+    private final double speed;
+
+    private final Object lock = new Object();
+
+    // The following are protected by lock
+
+    private long firstEntryTime = -1;
+
+    private long origin;
+
+    private long scheduled;
+
+    private long late;
+
+    private long totalLag;
+
+    private long maxLag;
+
+    /**
+     * @param speed
+     *            the replay speed multiplier; must be greater than zero
+     */
+    public LogReplayScheduler(double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Replay speed must be greater than zero: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Returns the wall-clock time at which an entry is due.
+     *
+     * @param entryTime
+     *            the time recorded in the log entry (ms)
+     * @param now
+     *            the current time (ms)
+     * @return the time at which the entry should be sent (ms)
+     */
+    public long getDueTime(long entryTime, long now) {
+        synchronized (lock) {
+            if (firstEntryTime < 0) {
+                firstEntryTime = entryTime;
+                origin = now;
+            }
+            return origin + (long) ((entryTime - firstEntryTime) / speed);
+        }
+    }
+
+    /**
+     * Records how late an entry actually started.
+     *
+     * @param lag
+     *            actual start time minus due time (ms); values below zero are
+     *            treated as zero
+     */
+    public void recordLag(long lag) {
+        synchronized (lock) {
+            scheduled++;
+            if (lag > 0) {
+                late++;
+                totalLag += lag;
+                if (lag > maxLag) {
+                    maxLag = lag;
+                }
+            }
+        }
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return the number of entries that have been scheduled
+     */
+    public long getScheduledCount() {
+        synchronized (lock) {
+            return scheduled;
+        }
+    }
+
+    /**
+     * @return the number of entries which started after their due time
+     */
+    public long getLateCount() {
+        synchronized (lock) {
+            return late;
+        }
+    }
+
+    /**
+     * @return the largest lag seen so far (ms)
+     */
+    public long getMaxLag() {
+        synchronized (lock) {
+            return maxLag;
+        }
+    }
+
+    /**
+     * @return the mean lag over all scheduled entries (ms)
+     */
+    public double getMeanLag() {
+        synchronized (lock) {
+            return scheduled == 0 ? 0 : (double) totalLag / scheduled;
+        }
+    }
+
+    /**
+     * @return a one line summary of the schedule lag, suitable for logging
+     */
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "speed=" + speed + " entries=" + scheduled + " late=" + late
+                + " meanLag=" + (scheduled == 0 ? 0 : totalLag / scheduled) + "ms"
+                + " maxLag=" + maxLag + "ms";
+        }
+    }
+}
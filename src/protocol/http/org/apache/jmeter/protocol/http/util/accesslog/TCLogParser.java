@@ -26,8 +26,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.StringTokenizer;
 import java.util.zip.GZIPInputStream;
 
@@ -76,7 +79,7 @@ import org.apache.log.Logger;
  *
  */
 
-public class TCLogParser implements LogParser {
+public class TCLogParser implements TimestampedLogParser {
     protected static final Logger log = LoggingManager.getLoggerForClass();
 
     public static final String GET = "GET";
@@ -85,6 +88,12 @@ public class TCLogParser implements LogParser {
 
     public static final String HEAD = "HEAD";
 
+    /**
+     * Format of the request time in common log format, e.g.
+     * [08/Jan/2003:07:03:54 -0500]
+     */
+    private static final String TIMESTAMP_FORMAT = "dd/MMM/yyyy:HH:mm:ss Z"; // $NON-NLS-1$
+
     /** protected members * */
     protected String RMETHOD = null;
 
@@ -111,6 +120,13 @@ public class TCLogParser implements LogParser {
      */
     protected boolean decode = true;
 
+    /**
+     * The last line passed to parseLine; the timestamp is only extracted on demand
+     */
+    protected String lastLine = null;
+
+    private SimpleDateFormat timestampFormat = null; // created on first use
+
     // TODO downcase UPPER case non-final variables
 
     /**
@@ -272,6 +288,7 @@ public class TCLogParser implements LogParser {
      */
     protected int parseLine(String line, TestElement el) {
         int count = 0;
+        lastLine = line;
         // we clean the line to get
         // rid of extra stuff
         String cleanedLine = this.cleanURL(line);
@@ -546,6 +563,41 @@ public class TCLogParser implements LogParser {
         return new StringTokenizer(line, delim);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastTimestamp() {
+        return parseTimestamp(lastLine);
+    }
+
+    /**
+     * Extracts the request time from a common log format entry. The time is
+     * the text enclosed in the first pair of square brackets.
+     *
+     * @param entry
+     *            the log entry
+     * @return the time in milliseconds, or -1 if no valid time was found
+     */
+    public long parseTimestamp(String entry) {
+        if (entry == null) {
+            return -1;
+        }
+        int start = entry.indexOf('[');
+        int end = entry.indexOf(']', start + 1);
+        if (start < 0 || end < 0) {
+            return -1;
+        }
+        if (timestampFormat == null) {
+            timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.US);
+        }
+        try {
+            return timestampFormat.parse(entry.substring(start + 1, end)).getTime();
+        } catch (ParseException e) {
+            log.debug("Could not parse timestamp in: " + entry);
+            return -1;
+        }
+    }
+
     public void close() {
         try {
             this.READER.close();
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.util.accesslog;
+
+/**
+ * A {@link LogParser} which can report the time at which the most recently
+ * configured log entry was originally recorded.
+ * <p>
+ * This is used by the AccessLogSampler to replay entries with their original
+ * inter-arrival timing.
+ */
+public interface TimestampedLogParser extends LogParser {
+
+    /**
+     * Returns the timestamp of the entry that was used by the last call to
+     * {@link LogParser#parseAndConfigure(int, org.apache.jmeter.testelement.TestElement)}.
+     *
+     * @return the entry time in milliseconds since the epoch, or -1 if the
+     *         entry did not contain a timestamp that could be parsed
+     */
+    public long getLastTimestamp();
+}
@@ -69,6 +69,27 @@ public class JavaConfig extends ConfigTestElement implements Serializable {
         return getPropertyAsString(JavaSampler.CLASSNAME);
     }
 
+    /**
+     * Sets the maximum number of operations in flight per thread, which is used
+     * if the client is an
+     * {@link org.apache.jmeter.protocol.java.sampler.AsyncJavaSamplerClient}.
+     *
+     * @param maxInFlight
+     *            the maximum number of operations; empty means 1
+     */
+    public void setMaxInFlight(String maxInFlight) {
+        setProperty(JavaSampler.MAX_IN_FLIGHT, maxInFlight, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * Gets the maximum number of operations in flight per thread.
+     *
+     * @return the maximum number of operations, as entered
+     */
+    public String getMaxInFlight() {
+        return getPropertyAsString(JavaSampler.MAX_IN_FLIGHT);
+    }
+
     /**
      * Adds an argument to the list of arguments for this JavaConfig object. The
      * {@link org.apache.jmeter.protocol.java.sampler.JavaSamplerClient}
@@ -28,6 +28,7 @@ import java.util.Map;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.config.Arguments;
@@ -68,6 +69,9 @@ public class JavaConfigGui extends AbstractConfigGui implements ActionListener {
     /** A panel allowing the user to set arguments for this test. */
     private ArgumentsPanel argsPanel;
 
+    /** The maximum number of operations in flight per thread, for asynchronous clients. */
+    private JTextField maxInFlight;
+
     /**
      * Create a new JavaConfigGui as a standalone component.
      */
@@ -142,9 +146,15 @@ public class JavaConfigGui extends AbstractConfigGui implements ActionListener {
         classnameCombo.setEditable(false);
         label.setLabelFor(classnameCombo);
 
+        JLabel maxInFlightLabel = new JLabel(JMeterUtils.getResString("java_max_in_flight")); // $NON-NLS-1$
+        maxInFlight = new JTextField(5);
+        maxInFlightLabel.setLabelFor(maxInFlight);
+
         HorizontalPanel panel = new HorizontalPanel();
         panel.add(label);
         panel.add(classnameCombo);
+        panel.add(maxInFlightLabel);
+        panel.add(maxInFlight);
 
         return panel;
     }
@@ -224,6 +234,7 @@ public class JavaConfigGui extends AbstractConfigGui implements ActionListener {
         argsPanel.configure((Arguments) config.getProperty(JavaSampler.ARGUMENTS).getObjectValue());
 
         classnameCombo.setSelectedItem(config.getPropertyAsString(JavaSampler.CLASSNAME));
+        maxInFlight.setText(config.getPropertyAsString(JavaSampler.MAX_IN_FLIGHT));
     }
 
     /** {@inheritDoc} */
@@ -238,6 +249,7 @@ public class JavaConfigGui extends AbstractConfigGui implements ActionListener {
         configureTestElement(config);
         ((JavaConfig) config).setArguments((Arguments) argsPanel.createTestElement());
         ((JavaConfig) config).setClassname(String.valueOf(classnameCombo.getSelectedItem()));
+        ((JavaConfig) config).setMaxInFlight(maxInFlight.getText());
     }
 
     /* (non-Javadoc)
@@ -249,5 +261,6 @@ public class JavaConfigGui extends AbstractConfigGui implements ActionListener {
         this.displayName = true;
         argsPanel.clearGui();
         classnameCombo.setSelectedIndex(0);
+        maxInFlight.setText(""); // $NON-NLS-1$
     }
 }
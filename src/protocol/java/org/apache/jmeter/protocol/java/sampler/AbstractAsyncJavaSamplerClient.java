@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.java.sampler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * An abstract implementation of the {@link AsyncJavaSamplerClient} interface.
+ * Subclasses only need to implement
+ * {@link AsyncJavaSamplerClient#startTest(JavaSamplerContext, AsyncJavaSamplerClient.Callback) startTest};
+ * {@link #runTest(JavaSamplerContext)} starts an operation and waits for it to complete,
+ * so the client can also be used with one operation in flight.
+ */
+public abstract class AbstractAsyncJavaSamplerClient extends AbstractJavaSamplerClient
+        implements AsyncJavaSamplerClient {
+
+    /**
+     * Start an operation and wait for its result.
+     *
+     * @see AsyncJavaSamplerClient#startTest(JavaSamplerContext, AsyncJavaSamplerClient.Callback)
+     */
+    public SampleResult runTest(JavaSamplerContext context) {
+        final BlockingQueue<SampleResult> result = new ArrayBlockingQueue<SampleResult>(1);
+        startTest(context, new Callback() {
+            public void sampleCompleted(SampleResult res) {
+                result.offer(res);
+            }
+        });
+        try {
+            return result.take();
+        } catch (InterruptedException e) {
+            getLogger().warn(getClass().getName() + ": interrupted while waiting for the operation to complete");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.java.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * A {@link JavaSamplerClient} which can start operations without waiting for
+ * them to complete, for example to drive a client library with an asynchronous API.
+ * <p>
+ * When the Java Request sampler is configured to allow more than one operation in
+ * flight per thread, it calls {@link #startTest(JavaSamplerContext, Callback)} instead of
+ * {@link JavaSamplerClient#runTest(JavaSamplerContext) runTest}, and each thread can
+ * then have up to that many operations outstanding. Each completed operation is
+ * reported as a separate sample.
+ * <p>
+ * When possible, asynchronous tests should extend {@link AbstractAsyncJavaSamplerClient},
+ * which implements runTest() by waiting for the operation to complete.
+ * <p>
+ * See {@link org.apache.jmeter.protocol.java.test.AsyncSleepTest} for an example of
+ * how to implement this interface.
+ */
+public interface AsyncJavaSamplerClient extends JavaSamplerClient {
+
+    /**
+     * Receives the result of an operation started by
+     * {@link AsyncJavaSamplerClient#startTest(JavaSamplerContext, Callback)}.
+     * The methods may be called from any thread.
+     */
+    public interface Callback {
+        /**
+         * Report the result of the operation. This must be called exactly once
+         * for each operation, whether or not it succeeded.
+         *
+         * @param result the result of the operation; must not be null
+         */
+        void sampleCompleted(SampleResult result);
+    }
+
+    /**
+     * Start a single operation, and return without waiting for it to complete.
+     * The <code>SampleResult</code> should be created and started
+     * (<code>SampleResult.sampleStart</code>) before this method returns,
+     * and ended (<code>SampleResult.sampleEnd</code>) when the operation completes.
+     * <p>
+     * The same client instance is used for all the operations started by a thread,
+     * so any state belonging to an operation must be kept with the operation
+     * rather than in fields of the client.
+     *
+     * @param context
+     *            the context to run with. This provides access to
+     *            initialization parameters.
+     * @param callback
+     *            the callback to be given the result when the operation completes
+     */
+    void startTest(JavaSamplerContext context, Callback callback);
+}
@@ -22,12 +22,15 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.engine.event.LoopIterationEvent;
 import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestListener;
@@ -39,9 +42,16 @@ import org.apache.log.Logger;
  * A sampler for executing custom Java code in each sample. See
  * {@link JavaSamplerClient} and {@link AbstractJavaSamplerClient} for
  * information on writing Java code to be executed by this sampler.
+ * <p>
+ * If the client implements {@link AsyncJavaSamplerClient}, the sampler can keep
+ * several operations in flight per thread. Each call to {@link #sample(Entry)} starts
+ * an operation, and returns the result of an operation which has completed, if any;
+ * if the maximum number of operations are in flight, it waits for one to complete.
+ * So each completed operation is reported as one sample, and the sampler returns
+ * null while the number of operations in flight is building up.
  *
  */
-public class JavaSampler extends AbstractSampler implements TestListener {
+public class JavaSampler extends AbstractSampler implements TestListener, Interruptible {
 
     private static final Logger log = LoggingManager.getLoggerForClass();
 
@@ -62,6 +72,12 @@ public class JavaSampler extends AbstractSampler implements TestListener {
      */
     public static final String ARGUMENTS = "arguments";
 
+    /**
+     * Property key representing the maximum number of operations in flight
+     * per thread, for an {@link AsyncJavaSamplerClient}.
+     */
+    public static final String MAX_IN_FLIGHT = "max_in_flight"; // $NON-NLS-1$
+
     /**
      * The JavaSamplerClient instance used by this sampler to actually perform
      * the sample.
@@ -81,6 +97,27 @@ public class JavaSampler extends AbstractSampler implements TestListener {
      */
     private static final Set<JavaSampler> allSamplers = new HashSet<JavaSampler>();
 
+    /**
+     * Results of the asynchronous operations which have completed but have
+     * not yet been returned by {@link #sample(Entry)}.
+     */
+    private final transient BlockingQueue<SampleResult> completedResults = new LinkedBlockingQueue<SampleResult>();
+
+    private final transient AsyncJavaSamplerClient.Callback callback = new AsyncJavaSamplerClient.Callback() {
+        public void sampleCompleted(SampleResult result) {
+            completedResults.offer(result);
+        }
+    };
+
+    /**
+     * The number of asynchronous operations which have been started and whose
+     * results have not yet been returned. Only used by the thread running the sampler.
+     */
+    private transient int inFlight = 0;
+
+    /** The thread waiting for an operation to complete, if any */
+    private transient volatile Thread waitingThread;
+
     /**
      * Create a JavaSampler.
      */
@@ -116,6 +153,11 @@ public class JavaSampler extends AbstractSampler implements TestListener {
      * Releases Java Client.
      */
     private void releaseJavaClient() {
+        if (inFlight > 0) {
+            log.warn(whoAmI() + "\t" + inFlight + " operations in flight at the end of the test were not reported");
+            inFlight = 0;
+        }
+        completedResults.clear();
         if (javaClient != null) {
             javaClient.teardownTest(context);
         }
@@ -142,6 +184,31 @@ public class JavaSampler extends AbstractSampler implements TestListener {
         return getPropertyAsString(CLASSNAME);
     }
 
+    /**
+     * Sets the maximum number of operations in flight per thread. This is
+     * only used if the client is an {@link AsyncJavaSamplerClient}.
+     *
+     * @param maxInFlight
+     *            the maximum number of operations; empty means 1
+     */
+    public void setMaxInFlight(String maxInFlight) {
+        setProperty(MAX_IN_FLIGHT, maxInFlight, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return the maximum number of operations in flight per thread, as entered
+     */
+    public String getMaxInFlight() {
+        return getPropertyAsString(MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @return the maximum number of operations in flight per thread, at least 1
+     */
+    public int getMaxInFlightAsInt() {
+        return Math.max(1, getPropertyAsInt(MAX_IN_FLIGHT, 1));
+    }
+
     /**
      * Performs a test sample.
      *
@@ -165,7 +232,13 @@ public class JavaSampler extends AbstractSampler implements TestListener {
             javaClient.setupTest(context);
         }
 
-        SampleResult result = createJavaClient().runTest(context);
+        JavaSamplerClient client = createJavaClient();
+        SampleResult result;
+        if (client instanceof AsyncJavaSamplerClient && getMaxInFlightAsInt() > 1) {
+            result = sampleAsync((AsyncJavaSamplerClient) client);
+        } else {
+            result = client.runTest(context);
+        }
 
         // Only set the default label if it has not been set
         if (result != null && result.getSampleLabel().length() == 0) {
@@ -175,6 +248,46 @@ public class JavaSampler extends AbstractSampler implements TestListener {
         return result;
     }
 
+    /**
+     * Starts an operation, and returns the result of a completed operation, waiting
+     * for one to complete if the maximum number of operations are in flight.
+     *
+     * @param client the client
+     * @return the result of a completed operation, or null if none has completed
+     */
+    private SampleResult sampleAsync(AsyncJavaSamplerClient client) {
+        client.startTest(context, callback);
+        inFlight++;
+        SampleResult result = completedResults.poll();
+        if (result == null && inFlight >= getMaxInFlightAsInt()) {
+            waitingThread = Thread.currentThread();
+            try {
+                result = completedResults.take();
+            } catch (InterruptedException e) {
+                log.warn(whoAmI() + "\tInterrupted while waiting for an operation to complete");
+            } finally {
+                waitingThread = null;
+            }
+        }
+        if (result != null) {
+            inFlight--;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Stops waiting for an asynchronous operation to complete.
+     */
+    public boolean interrupt() {
+        Thread thrd = waitingThread; // take copy so cannot get NPE
+        if (thrd != null) {
+            thrd.interrupt();
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Returns reference to <code>JavaSamplerClient</code>.
      *
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.java.test;
+
+import java.io.Serializable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.java.sampler.AbstractAsyncJavaSamplerClient;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * The <code>AsyncSleepTest</code> class is a simple example of an asynchronous
+ * JMeter Java protocol client. It is the asynchronous equivalent of {@link SleepTest}:
+ * each operation completes after the same amount of time, but no JMeter thread
+ * is blocked while it is in flight.
+ * <p>
+ * The operations are completed by a single timer thread shared by all
+ * the instances of the class.
+ */
+public class AsyncSleepTest extends AbstractAsyncJavaSamplerClient implements Serializable {
+    private static final long serialVersionUID = 240L;
+
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "AsyncSleepTest"); // $NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * The base number of milliseconds to sleep during each sample.
+     */
+    private long sleepTime;
+
+    /**
+     * A mask to be applied to the current time in order to add a random
+     * component to the sleep time.
+     */
+    private long sleepMask;
+
+    /**
+     * Default constructor for <code>AsyncSleepTest</code>.
+     *
+     * The Java Sampler uses the default constructor to instantiate an instance
+     * of the client class.
+     */
+    public AsyncSleepTest() {
+    }
+
+    /**
+     * Get the values of the SleepTime and SleepMask parameters.
+     *
+     * @param context
+     *            the context to run with. This provides access to
+     *            initialization parameters.
+     */
+    @Override
+    public void setupTest(JavaSamplerContext context) {
+        sleepTime = context.getLongParameter("SleepTime", SleepTest.DEFAULT_SLEEP_TIME); // $NON-NLS-1$
+        sleepMask = context.getLongParameter("SleepMask", SleepTest.DEFAULT_SLEEP_MASK); // $NON-NLS-1$
+    }
+
+    /**
+     * Start an operation which completes after the sleep time.
+     *
+     * @param context
+     *            the context to run with. This provides access to
+     *            initialization parameters.
+     * @param callback
+     *            the callback to be given the result when the operation completes
+     */
+    public void startTest(JavaSamplerContext context, final Callback callback) {
+        final SampleResult results = new SampleResult();
+        results.sampleStart();
+
+        long sleep = sleepTime;
+        // Only do the calculation if it is needed
+        if (sleepTime > 0 && sleepMask > 0) {
+            // Generate a random-ish offset value using the current time.
+            sleep = sleepTime + (System.currentTimeMillis() % sleepMask);
+        }
+        results.setSampleLabel("Async Sleep Test: time = " + sleep);
+
+        TIMER.schedule(new Runnable() {
+            public void run() {
+                results.sampleEnd();
+                results.setSuccessful(true);
+                callback.sampleCompleted(results);
+            }
+        }, sleep, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Provide the same parameters as {@link SleepTest}.
+     *
+     * @return a specification of the parameters used by this test
+     */
+    @Override
+    public Arguments getDefaultParameters() {
+        return new SleepTest().getDefaultParameters();
+    }
+}
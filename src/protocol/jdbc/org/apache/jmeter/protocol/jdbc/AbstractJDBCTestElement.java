@@ -30,14 +30,17 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.jmeter.engine.event.LoopIterationEvent;
 import org.apache.jmeter.samplers.SampleResult;
@@ -68,6 +71,10 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
     private static final int MAX_ENTRIES =
         JMeterUtils.getPropDefault("jdbcsampler.cachesize",200); // $NON-NLS-1$
 
+    // Maximum number of characters of the result set to keep in the response data (0 = no limit)
+    private static final int MAX_RESULT_CHARS =
+        JMeterUtils.getPropDefault("jdbcsampler.max_result_chars",0); // $NON-NLS-1$
+
     // String used to indicate a null value
     private static final String NULL_MARKER =
         JMeterUtils.getPropDefault("jdbcsampler.nullmarker","]NULL["); // $NON-NLS-1$
@@ -122,26 +129,27 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
     private String queryArgumentsTypes = ""; // $NON-NLS-1$
     private String variableNames = ""; // $NON-NLS-1$
     private String resultVariable = "";
+    private String fetchSize = ""; // $NON-NLS-1$
+    private String resultSetMaxRows = ""; // $NON-NLS-1$
 
     /**
      *  Cache of PreparedStatements stored in a per-connection basis. Each entry of this
-     *  cache is another Map mapping the statement string to the actual PreparedStatement.
-     *  The cache has a fixed size of MAX_ENTRIES and it will throw away all PreparedStatements
-     *  from the least recently used connections.
+     *  cache is a {@link PreparedStatementCache} mapping the statement string to the actual PreparedStatement.
+     *  Lookups do not lock the map, so threads using different connections do not contend.
+     *  When more than MAX_ENTRIES connections are cached, the caches of closed connections
+     *  and then of the least recently used connections are closed and removed, down to
+     *  EVICT_TO entries, so the map is only scanned once every few new connections.
      */
-    private static final Map<Connection, Map<String, PreparedStatement>> perConnCache =
-        Collections.synchronizedMap(new LinkedHashMap<Connection, Map<String, PreparedStatement>>(MAX_ENTRIES){
-        private static final long serialVersionUID = 1L;
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Connection, Map<String, PreparedStatement>> arg0) {
-            if (size() > MAX_ENTRIES) {
-                final  Map<String, PreparedStatement> value = arg0.getValue();
-                closeAllStatements(value.values());
-                return true;
-            }
-            return false;
-        }
-    });
+    private static final ConcurrentMap<Connection, PreparedStatementCache> perConnCache =
+        new ConcurrentHashMap<Connection, PreparedStatementCache>();
+
+    private static final int EVICT_TO = MAX_ENTRIES - Math.max(1, MAX_ENTRIES / 4);
+
+    /** Set while a thread is evicting connections; other threads do not wait for it */
+    private static final AtomicBoolean evicting = new AtomicBoolean();
+
+    /** Statement cache activity of the last execute(), or null if no cached statement was used */
+    private transient String statementCacheInfo;
 
     /**
      * Creates a JDBCSampler.
@@ -157,13 +165,16 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
      */
     protected byte[] execute(Connection conn) throws SQLException, UnsupportedEncodingException, IOException, UnsupportedOperationException {
         log.debug("executing jdbc");
+        statementCacheInfo = null;
         Statement stmt = null;
+        PreparedStatementCache cache = null;
         
         try {
             // Based on query return value, get results
             String _queryType = getQueryType();
             if (SELECT.equals(_queryType)) {
                 stmt = conn.createStatement();
+                applyFetchSize(stmt);
                 ResultSet rs = null;
                 try {
                     rs = stmt.executeQuery(getQuery());
@@ -172,7 +183,9 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
                     close(rs);
                 }
             } else if (CALLABLE.equals(_queryType)) {
-                CallableStatement cstmt = getCallableStatement(conn);
+                cache = getStatementCache(conn);
+                CallableStatement cstmt = getCallableStatement(cache);
+                applyFetchSize(cstmt);
                 int out[]=setArguments(cstmt);
                 // A CallableStatement can return more than 1 ResultSets
                 // plus a number of update counts.
@@ -186,7 +199,9 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
                 String results = updateCount + " updates";
                 return results.getBytes(ENCODING);
             } else if (PREPARED_SELECT.equals(_queryType)) {
-                PreparedStatement pstmt = getPreparedStatement(conn);
+                cache = getStatementCache(conn);
+                PreparedStatement pstmt = getPreparedStatement(cache);
+                applyFetchSize(pstmt);
                 setArguments(pstmt);
                 ResultSet rs = null;
                 try {
@@ -196,7 +211,8 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
                     close(rs);
                 }
             } else if (PREPARED_UPDATE.equals(_queryType)) {
-                PreparedStatement pstmt = getPreparedStatement(conn);
+                cache = getStatementCache(conn);
+                PreparedStatement pstmt = getPreparedStatement(cache);
                 setArguments(pstmt);
                 pstmt.executeUpdate();
                 String sb = resultSetsToString(pstmt,false,null);
@@ -218,6 +234,9 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
             }
         } finally {
             close(stmt);
+            if (cache != null) {
+                cache.release();
+            }
         }
     }
 
@@ -331,58 +350,123 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
     }
 
 
-    private CallableStatement getCallableStatement(Connection conn) throws SQLException {
-        return (CallableStatement) getPreparedStatement(conn,true);
+    private CallableStatement getCallableStatement(PreparedStatementCache cache) throws SQLException {
+        return (CallableStatement) getPreparedStatement(cache,true);
 
     }
-    private PreparedStatement getPreparedStatement(Connection conn) throws SQLException {
-        return getPreparedStatement(conn,false);
+    private PreparedStatement getPreparedStatement(PreparedStatementCache cache) throws SQLException {
+        return getPreparedStatement(cache,false);
     }
 
-    private PreparedStatement getPreparedStatement(Connection conn, boolean callable) throws SQLException {
-        Map<String, PreparedStatement> preparedStatementMap = perConnCache.get(conn);
-        if (null == preparedStatementMap ) {
-            // MRU PreparedStatements cache.
-            preparedStatementMap = Collections.synchronizedMap(new LinkedHashMap<String, PreparedStatement>(MAX_ENTRIES) {
-                private static final long serialVersionUID = 240L;
+    /**
+     * Returns the statement cache of the connection, creating it if necessary.
+     * The statement obtained from it must be released with {@link PreparedStatementCache#release()}.
+     */
+    private static PreparedStatementCache getStatementCache(Connection conn) {
+        PreparedStatementCache cache = perConnCache.get(conn);
+        if (cache == null) {
+            cache = new PreparedStatementCache(conn, MAX_ENTRIES);
+            PreparedStatementCache existing = perConnCache.putIfAbsent(conn, cache);
+            if (existing != null) {
+                cache = existing;
+            } else if (perConnCache.size() > MAX_ENTRIES && evicting.compareAndSet(false, true)) {
+                try {
+                    evictConnections(cache);
+                } finally {
+                    evicting.set(false);
+                }
+            }
+        }
+        return cache;
+    }
 
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> arg0) {
-                    final int theSize = size();
-                    if (theSize > MAX_ENTRIES) {
-                        Object value = arg0.getValue();
-                        if (value instanceof PreparedStatement) {
-                            PreparedStatement pstmt = (PreparedStatement) value;
-                            close(pstmt);
-                        }
-                        return true;
-                    }
-                    return false;
+    private PreparedStatement getPreparedStatement(PreparedStatementCache cache, boolean callable) throws SQLException {
+        long hits = cache.getHits();
+        PreparedStatement pstmt = cache.getStatement(getQuery(), callable);
+        statementCacheInfo = (cache.getHits() > hits ? "hit " : "miss ") + cache.toString(); // $NON-NLS-1$ $NON-NLS-2$
+        return pstmt;
+    }
+
+    /**
+     * Reduce the number of cached connections to EVICT_TO, first by dropping
+     * the caches of closed connections, then those least recently used.
+     * Caches which are in use are closed when their statement is released.
+     *
+     * @param keep the cache which has just been added, and should not be removed
+     */
+    private static void evictConnections(PreparedStatementCache keep) {
+        for (Iterator<Map.Entry<Connection, PreparedStatementCache>> it = perConnCache.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Connection, PreparedStatementCache> entry = it.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    it.remove();
+                    entry.getValue().close();
                 }
-            });
-            perConnCache.put(conn, preparedStatementMap);
+            } catch (SQLException e) {
+                log.warn("Could not check whether connection is closed", e);
+            }
         }
-        PreparedStatement pstmt = preparedStatementMap.get(getQuery());
-        if (null == pstmt) {
-            if (callable) {
-                pstmt = conn.prepareCall(getQuery());
-            } else {
-                pstmt = conn.prepareStatement(getQuery());
+        int excess = perConnCache.size() - EVICT_TO;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<Connection, PreparedStatementCache>> entries =
+            new ArrayList<Map.Entry<Connection, PreparedStatementCache>>(perConnCache.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Connection, PreparedStatementCache>>() {
+            public int compare(Map.Entry<Connection, PreparedStatementCache> e1,
+                    Map.Entry<Connection, PreparedStatementCache> e2) {
+                long diff = e1.getValue().getLastUsed() - e2.getValue().getLastUsed(); // nanoTime may wrap
+                return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+            }
+        });
+        for (Iterator<Map.Entry<Connection, PreparedStatementCache>> it = entries.iterator(); excess > 0 && it.hasNext();) {
+            Map.Entry<Connection, PreparedStatementCache> eldest = it.next();
+            if (eldest.getValue() != keep && perConnCache.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().close();
+                excess--;
             }
-            preparedStatementMap.put(getQuery(), pstmt);
         }
-        pstmt.clearParameters();
-        return pstmt;
     }
 
-    private static void closeAllStatements(Collection<PreparedStatement> collection) {
-        for (PreparedStatement pstmt : collection) {
-            close(pstmt);
+    /**
+     * @return a description of the PreparedStatement cache activity during the
+     *  last call to execute, or null if no PreparedStatement was used
+     */
+    protected String getStatementCacheInfo() {
+        return statementCacheInfo;
+    }
+
+    /**
+     * Passes the fetch size (if any) to the driver as a hint, so large result sets
+     * are streamed from the database in chunks rather than read all at once.
+     */
+    private void applyFetchSize(Statement stmt) throws SQLException {
+        int size = parseIntOrDefault(getFetchSize(), 0, "fetchSize"); // $NON-NLS-1$
+        if (size > 0) {
+            stmt.setFetchSize(size);
+        }
+    }
+
+    private static int parseIntOrDefault(String value, int defaultValue, String name) {
+        String trimmed = value == null ? "" : value.trim(); // $NON-NLS-1$
+        if (trimmed.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(trimmed);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": '" + value + "', using " + defaultValue);
+            return defaultValue;
         }
     }
 
     /**
      * Gets a Data object from a ResultSet.
+     * <p>
+     * The rows are read one at a time. Only the first "Max rows retained" rows are
+     * stored in the response, the output variables and the result variable;
+     * any further rows are just counted. The response text is also limited to
+     * jdbcsampler.max_result_chars characters, if that is set.
      *
      * @param rs
      *            ResultSet passed in from a database query
@@ -396,45 +480,53 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
         StringBuilder sb = new StringBuilder();
 
         int numColumns = meta.getColumnCount();
+        String[] columnNames = new String[numColumns];
         for (int i = 1; i <= numColumns; i++) {
-            sb.append(meta.getColumnName(i));
+            columnNames[i - 1] = meta.getColumnName(i);
+            sb.append(columnNames[i - 1]);
             if (i==numColumns){
                 sb.append('\n');
             } else {
                 sb.append('\t');
             }
         }
-        
+
+        final int maxRows = parseIntOrDefault(getResultSetMaxRows(), -1, "resultSetMaxRows"); // $NON-NLS-1$
+        boolean textTruncated = false;
 
         JMeterVariables jmvars = getThreadContext().getVariables();
         String varnames[] = getVariableNames().split(COMMA);
         String resultVariable = getResultVariable().trim();
-        List<Map<String, Object> > results = null;
+        ColumnarResultSet results = null;
         if(resultVariable.length() > 0) {
-            results = new ArrayList<Map<String,Object> >();
+            results = new ColumnarResultSet(columnNames);
             jmvars.putObject(resultVariable, results);
         }
-        int j = 0;
+        int j = 0; // rows retained
+        int total = 0; // rows read
         while (rs.next()) {
-            Map<String, Object> row = null;
+            total++;
+            if (maxRows >= 0 && j >= maxRows) {
+                continue; // just count the row
+            }
             j++;
+            int row = results == null ? -1 : results.addRow();
+            boolean appendText = !textTruncated;
             for (int i = 1; i <= numColumns; i++) {
                 Object o = rs.getObject(i);
                 if(results != null) {
-                    if(row == null) {
-                        row = new HashMap<String, Object>(numColumns);
-                        results.add(row);
-                    }
-                    row.put(meta.getColumnName(i), o);
+                    results.setValue(row, i - 1, o);
                 }
                 if (o instanceof byte[]) {
                     o = new String((byte[]) o, ENCODING);
                 }
-                sb.append(o);
-                if (i==numColumns){
-                    sb.append('\n');
-                } else {
-                    sb.append('\t');
+                if (appendText) {
+                    sb.append(o);
+                    if (i==numColumns){
+                        sb.append('\n');
+                    } else {
+                        sb.append('\t');
+                    }
                 }
                 if (i <= varnames.length) { // i starts at 1
                     String name = varnames[i - 1].trim();
@@ -443,6 +535,9 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
                     }
                 }
             }
+            if (MAX_RESULT_CHARS > 0 && sb.length() >= MAX_RESULT_CHARS) {
+                textTruncated = true;
+            }
         }
         // Remove any additional values from previous sample
         for(int i=0; i < varnames.length; i++){
@@ -460,6 +555,11 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
                 jmvars.put(varCount, Integer.toString(j)); // save the current count
             }
         }
+        if (total > j || textTruncated) {
+            sb.append("[Rows read: ").append(total) // $NON-NLS-1$
+                .append(", retained: ").append(j) // $NON-NLS-1$
+                .append(textTruncated ? ", response text truncated]\n" : "]\n"); // $NON-NLS-1$ $NON-NLS-2$
+        }
 
         return sb.toString();
     }
@@ -593,6 +693,35 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
         this.resultVariable = resultVariable;
     }    
 
+    /**
+     * @return the JDBC fetch size hint; empty means use the driver default
+     */
+    public String getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize the JDBC fetch size hint; empty means use the driver default
+     */
+    public void setFetchSize(String fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return the maximum number of rows to retain; empty means all rows
+     */
+    public String getResultSetMaxRows() {
+        return resultSetMaxRows;
+    }
+
+    /**
+     * @param resultSetMaxRows the maximum number of rows to retain;
+     *  further rows are only counted. Empty means all rows, 0 means only count the rows.
+     */
+    public void setResultSetMaxRows(String resultSetMaxRows) {
+        this.resultSetMaxRows = resultSetMaxRows;
+    }
+
     /** 
      * {@inheritDoc}}
 	 */
@@ -607,7 +736,9 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
 			"queryArgumentsTypes",
 			"queryType",
 			"resultVariable",
-			"variableNames"
+			"variableNames",
+			"fetchSize",
+			"resultSetMaxRows"
 		}));
 		addPropertiesValues(result, properties);
         return result;
@@ -649,10 +780,11 @@ public abstract class AbstractJDBCTestElement extends AbstractTestElement implem
 	 * Clean cache of PreparedStatements
 	 */
 	private static final void cleanCache() {
-		for (Map.Entry<Connection, Map<String, PreparedStatement>> element : perConnCache.entrySet()) {
-			closeAllStatements(element.getValue().values());
+		for (Iterator<PreparedStatementCache> it = perConnCache.values().iterator(); it.hasNext();) {
+			PreparedStatementCache cache = it.next();
+			it.remove();
+			cache.close();
 		}
-		perConnCache.clear();
 	}
 
 	/**
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact storage for the rows of a ResultSet, as stored in the "Result variable name".
+ * <p>
+ * The values are held column by column in plain arrays, and the column names
+ * are only stored once. For compatibility with scripts written for earlier versions,
+ * the class behaves as a read-only List of rows, where each row is a read-only
+ * Map from column name to value. The row maps are lightweight views which are
+ * created on demand.
+ */
+public class ColumnarResultSet extends AbstractList<Map<String, Object>> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] columnNames;
+
+    /** column name to column index; if a name appears more than once, the last column wins */
+    private final Map<String, Integer> columnIndex;
+
+    private final Object[][] columns;
+
+    private int rowCount;
+
+    /**
+     * @param columnNames the column names, in ResultSet order
+     */
+    public ColumnarResultSet(String[] columnNames) {
+        this.columnNames = columnNames.clone();
+        this.columnIndex = new HashMap<String, Integer>(columnNames.length * 2);
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndex.put(columnNames[i], Integer.valueOf(i));
+        }
+        this.columns = new Object[columnNames.length][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends an empty row.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        if (columns.length > 0 && rowCount == columns[0].length) {
+            for (int i = 0; i < columns.length; i++) {
+                Object[] grown = new Object[rowCount * 2];
+                System.arraycopy(columns[i], 0, grown, 0, rowCount);
+                columns[i] = grown;
+            }
+        }
+        return rowCount++;
+    }
+
+    /**
+     * Sets a value in a row.
+     *
+     * @param row the row, as returned by {@link #addRow()}
+     * @param column the zero-based column number
+     * @param value the value
+     */
+    public void setValue(int row, int column, Object value) {
+        if (row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + rowCount);
+        }
+        columns[column][row] = value;
+    }
+
+    /**
+     * @param row the zero-based row number
+     * @param columnName the column name
+     * @return the value, or null if there is no such column
+     */
+    public Object getValue(int row, String columnName) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + rowCount);
+        }
+        Integer col = columnIndex.get(columnName);
+        return col == null ? null : columns[col.intValue()][row];
+    }
+
+    /**
+     * @return the column names, in ResultSet order
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(Arrays.asList(columnNames));
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return a read-only view of the row
+     */
+    @Override
+    public Map<String, Object> get(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + rowCount);
+        }
+        return new RowView(row);
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    private class RowView extends AbstractMap<String, Object> {
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer col = columnIndex.get(key);
+            return col == null ? null : columns[col.intValue()][row];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return columnIndex.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    final Iterator<Map.Entry<String, Integer>> it = columnIndex.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Map.Entry<String, Object> next() {
+                            Map.Entry<String, Integer> e = it.next();
+                            return new RowEntry(e.getKey(), columns[e.getValue().intValue()][row]);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columnIndex.size();
+                }
+            };
+        }
+    }
+
+    // AbstractMap.SimpleImmutableEntry is not available in Java 1.5
+    private static final class RowEntry implements Map.Entry<String, Object> {
+        private final String key;
+        private final Object value;
+
+        RowEntry(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object v) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+                && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -44,6 +44,12 @@ public abstract class JDBCTestElementBeanInfoSupport extends BeanInfoSupport {
                 "resultVariable", // $NON-NLS-1$
                 });
 
+        createPropertyGroup("resultSet", // $NON-NLS-1$
+                new String[] {
+                "fetchSize", // $NON-NLS-1$
+                "resultSetMaxRows", // $NON-NLS-1$
+                });
+
         PropertyDescriptor p = property("dataSource"); // $NON-NLS-1$
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, "");
@@ -64,6 +70,14 @@ public abstract class JDBCTestElementBeanInfoSupport extends BeanInfoSupport {
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, "");
 
+        p = property("fetchSize"); // $NON-NLS-1$
+        p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+        p.setValue(DEFAULT, "");
+
+        p = property("resultSetMaxRows"); // $NON-NLS-1$
+        p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+        p.setValue(DEFAULT, "");
+
         p = property("queryType"); // $NON-NLS-1$
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, AbstractJDBCTestElement.SELECT);
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of the PreparedStatements created on a single Connection.
+ * <p>
+ * A pooled connection is only used by one thread at a time, so the monitor
+ * of an instance is normally uncontended; it is only there to protect the
+ * cache against the (rare) case of a connection being evicted or cleaned up
+ * while it is in use.
+ * Statements that drop out of the cache are closed.
+ * <p>
+ * Each {@link #getStatement(String, boolean)} must be followed by a {@link #release()}
+ * once the statement is no longer used. If the cache is closed while a statement
+ * is in use, the statements are closed by the last release, including any prepared
+ * after the cache was closed.
+ */
+class PreparedStatementCache {
+
+    private final Connection conn;
+
+    private final int maxEntries;
+
+    // Protected by this
+    private final Map<String, PreparedStatement> statements;
+
+    // Protected by this
+    private long hits;
+
+    // Protected by this
+    private long misses;
+
+    // Protected by this; number of getStatement() calls not yet released
+    private int users;
+
+    // Protected by this
+    private boolean closed;
+
+    private volatile long lastUsed = System.nanoTime();
+
+    PreparedStatementCache(Connection conn, int maxEntries) {
+        this.conn = conn;
+        this.maxEntries = maxEntries;
+        // access ordered, so the eldest entry is the least recently used
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > PreparedStatementCache.this.maxEntries) {
+                    AbstractJDBCTestElement.close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a PreparedStatement for the query, creating and caching it if necessary.
+     * The parameters of the returned statement are cleared.
+     *
+     * @param sql the query
+     * @param callable true if a CallableStatement is needed
+     * @return the statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    synchronized PreparedStatement getStatement(String sql, boolean callable) throws SQLException {
+        users++;
+        lastUsed = System.nanoTime();
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt == null) {
+            misses++;
+            if (callable) {
+                pstmt = conn.prepareCall(sql);
+            } else {
+                pstmt = conn.prepareStatement(sql);
+            }
+            statements.put(sql, pstmt);
+        } else {
+            hits++;
+        }
+        pstmt.clearParameters();
+        return pstmt;
+    }
+
+    /**
+     * Called when the statement returned by {@link #getStatement(String, boolean)}
+     * is no longer used, whether or not getStatement succeeded.
+     */
+    void release() {
+        List<PreparedStatement> toClose;
+        synchronized (this) {
+            users--;
+            if (!closed || users > 0) {
+                return;
+            }
+            toClose = removeAll();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes all the cached statements and empties the cache.
+     * If a statement is in use, this is done when it is released.
+     */
+    void close() {
+        List<PreparedStatement> toClose;
+        synchronized (this) {
+            closed = true;
+            if (users > 0) {
+                return;
+            }
+            toClose = removeAll();
+        }
+        closeAll(toClose);
+    }
+
+    // Must be called with the lock held
+    private List<PreparedStatement> removeAll() {
+        List<PreparedStatement> all = new ArrayList<PreparedStatement>(statements.values());
+        statements.clear();
+        return all;
+    }
+
+    private static void closeAll(List<PreparedStatement> toClose) {
+        for (PreparedStatement pstmt : toClose) {
+            AbstractJDBCTestElement.close(pstmt);
+        }
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the cache was last used
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * @return the cache statistics, e.g. "hits=10 misses=2 size=2"
+     */
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + " misses=" + misses + " size=" + statements.size(); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    }
+}
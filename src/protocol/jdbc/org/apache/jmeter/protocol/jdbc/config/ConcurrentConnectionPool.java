@@ -0,0 +1,454 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avalon.excalibur.datasource.DataSourceComponent;
+import org.apache.avalon.framework.activity.Disposable;
+import org.apache.avalon.framework.configuration.Configuration;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A JDBC connection pool designed for many threads borrowing and returning
+ * connections at high rates.
+ * <p>
+ * Idle connections are kept in a non-blocking queue, and the number of open
+ * connections is limited by a fair Semaphore, so borrowing and returning a connection
+ * does not take a lock unless the pool is exhausted, in which case callers wait
+ * (up to the timeout) in arrival order.
+ * <p>
+ * When a connection is borrowed, it is discarded if it has exceeded the maximum lifetime,
+ * and validated with the check query if it has been idle for longer than the validation age.
+ * Once per trim interval, idle connections which have not been used for a whole interval are closed.
+ * <p>
+ * When a connection is returned, any open transaction is rolled back, and the auto-commit
+ * mode and transaction isolation are restored if the borrower changed them, so the next
+ * borrower always gets a connection in the configured state.
+ * <p>
+ * The pool hands out one proxy per physical connection; closing the proxy returns
+ * the connection to the pool. The proxy also implements {@link PooledConnectionStatistics},
+ * which reports how long the caller waited for it and the state of the pool at that time.
+ */
+public class ConcurrentConnectionPool implements DataSourceComponent, Disposable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private final String name;
+
+    private final String url;
+
+    private final String username;
+
+    private final String password;
+
+    private final boolean autocommit;
+
+    private final int maxConnections;
+
+    private final long timeout;
+
+    private final String checkQuery;
+
+    private final long validationAge;
+
+    private final long maxLifetime;
+
+    private final int transactionIsolation;
+
+    private final long trimInterval;
+
+    private final AtomicLong nextTrim;
+
+    private final Semaphore permits;
+
+    private final ConcurrentLinkedQueue<PooledConnection> idleConnections =
+        new ConcurrentLinkedQueue<PooledConnection>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * @param name the pool name, for logging
+     * @param driver the JDBC driver class name
+     * @param url the database URL
+     * @param username the user name; if empty, connections are opened without credentials
+     * @param password the password
+     * @param autocommit the auto-commit mode of new connections
+     * @param maxConnections the maximum number of open connections
+     * @param timeout the maximum time (ms) to wait for a connection; 0 or less waits forever
+     * @param checkQuery the validation query; if empty, connections are not validated
+     * @param validationAge connections idle longer than this (ms) are validated before use
+     * @param maxLifetime connections older than this (ms) are closed; 0 or less means no limit
+     * @param transactionIsolation the transaction isolation of new connections, or -1 for the driver default
+     * @param trimInterval idle connections unused for this long (ms) are closed; 0 or less keeps them open
+     */
+    public ConcurrentConnectionPool(String name, String driver, String url, String username, String password,
+            boolean autocommit, int maxConnections, long timeout,
+            String checkQuery, long validationAge, long maxLifetime,
+            int transactionIsolation, long trimInterval) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum number of connections must be at least 1: " + maxConnections);
+        }
+        this.name = name;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.autocommit = autocommit;
+        this.maxConnections = maxConnections;
+        this.timeout = timeout;
+        this.checkQuery = checkQuery == null ? "" : checkQuery.trim(); // $NON-NLS-1$
+        this.validationAge = validationAge;
+        this.maxLifetime = maxLifetime;
+        this.transactionIsolation = transactionIsolation;
+        this.trimInterval = trimInterval;
+        this.nextTrim = new AtomicLong(System.currentTimeMillis() + trimInterval);
+        this.permits = new Semaphore(maxConnections, true);
+        try {
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            log.error("Could not load driver: " + driver + " for pool: " + name);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Waits for a free connection if the pool is exhausted.
+     */
+    public Connection getConnection() throws SQLException {
+        if (disposed) {
+            throw new SQLException("Pool has been closed: " + name);
+        }
+        final long start = System.currentTimeMillis();
+        trimIdleConnections(start);
+        acquirePermit();
+        try {
+            PooledConnection pc;
+            while ((pc = idleConnections.poll()) != null) {
+                idleCount.decrementAndGet();
+                if (isUsable(pc)) {
+                    break;
+                }
+                pc.closePhysical();
+            }
+            if (pc == null) {
+                pc = new PooledConnection(openConnection());
+            }
+            int active = activeCount.incrementAndGet();
+            return pc.lease(System.currentTimeMillis() - start, active, idleCount.get());
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() throws SQLException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        try {
+            if (timeout > 0) {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Timed out after " + timeout + "ms waiting for a connection from pool: "
+                            + name + " (max " + maxConnections + " connections)");
+                }
+            } else {
+                permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            throw new SQLException("Interrupted while waiting for a connection from pool: " + name);
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection conn;
+        if (username != null && username.length() > 0) {
+            conn = DriverManager.getConnection(url, username, password);
+        } else {
+            conn = DriverManager.getConnection(url);
+        }
+        conn.setAutoCommit(autocommit);
+        if (transactionIsolation >= 0) {
+            conn.setTransactionIsolation(transactionIsolation);
+        }
+        return conn;
+    }
+
+    /**
+     * Closes the idle connections which have not been used since the last trim.
+     * Only one thread trims in each interval; the others return at once.
+     */
+    private void trimIdleConnections(long now) {
+        if (trimInterval <= 0) {
+            return;
+        }
+        long due = nextTrim.get();
+        if (now < due || !nextTrim.compareAndSet(due, now + trimInterval)) {
+            return;
+        }
+        int trimmed = 0;
+        for (PooledConnection pc : idleConnections) {
+            if (now - pc.returned >= trimInterval && idleConnections.remove(pc)) {
+                idleCount.decrementAndGet();
+                pc.closePhysical();
+                trimmed++;
+            }
+        }
+        if (trimmed > 0 && log.isDebugEnabled()) {
+            log.debug("Closed " + trimmed + " idle connection(s) from pool: " + name);
+        }
+    }
+
+    /**
+     * Checks a connection taken from the idle queue.
+     */
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (isExpired(pc, now)) {
+            return false;
+        }
+        if (checkQuery.length() > 0 && now - pc.returned > validationAge) {
+            Statement stmt = null;
+            try {
+                stmt = pc.physical.createStatement();
+                stmt.execute(checkQuery);
+            } catch (SQLException e) {
+                log.warn("Validation failed, discarding connection from pool: " + name + " " + e.toString());
+                return false;
+            } finally {
+                if (stmt != null) {
+                    try {
+                        stmt.close();
+                    } catch (SQLException ignored) {
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isExpired(PooledConnection pc, long now) {
+        return maxLifetime > 0 && now - pc.created > maxLifetime;
+    }
+
+    /**
+     * Called when the user closes the connection proxy.
+     */
+    private void release(PooledConnection pc) {
+        activeCount.decrementAndGet();
+        if (disposed || isExpired(pc, System.currentTimeMillis()) || isPhysicalClosed(pc) || !reset(pc)) {
+            pc.closePhysical();
+        } else {
+            pc.returned = System.currentTimeMillis();
+            idleConnections.offer(pc);
+            idleCount.incrementAndGet();
+        }
+        permits.release();
+    }
+
+    /**
+     * Rolls back any open transaction and restores the settings changed by the borrower.
+     *
+     * @return false if the connection could not be reset and must not be reused
+     */
+    private boolean reset(PooledConnection pc) {
+        try {
+            if (!pc.autoCommitState) {
+                pc.physical.rollback();
+            }
+            if (pc.autoCommitState != autocommit) {
+                pc.physical.setAutoCommit(autocommit);
+                pc.autoCommitState = autocommit;
+            }
+            if (pc.leaseIsolation >= 0) {
+                pc.physical.setTransactionIsolation(pc.leaseIsolation);
+                pc.leaseIsolation = -1;
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("Could not reset connection, discarding it from pool: " + name + " " + e.toString());
+            return false;
+        }
+    }
+
+    private static boolean isPhysicalClosed(PooledConnection pc) {
+        try {
+            return pc.physical.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return the number of open connections waiting to be borrowed
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Closes the idle connections; connections which are in use are closed when they are returned.
+     */
+    public void dispose() {
+        disposed = true;
+        PooledConnection pc;
+        while ((pc = idleConnections.poll()) != null) {
+            idleCount.decrementAndGet();
+            pc.closePhysical();
+        }
+    }
+
+    /**
+     * Not used; the pool is configured by its constructor.
+     */
+    public void configure(Configuration configuration) {
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentConnectionPool[" + name + " active=" + activeCount.get() + " idle=" + idleCount.get() + "]";
+    }
+
+    /**
+     * A physical connection and the proxy that is handed out for it.
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final Connection physical;
+
+        private final Connection proxy;
+
+        private final long created = System.currentTimeMillis();
+
+        private volatile long returned = created;
+
+        // The following are only written by the borrowing thread
+        private volatile boolean leased;
+
+        private long waitTime;
+
+        private int activeAtLease;
+
+        private int idleAtLease;
+
+        // The auto-commit mode of the physical connection
+        private boolean autoCommitState = autocommit;
+
+        // The isolation before the borrower first changed it, or -1 if it has not been changed
+        private int leaseIsolation = -1;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            // Use the same proxy for every lease, so that per-connection caches keyed on the Connection still work
+            this.proxy = (Connection) Proxy.newProxyInstance(ConcurrentConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class, PooledConnectionStatistics.class }, this);
+        }
+
+        Connection lease(long wait, int active, int idle) {
+            this.waitTime = wait;
+            this.activeAtLease = active;
+            this.idleAtLease = idle;
+            this.leased = true;
+            return proxy;
+        }
+
+        void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                log.warn("Error closing connection from pool: " + name + " " + e.toString());
+            }
+        }
+
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (method.getDeclaringClass() == PooledConnectionStatistics.class) {
+                if ("getPoolWaitTime".equals(methodName)) { // $NON-NLS-1$
+                    return Long.valueOf(waitTime);
+                } else if ("getActiveCount".equals(methodName)) { // $NON-NLS-1$
+                    return Integer.valueOf(activeAtLease);
+                } else {
+                    return Integer.valueOf(idleAtLease);
+                }
+            }
+            if ("close".equals(methodName) && (args == null || args.length == 0)) { // $NON-NLS-1$
+                if (leased) {
+                    leased = false;
+                    release(this);
+                }
+                return null;
+            }
+            if ("isClosed".equals(methodName) && (args == null || args.length == 0)) { // $NON-NLS-1$
+                // Report the state of the physical connection, so that statements cached
+                // against the proxy are kept while the connection is idle in the pool
+                return Boolean.valueOf(physical.isClosed());
+            }
+            if ("equals".equals(methodName) && args != null && args.length == 1) { // $NON-NLS-1$
+                return Boolean.valueOf(p == args[0]);
+            }
+            if ("hashCode".equals(methodName) && (args == null || args.length == 0)) { // $NON-NLS-1$
+                return Integer.valueOf(System.identityHashCode(p));
+            }
+            if ("toString".equals(methodName) && (args == null || args.length == 0)) { // $NON-NLS-1$
+                return physical.toString();
+            }
+            if (!leased) {
+                throw new SQLException("Connection has been returned to pool: " + name);
+            }
+            if ("setTransactionIsolation".equals(methodName) && leaseIsolation < 0) { // $NON-NLS-1$
+                leaseIsolation = physical.getTransactionIsolation();
+            }
+            Object result;
+            try {
+                result = method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if ("setAutoCommit".equals(methodName)) { // $NON-NLS-1$
+                autoCommitState = ((Boolean) args[0]).booleanValue();
+            }
+            return result;
+        }
+    }
+}
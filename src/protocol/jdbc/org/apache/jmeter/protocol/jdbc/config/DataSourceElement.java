@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.apache.avalon.excalibur.datasource.DataSourceComponent;
 import org.apache.avalon.excalibur.datasource.ResourceLimitingJdbcDataSource;
+import org.apache.avalon.framework.activity.Disposable;
 import org.apache.avalon.framework.configuration.Configuration;
 import org.apache.avalon.framework.configuration.ConfigurationException;
 import org.apache.avalon.framework.configuration.DefaultConfiguration;
@@ -48,8 +49,12 @@ public class DataSourceElement extends AbstractTestElement
 
     private static final long serialVersionUID = 233L;
 
+    // Pool implementations (used in JMX files, so must not be changed)
+    static final String POOL_EXCALIBUR = "Excalibur"; // $NON-NLS-1$
+    static final String POOL_CONCURRENT = "Concurrent"; // $NON-NLS-1$
+
     private transient String dataSource, driver, dbUrl, username, password, checkQuery, poolMax, connectionAge, timeout,
-            trimInterval,transactionIsolation;
+            trimInterval,transactionIsolation, poolImplementation, maxLifetime;
 
     private transient boolean keepAlive, autocommit;
 
@@ -58,10 +63,10 @@ public class DataSourceElement extends AbstractTestElement
      *  These are called from different threads, so access must be synchronized.
      *  The same instance is called in each case.
     */
-    private transient ResourceLimitingJdbcDataSource excaliburSource;
+    private transient DataSourceComponent excaliburSource;
 
     // Keep a record of the pre-thread pools so that they can be disposed of at the end of a test
-    private transient Set<ResourceLimitingJdbcDataSource> perThreadPoolSet;
+    private transient Set<DataSourceComponent> perThreadPoolSet;
 
     public DataSourceElement() {
     }
@@ -69,19 +74,25 @@ public class DataSourceElement extends AbstractTestElement
     public void testEnded() {
         synchronized (this) {
             if (excaliburSource != null) {
-                excaliburSource.dispose();
+                dispose(excaliburSource);
             }
             excaliburSource = null;
         }
         if (perThreadPoolSet != null) {// in case
-            for(ResourceLimitingJdbcDataSource dsc : perThreadPoolSet){
-                log.debug("Disposing pool: "+dsc.getInstrumentableName()+" @"+System.identityHashCode(dsc));
-                dsc.dispose();
+            for(DataSourceComponent dsc : perThreadPoolSet){
+                log.debug("Disposing pool: "+getDataSource()+" @"+System.identityHashCode(dsc));
+                dispose(dsc);
             }
             perThreadPoolSet=null;
         }
     }
 
+    private static void dispose(DataSourceComponent dsc) {
+        if (dsc instanceof Disposable) {
+            ((Disposable) dsc).dispose();
+        }
+    }
+
     public void testEnded(String host) {
         testEnded();
     }
@@ -99,11 +110,11 @@ public class DataSourceElement extends AbstractTestElement
             log.error("JDBC data source already defined for: "+poolName);
         } else {
             String maxPool = getPoolMax();
-            perThreadPoolSet = Collections.synchronizedSet(new HashSet<ResourceLimitingJdbcDataSource>());
+            perThreadPoolSet = Collections.synchronizedSet(new HashSet<DataSourceComponent>());
             if (maxPool.equals("0")){ // i.e. if we want per thread pooling
                 variables.putObject(poolName, new DataSourceComponentImpl()); // pool will be created later
             } else {
-                ResourceLimitingJdbcDataSource src=initPool(maxPool);
+                DataSourceComponent src=initPool(maxPool);
                 synchronized(this){
                     excaliburSource = src;
                     variables.putObject(poolName, new DataSourceComponentImpl(excaliburSource));
@@ -140,10 +151,42 @@ public class DataSourceElement extends AbstractTestElement
     }
 
     /*
-     * Set up the DataSource - maxPool is a parameter, so the same code can
-     * also be used for setting up the per-thread pools.
+     * Set up the DataSource using the selected pool implementation - maxPool is a parameter,
+     * so the same code can also be used for setting up the per-thread pools.
     */
-    private ResourceLimitingJdbcDataSource initPool(String maxPool) {
+    private DataSourceComponent initPool(String maxPool) {
+        if (POOL_CONCURRENT.equals(getPoolImplementation())) {
+            return initConcurrentPool(maxPool);
+        }
+        return initExcaliburPool(maxPool);
+    }
+
+    private DataSourceComponent initConcurrentPool(String maxPool) {
+        if (log.isDebugEnabled()) {
+            log.debug("Concurrent pool: " + getDataSource() + " MaxPool: " + maxPool + " Timeout: " + getTimeout()
+                    + " KeepAlive: " + isKeepAlive() + " Age: " + getConnectionAge()
+                    + " MaxLifetime: " + getMaxLifetime() + " TrimInt: " + getTrimInterval());
+        }
+        return new ConcurrentConnectionPool(getDataSource(), getDriver(), getDbUrl(), getUsername(), getPassword(),
+                isAutocommit(), Integer.parseInt(maxPool.trim()), parseLong(getTimeout(), 0),
+                isKeepAlive() ? getCheckQuery() : "", parseLong(getConnectionAge(), 0), parseLong(getMaxLifetime(), 0), // $NON-NLS-1$
+                DataSourceElementBeanInfo.getTransactionIsolationMode(getTransactionIsolation()),
+                parseLong(getTrimInterval(), 0));
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid number '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private ResourceLimitingJdbcDataSource initExcaliburPool(String maxPool) {
         ResourceLimitingJdbcDataSource source = null;
         source = new ResourceLimitingJdbcDataSource();
         DefaultConfiguration config = new DefaultConfiguration("rl-jdbc"); // $NON-NLS-1$
@@ -227,11 +270,11 @@ public class DataSourceElement extends AbstractTestElement
     }
 
     // used to hold per-thread singleton connection pools
-    private static final ThreadLocal<Map<String, ResourceLimitingJdbcDataSource>> perThreadPoolMap =
-        new ThreadLocal<Map<String, ResourceLimitingJdbcDataSource>>(){
+    private static final ThreadLocal<Map<String, DataSourceComponent>> perThreadPoolMap =
+        new ThreadLocal<Map<String, DataSourceComponent>>(){
         @Override
-        protected Map<String, ResourceLimitingJdbcDataSource> initialValue() {
-            return new HashMap<String, ResourceLimitingJdbcDataSource>();
+        protected Map<String, DataSourceComponent> initialValue() {
+            return new HashMap<String, DataSourceComponent>();
         }
     };
 
@@ -242,28 +285,28 @@ public class DataSourceElement extends AbstractTestElement
      */
     private class DataSourceComponentImpl implements DataSourceComponent{
 
-        private final ResourceLimitingJdbcDataSource sharedDSC;
+        private final DataSourceComponent sharedDSC;
 
         DataSourceComponentImpl(){
             sharedDSC=null;
         }
 
-        DataSourceComponentImpl(ResourceLimitingJdbcDataSource p_dsc){
+        DataSourceComponentImpl(DataSourceComponent p_dsc){
             sharedDSC=p_dsc;
         }
 
         public Connection getConnection() throws SQLException {
             Connection conn = null;
-            ResourceLimitingJdbcDataSource dsc = null;
+            DataSourceComponent dsc = null;
             if (sharedDSC != null){ // i.e. shared pool
                 dsc = sharedDSC;
             } else {
-                Map<String, ResourceLimitingJdbcDataSource> poolMap = perThreadPoolMap.get();
+                Map<String, DataSourceComponent> poolMap = perThreadPoolMap.get();
                 dsc = poolMap.get(getDataSource());
                 if (dsc == null){
                     dsc = initPool("1");
                     poolMap.put(getDataSource(),dsc);
-                    log.debug("Storing pool: "+dsc.getInstrumentableName()+" @"+System.identityHashCode(dsc));
+                    log.debug("Storing pool: "+getDataSource()+" @"+System.identityHashCode(dsc));
                     perThreadPoolSet.add(dsc);
                 }
             }
@@ -491,4 +534,32 @@ public class DataSourceElement extends AbstractTestElement
     public void setTransactionIsolation(String transactionIsolation) {
         this.transactionIsolation = transactionIsolation;
     }
+
+    /**
+     * @return the pool implementation; null or empty means Excalibur
+     */
+    public String getPoolImplementation() {
+        return poolImplementation;
+    }
+
+    /**
+     * @param poolImplementation the pool implementation to use
+     */
+    public void setPoolImplementation(String poolImplementation) {
+        this.poolImplementation = poolImplementation;
+    }
+
+    /**
+     * @return the maximum lifetime (ms) of a connection; only used by the Concurrent pool
+     */
+    public String getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * @param maxLifetime the maximum lifetime (ms) of a connection; 0 means no limit
+     */
+    public void setMaxLifetime(String maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
 }
@@ -51,8 +51,8 @@ public class DataSourceElementBeanInfo extends BeanInfoSupport {
     
         createPropertyGroup("varName", new String[] { "dataSource" });
 
-        createPropertyGroup("pool", new String[] { "poolMax", "timeout", 
-                "trimInterval", "autocommit", "transactionIsolation"  });
+        createPropertyGroup("pool", new String[] { "poolImplementation", "poolMax", "timeout", 
+                "trimInterval", "maxLifetime", "autocommit", "transactionIsolation"  });
 
         createPropertyGroup("keep-alive", new String[] { "keepAlive", "connectionAge", "checkQuery" });
 
@@ -61,6 +61,12 @@ public class DataSourceElementBeanInfo extends BeanInfoSupport {
         PropertyDescriptor p = property("dataSource");
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, "");
+        p = property("poolImplementation");
+        p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+        p.setValue(DEFAULT, DataSourceElement.POOL_EXCALIBUR);
+        p.setValue(NOT_OTHER, Boolean.TRUE);
+        p.setValue(NOT_EXPRESSION, Boolean.TRUE);
+        p.setValue(TAGS, new String[] { DataSourceElement.POOL_EXCALIBUR, DataSourceElement.POOL_CONCURRENT });
         p = property("poolMax");
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, "10");
@@ -70,6 +76,9 @@ public class DataSourceElementBeanInfo extends BeanInfoSupport {
         p = property("trimInterval");
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, "60000");
+        p = property("maxLifetime");
+        p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+        p.setValue(DEFAULT, "0");
         p = property("autocommit");
         p.setValue(NOT_UNDEFINED, Boolean.TRUE);
         p.setValue(DEFAULT, Boolean.TRUE);
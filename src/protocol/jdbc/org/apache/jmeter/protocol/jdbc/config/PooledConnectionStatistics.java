@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc.config;
+
+/**
+ * Implemented by connections handed out by pools which can report
+ * how the connection was obtained. This allows samplers to distinguish
+ * time spent waiting for the pool from time spent in the database.
+ */
+public interface PooledConnectionStatistics {
+
+    /**
+     * @return the time (ms) spent waiting for this connection, including opening
+     *  or validating it if necessary
+     */
+    long getPoolWaitTime();
+
+    /**
+     * @return the number of connections in use when this connection was borrowed,
+     *  including this one
+     */
+    int getActiveCount();
+
+    /**
+     * @return the number of idle connections left in the pool when this connection was borrowed
+     */
+    int getIdleCount();
+}
@@ -28,6 +28,7 @@ import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.engine.util.ConfigMergabilityIndicator;
 import org.apache.jmeter.protocol.jdbc.AbstractJDBCTestElement;
 import org.apache.jmeter.protocol.jdbc.config.DataSourceElement;
+import org.apache.jmeter.protocol.jdbc.config.PooledConnectionStatistics;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.samplers.Sampler;
@@ -81,8 +82,20 @@ public class JDBCSampler extends AbstractJDBCTestElement implements Sampler, Tes
             } finally {
                 res.latencyEnd(); // use latency to measure connection time
             }
-            res.setResponseHeaders(conn.toString());
+            StringBuilder headers = new StringBuilder(conn.toString());
+            if (conn instanceof PooledConnectionStatistics) {
+                PooledConnectionStatistics stats = (PooledConnectionStatistics) conn;
+                headers.append("\nPool: wait=").append(stats.getPoolWaitTime()) // $NON-NLS-1$
+                    .append("ms active=").append(stats.getActiveCount()) // $NON-NLS-1$
+                    .append(" idle=").append(stats.getIdleCount()); // $NON-NLS-1$
+            }
+            res.setResponseHeaders(headers.toString());
             res.setResponseData(execute(conn));
+            String cacheInfo = getStatementCacheInfo();
+            if (cacheInfo != null) {
+                headers.append("\nPreparedStatement cache: ").append(cacheInfo); // $NON-NLS-1$
+                res.setResponseHeaders(headers.toString());
+            }
         } catch (SQLException ex) {
             final String errCode = Integer.toString(ex.getErrorCode());
             res.setResponseMessage(ex.toString());
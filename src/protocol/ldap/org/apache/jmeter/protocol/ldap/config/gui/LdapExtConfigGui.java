@@ -139,8 +139,18 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
 
     private JCheckBox parseflag = new JCheckBox(JMeterUtils.getResString("ldap_parse_results")); // $NON-NLS-1$
 
+    private JCheckBox streamresults = new JCheckBox(JMeterUtils.getResString("ldap_stream_results")); // $NON-NLS-1$
+
+    private JTextField maxretained = new JTextField(20);
+
+    private JTextField pagesize = new JTextField(20);
+
     private JCheckBox secure = new JCheckBox(JMeterUtils.getResString("ldap_secure")); // $NON-NLS-1$
 
+    private JCheckBox connpool = new JCheckBox(JMeterUtils.getResString("ldap_connection_pool")); // $NON-NLS-1$
+
+    private JTextField poolsize = new JTextField(20);
+
     private JRadioButton addTest = new JRadioButton(JMeterUtils.getResString("addtest")); // $NON-NLS-1$
 
     private JRadioButton modifyTest = new JRadioButton(JMeterUtils.getResString("modtest")); // $NON-NLS-1$
@@ -214,7 +224,12 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
            deref.setSelected(element.getPropertyAsBoolean(LDAPExtSampler.DEREF));
         connto.setText(element.getPropertyAsString(LDAPExtSampler.CONNTO));
           parseflag.setSelected(element.getPropertyAsBoolean(LDAPExtSampler.PARSEFLAG));
+        streamresults.setSelected(element.getPropertyAsBoolean(LDAPExtSampler.STREAMRESULTS));
+        maxretained.setText(element.getPropertyAsString(LDAPExtSampler.MAXRETAINED));
+        pagesize.setText(element.getPropertyAsString(LDAPExtSampler.PAGESIZE));
            secure.setSelected(element.getPropertyAsBoolean(LDAPExtSampler.SECURE));
+        connpool.setSelected(element.getPropertyAsBoolean(LDAPExtSampler.CONNPOOL));
+        poolsize.setText(element.getPropertyAsString(LDAPExtSampler.POOLSIZE));
         userpw.setText(element.getPropertyAsString(LDAPExtSampler.USERPW));
         userdn.setText(element.getPropertyAsString(LDAPExtSampler.USERDN));
         comparedn.setText(element.getPropertyAsString(LDAPExtSampler.COMPAREDN));
@@ -287,7 +302,12 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
         element.setProperty(LDAPExtSampler.DEREF,Boolean.toString(deref.isSelected()));
         element.setProperty(LDAPExtSampler.CONNTO, connto.getText());
         element.setProperty(LDAPExtSampler.PARSEFLAG,Boolean.toString(parseflag.isSelected()));
+        element.setProperty(LDAPExtSampler.STREAMRESULTS, streamresults.isSelected(), false);
+        element.setProperty(LDAPExtSampler.MAXRETAINED, maxretained.getText(), ""); //$NON-NLS-1$
+        element.setProperty(LDAPExtSampler.PAGESIZE, pagesize.getText(), ""); //$NON-NLS-1$
         element.setProperty(LDAPExtSampler.SECURE,Boolean.toString(secure.isSelected()));
+        element.setProperty(LDAPExtSampler.CONNPOOL, connpool.isSelected(), false);
+        element.setProperty(LDAPExtSampler.POOLSIZE, poolsize.getText(), ""); //$NON-NLS-1$
         element.setProperty(LDAPExtSampler.USERDN, userdn.getText());
         element.setProperty(LDAPExtSampler.USERPW, userpw.getText());
         element.setProperty(LDAPExtSampler.COMPAREDN, comparedn.getText());
@@ -358,10 +378,15 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
         modddn.setText(""); //$NON-NLS-1$
         newdn.setText(""); //$NON-NLS-1$
         connto.setText(""); //$NON-NLS-1$
+        maxretained.setText(""); //$NON-NLS-1$
+        pagesize.setText(""); //$NON-NLS-1$
+        poolsize.setText(""); //$NON-NLS-1$
         retobj.setSelected(false);
         deref.setSelected(false);
         parseflag.setSelected(false);
+        streamresults.setSelected(false);
         secure.setSelected(false);
+        connpool.setSelected(false);
         addTest.setSelected(false);
         modifyTest.setSelected(false);
         deleteTest.setSelected(false);
@@ -470,6 +495,14 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
         bindPanel.add(B2Panel);
 
         bindPanel.add(secure);
+        bindPanel.add(connpool);
+
+        JPanel B3Panel = new JPanel(new BorderLayout(5, 0));
+        JLabel Blabel3 = new JLabel(JMeterUtils.getResString("ldap_pool_size")); // $NON-NLS-1$
+        Blabel3.setLabelFor(poolsize);
+        B3Panel.add(Blabel3, BorderLayout.WEST);
+        B3Panel.add(poolsize, BorderLayout.CENTER);
+        bindPanel.add(B3Panel);
         return bindPanel;
     }
 
@@ -527,6 +560,21 @@ public class LdapExtConfigGui extends AbstractConfigGui implements ItemListener
         SCPanel.add(retobj);
         SCPanel.add(deref);
         SCPanel.add(parseflag);
+        SCPanel.add(streamresults);
+
+        JPanel SC4Panel = new JPanel(new BorderLayout(5, 0));
+        JLabel label4 = new JLabel(JMeterUtils.getResString("ldap_max_retained")); // $NON-NLS-1$
+        label4.setLabelFor(maxretained);
+        SC4Panel.add(label4, BorderLayout.WEST);
+        SC4Panel.add(maxretained, BorderLayout.CENTER);
+        SCPanel.add(SC4Panel);
+
+        JPanel SC5Panel = new JPanel(new BorderLayout(5, 0));
+        JLabel label5 = new JLabel(JMeterUtils.getResString("ldap_page_size")); // $NON-NLS-1$
+        label5.setLabelFor(pagesize);
+        SC5Panel.add(label5, BorderLayout.WEST);
+        SC5Panel.add(pagesize, BorderLayout.CENTER);
+        SCPanel.add(SC5Panel);
 
         return SCPanel;
     }
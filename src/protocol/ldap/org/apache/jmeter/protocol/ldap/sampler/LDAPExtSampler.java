@@ -56,6 +56,7 @@ import org.apache.jmeter.testelement.property.StringProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.jorphan.util.XMLBuffer;
 import org.apache.log.Logger;
 
@@ -148,15 +149,39 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
 
     public static final String NEWDN = "newdn"; // $NON-NLS-1$
 
+    public static final String STREAMRESULTS = "stream_results"; // $NON-NLS-1$
+
+    public static final String MAXRETAINED = "max_retained_results"; // $NON-NLS-1$
+
+    public static final String PAGESIZE = "page_size"; // $NON-NLS-1$
+
+    public static final String CONNPOOL = "connection_pool"; // $NON-NLS-1$
+
+    public static final String POOLSIZE = "pool_size"; // $NON-NLS-1$
+
     private static final String SEMI_COLON = ";"; // $NON-NLS-1$
 
 
     private static final ConcurrentHashMap<String, DirContext> ldapContexts =
         new ConcurrentHashMap<String, DirContext>();
 
+    // Pools of bound contexts shared by all threads, see getContextPool()
+    private static final ConcurrentHashMap<String, LdapContextPool> ldapPools =
+        new ConcurrentHashMap<String, LdapContextPool>();
+
+    private static final long POOL_TIMEOUT =
+        JMeterUtils.getPropDefault("ldapsampler.pool.timeout", 10000L); // $NON-NLS-1$
+
+    private static final long POOL_CHECK_IDLE =
+        JMeterUtils.getPropDefault("ldapsampler.pool.check_idle", 5000L); // $NON-NLS-1$
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
     private static final int MAX_SORTED_RESULTS =
         JMeterUtils.getPropDefault("ldapsampler.max_sorted_results", 1000); // $NON-NLS-1$
 
+    private static final int DEFAULT_MAX_RETAINED = 10;
+
     /***************************************************************************
      * !ToDo (Constructor description)
      **************************************************************************/
@@ -188,6 +213,75 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
         setProperty(new StringProperty(PARSEFLAG, parseFlag));
     }
 
+    /**
+     * @return true if search results are counted as they arrive rather than being
+     * collected and written in full to the response
+     */
+    public boolean isStreamResults() {
+        return getPropertyAsBoolean(STREAMRESULTS, false);
+    }
+
+    public void setStreamResults(boolean streamResults) {
+        setProperty(STREAMRESULTS, streamResults, false);
+    }
+
+    /**
+     * @return the number of entries written to the response in streaming mode
+     */
+    public String getMaxRetained() {
+        return getPropertyAsString(MAXRETAINED);
+    }
+
+    public int getMaxRetainedAsInt() {
+        return getPropertyAsInt(MAXRETAINED, DEFAULT_MAX_RETAINED);
+    }
+
+    public void setMaxRetained(String maxRetained) {
+        setProperty(MAXRETAINED, maxRetained, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return the page size for the paged results control in streaming mode; 0 disables paging
+     */
+    public String getPageSize() {
+        return getPropertyAsString(PAGESIZE);
+    }
+
+    public int getPageSizeAsInt() {
+        return getPropertyAsInt(PAGESIZE, 0);
+    }
+
+    public void setPageSize(String pageSize) {
+        setProperty(PAGESIZE, pageSize, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return true if operations other than bind and unbind use a context from a pool
+     * shared by all threads, rather than the context bound by the thread
+     */
+    public boolean isConnectionPool() {
+        return getPropertyAsBoolean(CONNPOOL, false);
+    }
+
+    public void setConnectionPool(boolean connectionPool) {
+        setProperty(CONNPOOL, connectionPool, false);
+    }
+
+    /**
+     * @return the maximum number of contexts in the pool
+     */
+    public String getPoolSize() {
+        return getPropertyAsString(POOLSIZE);
+    }
+
+    public int getPoolSizeAsInt() {
+        return getPropertyAsInt(POOLSIZE, DEFAULT_POOL_SIZE);
+    }
+
+    public void setPoolSize(String poolSize) {
+        setProperty(POOLSIZE, poolSize, ""); // $NON-NLS-1$
+    }
+
     /***************************************************************************
      * Gets the username attribute of the LDAP object
      *
@@ -729,12 +823,23 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
         boolean isSuccessful = true;
         res.setSampleLabel(getName());
         DirContext dirContext = ldapContexts.get(getThreadName());
+        LdapContextPool pool = null;
+        LdapContextPool.PooledContext pooledContext = null;
+        boolean discardContext = false;
 
         try {
             xmlBuffer.openTag("operation"); // $NON-NLS-1$
             final String testType = getTest();
             xmlBuffer.tag("opertype", testType); // $NON-NLS-1$
             log.debug("performing test: " + testType);
+            if (isConnectionPool() && !(testType.equals(BIND) || testType.equals(SBIND) || testType.equals(UNBIND))) {
+                pool = getContextPool();
+                pooledContext = pool.borrow();
+                dirContext = pooledContext.getContext();
+                res.setResponseHeaders("Pool: wait=" + pooledContext.getWaitTime() // $NON-NLS-1$
+                        + "ms active=" + pooledContext.getActiveCount() // $NON-NLS-1$
+                        + " idle=" + pooledContext.getIdleCount()); // $NON-NLS-1$
+            }
             if (testType.equals(UNBIND)) {
                 res.setSamplerData("Unbind");
                 xmlBuffer.tag("baseobj",getRootdn()); // $NON-NLS-1$
@@ -811,23 +916,32 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
                 NamingEnumeration<SearchResult> srch=null;
                 try {
                     res.sampleStart();
-                    srch = LdapExtClient.searchTest(
-                            dirContext, searchBase, searchFilter,
-                            scope, getCountlimAsLong(),
-                            getTimelimAsInt(),
-                            getRequestAttributes(getAttrs()),
-                            isRetobj(),
-                            isDeref());
-                    if (isParseFlag()) {
+                    if (isStreamResults()) {
                         try {
                             xmlBuffer.openTag("searchresults"); // $NON-NLS-1$
-                            writeSearchResults(xmlBuffer, srch);
+                            streamSearchResults(xmlBuffer, dirContext, res);
                         } finally {
                             xmlBuffer.closeTag("searchresults"); // $NON-NLS-1$
                         }
                     } else {
-                        xmlBuffer.tag("searchresults", // $NON-NLS-1$
-                                "hasElements="+srch.hasMoreElements()); // $NON-NLS-1$
+                        srch = LdapExtClient.searchTest(
+                                dirContext, searchBase, searchFilter,
+                                scope, getCountlimAsLong(),
+                                getTimelimAsInt(),
+                                getRequestAttributes(getAttrs()),
+                                isRetobj(),
+                                isDeref());
+                        if (isParseFlag()) {
+                            try {
+                                xmlBuffer.openTag("searchresults"); // $NON-NLS-1$
+                                writeSearchResults(xmlBuffer, srch);
+                            } finally {
+                                xmlBuffer.closeTag("searchresults"); // $NON-NLS-1$
+                            }
+                        } else {
+                            xmlBuffer.tag("searchresults", // $NON-NLS-1$
+                                    "hasElements="+srch.hasMoreElements()); // $NON-NLS-1$
+                        }
                     }
                 } finally {
                     if (srch != null){
@@ -854,7 +968,11 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
                 res.setResponseCode("800"); // $NON-NLS-1$
             }
             isSuccessful = false;
+            discardContext = LdapContextPool.isConnectionFailure(ex);
         } finally {
+            if (pooledContext != null) {
+                pool.release(pooledContext, discardContext);
+            }
             xmlBuffer.closeTag("operation"); // $NON-NLS-1$
             xmlBuffer.tag("responsecode",res.getResponseCode()); // $NON-NLS-1$
             xmlBuffer.tag("responsemessage",res.getResponseMessage()); // $NON-NLS-1$
@@ -865,6 +983,33 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
         return res;
     }
 
+    /*
+     * Get the pool for the server and bind DN of this sampler, creating it if necessary.
+     * The size of a new pool is taken from the sampler which creates it.
+     * The key contains a hash of the bind password, not the password itself.
+     */
+    private LdapContextPool getContextPool() {
+        final String key = (isSecure() ? "ldaps://" : "ldap://") + getServername() + ":" + getPort() // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+            + "/" + getRootdn() + "\n" + getUserDN() + "\n" + JOrphanUtils.sha1Hex(getUserPw()) + "\n" + getConnTimeOut(); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$
+        LdapContextPool pool = ldapPools.get(key);
+        if (pool == null) {
+            int poolSize = getPoolSizeAsInt();
+            if (poolSize < 1) {
+                log.warn("Invalid pool size: " + getPoolSize() + ", using: " + DEFAULT_POOL_SIZE);
+                poolSize = DEFAULT_POOL_SIZE;
+            }
+            LdapContextPool newPool = new LdapContextPool(getServername(), getPort(), getRootdn(),
+                    getUserDN(), getUserPw(), getConnTimeOut(), isSecure(),
+                    poolSize, POOL_TIMEOUT, POOL_CHECK_IDLE);
+            pool = ldapPools.putIfAbsent(key, newPool);
+            if (pool == null) {
+                log.info("Created context pool: " + newPool + " size: " + poolSize);
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
     /*
      *   Write out search results in a stable order (including order of all subelements which might
      * be reordered like attributes and their values) so that simple textual comparison can be done,
@@ -907,6 +1052,104 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
         }
     }
 
+    /*
+     *   Count the search results as they are returned, only writing the first few entries
+     * (in the order received) to the response, so that large searches do not need to be held
+     * in memory. If a page size is set, the results are requested using the paged results control;
+     * the count limit then applies to the whole search, and no more pages are requested once it is reached.
+     * The latency is the time until the first entry (or the end of the results, if there are none).
+     */
+    void streamSearchResults(final XMLBuffer xmlb, final DirContext dirContext, final SampleResult res)
+            throws NamingException
+    {
+        final String        searchBase = getPropertyAsString(SEARCHBASE);
+        final String        searchFilter = getPropertyAsString(SEARCHFILTER);
+        final String        rootDn = getRootdn();
+        final String[]      attrs = getRequestAttributes(getAttrs());
+        final int           maxRetained = getMaxRetainedAsInt();
+        final int           pageSize = getPageSizeAsInt();
+        final long          countLimit = getCountlimAsLong();
+        int                 entries = 0;
+        long                bytes = 0;
+        int                 pages = 0;
+        boolean             paged = false;
+
+        try {
+            byte[] cookie = null;
+            do {
+                if (pageSize > 0) {
+                    LdapExtClient.setPagedResults(dirContext, pageSize, cookie);
+                    paged = true;
+                }
+                // Each page is a separate search, so only ask for the entries still allowed
+                final NamingEnumeration<SearchResult> srch = LdapExtClient.searchTest(
+                        dirContext, searchBase, searchFilter,
+                        getScopeAsInt(), countLimit > 0 ? countLimit - entries : 0,
+                        getTimelimAsInt(), attrs,
+                        isRetobj(), isDeref());
+                try {
+                    while ((countLimit <= 0 || entries < countLimit) && srch.hasMore()) {
+                        final SearchResult    sr = srch.next();
+
+                        if (entries == 0) {
+                            res.latencyEnd();
+                        }
+                        entries++;
+                        bytes += getResultSize(sr);
+                        if (entries <= maxRetained) {
+                            normaliseSearchDN(sr, searchBase, rootDn);
+                            writeSearchResult(sr, xmlb);
+                        }
+                    }
+                } finally {
+                    srch.close();
+                }
+                pages++;
+                cookie = paged && (countLimit <= 0 || entries < countLimit)
+                        ? LdapExtClient.getPagedResultsCookie(dirContext) : null;
+            } while (cookie != null);
+            if (entries == 0) {
+                res.latencyEnd();
+            }
+        } finally { // show what we did manage to retrieve
+            if (paged) {
+                LdapExtClient.setPagedResults(dirContext, 0, null);
+            }
+            xmlb.tag("entries", Integer.toString(entries)); // $NON-NLS-1$
+            xmlb.tag("retained", Integer.toString(Math.min(entries, maxRetained))); // $NON-NLS-1$
+            xmlb.tag("pages", Integer.toString(pages)); // $NON-NLS-1$
+            res.setBodySize((int) Math.min(bytes, Integer.MAX_VALUE));
+        }
+    }
+
+    /*
+     * Approximate size of an entry: the number of characters in the DN, attribute names and values
+     * (or the number of bytes, for binary values).
+     */
+    private long getResultSize(final SearchResult sr) throws NamingException
+    {
+        final String    name = sr.getName();
+        long            size = name == null ? 0 : name.length();
+
+        for (NamingEnumeration<? extends Attribute> en = sr.getAttributes().getAll(); en.hasMore(); )
+        {
+            final Attribute     attr = en.next();
+
+            size += attr.getID().length();
+            for (NamingEnumeration<?> ven = attr.getAll(); ven.hasMore(); )
+            {
+                final Object    value = ven.next();
+
+                if (value instanceof byte[]) {
+                    size += ((byte[]) value).length;
+                } else if (value != null) {
+                    size += value.toString().length();
+                }
+            }
+        }
+        return size;
+    }
+
     private void writeSearchResult(final SearchResult sr, final XMLBuffer xmlb)
             throws NamingException
     {
@@ -1081,6 +1324,10 @@ public class LDAPExtSampler extends AbstractSampler implements TestListener {
             }
         }
         ldapContexts.clear();
+        for (LdapContextPool pool : ldapPools.values()) {
+            pool.close();
+        }
+        ldapPools.clear();
     }
 
     public void testIterationStart(LoopIterationEvent event) {
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.ldap.sampler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A bounded pool of LDAP contexts which are bound as the same user, shared by all threads.
+ * <p>
+ * Idle contexts are kept in a non-blocking queue, and the number of open contexts
+ * is limited by a fair Semaphore, so threads wait (up to the timeout) in arrival order
+ * when all the contexts are in use.
+ * <p>
+ * A context which has been idle for longer than the check interval is checked
+ * by reading the root entry before it is handed out; contexts which have lost
+ * their connection are closed and replaced.
+ */
+public class LdapContextPool {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    // Only ask for the entry, without any of its attributes
+    private static final String[] NO_ATTRIBUTES = new String[]{"1.1"}; // $NON-NLS-1$
+
+    private final String servername;
+
+    private final String port;
+
+    private final String rootdn;
+
+    private final String userDN;
+
+    private final String userPw;
+
+    private final String connTimeOut;
+
+    private final boolean secure;
+
+    private final int maxContexts;
+
+    private final long timeout;
+
+    private final long checkIdle;
+
+    private final Semaphore permits;
+
+    private final ConcurrentLinkedQueue<PooledContext> idleContexts =
+        new ConcurrentLinkedQueue<PooledContext>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param servername the LDAP server
+     * @param port the port; may be empty
+     * @param rootdn the DN which names are relative to
+     * @param userDN the DN to bind as
+     * @param userPw the password
+     * @param connTimeOut the connection timeout (ms); may be empty
+     * @param secure true to use ldaps
+     * @param maxContexts the maximum number of open contexts
+     * @param timeout the maximum time (ms) to wait for a context; 0 or less waits forever
+     * @param checkIdle contexts idle longer than this (ms) are checked before use
+     */
+    public LdapContextPool(String servername, String port, String rootdn, String userDN, String userPw,
+            String connTimeOut, boolean secure, int maxContexts, long timeout, long checkIdle) {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("Maximum number of contexts must be at least 1: " + maxContexts);
+        }
+        this.servername = servername;
+        this.port = port;
+        this.rootdn = rootdn;
+        this.userDN = userDN;
+        this.userPw = userPw;
+        this.connTimeOut = connTimeOut;
+        this.secure = secure;
+        this.maxContexts = maxContexts;
+        this.timeout = timeout;
+        this.checkIdle = checkIdle;
+        this.permits = new Semaphore(maxContexts, true);
+    }
+
+    /**
+     * Borrows a context, opening a new one if there are no idle contexts.
+     * The context must be given back by calling {@link #release(PooledContext, boolean)}.
+     *
+     * @return the context
+     * @throws NamingException if the pool is closed or exhausted, or a new context cannot be opened
+     */
+    public PooledContext borrow() throws NamingException {
+        if (closed) {
+            throw new NamingException("Pool has been closed: " + this);
+        }
+        final long start = System.currentTimeMillis();
+        acquirePermit();
+        try {
+            PooledContext pc;
+            while ((pc = idleContexts.poll()) != null) {
+                idleCount.decrementAndGet();
+                if (isUsable(pc)) {
+                    break;
+                }
+                pc.closeContext();
+            }
+            if (pc == null) {
+                pc = new PooledContext(connect());
+            }
+            int active = activeCount.incrementAndGet();
+            pc.lease(System.currentTimeMillis() - start, active, idleCount.get());
+            return pc;
+        } catch (NamingException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() throws NamingException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        try {
+            if (timeout > 0) {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new NamingException("Timed out after " + timeout + "ms waiting for a context from pool: "
+                            + this + " (max " + maxContexts + " contexts)");
+                }
+            } else {
+                permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            throw new NamingException("Interrupted while waiting for a context from pool: " + this);
+        }
+    }
+
+    /**
+     * Opens and binds a new context.
+     *
+     * @return the new context
+     * @throws NamingException if the context cannot be opened
+     */
+    protected DirContext connect() throws NamingException {
+        return LdapExtClient.connect(servername, port, rootdn, userDN, userPw, connTimeOut, secure);
+    }
+
+    /**
+     * Checks a context taken from the idle queue.
+     * Any reply from the server, even an error, shows the connection can still be used.
+     */
+    private boolean isUsable(PooledContext pc) {
+        if (System.currentTimeMillis() - pc.returned <= checkIdle) {
+            return true;
+        }
+        try {
+            pc.context.getAttributes("", NO_ATTRIBUTES); // $NON-NLS-1$
+        } catch (NamingException e) {
+            if (isConnectionFailure(e)) {
+                log.warn("Check failed, discarding context from pool: " + this + " " + e.toString());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param e the exception thrown by an operation
+     * @return true if the exception shows the connection of the context is no longer usable
+     */
+    public static boolean isConnectionFailure(NamingException e) {
+        return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
+    }
+
+    /**
+     * Gives back a borrowed context.
+     *
+     * @param pc the context
+     * @param discard true if the context should be closed rather than reused, e.g. because it has lost its connection
+     */
+    public void release(PooledContext pc, boolean discard) {
+        activeCount.decrementAndGet();
+        if (closed || discard) {
+            pc.closeContext();
+        } else {
+            pc.returned = System.currentTimeMillis();
+            idleContexts.offer(pc);
+            idleCount.incrementAndGet();
+        }
+        permits.release();
+    }
+
+    /**
+     * @return the number of contexts currently borrowed
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return the number of open contexts waiting to be borrowed
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Closes the idle contexts; contexts which are in use are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        PooledContext pc;
+        while ((pc = idleContexts.poll()) != null) {
+            idleCount.decrementAndGet();
+            pc.closeContext();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (secure ? "ldaps://" : "ldap://") + servername // $NON-NLS-1$ $NON-NLS-2$
+            + (port.length() > 0 ? ":" + port : "") + "/" + rootdn + " as " + userDN; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+    }
+
+    /**
+     * A context in the pool, and how it was obtained by the current borrower.
+     */
+    public static class PooledContext {
+        private final DirContext context;
+
+        private volatile long returned = System.currentTimeMillis();
+
+        // The following are only written by the borrowing thread
+        private long waitTime;
+
+        private int activeAtLease;
+
+        private int idleAtLease;
+
+        PooledContext(DirContext context) {
+            this.context = context;
+        }
+
+        void lease(long wait, int active, int idle) {
+            this.waitTime = wait;
+            this.activeAtLease = active;
+            this.idleAtLease = idle;
+        }
+
+        void closeContext() {
+            try {
+                context.close();
+            } catch (NamingException e) {
+                log.warn("Error closing pooled context " + e.toString());
+            }
+        }
+
+        public DirContext getContext() {
+            return context;
+        }
+
+        /**
+         * @return the time (ms) spent waiting for this context, including opening
+         *  or checking it if necessary
+         */
+        public long getWaitTime() {
+            return waitTime;
+        }
+
+        /**
+         * @return the number of contexts in use when this context was borrowed, including this one
+         */
+        public int getActiveCount() {
+            return activeAtLease;
+        }
+
+        /**
+         * @return the number of idle contexts left in the pool when this context was borrowed
+         */
+        public int getIdleCount() {
+            return idleAtLease;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.jmeter.protocol.ldap.sampler;
 
+import java.io.IOException;
 import java.util.Hashtable;
 
 import javax.naming.Context;
@@ -25,10 +26,14 @@ import javax.naming.NamingException;
 import javax.naming.NamingEnumeration;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
@@ -98,7 +103,8 @@ public class LdapExtClient {
         env.put("java.naming.batchsize", "0"); // $NON-NLS-1$  // $NON-NLS-2$
         env.put(Context.SECURITY_CREDENTIALS, password);
         env.put(Context.SECURITY_PRINCIPAL, username);
-        dirContext = new InitialDirContext(env);
+        // An LdapContext, so that request controls such as paged results can be used
+        dirContext = new InitialLdapContext(env, null);
         return dirContext;
     }
 
@@ -148,6 +154,61 @@ public class LdapExtClient {
         return dirContext.search(searchBase, searchFilter, searchcontrols);
     }
 
+    /***************************************************************************
+     * Set or clear the paged results control. The control is sent with every
+     * subsequent operation on the context until it is cleared.
+     *
+     * @param pageSize
+     *            the number of entries per page; 0 or less clears the request controls
+     * @param cookie
+     *            the cookie returned with the previous page, or null for the first page
+     **************************************************************************/
+    public static void setPagedResults(DirContext dirContext, int pageSize, byte[] cookie) throws NamingException {
+        LdapContext ldapContext = getLdapContext(dirContext);
+        if (pageSize <= 0) {
+            ldapContext.setRequestControls(null);
+            return;
+        }
+        try {
+            // Not critical, so servers which do not support paging return all the results at once
+            ldapContext.setRequestControls(new Control[]{
+                    new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL)});
+        } catch (IOException e) {
+            NamingException ne = new NamingException("Could not create paged results control: " + e.toString());
+            ne.setRootCause(e);
+            throw ne;
+        }
+    }
+
+    /***************************************************************************
+     * Get the cookie for the next page, once all the results of the current
+     * page have been read
+     *
+     * @return the cookie, or null if there are no more pages
+     **************************************************************************/
+    public static byte[] getPagedResultsCookie(DirContext dirContext) throws NamingException {
+        Control[] controls = getLdapContext(dirContext).getResponseControls();
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl) control).getCookie();
+                    return cookie == null || cookie.length == 0 ? null : cookie;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static LdapContext getLdapContext(DirContext dirContext) throws NamingException {
+        if (dirContext == null) {
+            throw new NamingException(CONTEXT_IS_NULL);
+        }
+        if (!(dirContext instanceof LdapContext)) {
+            throw new NamingException("Context does not support request controls");
+        }
+        return (LdapContext) dirContext;
+    }
+
     /***************************************************************************
      * Filter the data in the ldap directory
      *
@@ -22,14 +22,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import javax.mail.Address;
 import javax.mail.BodyPart;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Header;
@@ -37,10 +45,13 @@ import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMultipart;
 import javax.mail.internet.MimeUtility;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.protocol.smtp.sampler.gui.SecuritySettingsPanel;
 import org.apache.jmeter.protocol.smtp.sampler.protocol.LocalTrustStoreSSLSocketFactory;
@@ -51,16 +62,20 @@ import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.testelement.property.BooleanProperty;
 import org.apache.jmeter.testelement.property.IntegerProperty;
 import org.apache.jmeter.testelement.property.StringProperty;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
 
+import com.sun.mail.pop3.POP3Folder;
+
 /**
  * Sampler that can read from POP3 and IMAP mail servers
  */
-public class MailReaderSampler extends AbstractSampler implements Interruptible {
+public class MailReaderSampler extends AbstractSampler implements Interruptible, ThreadListener {
     private static final Logger log = LoggingManager.getLoggerForClass();
 
     private static final long serialVersionUID = 240L;
@@ -80,6 +95,10 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
     private final static String NUM_MESSAGES = "num_messages"; // $NON-NLS-1$
     private static final String NEW_LINE = "\n"; // $NON-NLS-1$
     private final static String STORE_MIME_MESSAGE = "storeMimeMessage";
+    private final static String KEEP_ALIVE = "keepAlive"; // $NON-NLS-1$
+    private final static String NEW_MESSAGES_ONLY = "newMessagesOnly"; // $NON-NLS-1$
+    private final static String HEADERS_ONLY = "headersOnly"; // $NON-NLS-1$
+    private final static String MD5 = "md5"; // $NON-NLS-1$
     //-
 
     private static final String RFC_822_DEFAULT_ENCODING = "iso-8859-1"; // RFC 822 uses ascii per default
@@ -122,6 +141,71 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
 
     private volatile boolean busy;
 
+    // Mailboxes used by the current thread, by mailbox key; only used if keep-alive or new messages only is set
+    private static final ThreadLocal<Map<String, Mailbox>> MAILBOXES =
+        new ThreadLocal<Map<String, Mailbox>>() {
+            @Override
+            protected Map<String, Mailbox> initialValue() {
+                return new HashMap<String, Mailbox>();
+            }
+        };
+
+    /**
+     * The open Store and Folder of a mailbox, if they are being kept open,
+     * and the messages that have already been read from it.
+     */
+    private static class Mailbox {
+        private Store store;
+
+        private Folder folder;
+
+        // For folders that support UIDs (e.g. IMAP)
+        private long uidValidity = -1;
+
+        private long lastUid = 0;
+
+        // For POP3 folders, the UIDL of each message that has been read
+        private final Set<String> seenUids = new HashSet<String>();
+
+        // For other folders
+        private int lastNumber = 0;
+
+        void markSeen(Message message) throws MessagingException {
+            if (folder instanceof UIDFolder) {
+                lastUid = Math.max(lastUid, ((UIDFolder) folder).getUID(message));
+            } else if (folder instanceof POP3Folder) {
+                seenUids.add(((POP3Folder) folder).getUID(message));
+            } else {
+                lastNumber = Math.max(lastNumber, message.getMessageNumber());
+            }
+        }
+
+        void closeFolder(boolean expunge) {
+            if (folder != null) {
+                try {
+                    if (folder.isOpen()) {
+                        folder.close(expunge);
+                    }
+                } catch (MessagingException e) {
+                    log.debug("Error closing folder " + e.toString());
+                }
+                folder = null;
+            }
+        }
+
+        void close() {
+            closeFolder(false);
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (MessagingException e) {
+                    log.debug("Error closing store " + e.toString());
+                }
+                store = null;
+            }
+        }
+    }
+
     public MailReaderSampler() {
         setServerType(DEFAULT_PROTOCOL);
         setFolder("INBOX");  // $NON-NLS-1$
@@ -142,73 +226,42 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
         String samplerString = toString();
         parent.setSamplerData(samplerString);
 
+        final boolean keepAlive = isKeepAlive();
+        final boolean newOnly = isNewMessagesOnly();
+        final boolean headersOnly = isHeadersOnly();
+        final String mailboxKey = getMailboxKey();
+        Mailbox mailbox = null;
+
         /*
          * Perform the sampling
          */
         parent.sampleStart(); // Start timing
         try {
-            // Create empty properties
-            Properties props = new Properties();
-
-            if (isUseStartTLS()) {
-                props.setProperty("mail.pop3s.starttls.enable", "true");
-                if (isEnforceStartTLS()){
-                    // Requires JavaMail 1.4.2+
-                    props.setProperty("mail.pop3s.starttls.require", "true");
-                }
+            if (keepAlive || newOnly) {
+                mailbox = MAILBOXES.get().remove(mailboxKey);
             }
-
-            if (isTrustAllCerts()) {
-                if (isUseSSL()) {
-                    props.setProperty("mail.pop3s.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
-                    props.setProperty("mail.pop3s.ssl.socketFactory.fallback", "false");
-                } else if (isUseStartTLS()) {
-                    props.setProperty("mail.pop3s.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
-                    props.setProperty("mail.pop3s.ssl.socketFactory.fallback", "false");
-                }
-            } else if (isUseLocalTrustStore()){
-                File truststore = new File(getTrustStoreToUse());
-                log.info("load local truststore - try to load truststore from: "+truststore.getAbsolutePath());
-                if(!truststore.exists()){
-                    log.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath());
-                    truststore = new File(FileServer.getFileServer().getBaseDir(), getTrustStoreToUse());
-                    log.info("load local truststore -Attempting to read truststore from:  "+truststore.getAbsolutePath());
-                    if(!truststore.exists()){
-                        log.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath() + ". Local truststore not available, aborting execution.");
-                        throw new IOException("Local truststore file not found. Also not available under : " + truststore.getAbsolutePath());
-                    }
-                }
-                if (isUseSSL()) {
-                    // Requires JavaMail 1.4.2+
-                    props.put("mail.pop3s.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
-                    props.put("mail.pop3s.ssl.socketFactory.fallback", "false");
-                } else if (isUseStartTLS()) {
-                    // Requires JavaMail 1.4.2+
-                    props.put("mail.pop3s.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
-                    props.put("mail.pop3s.ssl.socketFactory.fallback", "false");
-                }
+            if (mailbox == null) {
+                mailbox = new Mailbox();
             }
+            Folder folder = openFolder(mailbox, deleteMessages);
 
-            // Get session
-            Session session = Session.getInstance(props, null);
-
-            // Get the store
-            Store store = session.getStore(getServerType());
-            store.connect(getServer(), getPortAsInt(), getUserName(), getPassword());
-
-            // Get folder
-            Folder folder = store.getFolder(getFolder());
-            if (deleteMessages) {
-                folder.open(Folder.READ_WRITE);
+            // Get directory
+            Message messages[];
+            if (newOnly) {
+                messages = getNewMessages(mailbox, folder);
             } else {
-                folder.open(Folder.READ_ONLY);
+                messages = folder.getMessages();
             }
-
-            // Get directory
-            Message messages[] = folder.getMessages();
             StringBuilder pdata = new StringBuilder();
-            pdata.append(messages.length);
-            pdata.append(" messages found\n");
+            if (newOnly) {
+                pdata.append(folder.getMessageCount());
+                pdata.append(" messages found\n");
+                pdata.append(messages.length);
+                pdata.append(" new messages\n");
+            } else {
+                pdata.append(messages.length);
+                pdata.append(" messages found\n");
+            }
             parent.setResponseData(pdata.toString(),null);
             parent.setDataType(SampleResult.TEXT);
             parent.setContentType("text/plain"); // $NON-NLS-1$
@@ -220,6 +273,16 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
 
             parent.setSampleCount(n); // TODO is this sensible?
 
+            if (headersOnly && n > 0) {
+                // Fetch the headers of all the messages in as few requests as possible
+                FetchProfile fp = new FetchProfile();
+                fp.add(FetchProfile.Item.ENVELOPE);
+                fp.add(FetchProfile.Item.CONTENT_INFO);
+                Message[] toFetch = new Message[n];
+                System.arraycopy(messages, 0, toFetch, 0, n);
+                folder.fetch(toFetch, fp);
+            }
+
             busy = true;
             for (int i = 0; busy && i < n; i++) {
                 StringBuilder cdata = new StringBuilder();
@@ -238,7 +301,20 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
                 child.setDataEncoding(RFC_822_DEFAULT_ENCODING); // RFC 822 uses ascii per default
                 child.setEncodingAndType(contentType);// Parse the content-type
 
-                if (isStoreMimeMessage()) {
+                if (headersOnly) {
+                    child.setResponseData(appendEnvelope(new StringBuilder(), message).toString(),
+                            child.getDataEncodingNoDefault());
+                } else if (isMD5()) {
+                    // Stream the raw message, keeping only its size and hash
+                    MessageDigest md = createMD5Digest();
+                    CountingOutputStream cout = new CountingOutputStream(
+                            new DigestOutputStream(new NullOutputStream(), md));
+                    message.writeTo(cout);
+                    child.setResponseData(JOrphanUtils.baToHexString(md.digest()), null);
+                    child.setDataType(SampleResult.TEXT);
+                    child.setBodySize((int) cout.getByteCount());
+                    child.setBytes((int) cout.getByteCount());
+                } else if (isStoreMimeMessage()) {
                     // Don't save headers - they are already in the raw message
                     ByteArrayOutputStream bout = new ByteArrayOutputStream();
                     message.writeTo(bout);
@@ -265,6 +341,9 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
                 if (deleteMessages) {
                     message.setFlag(Flags.Flag.DELETED, true);
                 }
+                if (newOnly) {
+                    mailbox.markSeen(message);
+                }
                 child.setResponseOK();
                 if (child.getEndTime()==0){// Avoid double-call if addSubResult was called.
                     child.sampleEnd();
@@ -272,9 +351,20 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
                 parent.addSubResult(child);
             }
 
-            // Close connection
-            folder.close(true);
-            store.close();
+            // Close connection, unless it can be used by the next sample
+            if (keepAlive && folder instanceof UIDFolder) {
+                if (deleteMessages) {
+                    folder.expunge();
+                }
+            } else {
+                mailbox.closeFolder(true);
+                if (deleteMessages) {
+                    mailbox.lastNumber = 0; // the messages that were read have been removed
+                }
+            }
+            if (!keepAlive) {
+                mailbox.close();
+            }
 
             parent.setResponseCodeOK();
             parent.setResponseMessageOK();
@@ -283,6 +373,10 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
             log.debug("",ex);// No need to log normally, as we set the status
             parent.setResponseCode("500"); // $NON-NLS-1$
             parent.setResponseMessage(ex.toString());
+        } catch (NoSuchAlgorithmException ex) {
+            log.debug("", ex);// No need to log normally, as we set the status
+            parent.setResponseCode("500"); // $NON-NLS-1$
+            parent.setResponseMessage(ex.toString());
         } catch (MessagingException ex) {
             log.debug("", ex);// No need to log normally, as we set the status
             parent.setResponseCode("500"); // $NON-NLS-1$
@@ -293,6 +387,14 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
             parent.setResponseMessage(ex.toString());
         } finally {
             busy = false;
+            if (mailbox != null) {
+                if (!isOK) {
+                    mailbox.close();
+                }
+                if (keepAlive || newOnly) {
+                    MAILBOXES.get().put(mailboxKey, mailbox);
+                }
+            }
         }
 
         if (parent.getEndTime()==0){// not been set by any child samples
@@ -302,9 +404,179 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
         return parent;
     }
 
+    /**
+     * Returns the folder to read, connecting the store and opening the folder
+     * unless they are still open from an earlier sample.
+     */
+    private Folder openFolder(Mailbox mailbox, boolean readWrite) throws MessagingException, IOException {
+        final int mode = readWrite ? Folder.READ_WRITE : Folder.READ_ONLY;
+        if (mailbox.folder != null) {
+            if (mailbox.folder.isOpen() && mailbox.folder.getMode() == mode) {
+                mailbox.folder.getMessageCount(); // IMAP sends NOOP, which reports any new messages
+                return mailbox.folder;
+            }
+            mailbox.closeFolder(false);
+        }
+        if (mailbox.store != null && !mailbox.store.isConnected()) {
+            mailbox.close();
+        }
+        if (mailbox.store == null) {
+            // Get session
+            Session session = Session.getInstance(createProperties(), null);
+
+            // Get the store
+            Store store = session.getStore(getServerType());
+            store.connect(getServer(), getPortAsInt(), getUserName(), getPassword());
+            mailbox.store = store;
+        }
+
+        // Get folder
+        Folder folder = mailbox.store.getFolder(getFolder());
+        folder.open(mode);
+        mailbox.folder = folder;
+        return folder;
+    }
+
+    private Properties createProperties() throws IOException {
+        // Create empty properties
+        Properties props = new Properties();
+
+        if (isUseStartTLS()) {
+            props.setProperty("mail.pop3s.starttls.enable", "true");
+            if (isEnforceStartTLS()){
+                // Requires JavaMail 1.4.2+
+                props.setProperty("mail.pop3s.starttls.require", "true");
+            }
+        }
+
+        if (isTrustAllCerts()) {
+            if (isUseSSL()) {
+                props.setProperty("mail.pop3s.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
+                props.setProperty("mail.pop3s.ssl.socketFactory.fallback", "false");
+            } else if (isUseStartTLS()) {
+                props.setProperty("mail.pop3s.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
+                props.setProperty("mail.pop3s.ssl.socketFactory.fallback", "false");
+            }
+        } else if (isUseLocalTrustStore()){
+            File truststore = new File(getTrustStoreToUse());
+            log.info("load local truststore - try to load truststore from: "+truststore.getAbsolutePath());
+            if(!truststore.exists()){
+                log.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath());
+                truststore = new File(FileServer.getFileServer().getBaseDir(), getTrustStoreToUse());
+                log.info("load local truststore -Attempting to read truststore from:  "+truststore.getAbsolutePath());
+                if(!truststore.exists()){
+                    log.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath() + ". Local truststore not available, aborting execution.");
+                    throw new IOException("Local truststore file not found. Also not available under : " + truststore.getAbsolutePath());
+                }
+            }
+            if (isUseSSL()) {
+                // Requires JavaMail 1.4.2+
+                props.put("mail.pop3s.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
+                props.put("mail.pop3s.ssl.socketFactory.fallback", "false");
+            } else if (isUseStartTLS()) {
+                // Requires JavaMail 1.4.2+
+                props.put("mail.pop3s.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
+                props.put("mail.pop3s.ssl.socketFactory.fallback", "false");
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Returns the messages which have not been read by an earlier sample in this thread,
+     * in the order they were added to the folder.
+     * <p>
+     * For IMAP, only the new messages are fetched, using their UIDs.
+     * For POP3, the UIDs of all the messages are fetched with a single UIDL command.
+     * Otherwise, messages are assumed to be added at the end of the folder.
+     */
+    private Message[] getNewMessages(Mailbox mailbox, Folder folder) throws MessagingException {
+        if (folder instanceof UIDFolder) {
+            UIDFolder uidFolder = (UIDFolder) folder;
+            long uidValidity = uidFolder.getUIDValidity();
+            if (uidValidity != mailbox.uidValidity) { // UIDs have been reassigned
+                mailbox.uidValidity = uidValidity;
+                mailbox.lastUid = 0;
+            }
+            Message[] messages = uidFolder.getMessagesByUID(mailbox.lastUid + 1, UIDFolder.LASTUID);
+            List<Message> newMessages = new ArrayList<Message>(messages.length);
+            for (Message message : messages) {
+                // The range n:* always includes the last message, even if its UID is less than n
+                if (message != null && uidFolder.getUID(message) > mailbox.lastUid) {
+                    newMessages.add(message);
+                }
+            }
+            return newMessages.toArray(new Message[newMessages.size()]);
+        } else if (folder instanceof POP3Folder) {
+            POP3Folder pop3Folder = (POP3Folder) folder;
+            Message[] messages = folder.getMessages();
+            FetchProfile fp = new FetchProfile();
+            fp.add(UIDFolder.FetchProfileItem.UID);
+            folder.fetch(messages, fp);
+            Set<String> present = new HashSet<String>();
+            List<Message> newMessages = new ArrayList<Message>();
+            for (Message message : messages) {
+                String uid = pop3Folder.getUID(message);
+                present.add(uid);
+                if (!mailbox.seenUids.contains(uid)) {
+                    newMessages.add(message);
+                }
+            }
+            mailbox.seenUids.retainAll(present); // forget messages that have been deleted
+            return newMessages.toArray(new Message[newMessages.size()]);
+        } else {
+            int count = folder.getMessageCount();
+            if (count < mailbox.lastNumber) { // messages have been removed
+                mailbox.lastNumber = 0;
+            }
+            if (count <= mailbox.lastNumber) {
+                return new Message[0];
+            }
+            return folder.getMessages(mailbox.lastNumber + 1, count);
+        }
+    }
+
+    private static MessageDigest createMD5Digest() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("MD5"); // $NON-NLS-1$
+    }
+
+    /**
+     * @return a key which identifies the mailbox and the settings used to connect to it;
+     * it contains a hash of the password, not the password itself
+     */
+    String getMailboxKey() {
+        StringBuilder sb = new StringBuilder(toString());
+        sb.setLength(sb.lastIndexOf("[")); // remove the number of messages
+        sb.append(" password=").append(JOrphanUtils.sha1Hex(getPassword())); // $NON-NLS-1$
+        sb.append(isUseSSL() ? " ssl" : "").append(isUseStartTLS() ? " starttls" : ""); // $NON-NLS-1$ $NON-NLS-2$
+        sb.append(isEnforceStartTLS() ? " enforce" : "").append(isTrustAllCerts() ? " trustall" : ""); // $NON-NLS-1$ $NON-NLS-2$
+        if (isUseLocalTrustStore()) {
+            sb.append(" truststore=").append(getTrustStoreToUse()); // $NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
     private void appendMessageData(SampleResult child, Message message)
             throws MessagingException, IOException {
-        StringBuilder cdata = new StringBuilder();
+        StringBuilder cdata = appendEnvelope(new StringBuilder(), message);
+        cdata.append(NEW_LINE);
+        Object content = message.getContent();
+        if (content instanceof MimeMultipart) {
+            appendMultiPart(child, cdata, (MimeMultipart) content);
+        } else if (content instanceof InputStream){
+            child.setResponseData(IOUtils.toByteArray((InputStream) content));
+        } else {
+            cdata.append(content);
+            child.setResponseData(cdata.toString(),child.getDataEncodingNoDefault());
+        }
+    }
+
+    /**
+     * Appends the Date, To, From and Subject of the message; these are all
+     * part of the envelope, so do not need the message body to be fetched.
+     */
+    private StringBuilder appendEnvelope(StringBuilder cdata, Message message)
+            throws MessagingException {
         cdata.append("Date: "); // $NON-NLS-1$
         cdata.append(message.getSentDate());// TODO - use a different format here?
         cdata.append(NEW_LINE);
@@ -332,17 +604,7 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
         cdata.append("Subject: "); // $NON-NLS-1$
         cdata.append(message.getSubject());
         cdata.append(NEW_LINE);
-
-        cdata.append(NEW_LINE);
-        Object content = message.getContent();
-        if (content instanceof MimeMultipart) {
-            appendMultiPart(child, cdata, (MimeMultipart) content);
-        } else if (content instanceof InputStream){
-            child.setResponseData(IOUtils.toByteArray((InputStream) content));
-        } else {
-            cdata.append(content);
-            child.setResponseData(cdata.toString(),child.getDataEncodingNoDefault());
-        }
+        return cdata;
     }
 
     private void appendMultiPart(SampleResult child, StringBuilder cdata,
@@ -538,6 +800,53 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
         setProperty(STORE_MIME_MESSAGE, storeMimeMessage, false);
     }
 
+    /**
+     * @return Whether or not to keep the connection to the mail server open
+     *         for later samples in the same thread
+     */
+    public boolean isKeepAlive() {
+        return getPropertyAsBoolean(KEEP_ALIVE, false);
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        setProperty(KEEP_ALIVE, keepAlive, false);
+    }
+
+    /**
+     * @return Whether or not to only read messages which have not been read
+     *         by an earlier sample in the same thread
+     */
+    public boolean isNewMessagesOnly() {
+        return getPropertyAsBoolean(NEW_MESSAGES_ONLY, false);
+    }
+
+    public void setNewMessagesOnly(boolean newMessagesOnly) {
+        setProperty(NEW_MESSAGES_ONLY, newMessagesOnly, false);
+    }
+
+    /**
+     * @return Whether or not to fetch only the message headers, and not the body
+     */
+    public boolean isHeadersOnly() {
+        return getPropertyAsBoolean(HEADERS_ONLY, false);
+    }
+
+    public void setHeadersOnly(boolean headersOnly) {
+        setProperty(HEADERS_ONLY, headersOnly, false);
+    }
+
+    /**
+     * @return Whether or not to store the MD5 hash of the message instead of
+     *         the message itself
+     */
+    public boolean isMD5() {
+        return getPropertyAsBoolean(MD5, false);
+    }
+
+    public void setMD5(boolean md5) {
+        setProperty(MD5, md5, false);
+    }
+
     @Override
     public String toString(){
         StringBuilder sb = new StringBuilder();
@@ -570,6 +879,23 @@ public class MailReaderSampler extends AbstractSampler implements Interruptible
         return wasbusy;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void threadStarted() {
+    }
+
+    /**
+     * Closes the connections kept open by the thread.
+     */
+    public void threadFinished() {
+        Map<String, Mailbox> mailboxes = MAILBOXES.get();
+        for (Mailbox mailbox : mailboxes.values()) {
+            mailbox.close();
+        }
+        mailboxes.clear();
+    }
+
     /**
      * @see org.apache.jmeter.samplers.AbstractSampler#applies(org.apache.jmeter.config.ConfigTestElement)
      */
@@ -74,6 +74,14 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
 
     private JCheckBox storeMimeMessageBox;
 
+    private JCheckBox keepAliveBox;
+
+    private JCheckBox newMessagesOnlyBox;
+
+    private JCheckBox headersOnlyBox;
+
+    private JCheckBox md5Box;
+
     // Labels - don't make these static, else language change will not work
 
     private final String ServerTypeLabel = JMeterUtils.getResString("mail_reader_server_type");// $NON-NLS-1$
@@ -96,6 +104,14 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
 
     private final String STOREMIME = JMeterUtils.getResString("mail_reader_storemime");// $NON-NLS-1$
 
+    private final String KeepAliveLabel = JMeterUtils.getResString("use_keepalive");// $NON-NLS-1$
+
+    private final String NewMessagesOnlyLabel = JMeterUtils.getResString("mail_reader_new_only");// $NON-NLS-1$
+
+    private final String HeadersOnlyLabel = JMeterUtils.getResString("mail_reader_headers_only");// $NON-NLS-1$
+
+    private final String MD5Label = JMeterUtils.getResString("response_save_as_md5");// $NON-NLS-1$
+
     private static final String INBOX = "INBOX"; // $NON-NLS-1$
     
     private SecuritySettingsPanel securitySettingsPanel;
@@ -130,6 +146,10 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
         }
         deleteBox.setSelected(mrs.getDeleteMessages());
         storeMimeMessageBox.setSelected(mrs.isStoreMimeMessage());
+        keepAliveBox.setSelected(mrs.isKeepAlive());
+        newMessagesOnlyBox.setSelected(mrs.isNewMessagesOnly());
+        headersOnlyBox.setSelected(mrs.isHeadersOnly());
+        md5Box.setSelected(mrs.isMD5());
         securitySettingsPanel.configure(element);
         super.configure(element);
     }
@@ -165,6 +185,10 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
         }
         mrs.setDeleteMessages(deleteBox.isSelected());
         mrs.setStoreMimeMessage(storeMimeMessageBox.isSelected());
+        mrs.setKeepAlive(keepAliveBox.isSelected());
+        mrs.setNewMessagesOnly(newMessagesOnlyBox.isSelected());
+        mrs.setHeadersOnly(headersOnlyBox.isSelected());
+        mrs.setMD5(md5Box.isSelected());
         
         securitySettingsPanel.modifyTestElement(te);
     }
@@ -230,6 +254,14 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
         deleteBox = new JCheckBox(DeleteLabel);
 
         storeMimeMessageBox = new JCheckBox(STOREMIME);
+
+        keepAliveBox = new JCheckBox(KeepAliveLabel);
+
+        newMessagesOnlyBox = new JCheckBox(NewMessagesOnlyLabel);
+
+        headersOnlyBox = new JCheckBox(HeadersOnlyLabel);
+
+        md5Box = new JCheckBox(MD5Label);
         
         securitySettingsPanel = new SecuritySettingsPanel();
         
@@ -239,6 +271,10 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
         settings.add(numMessagesPanel);
         settings.add(deleteBox);
         settings.add(storeMimeMessageBox);
+        settings.add(headersOnlyBox);
+        settings.add(md5Box);
+        settings.add(newMessagesOnlyBox);
+        settings.add(keepAliveBox);
         settings.add(securitySettingsPanel);
 
         add(makeTitlePanel(), BorderLayout.NORTH);
@@ -288,6 +324,10 @@ public class MailReaderSamplerGui extends AbstractSamplerGui implements ActionLi
         allMessagesButton.setSelected(true);
         deleteBox.setSelected(false);
         storeMimeMessageBox.setSelected(false);
+        keepAliveBox.setSelected(false);
+        newMessagesOnlyBox.setSelected(false);
+        headersOnlyBox.setSelected(false);
+        md5Box.setSelected(false);
         folderBox.setText(INBOX);
         serverTypeBox.setText(MailReaderSampler.DEFAULT_PROTOCOL);
         passwordBox.setText("");// $NON-NLS-1$
@@ -25,8 +25,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.mail.AuthenticationFailedException;
@@ -43,13 +45,16 @@ import javax.mail.internet.InternetAddress;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.protocol.smtp.sampler.gui.SecuritySettingsPanel;
 import org.apache.jmeter.protocol.smtp.sampler.protocol.SendMailCommand;
+import org.apache.jmeter.protocol.smtp.sampler.protocol.SmtpConnection;
 import org.apache.jmeter.protocol.smtp.sampler.tools.CounterOutputStream;
 import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
@@ -60,7 +65,7 @@ import org.apache.log.Logger;
  * values from/to the sampler, not from/to the message-object. Therefore, all
  * these methods are also present in class SendMailCommand.
  */
-public class SmtpSampler extends AbstractSampler {
+public class SmtpSampler extends AbstractSampler implements ThreadListener {
 
     private static final long serialVersionUID = 1L;
 
@@ -96,11 +101,27 @@ public class SmtpSampler extends AbstractSampler {
     public final static String USE_EML              = "SMTPSampler.use_eml"; // $NON-NLS-1$
     public final static String EML_MESSAGE_TO_SEND  = "SMTPSampler.emlMessageToSend"; // $NON-NLS-1$
     public static final String ENABLE_DEBUG         = "SMTPSampler.enableDebug"; // $NON-NLS-1$
+    public static final String KEEP_ALIVE           = "SMTPSampler.keepAlive"; // $NON-NLS-1$
+    public static final String KEEP_ALIVE_MESSAGES  = "SMTPSampler.keepAliveMessages"; // $NON-NLS-1$
+    public static final String KEEP_ALIVE_TIME      = "SMTPSampler.keepAliveTime"; // $NON-NLS-1$
+    public static final String MESSAGES_PER_SAMPLE  = "SMTPSampler.messagesPerSample"; // $NON-NLS-1$
 
     // Used to separate attachment file names in JMX fields - do not change!
     public static final String FILENAME_SEPARATOR = ";";
     //-JMX file attribute names
 
+    // Connections idle for longer than this (ms) are checked with NOOP before reuse
+    private static final long CHECK_IDLE =
+        JMeterUtils.getPropDefault("smtp.keepalive.check_idle", 5000); // $NON-NLS-1$
+
+    // Connections kept open by the current thread, by connection key
+    private static final ThreadLocal<Map<String, SmtpConnection>> CONNECTIONS =
+        new ThreadLocal<Map<String, SmtpConnection>>() {
+            @Override
+            protected Map<String, SmtpConnection> initialValue() {
+                return new HashMap<String, SmtpConnection>();
+            }
+        };
 
     public SmtpSampler() {
     }
@@ -118,6 +139,9 @@ public class SmtpSampler extends AbstractSampler {
         SampleResult res = new SampleResult();
         res.setSampleLabel(getName());
         boolean isOK = false; // Did sample succeed?
+        final boolean keepAlive = getPropertyAsBoolean(KEEP_ALIVE);
+        final int messageCount = Math.max(1, getPropertyAsInt(MESSAGES_PER_SAMPLE, 1));
+        String connectionKey = null;
         SendMailCommand instance = new SendMailCommand();
         instance.setSmtpServer(getPropertyAsString(SmtpSampler.SERVER));
         instance.setSmtpPort(getPropertyAsString(SmtpSampler.SERVER_PORT));
@@ -192,19 +216,27 @@ public class SmtpSampler extends AbstractSampler {
             instance.setSynchronousMode(true);
 
             instance.setHeaderFields((CollectionProperty)getProperty(SmtpSampler.HEADER_FIELDS));
+
+            instance.setKeepAlive(keepAlive);
+            if (keepAlive) {
+                connectionKey = instance.getConnectionKey();
+                instance.setConnection(getLiveConnection(connectionKey));
+            }
+
             message = instance.prepareMessage();
 
             if (getPropertyAsBoolean(MESSAGE_SIZE_STATS)) {
                 // calculate message size
                 CounterOutputStream cs = new CounterOutputStream();
                 message.writeTo(cs);
-                res.setBytes(cs.getCount());
+                res.setBytes(cs.getCount() * messageCount);
             } else {
                 res.setBytes(-1);
             }
 
         } catch (Exception ex) {
             log.warn("Error while preparing message", ex);
+            releaseConnection(connectionKey, instance.getConnection());
             res.setResponseCode("500");
             res.setResponseMessage(ex.toString());
             return res;
@@ -227,16 +259,23 @@ public class SmtpSampler extends AbstractSampler {
         res.sampleStart();
 
         try {
-            instance.execute(message);
+            instance.execute(message, messageCount);
 
+            res.setLatency(instance.getConnectTime() + instance.getAuthTime());
+            res.setResponseHeaders(getTimings(instance, messageCount));
             res.setResponseCodeOK();
             /*
              * TODO if(instance.getSMTPStatusCode == 250)
              * res.setResponseMessage("Message successfully sent!"); else
              * res.setResponseMessage(instance.getSMTPStatusCodeIncludingMessage);
              */
-            res.setResponseMessage("Message successfully sent!\n"
-                    + instance.getServerResponse());
+            if (messageCount == 1) {
+                res.setResponseMessage("Message successfully sent!\n"
+                        + instance.getServerResponse());
+            } else {
+                res.setResponseMessage(messageCount + " messages successfully sent!\n"
+                        + instance.getServerResponse());
+            }
             isOK = true;
         }
         // username / password incorrect
@@ -277,6 +316,10 @@ public class SmtpSampler extends AbstractSampler {
 
         res.sampleEnd();
 
+        if (keepAlive) {
+            releaseConnection(connectionKey, instance.getConnection());
+        }
+
         try {
             // process the sampler result
             InputStream is = message.getInputStream();
@@ -300,6 +343,53 @@ public class SmtpSampler extends AbstractSampler {
         return res;
     }
 
+    /**
+     * Gets a connection kept open by an earlier sample in this thread.
+     *
+     * @param key the connection key
+     * @return the connection, or null if there is none or it is no longer usable
+     */
+    private SmtpConnection getLiveConnection(String key) {
+        SmtpConnection connection = CONNECTIONS.get().remove(key);
+        if (connection != null && !connection.isUsable(CHECK_IDLE)) {
+            log.debug("Discarding closed connection to " + getPropertyAsString(SERVER));
+            connection.close();
+            connection = null;
+        }
+        return connection;
+    }
+
+    /**
+     * Keeps the connection open for the next sample, unless it has reached
+     * the maximum number of messages or the maximum time.
+     *
+     * @param key the connection key
+     * @param connection the open connection, may be null
+     */
+    private void releaseConnection(String key, SmtpConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        final int maxMessages = getPropertyAsInt(KEEP_ALIVE_MESSAGES, 0);
+        final long maxTime = getPropertyAsLong(KEEP_ALIVE_TIME, 0) * 1000;
+        if ((maxMessages > 0 && connection.getMessageCount() >= maxMessages)
+                || (maxTime > 0 && connection.getAge() >= maxTime)) {
+            connection.close();
+        } else {
+            CONNECTIONS.get().put(key, connection);
+        }
+    }
+
+    private String getTimings(SendMailCommand instance, int messageCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Connection-Reused: ").append(instance.isConnectionReused()).append("\n"); // $NON-NLS-1$
+        sb.append("Connect-Time: ").append(instance.getConnectTime()).append("\n"); // $NON-NLS-1$
+        sb.append("Auth-Time: ").append(instance.getAuthTime()).append("\n"); // $NON-NLS-1$
+        sb.append("Data-Time: ").append(instance.getDataTime()).append("\n"); // $NON-NLS-1$
+        sb.append("Messages: ").append(messageCount).append("\n"); // $NON-NLS-1$
+        return sb.toString();
+    }
+
     private String getRequestHeaders(Message message) throws MessagingException {
         StringBuilder sb = new StringBuilder();
         @SuppressWarnings("unchecked") // getAllHeaders() is not yet genericised
@@ -383,6 +473,23 @@ public class SmtpSampler extends AbstractSampler {
     }
     
 
+    /**
+     * {@inheritDoc}
+     */
+    public void threadStarted() {
+    }
+
+    /**
+     * Closes the connections kept open by the thread.
+     */
+    public void threadFinished() {
+        Map<String, SmtpConnection> connections = CONNECTIONS.get();
+        for (SmtpConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
     /**
      * @see org.apache.jmeter.samplers.AbstractSampler#applies(org.apache.jmeter.config.ConfigTestElement)
      */
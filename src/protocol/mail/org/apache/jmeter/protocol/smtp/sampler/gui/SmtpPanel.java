@@ -94,6 +94,10 @@ public class SmtpPanel extends JPanel {
     private JCheckBox cbMessageSizeStats;
     private JCheckBox cbEnableDebug;
     private JCheckBox cbUseEmlMessage;
+    private JCheckBox cbKeepAlive;
+    private JTextField tfKeepAliveMessages;
+    private JTextField tfKeepAliveTime;
+    private JTextField tfMessagesPerSample;
 
     private JPanel headerFieldsPanel;
     private JButton addHeaderFieldButton;
@@ -351,6 +355,60 @@ public class SmtpPanel extends JPanel {
         cbEnableDebug.setSelected(selected);
     }
 
+    /**
+     * Returns if the connection should be kept open for later samples (checkbox)
+     *
+     * @return true if the connection is kept open
+     */
+    public boolean isKeepAlive() {
+        return cbKeepAlive.isSelected();
+    }
+
+    public void setKeepAlive(boolean selected) {
+        cbKeepAlive.setSelected(selected);
+        tfKeepAliveMessages.setEnabled(selected);
+        tfKeepAliveTime.setEnabled(selected);
+    }
+
+    /**
+     * Returns the maximum number of messages sent over a kept-alive connection
+     *
+     * @return maximum number of messages, empty for no limit
+     */
+    public String getKeepAliveMessages() {
+        return tfKeepAliveMessages.getText();
+    }
+
+    public void setKeepAliveMessages(String messages) {
+        tfKeepAliveMessages.setText(messages);
+    }
+
+    /**
+     * Returns the maximum time in seconds that a connection is kept open
+     *
+     * @return maximum time, empty for no limit
+     */
+    public String getKeepAliveTime() {
+        return tfKeepAliveTime.getText();
+    }
+
+    public void setKeepAliveTime(String seconds) {
+        tfKeepAliveTime.setText(seconds);
+    }
+
+    /**
+     * Returns the number of messages sent by each sample
+     *
+     * @return number of messages, empty for 1
+     */
+    public String getMessagesPerSample() {
+        return tfMessagesPerSample.getText();
+    }
+
+    public void setMessagesPerSample(String messages) {
+        tfMessagesPerSample.setText(messages);
+    }
+
 
 
     /**
@@ -536,6 +594,17 @@ public class SmtpPanel extends JPanel {
         cbMessageSizeStats = new JCheckBox(JMeterUtils.getResString("smtp_messagesize")); // $NON-NLS-1$
         cbEnableDebug = new JCheckBox(JMeterUtils.getResString("smtp_enabledebug")); // $NON-NLS-1$
         cbUseEmlMessage = new JCheckBox(JMeterUtils.getResString("smtp_eml")); // $NON-NLS-1$
+        cbKeepAlive = new JCheckBox(JMeterUtils.getResString("use_keepalive")); // $NON-NLS-1$
+        cbKeepAlive.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                cbKeepAliveActionPerformed(evt);
+            }
+        });
+        tfKeepAliveMessages = new JTextField(6);
+        tfKeepAliveTime = new JTextField(6);
+        tfMessagesPerSample = new JTextField(6);
+        tfKeepAliveMessages.setEnabled(false);
+        tfKeepAliveTime.setEnabled(false);
 
         attachmentFileChooser = new JFileChooser();
         emlFileChooser = new JFileChooser();
@@ -872,6 +941,34 @@ public class SmtpPanel extends JPanel {
         gridBagConstraints.gridy = 0;
         panelAdditionalSettings.add(cbEnableDebug, gridBagConstraints);
 
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 1;
+        panelAdditionalSettings.add(new JLabel(JMeterUtils.getResString("smtp_messages_per_sample")), gridBagConstraints); // $NON-NLS-1$
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 1;
+        panelAdditionalSettings.add(tfMessagesPerSample, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 2;
+        panelAdditionalSettings.add(cbKeepAlive, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 3;
+        panelAdditionalSettings.add(new JLabel(JMeterUtils.getResString("smtp_keepalive_messages")), gridBagConstraints); // $NON-NLS-1$
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 3;
+        panelAdditionalSettings.add(tfKeepAliveMessages, gridBagConstraints);
+
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 4;
+        panelAdditionalSettings.add(new JLabel(JMeterUtils.getResString("smtp_keepalive_time")), gridBagConstraints); // $NON-NLS-1$
+
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 4;
+        panelAdditionalSettings.add(tfKeepAliveTime, gridBagConstraints);
+
         gridBagConstraintsMain.gridx = 0;
         gridBagConstraintsMain.gridy = 7;
         add(panelAdditionalSettings, gridBagConstraintsMain);
@@ -923,6 +1020,16 @@ public class SmtpPanel extends JPanel {
         attachmentFileChooser.showOpenDialog(this);
     }
 
+    /**
+     * ActionPerformed-method for checkbox "keepAlive"
+     *
+     * @param evt
+     *            ActionEvent to be handled
+     */
+    private void cbKeepAliveActionPerformed(ActionEvent evt) {
+        setKeepAlive(cbKeepAlive.isSelected());
+    }
+
     private void cbUseEmlMessageActionPerformed(ActionEvent evt) {
         if (cbUseEmlMessage.isSelected()) {
             tfEmlMessage.setEnabled(true);
@@ -982,6 +1089,10 @@ public class SmtpPanel extends JPanel {
         cbMessageSizeStats.setSelected(false);
         cbEnableDebug.setSelected(false);
         cbUseEmlMessage.setSelected(false);
+        setKeepAlive(false);
+        tfKeepAliveMessages.setText("");
+        tfKeepAliveTime.setText("");
+        tfMessagesPerSample.setText("");
         cbUseAuth.setSelected(false);
         taMessage.setText("");
         tfAttachment.setText("");
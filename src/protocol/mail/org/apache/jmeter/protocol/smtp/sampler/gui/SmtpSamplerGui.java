@@ -99,6 +99,10 @@ public class SmtpSamplerGui extends AbstractSamplerGui {
 
         smtpPanel.setMessageSizeStatistic(element.getPropertyAsBoolean(SmtpSampler.MESSAGE_SIZE_STATS));
         smtpPanel.setEnableDebug(element.getPropertyAsBoolean(SmtpSampler.ENABLE_DEBUG));
+        smtpPanel.setMessagesPerSample(element.getPropertyAsString(SmtpSampler.MESSAGES_PER_SAMPLE));
+        smtpPanel.setKeepAlive(element.getPropertyAsBoolean(SmtpSampler.KEEP_ALIVE));
+        smtpPanel.setKeepAliveMessages(element.getPropertyAsString(SmtpSampler.KEEP_ALIVE_MESSAGES));
+        smtpPanel.setKeepAliveTime(element.getPropertyAsString(SmtpSampler.KEEP_ALIVE_TIME));
 
         super.configure(element);
     }
@@ -148,6 +152,10 @@ public class SmtpSamplerGui extends AbstractSamplerGui {
 
         te.setProperty(SmtpSampler.MESSAGE_SIZE_STATS, Boolean.toString(smtpPanel.isMessageSizeStatistics()));
         te.setProperty(SmtpSampler.ENABLE_DEBUG, Boolean.toString(smtpPanel.isEnableDebug()));
+        te.setProperty(SmtpSampler.MESSAGES_PER_SAMPLE, smtpPanel.getMessagesPerSample(), "");
+        te.setProperty(SmtpSampler.KEEP_ALIVE, smtpPanel.isKeepAlive(), false);
+        te.setProperty(SmtpSampler.KEEP_ALIVE_MESSAGES, smtpPanel.getKeepAliveMessages(), "");
+        te.setProperty(SmtpSampler.KEEP_ALIVE_TIME, smtpPanel.getKeepAliveTime(), "");
 
         te.setProperty(smtpPanel.getHeaderFields());
     }
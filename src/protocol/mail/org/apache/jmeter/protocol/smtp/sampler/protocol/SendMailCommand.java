@@ -32,6 +32,8 @@ import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.NoSuchProviderException;
+import javax.mail.Provider;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -44,7 +46,9 @@ import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.testelement.property.CollectionProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
 
 /**
@@ -94,6 +98,20 @@ public class SendMailCommand {
 
     private Session session;
 
+    // connection to use for the next execute(), or kept open by the last one
+    private SmtpConnection connection;
+
+    // if true, the connection is left open after the message has been sent
+    private boolean keepAlive;
+
+    private boolean connectionReused;
+
+    private long connectTime;
+
+    private long authTime;
+
+    private long dataTime;
+
     private StringBuilder serverResponse = new StringBuilder(); // TODO this is not populated currently
 
     /** send plain body, i.e. not multipart/mixed */
@@ -117,60 +135,12 @@ public class SendMailCommand {
      */
     public Message prepareMessage() throws MessagingException, IOException {
 
-        Properties props = new Properties();
-
-        String protocol = getProtocol();
-
-        // set properties using JAF
-        props.setProperty("mail." + protocol + ".host", smtpServer);
-        props.setProperty("mail." + protocol + ".port", getPort());
-        props.setProperty("mail." + protocol + ".auth", Boolean.toString(useAuthentication));
-
-        if (enableDebug) {
-            props.setProperty("mail.debug","true");
-        }
-
-        if (useStartTLS) {
-            props.setProperty("mail.smtp.starttls.enable", "true");
-            if (enforceStartTLS){
-                // Requires JavaMail 1.4.2+
-                props.setProperty("mail.smtp.starttls.require", "true");
-            }
-        }
-
-        if (trustAllCerts) {
-            if (useSSL) {
-                props.setProperty("mail.smtps.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
-                props.setProperty("mail.smtps.ssl.socketFactory.fallback", "false");
-            } else if (useStartTLS) {
-                props.setProperty("mail.smtp.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
-                props.setProperty("mail.smtp.ssl.socketFactory.fallback", "false");
-            }
-        } else if (useLocalTrustStore){
-            File truststore = new File(trustStoreToUse);
-            logger.info("load local truststore - try to load truststore from: "+truststore.getAbsolutePath());
-            if(!truststore.exists()){
-                logger.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath());
-                truststore = new File(FileServer.getFileServer().getBaseDir(), trustStoreToUse);
-                logger.info("load local truststore -Attempting to read truststore from:  "+truststore.getAbsolutePath());
-                if(!truststore.exists()){
-                    logger.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath() + ". Local truststore not available, aborting execution.");
-                    throw new IOException("Local truststore file not found. Also not available under : " + truststore.getAbsolutePath());
-                }
-            }
-            if (useSSL) {
-                // Requires JavaMail 1.4.2+
-                props.put("mail.smtps.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
-                props.put("mail.smtps.ssl.socketFactory.fallback", "false");
-            } else if (useStartTLS) {
-                // Requires JavaMail 1.4.2+
-                props.put("mail.smtp.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
-                props.put("mail.smtp.ssl.socketFactory.fallback", "false");
-            }
+        if (connection != null) {
+            session = connection.getSession();
+        } else {
+            session = createSession();
         }
 
-        session = Session.getInstance(props, null);
-        
         Message message;
 
         if (sendEmlMessage) {
@@ -247,6 +217,77 @@ public class SendMailCommand {
         return message;
     }
 
+    /**
+     * Creates the Session, i.e. sets properties such as protocol, authentication, etc.
+     *
+     * @return the new Session
+     * @throws IOException if the local truststore cannot be found
+     * @throws NoSuchProviderException
+     */
+    private Session createSession() throws IOException, NoSuchProviderException {
+
+        Properties props = new Properties();
+
+        String protocol = getProtocol();
+
+        // set properties using JAF
+        props.setProperty("mail." + protocol + ".host", smtpServer);
+        props.setProperty("mail." + protocol + ".port", getPort());
+        props.setProperty("mail." + protocol + ".auth", Boolean.toString(useAuthentication));
+
+        if (enableDebug) {
+            props.setProperty("mail.debug","true");
+        }
+
+        if (useStartTLS) {
+            props.setProperty("mail.smtp.starttls.enable", "true");
+            if (enforceStartTLS){
+                // Requires JavaMail 1.4.2+
+                props.setProperty("mail.smtp.starttls.require", "true");
+            }
+        }
+
+        if (trustAllCerts) {
+            if (useSSL) {
+                props.setProperty("mail.smtps.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
+                props.setProperty("mail.smtps.ssl.socketFactory.fallback", "false");
+            } else if (useStartTLS) {
+                props.setProperty("mail.smtp.ssl.socketFactory.class", TRUST_ALL_SOCKET_FACTORY);
+                props.setProperty("mail.smtp.ssl.socketFactory.fallback", "false");
+            }
+        } else if (useLocalTrustStore){
+            File truststore = new File(trustStoreToUse);
+            logger.info("load local truststore - try to load truststore from: "+truststore.getAbsolutePath());
+            if(!truststore.exists()){
+                logger.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath());
+                truststore = new File(FileServer.getFileServer().getBaseDir(), trustStoreToUse);
+                logger.info("load local truststore -Attempting to read truststore from:  "+truststore.getAbsolutePath());
+                if(!truststore.exists()){
+                    logger.info("load local truststore -Failed to load truststore from: "+truststore.getAbsolutePath() + ". Local truststore not available, aborting execution.");
+                    throw new IOException("Local truststore file not found. Also not available under : " + truststore.getAbsolutePath());
+                }
+            }
+            if (useSSL) {
+                // Requires JavaMail 1.4.2+
+                props.put("mail.smtps.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
+                props.put("mail.smtps.ssl.socketFactory.fallback", "false");
+            } else if (useStartTLS) {
+                // Requires JavaMail 1.4.2+
+                props.put("mail.smtp.ssl.socketFactory", new LocalTrustStoreSSLSocketFactory(truststore));
+                props.put("mail.smtp.ssl.socketFactory.fallback", "false");
+            }
+        }
+
+        Session newSession = Session.getInstance(props, null);
+        if (keepAlive) {
+            // Use a transport which records the end of the handshake, so that connect and auth can be timed separately
+            newSession.setProvider(new Provider(Provider.Type.TRANSPORT, protocol,
+                    useSSL ? TimedSMTPSSLTransport.class.getName() : TimedSMTPTransport.class.getName(),
+                    "Apache Software Foundation", JMeterUtils.getJMeterVersion())); // $NON-NLS-1$
+        }
+        return newSession;
+    }
+
     /**
      * Sends message to mailserver, waiting for delivery if using synchronous mode.
      *
@@ -257,32 +298,105 @@ public class SendMailCommand {
      * @throws InterruptedException
      */
     public void execute(Message message) throws MessagingException, IOException, InterruptedException {
+        execute(message, 1);
+    }
 
-        Transport tr = session.getTransport(getProtocol());
-        SynchronousTransportListener listener = null;
-
-        if (synchronousMode) {
-            listener = new SynchronousTransportListener();
-            tr.addTransportListener(listener);
+    /**
+     * Sends message to mailserver one or more times over the same connection,
+     * waiting for delivery of each if using synchronous mode.
+     * <p>
+     * If a connection has been set with {@link #setConnection(SmtpConnection)}, it is used,
+     * otherwise a new connection is opened. The connection is closed afterwards, unless
+     * keep-alive is set and the messages were sent successfully, in which case it can be
+     * obtained with {@link #getConnection()}.
+     *
+     * @param message
+     *            Message prior prepared by prepareMessage()
+     * @param count
+     *            the number of times to send the message; each copy after the first
+     *            gets a new Message-ID
+     * @throws MessagingException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void execute(Message message, int count) throws MessagingException, IOException, InterruptedException {
+        connectTime = 0;
+        authTime = 0;
+        dataTime = 0;
+        connectionReused = connection != null;
+        if (connection == null) {
+            connection = connect();
+        }
+        boolean sent = false;
+        try {
+            Transport tr = connection.getTransport();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    message.saveChanges(); // new Message-ID
+                }
+                send(tr, message);
+            }
+            dataTime = toMillis(System.nanoTime() - start);
+            connection.messagesSent(count);
+            sent = true;
+        } finally {
+            if (!sent || !keepAlive) {
+                connection.close();
+                connection = null;
+            }
         }
 
+        logger.debug("message sent");
+        return;
+    }
+
+    /**
+     * Opens and authenticates a new connection, recording the connect and auth times.
+     */
+    private SmtpConnection connect() throws MessagingException {
+        Transport tr = session.getTransport(getProtocol());
+
+        final long start = System.nanoTime();
         if (useAuthentication) {
             tr.connect(smtpServer, username, password);
         } else {
             tr.connect();
         }
+        final long end = System.nanoTime();
+
+        long handshakeEnd = end;
+        if (tr instanceof TimedSMTPTransport) {
+            handshakeEnd = ((TimedSMTPTransport) tr).getHandshakeEnd();
+        }
+        connectTime = toMillis(handshakeEnd - start);
+        authTime = toMillis(end - handshakeEnd);
+        return new SmtpConnection(session, tr);
+    }
 
-        tr.sendMessage(message, message.getAllRecipients());
+    private void send(Transport tr, Message message) throws MessagingException, InterruptedException {
+        SynchronousTransportListener listener = null;
 
         if (synchronousMode) {
-            listener.attend(); // listener cannot be null here
+            listener = new SynchronousTransportListener();
+            tr.addTransportListener(listener);
         }
 
-        tr.close();
-        logger.debug("transport closed");
+        try {
+            tr.sendMessage(message, message.getAllRecipients());
 
-        logger.debug("message sent");
-        return;
+            if (synchronousMode) {
+                listener.attend(); // listener cannot be null here
+            }
+        } finally {
+            if (listener != null) {
+                tr.removeTransportListener(listener);
+            }
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000L;
     }
 
     /**
@@ -759,6 +873,92 @@ public class SendMailCommand {
         this.plainBody = plainBody;
     }
 
+    /**
+     * Sets the connection to be used by the next execute(); it must have been
+     * opened by a command with the same {@link #getConnectionKey() connection key}.
+     *
+     * @param connection
+     *            an open connection, or null to open a new one
+     */
+    public void setConnection(SmtpConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Returns the connection that was kept open by the last execute()
+     *
+     * @return the open connection, or null if it has been closed
+     */
+    public SmtpConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Sets whether the connection is kept open after the message has been sent
+     *
+     * @param keepAlive
+     *            Should the connection be kept open?
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns a key which identifies the connection settings, so that an open
+     * connection is only used for messages with the same settings.
+     * The key contains a hash of the password, not the password itself.
+     *
+     * @return the connection key
+     */
+    public String getConnectionKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getProtocol()).append("://"); // $NON-NLS-1$
+        if (useAuthentication) {
+            sb.append(username).append('@');
+        }
+        sb.append(smtpServer).append(':').append(getPort());
+        if (useAuthentication) {
+            sb.append(" password=").append(JOrphanUtils.sha1Hex(password)); // $NON-NLS-1$
+        }
+        sb.append(useStartTLS ? " starttls" : "").append(enforceStartTLS ? " enforce" : ""); // $NON-NLS-1$ $NON-NLS-2$
+        sb.append(trustAllCerts ? " trustall" : ""); // $NON-NLS-1$
+        if (useLocalTrustStore) {
+            sb.append(" truststore=").append(trustStoreToUse); // $NON-NLS-1$
+        }
+        sb.append(enableDebug ? " debug" : ""); // $NON-NLS-1$
+        return sb.toString();
+    }
+
+    /**
+     * @return true if the last execute() used a connection that was already open
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    /**
+     * @return the time (ms) taken by the last execute() to connect, including the
+     *         greeting, EHLO and STARTTLS; 0 if the connection was reused
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return the time (ms) taken by the last execute() to authenticate; 0 if the
+     *         connection was reused
+     */
+    public long getAuthTime() {
+        return authTime;
+    }
+
+    /**
+     * @return the time (ms) taken by the last execute() to send the messages
+     */
+    public long getDataTime() {
+        return dataTime;
+    }
+
     public String getServerResponse() {
         return this.serverResponse.toString();
     }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.smtp.sampler.protocol;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * A connected (and if necessary authenticated) Transport, together with the
+ * Session it belongs to, which can be kept open and used by later samples.
+ * <p>
+ * Instances are not thread-safe; they are only used by the thread which created them.
+ */
+public class SmtpConnection {
+
+    private static final Logger logger = LoggingManager.getLoggerForClass();
+
+    private final Session session;
+
+    private final Transport transport;
+
+    private final long opened = System.currentTimeMillis();
+
+    private long lastUsed = opened;
+
+    private int messageCount;
+
+    SmtpConnection(Session session, Transport transport) {
+        this.session = session;
+        this.transport = transport;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the number of messages sent over the connection
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return how long (ms) the connection has been open
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - opened;
+    }
+
+    void messagesSent(int count) {
+        messageCount += count;
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks whether the connection can still be used.
+     * If it has been idle for longer than checkIdle, the server is sent a NOOP.
+     *
+     * @param checkIdle the idle time (ms) after which the connection is checked
+     * @return true if the connection can be used
+     */
+    public boolean isUsable(long checkIdle) {
+        if (System.currentTimeMillis() - lastUsed <= checkIdle) {
+            return true;
+        }
+        return transport.isConnected(); // sends NOOP
+    }
+
+    /**
+     * Closes the transport, ignoring any error.
+     */
+    public void close() {
+        try {
+            transport.close();
+            logger.debug("transport closed");
+        } catch (MessagingException e) {
+            logger.debug("Error closing transport " + e.toString());
+        }
+    }
+}
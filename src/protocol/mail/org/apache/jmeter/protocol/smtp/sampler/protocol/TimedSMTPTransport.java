@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.smtp.sampler.protocol;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.URLName;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * SMTP transport which records when the connection handshake (greeting, EHLO and
+ * STARTTLS) has finished, so that the time spent authenticating can be measured
+ * separately from the time spent connecting.
+ * <p>
+ * The JavaMail SMTPTransport sends the last EHLO (or HELO) immediately before
+ * authenticating, so the time of its completion is used.
+ */
+public class TimedSMTPTransport extends SMTPTransport {
+
+    private long handshakeEnd;
+
+    public TimedSMTPTransport(Session session, URLName urlname) {
+        super(session, urlname);
+    }
+
+    protected TimedSMTPTransport(Session session, URLName urlname, String name, boolean isSSL) {
+        super(session, urlname, name, isSSL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean ehlo(String domain) throws MessagingException {
+        try {
+            return super.ehlo(domain);
+        } finally {
+            handshakeEnd = System.nanoTime();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void helo(String domain) throws MessagingException {
+        try {
+            super.helo(domain);
+        } finally {
+            handshakeEnd = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the last EHLO or HELO command completed
+     */
+    public long getHandshakeEnd() {
+        return handshakeEnd;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.system;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * A long-running process which is sent requests on its standard input,
+ * and writes a reply to each request on its standard output.
+ * <p>
+ * Each request is written as a line containing the length of the request in bytes,
+ * followed by the request itself. The process must reply with a line containing
+ * the return code and the length of the reply in bytes, separated by a space,
+ * followed by the reply itself. For example:
+ * <pre>
+ * request:  5\nhello
+ * reply:    0 8\nhi there
+ * </pre>
+ * Anything written to standard error is logged.
+ * <p>
+ * Replies are read by a separate thread, so that the caller can stop waiting
+ * after a timeout even if the output of the process is held open by one of its children.
+ */
+public class CoProcess {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    // Maximum length of the header line of a reply
+    private static final int MAX_HEADER_LENGTH = 100;
+
+    // Maximum length of a reply, so that a bad header cannot exhaust the memory
+    private static final int MAX_REPLY_LENGTH =
+        JMeterUtils.getPropDefault("system.coprocess.max_reply", 10 * 1024 * 1024); // $NON-NLS-1$
+
+    /**
+     * The reply of the process to a request.
+     */
+    public static class Reply {
+        private final int returnCode;
+
+        private final byte[] data;
+
+        // When the header of the reply was read
+        private final long headerTime;
+
+        Reply(int returnCode, byte[] data, long headerTime) {
+            this.returnCode = returnCode;
+            this.data = data;
+            this.headerTime = headerTime;
+        }
+
+        public int getReturnCode() {
+            return returnCode;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private final Process process;
+
+    private final OutputStream toProcess;
+
+    private final DataInputStream fromProcess;
+
+    private final long started;
+
+    // Reply, or the IOException which stopped the reader
+    private final BlockingQueue<Object> replies = new LinkedBlockingQueue<Object>();
+
+    private int requests = 0;
+
+    /**
+     * Start the process.
+     *
+     * @param command the command and its arguments
+     * @param directory the working directory
+     * @param env environment variables added to the environment of the process
+     * @throws IOException if the process cannot be started
+     */
+    public CoProcess(List<String> command, File directory, Map<String, String> env) throws IOException {
+        ProcessBuilder procBuild = new ProcessBuilder(command);
+        procBuild.environment().putAll(env);
+        procBuild.directory(directory);
+        process = procBuild.start();
+        started = System.currentTimeMillis();
+        toProcess = new BufferedOutputStream(process.getOutputStream());
+        fromProcess = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        final String name = command.get(0);
+        final InputStream errors = process.getErrorStream();
+        Thread errorLogger = new Thread("CoProcess stderr " + name) { // $NON-NLS-1$
+            @Override
+            public void run() {
+                BufferedReader br = null;
+                try {
+                    br = new BufferedReader(new InputStreamReader(errors));
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        log.info(name + ": " + line);
+                    }
+                } catch (IOException ignored) {
+                    // The process has ended
+                } finally {
+                    JOrphanUtils.closeQuietly(br);
+                }
+            }
+        };
+        errorLogger.setDaemon(true);
+        errorLogger.start();
+        Thread replyReader = new Thread("CoProcess reader " + name) { // $NON-NLS-1$
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        replies.add(readReply());
+                    }
+                } catch (IOException e) {
+                    replies.add(e);
+                } catch (Throwable t) { // e.g. OutOfMemoryError; the waiting sample must still be told
+                    IOException e = new IOException("Could not read reply: " + t.toString());
+                    e.initCause(t);
+                    replies.add(e);
+                }
+            }
+        };
+        replyReader.setDaemon(true);
+        replyReader.start();
+    }
+
+    /**
+     * @return true if the process has not exited (and has not been stopped)
+     */
+    public boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the time (ms since the epoch) the process was started
+     */
+    public long getStartTime() {
+        return started;
+    }
+
+    /**
+     * @return the number of requests sent to the process
+     */
+    public int getRequestCount() {
+        return requests;
+    }
+
+    /**
+     * Send a request and wait for the reply.
+     * The latency of the result is set to the time at which the reply header was read.
+     * If there is an error, the process is stopped, as it may be out of step.
+     *
+     * @param request the request
+     * @param timeout the maximum time (ms) to wait for the reply, or 0 to wait forever
+     * @param res the result, for setting the latency
+     * @return the reply
+     * @throws IOException if the request cannot be sent, or there is no valid reply in time
+     */
+    public Reply exchange(byte[] request, long timeout, SampleResult res) throws IOException {
+        requests++;
+        boolean ok = false;
+        try {
+            toProcess.write(Integer.toString(request.length).getBytes(ENCODING));
+            toProcess.write('\n');
+            toProcess.write(request);
+            toProcess.flush();
+
+            Object reply;
+            try {
+                if (timeout > 0) {
+                    reply = replies.poll(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    reply = replies.take();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for a reply");
+            }
+            if (reply == null) {
+                throw new IOException("No reply within " + timeout + "ms");
+            }
+            if (reply instanceof IOException) {
+                throw (IOException) reply;
+            }
+            Reply r = (Reply) reply;
+            res.setLatency(Math.max(0, r.headerTime - res.getStartTime()));
+            ok = true;
+            return r;
+        } finally {
+            if (!ok) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Called by the reader thread.
+     */
+    private Reply readReply() throws IOException {
+        String header = readHeader();
+        long headerTime = System.currentTimeMillis();
+        int space = header.indexOf(' ');
+        int returnCode;
+        int length;
+        try {
+            returnCode = Integer.parseInt(header.substring(0, space));
+            length = Integer.parseInt(header.substring(space + 1).trim());
+        } catch (RuntimeException e) { // NumberFormat or IndexOutOfBounds
+            throw new IOException("Invalid reply header: '" + header + "'");
+        }
+        if (length < 0) {
+            throw new IOException("Invalid reply length: " + length);
+        }
+        if (length > MAX_REPLY_LENGTH) {
+            throw new IOException("Reply length " + length + " exceeds system.coprocess.max_reply=" + MAX_REPLY_LENGTH);
+        }
+        byte[] data = new byte[length];
+        fromProcess.readFully(data);
+        return new Reply(returnCode, data, headerTime);
+    }
+
+    private String readHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = fromProcess.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Process closed its output");
+            }
+            if (header.size() >= MAX_HEADER_LENGTH) {
+                throw new IOException("Reply header is too long");
+            }
+            if (b != '\r') {
+                header.write(b);
+            }
+        }
+        return header.toString(ENCODING);
+    }
+
+    /**
+     * Close the input of the process, and stop it.
+     */
+    public void close() {
+        JOrphanUtils.closeQuietly(toProcess);
+        JOrphanUtils.closeQuietly(fromProcess);
+        process.destroy();
+    }
+}
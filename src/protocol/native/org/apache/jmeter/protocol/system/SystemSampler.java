@@ -20,6 +20,7 @@ package org.apache.jmeter.protocol.system;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -37,14 +38,19 @@ import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.testelement.property.TestElementProperty;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 /**
  * A sampler for executing a System function. 
+ * <p>
+ * In co-process mode, the command is started once per thread and kept running,
+ * and each sample sends it a request; see {@link CoProcess} for the protocol.
+ * If the process exits, it is restarted by the next sample.
  */
-public class SystemSampler extends AbstractSampler {
+public class SystemSampler extends AbstractSampler implements ThreadListener {
     private static final long serialVersionUID = 1;
     
     public static final String COMMAND = "SystemSampler.command";
@@ -59,6 +65,12 @@ public class SystemSampler extends AbstractSampler {
     
     public static final String EXPECTED_RETURN_CODE = "SystemSampler.expectedReturnCode";
 
+    public static final String CO_PROCESS = "SystemSampler.coProcess";
+
+    public static final String REQUEST = "SystemSampler.request";
+
+    public static final String TIMEOUT = "SystemSampler.timeout";
+
     /**
      * Logging
      */
@@ -70,6 +82,16 @@ public class SystemSampler extends AbstractSampler {
 
     public static final int DEFAULT_RETURN_CODE = 0;
 
+    private static final String ENCODING = "UTF-8"; // $NON-NLS-1$
+
+    // The co-processes started by this thread, keyed by directory, environment and command line
+    private static final ThreadLocal<Map<String, CoProcess>> CO_PROCESSES = new ThreadLocal<Map<String, CoProcess>>() {
+        @Override
+        protected Map<String, CoProcess> initialValue() {
+            return new HashMap<String, CoProcess>();
+        }
+    };
+
 
     /**
      * Create a SystemSampler.
@@ -127,6 +149,10 @@ public class SystemSampler extends AbstractSampler {
             results.setSamplerData("Working Directory:"+directory.getAbsolutePath()+
                     ", Environment:"+env+
                     ", Executing:" + cmdLine.toString());
+
+            if (isCoProcess()) {
+                return sampleCoProcess(results, cmds, directory, env, checkReturnCode, expectedReturnCode);
+            }
             
             NativeCommand nativeCommand = new NativeCommand(directory, env);
             
@@ -174,6 +200,102 @@ public class SystemSampler extends AbstractSampler {
     }
     
     
+    /**
+     * Send the request to the co-process for the command, starting it if it is not running.
+     * The time taken to start the process is not included in the sample time,
+     * but is shown in the response headers. If the process cannot be started,
+     * a separate error result is returned, whose time is that of the failed start.
+     *
+     * @return the result
+     */
+    private SampleResult sampleCoProcess(SampleResult results, List<String> cmds, File directory, Map<String, String> env,
+            boolean checkReturnCode, int expectedReturnCode) throws UnsupportedEncodingException {
+        final String key = directory.getAbsolutePath() + "\n" + env + "\n" + cmds; // $NON-NLS-1$ $NON-NLS-2$
+        final Map<String, CoProcess> processes = CO_PROCESSES.get();
+        CoProcess coProcess = processes.get(key);
+        boolean started = false;
+        long startTime = 0;
+        String request = getRequest();
+        results.setSamplerData(results.getSamplerData() + "\nRequest:\n" + request); // $NON-NLS-1$
+        if (coProcess == null || !coProcess.isAlive()) {
+            if (coProcess != null) {
+                log.warn("Co-process has exited, restarting: " + cmds);
+                coProcess.close();
+                processes.remove(key);
+                coProcess = null;
+            }
+            SampleResult startResult = new SampleResult();
+            long start = System.currentTimeMillis();
+            startResult.sampleStart();
+            try {
+                coProcess = new CoProcess(cmds, directory, env);
+            } catch (IOException ioe) {
+                startResult.sampleEnd();
+                startResult.setSamplerData(results.getSamplerData());
+                startResult.setSuccessful(false);
+                startResult.setResponseMessage(ioe.toString());
+                startResult.setResponseData(("Could not start the co-process: "+ioe).getBytes());
+                startResult.setSampleLabel("ERROR: " + getName());
+                startResult.setResponseHeaders("Co-Process-Started: false" // $NON-NLS-1$
+                        + "\nStart-Time: " + startResult.getTime() // $NON-NLS-1$
+                        + "\nRequests: 0"); // $NON-NLS-1$
+                return startResult;
+            }
+            startTime = System.currentTimeMillis() - start;
+            started = true;
+            processes.put(key, coProcess);
+        }
+        try {
+            CoProcess.Reply reply;
+            results.sampleStart();
+            try {
+                reply = coProcess.exchange(request.getBytes(ENCODING), getTimeout(), results);
+            } finally {
+                results.sampleEnd();
+            }
+            int returnCode = reply.getReturnCode();
+            results.setResponseCode(Integer.toString(returnCode));
+            results.setResponseData(reply.getData());
+            if (checkReturnCode && (returnCode != expectedReturnCode)) {
+                results.setSuccessful(false);
+                results.setResponseMessage("System did not return expected return code.  Expected ["+expectedReturnCode+"]. Returned ["+returnCode+"].");
+                results.setSampleLabel("FAILED: " + getName());
+            } else {
+                results.setSuccessful(true);
+                results.setResponseMessageOK();
+                results.setSampleLabel(getName());
+            }
+        } catch (IOException ioe) {
+            // The process has been stopped, so start a new one next time
+            processes.remove(key);
+            results.setSuccessful(false);
+            results.setResponseMessage(ioe.toString());
+            results.setResponseData(("Exception occured whilst executing System Call: "+ioe).getBytes());
+            results.setSampleLabel("ERROR: " + getName());
+        }
+        results.setResponseHeaders("Co-Process-Started: " + started // $NON-NLS-1$
+                + "\nStart-Time: " + startTime // $NON-NLS-1$
+                + "\nRequests: " + coProcess.getRequestCount()); // $NON-NLS-1$
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void threadStarted() {
+    }
+
+    /**
+     * Stop the co-processes started by this thread.
+     */
+    public void threadFinished() {
+        Map<String, CoProcess> processes = CO_PROCESSES.get();
+        for (CoProcess coProcess : processes.values()) {
+            coProcess.close();
+        }
+        processes.clear();
+    }
+
     /**
      * @see org.apache.jmeter.samplers.AbstractSampler#applies(org.apache.jmeter.config.ConfigTestElement)
      */
@@ -270,6 +392,48 @@ public class SystemSampler extends AbstractSampler {
         setProperty(new TestElementProperty(ENVIRONMENT, arguments));
     }
     
+    /**
+     * @param coProcess true to keep the command running and send it a request for each sample
+     */
+    public void setCoProcess(boolean coProcess) {
+        setProperty(CO_PROCESS, coProcess, false);
+    }
+
+    /**
+     * @return true if the command is kept running and sent a request for each sample
+     */
+    public boolean isCoProcess() {
+        return getPropertyAsBoolean(CO_PROCESS, false);
+    }
+
+    /**
+     * @param request the request sent to the co-process
+     */
+    public void setRequest(String request) {
+        setProperty(REQUEST, request, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return the request sent to the co-process
+     */
+    public String getRequest() {
+        return getPropertyAsString(REQUEST);
+    }
+
+    /**
+     * @param timeout the maximum time (ms) to wait for the co-process to reply; empty or 0 to wait forever
+     */
+    public void setTimeout(String timeout) {
+        setProperty(TIMEOUT, timeout, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * @return the maximum time (ms) to wait for the co-process to reply, or 0 to wait forever
+     */
+    public long getTimeout() {
+        return getPropertyAsLong(TIMEOUT, 0L);
+    }
+
     /**
      * Get the env variables
      * 
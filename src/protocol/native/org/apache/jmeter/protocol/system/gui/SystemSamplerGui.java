@@ -37,6 +37,7 @@ import org.apache.jmeter.protocol.system.SystemSampler;
 import org.apache.jmeter.samplers.gui.AbstractSamplerGui;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.gui.JLabeledTextArea;
 import org.apache.jorphan.gui.JLabeledTextField;
 import org.apache.jorphan.gui.ObjectTableModel;
 import org.apache.jorphan.reflect.Functor;
@@ -57,6 +58,9 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
     private JLabeledTextField command;
     private ArgumentsPanel argsPanel;
     private ArgumentsPanel envPanel;
+    private JCheckBox coProcess;
+    private JLabeledTextField timeout;
+    private JLabeledTextArea request;
     
     /**
      * Constructor for JavaTestSamplerGui
@@ -88,6 +92,8 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
         panelb.add(makeReturnCodePanel());
         panelb.add(Box.createVerticalStrut(5));
         panelb.add(makeCommandPanel(), BorderLayout.CENTER);
+        panelb.add(Box.createVerticalStrut(5));
+        panelb.add(makeCoProcessPanel());
         
         add(panelb, BorderLayout.CENTER);
     }
@@ -116,6 +122,9 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
         systemSampler.setArguments((Arguments)argsPanel.createTestElement());
         systemSampler.setEnvironmentVariables((Arguments)envPanel.createTestElement());
         systemSampler.setDirectory(directory.getText());
+        systemSampler.setCoProcess(coProcess.isSelected());
+        systemSampler.setTimeout(timeout.getText());
+        systemSampler.setRequest(request.getText());
     }
 
     /* Overrides AbstractJMeterGuiComponent.configure(TestElement) */
@@ -130,6 +139,11 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
         argsPanel.configure(systemSampler.getArguments());
         envPanel.configure(systemSampler.getEnvironmentVariables());
         directory.setText(systemSampler.getDirectory());
+        coProcess.setSelected(systemSampler.isCoProcess());
+        timeout.setText(systemSampler.getPropertyAsString(SystemSampler.TIMEOUT));
+        request.setText(systemSampler.getRequest());
+        timeout.setEnabled(coProcess.isSelected());
+        request.setEnabled(coProcess.isSelected());
     }
 
     /**
@@ -171,6 +185,30 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
         return panel;
     }
     
+    /**
+     * @return JPanel co-process mode and request
+     */
+    private JPanel makeCoProcessPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createTitledBorder(JMeterUtils.getResString("co_process_config_box_title"))); // $NON-NLS-1$
+
+        JPanel optionsPanel = new JPanel();
+        optionsPanel.setLayout(new BoxLayout(optionsPanel, BoxLayout.X_AXIS));
+        coProcess = new JCheckBox(JMeterUtils.getResString("co_process_title")); // $NON-NLS-1$
+        coProcess.addItemListener(this);
+        timeout = new JLabeledTextField(JMeterUtils.getResString("co_process_timeout_title")); // $NON-NLS-1$
+        optionsPanel.add(coProcess);
+        optionsPanel.add(Box.createHorizontalStrut(5));
+        optionsPanel.add(timeout);
+
+        request = new JLabeledTextArea(JMeterUtils.getResString("co_process_request_title")); // $NON-NLS-1$
+        panel.add(optionsPanel, BorderLayout.NORTH);
+        panel.add(request, BorderLayout.CENTER);
+        timeout.setEnabled(false);
+        request.setEnabled(false);
+        return panel;
+    }
+
     /**
      * @return JPanel Arguments Panel
      */
@@ -207,11 +245,19 @@ public class SystemSamplerGui extends AbstractSamplerGui implements ItemListener
         desiredReturnCode.setText("");
         checkReturnCode.setSelected(false);
         desiredReturnCode.setEnabled(false);
+        coProcess.setSelected(false);
+        timeout.setText("");
+        request.setText("");
+        timeout.setEnabled(false);
+        request.setEnabled(false);
     }
 
     public void itemStateChanged(ItemEvent e) {
         if(e.getSource()==checkReturnCode) {
             desiredReturnCode.setEnabled(e.getStateChange() == ItemEvent.SELECTED);
+        } else if(e.getSource()==coProcess) {
+            timeout.setEnabled(e.getStateChange() == ItemEvent.SELECTED);
+            request.setEnabled(e.getStateChange() == ItemEvent.SELECTED);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.report;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jmeter.save.CSVSaveService;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jmeter.visualizers.SamplingStatCalculator;
+import org.apache.jmeter.visualizers.Visualizer;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Aggregates a CSV results (JTL) file using several threads.
+ * <p>
+ * The file is split into byte ranges which start and end on record boundaries.
+ * Finding the boundaries takes one quick pass over the bytes which tracks
+ * quoted fields, so line breaks inside quoted values (for example a multi-line
+ * response message) never split a record.
+ * Each range is parsed by its own thread into per-label statistics and
+ * time series, and the partial results are merged once all the ranges
+ * have been read. Counts, errors, mean, deviation, percentiles, rate and
+ * the time series are the same as for a sequential load. The maximum
+ * throughput depends on the order in which samples are added, so the
+ * merged value (the largest of the partial maxima) is only an approximation.
+ * <p>
+ * XML files are not supported; {@link #load()}
+ * returns false for them, and the caller should fall back to
+ * {@link org.apache.jmeter.reporters.ResultCollector#loadExistingFile()}.
+ */
+public class ParallelResultLoader {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /** Number of threads used to parse the file */
+    private static final int THREADS =
+        JMeterUtils.getPropDefault("report.loader.threads", Runtime.getRuntime().availableProcessors()); // $NON-NLS-1$
+
+    /** Ranges smaller than this are not split further */
+    private static final long MIN_CHUNK_SIZE =
+        JMeterUtils.getPropDefault("report.loader.min_chunk_size", 8L * 1024 * 1024); // $NON-NLS-1$
+
+    /** Length of each time series interval (ms) */
+    public static final long DEFAULT_INTERVAL =
+        JMeterUtils.getPropDefault("report.loader.interval", 1000L); // $NON-NLS-1$
+
+    private final String filename;
+
+    private final int threads;
+
+    private final long interval;
+
+    private final long minChunkSize;
+
+    private final Map<String, SamplingStatCalculator> statistics = new HashMap<String, SamplingStatCalculator>();
+
+    private final Map<String, SampleTimeSeries> timeSeries = new HashMap<String, SampleTimeSeries>();
+
+    private long startTimestamp = Long.MAX_VALUE;
+
+    private long endTimestamp = 0;
+
+    /**
+     * Creates a loader with the thread count and interval from the JMeter properties.
+     *
+     * @param filename the results file
+     */
+    public ParallelResultLoader(String filename) {
+        this(filename, THREADS, DEFAULT_INTERVAL, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param filename the results file
+     * @param threads the number of parsing threads
+     * @param interval the length of each time series interval (ms)
+     * @param minChunkSize ranges smaller than this (bytes) are not split further
+     */
+    public ParallelResultLoader(String filename, int threads, long interval, long minChunkSize) {
+        this.filename = filename;
+        this.threads = Math.max(1, threads);
+        this.interval = interval;
+        this.minChunkSize = Math.max(1, minChunkSize);
+    }
+
+    /**
+     * Reads and aggregates the file.
+     *
+     * @return false if the file is not a CSV file with a header line, in which case nothing has been loaded
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public boolean load() throws IOException {
+        final String header = readFirstLine();
+        if (header == null || header.startsWith("<?xml ")) { // $NON-NLS-1$
+            return false;
+        }
+        final SampleSaveConfiguration saveConfig = CSVSaveService.getSampleSaveConfiguration(header, filename);
+        if (saveConfig == null) {
+            return false; // No header; leave it to the normal loader to work out the format
+        }
+        long[] bounds = split();
+        final long start = System.currentTimeMillis();
+        List<Aggregator> parts = new ArrayList<Aggregator>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            parts.add(new Aggregator((SampleSaveConfiguration) saveConfig.clone(), bounds[i], bounds[i + 1]));
+        }
+        if (parts.size() == 1) {
+            parts.get(0).call();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, parts.size()));
+            try {
+                List<Future<Aggregator>> futures = executor.invokeAll(parts);
+                for (Future<Aggregator> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + filename);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                IOException ioe = new IOException("Error loading " + filename + ": " + cause);
+                ioe.initCause(cause);
+                throw ioe;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        for (Aggregator part : parts) {
+            merge(part);
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Loaded " + filename + " in " + (System.currentTimeMillis() - start) + "ms using "
+                    + parts.size() + " range(s) and " + Math.min(threads, parts.size()) + " thread(s)");
+        }
+        return true;
+    }
+
+    private String readFirstLine() throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(filename));
+            return reader.readLine();
+        } finally {
+            JOrphanUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Splits the file after the header line into ranges of whole records.
+     *
+     * @return the range boundaries; range i is [bounds[i], bounds[i+1])
+     */
+    private long[] split() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(filename), "r"); // $NON-NLS-1$
+        try {
+            final long length = raf.length();
+            final long dataStart = nextLineStart(raf, 1); // skip the header line
+            long dataLength = length - dataStart;
+            int chunks = (int) Math.max(1, Math.min(threads * 4L, dataLength / minChunkSize));
+            List<Long> bounds = new ArrayList<Long>(chunks + 1);
+            bounds.add(Long.valueOf(dataStart));
+            if (chunks > 1) {
+                findRecordStarts(raf, dataStart, dataLength, chunks, bounds);
+            }
+            bounds.add(Long.valueOf(length));
+            long[] result = new long[bounds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = bounds.get(i).longValue();
+            }
+            return result;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Scans the data for the first record start at or after each of the
+     * chunks - 1 evenly spaced target offsets.
+     * A line feed only ends a record if it is not inside a quoted field;
+     * JMeter quotes fields containing CR, LF, the delimiter or a quote,
+     * and doubles embedded quotes, so counting quotes is enough to know
+     * whether a byte is inside a quoted field.
+     */
+    private static void findRecordStarts(RandomAccessFile raf, long dataStart, long dataLength,
+            int chunks, List<Long> bounds) throws IOException {
+        final long length = dataStart + dataLength;
+        raf.seek(dataStart);
+        byte[] buffer = new byte[65536];
+        boolean quoted = false;
+        int next = 1;
+        long target = dataStart + dataLength / chunks;
+        long position = dataStart;
+        int read;
+        while (next < chunks && (read = raf.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == CSVSaveService.QUOTING_CHAR) {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted && position + i >= target) {
+                    long bound = position + i + 1;
+                    if (bound < length) {
+                        bounds.add(Long.valueOf(bound));
+                    }
+                    // Skip any targets which fall inside the same record
+                    while (next < chunks && target < bound) {
+                        next++;
+                        target = dataStart + dataLength * next / chunks;
+                    }
+                    if (next >= chunks) {
+                        return;
+                    }
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * @return the offset of the first line which starts at or after offset
+     */
+    private static long nextLineStart(RandomAccessFile raf, long offset) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+        raf.seek(offset - 1);
+        byte[] buffer = new byte[8192];
+        long position = offset - 1;
+        int read;
+        while ((read = raf.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return raf.length();
+    }
+
+    private void merge(Aggregator part) {
+        for (Map.Entry<String, SamplingStatCalculator> entry : part.statistics.entrySet()) {
+            SamplingStatCalculator calc = statistics.get(entry.getKey());
+            if (calc == null) {
+                statistics.put(entry.getKey(), entry.getValue());
+            } else {
+                calc.merge(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, SampleTimeSeries> entry : part.timeSeries.entrySet()) {
+            SampleTimeSeries series = timeSeries.get(entry.getKey());
+            if (series == null) {
+                timeSeries.put(entry.getKey(), entry.getValue());
+            } else {
+                series.merge(entry.getValue());
+            }
+        }
+        if (part.startTimestamp < startTimestamp) {
+            startTimestamp = part.startTimestamp;
+        }
+        if (part.endTimestamp > endTimestamp) {
+            endTimestamp = part.endTimestamp;
+        }
+    }
+
+    /**
+     * @return the statistics for each label
+     */
+    public Map<String, SamplingStatCalculator> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the time series for each label
+     */
+    public Map<String, SampleTimeSeries> getTimeSeries() {
+        return timeSeries;
+    }
+
+    /**
+     * @return the earliest sample start time, or 0 if there were no samples
+     */
+    public long getStartTimestamp() {
+        return startTimestamp == Long.MAX_VALUE ? 0 : startTimestamp;
+    }
+
+    /**
+     * @return the latest sample end time
+     */
+    public long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    /**
+     * Returns the label under which a sample is aggregated.
+     *
+     * @param sample the sample
+     * @return the sample label, or the URL if there is no label
+     */
+    public static String getLabel(SampleResult sample) {
+        String label = sample.getSampleLabel();
+        if (label == null) {
+            label = sample.getURL().toString();
+        }
+        return label;
+    }
+
+    /**
+     * Aggregates one range of the file.
+     */
+    private class Aggregator implements Callable<Aggregator>, Visualizer {
+        private final SampleSaveConfiguration saveConfig;
+
+        private final long from;
+
+        private final long to;
+
+        private final Map<String, SamplingStatCalculator> statistics = new HashMap<String, SamplingStatCalculator>();
+
+        private final Map<String, SampleTimeSeries> timeSeries = new HashMap<String, SampleTimeSeries>();
+
+        private long startTimestamp = Long.MAX_VALUE;
+
+        private long endTimestamp = 0;
+
+        Aggregator(SampleSaveConfiguration saveConfig, long from, long to) {
+            this.saveConfig = saveConfig;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Aggregator call() throws IOException {
+            CSVSaveService.processSamples(filename, saveConfig, from, to, this);
+            return this;
+        }
+
+        public void add(SampleResult sample) {
+            String label = getLabel(sample);
+            SamplingStatCalculator calc = statistics.get(label);
+            if (calc == null) {
+                calc = new SamplingStatCalculator(label);
+                statistics.put(label, calc);
+            }
+            calc.addSample(sample);
+            SampleTimeSeries series = timeSeries.get(label);
+            if (series == null) {
+                series = new SampleTimeSeries(interval);
+                timeSeries.put(label, series);
+            }
+            series.add(sample.getStartTime(), sample.getTime(), sample.getSampleCount(), sample.getErrorCount());
+            if (sample.getStartTime() < startTimestamp) {
+                startTimestamp = sample.getStartTime();
+            }
+            if (sample.getEndTime() > endTimestamp) {
+                endTimestamp = sample.getEndTime();
+            }
+        }
+
+        public boolean isStats() {
+            return true;
+        }
+    }
+}
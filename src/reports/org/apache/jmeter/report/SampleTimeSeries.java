@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.report;
+
+import java.io.Serializable;
+
+/**
+ * Per-interval totals for the samples of a single label.
+ * <p>
+ * The totals are held in primitive arrays indexed by interval, starting
+ * with the interval of the earliest sample, so a long test only needs a
+ * few bytes per interval rather than an object per sample.
+ * Partial series built from different parts of a results file can be
+ * combined with {@link #merge(SampleTimeSeries)}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SampleTimeSeries implements Serializable {
+
+    private static final long serialVersionUID = 240L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long interval;
+
+    /** interval number (time / interval) of array index 0; only valid if size > 0 */
+    private long firstInterval;
+
+    /** number of intervals from the first to the last one with samples */
+    private int size;
+
+    private long[] counts = new long[0];
+
+    private long[] errors = new long[0];
+
+    private long[] elapsed = new long[0];
+
+    /**
+     * @param interval the length of each interval (ms); must be greater than zero
+     */
+    public SampleTimeSeries(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than zero: " + interval);
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Records a (possibly aggregated) sample.
+     *
+     * @param timeStamp the start time of the sample (ms)
+     * @param elapsedTime the elapsed time of the sample (ms)
+     * @param sampleCount the number of samples
+     * @param errorCount the number of failed samples
+     */
+    public void add(long timeStamp, long elapsedTime, long sampleCount, long errorCount) {
+        int i = indexOf(timeStamp / interval);
+        counts[i] += sampleCount;
+        errors[i] += errorCount;
+        elapsed[i] += elapsedTime;
+    }
+
+    /**
+     * Adds the totals of another series with the same interval.
+     *
+     * @param other the series to merge
+     */
+    public void merge(SampleTimeSeries other) {
+        if (other.interval != interval) {
+            throw new IllegalArgumentException("Cannot merge series with interval " + other.interval
+                    + " into series with interval " + interval);
+        }
+        if (other.size == 0) {
+            return;
+        }
+        // Make room for both ends first, so the offset does not change while copying
+        indexOf(other.firstInterval);
+        int offset = indexOf(other.firstInterval + other.size - 1) - (other.size - 1);
+        for (int j = 0; j < other.size; j++) {
+            counts[offset + j] += other.counts[j];
+            errors[offset + j] += other.errors[j];
+            elapsed[offset + j] += other.elapsed[j];
+        }
+    }
+
+    /**
+     * Returns the array index for an interval number, growing the arrays if necessary.
+     */
+    private int indexOf(long intervalNumber) {
+        if (size == 0) {
+            if (counts.length == 0) {
+                resize(INITIAL_CAPACITY, 0);
+            }
+            firstInterval = intervalNumber;
+            size = 1;
+            return 0;
+        }
+        if (intervalNumber < firstInterval) {
+            long shift = firstInterval - intervalNumber;
+            checkRange(shift + size);
+            int newSize = size + (int) shift;
+            resize(Math.max(newSize, counts.length * 2), (int) shift);
+            firstInterval = intervalNumber;
+            size = newSize;
+            return 0;
+        }
+        long index = intervalNumber - firstInterval;
+        checkRange(index + 1);
+        if (index >= counts.length) {
+            resize((int) Math.max(index + 1, counts.length * 2L), 0);
+        }
+        if (index >= size) {
+            size = (int) index + 1;
+        }
+        return (int) index;
+    }
+
+    private void checkRange(long required) {
+        if (required > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many intervals: " + required + " (interval " + interval + "ms)");
+        }
+    }
+
+    private void resize(int capacity, int shift) {
+        long[] c = new long[capacity];
+        long[] e = new long[capacity];
+        long[] t = new long[capacity];
+        System.arraycopy(counts, 0, c, shift, size);
+        System.arraycopy(errors, 0, e, shift, size);
+        System.arraycopy(elapsed, 0, t, shift, size);
+        counts = c;
+        errors = e;
+        elapsed = t;
+    }
+
+    /**
+     * @return the length of each interval (ms)
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the number of intervals from the first to the last interval with samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the interval index, from 0 to size() - 1
+     * @return the start time of the interval (ms)
+     */
+    public long getStartTime(int index) {
+        checkIndex(index);
+        return (firstInterval + index) * interval;
+    }
+
+    /**
+     * @param index the interval index, from 0 to size() - 1
+     * @return the number of samples which started in the interval
+     */
+    public long getCount(int index) {
+        checkIndex(index);
+        return counts[index];
+    }
+
+    /**
+     * @param index the interval index, from 0 to size() - 1
+     * @return the number of failed samples which started in the interval
+     */
+    public long getErrorCount(int index) {
+        checkIndex(index);
+        return errors[index];
+    }
+
+    /**
+     * @param index the interval index, from 0 to size() - 1
+     * @return the mean elapsed time of the samples in the interval (ms), or 0 if there were none
+     */
+    public double getMeanElapsed(int index) {
+        checkIndex(index);
+        return counts[index] == 0 ? 0 : (double) elapsed[index] / counts[index];
+    }
+
+    /**
+     * @param index the interval index, from 0 to size() - 1
+     * @return the number of samples per second which started in the interval
+     */
+    public double getThroughput(int index) {
+        checkIndex(index);
+        return counts[index] * 1000.0 / interval;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.jmeter.testelement;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -28,9 +29,13 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.jmeter.report.DataSet;
+import org.apache.jmeter.report.ParallelResultLoader;
+import org.apache.jmeter.report.SampleTimeSeries;
 import org.apache.jmeter.reporters.ResultCollector;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.visualizers.SamplingStatCalculator;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
 
 /**
  *
@@ -42,7 +47,10 @@ public class JTLData implements Serializable, DataSet {
 
     private static final long serialVersionUID = 240L;
 
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
     private final HashMap<String, SamplingStatCalculator> data = new HashMap<String, SamplingStatCalculator>();
+    private final HashMap<String, SampleTimeSeries> timeSeries = new HashMap<String, SampleTimeSeries>();
     private String jtl_file = null;
     private long startTimestamp = 0;
     private long endTimestamp = 0;
@@ -166,11 +174,24 @@ public class JTLData implements Serializable, DataSet {
     }
 
     /**
-     * The implementation loads a single .jtl file and cleans up the
-     * ResultCollector.
+     * Returns the per-interval totals for the given URL.
+     * @param url
+     * @return time series for this URL, or null if the URL doesn't exist
+     */
+    public SampleTimeSeries getTimeSeries(String url) {
+        return this.timeSeries.get(url);
+    }
+
+    /**
+     * The implementation loads a single .jtl file. CSV files are split
+     * and aggregated in parallel; other files are read using a
+     * ResultCollector, which is cleaned up afterwards.
      */
     public void loadData() {
         if (this.getDataSource() != null) {
+            if (loadParallel()) {
+                return;
+            }
             ResultCollector rc = new ResultCollector();
             rc.setFilename(this.getDataSource());
             rc.setListener(this);
@@ -182,6 +203,26 @@ public class JTLData implements Serializable, DataSet {
         }
     }
 
+    private boolean loadParallel() {
+        ParallelResultLoader loader = new ParallelResultLoader(this.getDataSource());
+        try {
+            if (!loader.load()) {
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Parallel load of " + getDataSource() + " failed, reading it sequentially. " + e);
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Parallel load of " + getDataSource() + " failed, reading it sequentially. " + e);
+            return false;
+        }
+        this.data.putAll(loader.getStatistics());
+        this.timeSeries.putAll(loader.getTimeSeries());
+        this.startTimestamp = loader.getStartTimestamp();
+        this.endTimestamp = loader.getEndTimestamp();
+        return true;
+    }
+
     /**
      * the implementation will set the start timestamp if the HashMap
      * is empty. otherwise it will set the end timestamp using the
@@ -194,10 +235,7 @@ public class JTLData implements Serializable, DataSet {
             this.endTimestamp = sample.getEndTime();
         }
         // now add the samples to the HashMap
-        String url = sample.getSampleLabel();
-        if (url == null) {
-            url = sample.getURL().toString();
-        }
+        String url = ParallelResultLoader.getLabel(sample);
         SamplingStatCalculator row = data.get(url);
         if (row == null) {
             row = new SamplingStatCalculator(url);
@@ -206,6 +244,12 @@ public class JTLData implements Serializable, DataSet {
             this.data.put(url,row);
         }
         row.addSample(sample);
+        SampleTimeSeries series = timeSeries.get(url);
+        if (series == null) {
+            series = new SampleTimeSeries(ParallelResultLoader.DEFAULT_INTERVAL);
+            this.timeSeries.put(url, series);
+        }
+        series.add(sample.getStartTime(), sample.getTime(), sample.getSampleCount(), sample.getErrorCount());
     }
 
     /**
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+/**
+ * A micro-benchmark run by {@link BenchmarkRunner}.
+ * <p>
+ * The runner calls {@link #setUp()} once, then calls {@link #run(int)} repeatedly,
+ * first to warm up the JIT and then for the measured iterations, and finally calls
+ * {@link #tearDown()}.
+ * Implementations should return a value derived from the work done by {@link #run(int)},
+ * so that the JIT cannot eliminate it.
+ */
+public abstract class Benchmark {
+
+    /**
+     * @return the name used in the results and to select benchmarks
+     */
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return the smallest number of operations to pass to {@link #run(int)},
+     *         so that any fixed cost of a call is negligible
+     */
+    public int getMinimumOps() {
+        return 1;
+    }
+
+    /**
+     * Prepares the benchmark; not timed.
+     *
+     * @throws Exception if the benchmark cannot be set up
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Performs the operation being measured.
+     *
+     * @param ops the number of operations to perform
+     * @return a value computed from the work done
+     * @throws Exception if the operation fails
+     */
+    public abstract long run(int ops) throws Exception;
+
+    /**
+     * Releases any resources used by the benchmark; not timed.
+     *
+     * @throws Exception if the benchmark cannot be cleaned up
+     */
+    public void tearDown() throws Exception {
+    }
+}
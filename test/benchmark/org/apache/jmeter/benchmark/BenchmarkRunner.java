@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Runs the JMeter micro-benchmarks and writes the results as CSV, so they can
+ * be compared between releases.
+ * <p>
+ * Must be started in the bin directory, with the JMeter jars on the classpath.
+ * Usage:
+ * <pre>
+ * BenchmarkRunner [-o results.csv] [-w warmupMillis] [-i iterations] [-t iterationMillis] [name ...]
+ * </pre>
+ * If names are given, only the benchmarks whose name contains one of them are run.
+ * The CSV file has a header line and one line per benchmark:
+ * benchmark name, measured iterations, total operations, mean operations per second,
+ * standard deviation of operations per second, mean nanoseconds per operation,
+ * JMeter version and Java version.
+ */
+public class BenchmarkRunner {
+
+    // Thread counts used to show how shared state scales
+    private static final int[] THREADS = { 1, 16, 1000 };
+
+    private static final String HEADER =
+        "benchmark,iterations,ops,ops_per_sec,ops_per_sec_stddev,ns_per_op,jmeter_version,java_version"; // $NON-NLS-1$
+
+    // Prevents the JIT from eliminating the benchmark code
+    private static volatile long sink;
+
+    private final long warmupMillis;
+
+    private final int iterations;
+
+    private final long iterationMillis;
+
+    public BenchmarkRunner(long warmupMillis, int iterations, long iterationMillis) {
+        this.warmupMillis = warmupMillis;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * Result of running a single benchmark.
+     */
+    public static class Result {
+        private final String name;
+        private final double[] opsPerSecond;
+        private final long totalOps;
+
+        Result(String name, double[] opsPerSecond, long totalOps) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.totalOps = totalOps;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTotalOps() {
+            return totalOps;
+        }
+
+        public double getMean() {
+            double sum = 0;
+            for (double d : opsPerSecond) {
+                sum += d;
+            }
+            return opsPerSecond.length == 0 ? 0 : sum / opsPerSecond.length;
+        }
+
+        public double getStandardDeviation() {
+            if (opsPerSecond.length < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double sum = 0;
+            for (double d : opsPerSecond) {
+                sum += (d - mean) * (d - mean);
+            }
+            return Math.sqrt(sum / (opsPerSecond.length - 1));
+        }
+
+        public String toCSV() {
+            double mean = getMean();
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append(',');
+            sb.append(opsPerSecond.length).append(',');
+            sb.append(totalOps).append(',');
+            sb.append(String.format(Locale.ROOT, "%.1f", Double.valueOf(mean))).append(','); // $NON-NLS-1$
+            sb.append(String.format(Locale.ROOT, "%.1f", Double.valueOf(getStandardDeviation()))).append(','); // $NON-NLS-1$
+            sb.append(String.format(Locale.ROOT, "%.1f", Double.valueOf(mean == 0 ? 0 : 1.0e9 / mean))).append(','); // $NON-NLS-1$
+            sb.append(JMeterUtils.getJMeterVersion()).append(',');
+            sb.append(System.getProperty("java.version")); // $NON-NLS-1$
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Runs a benchmark: the number of operations per call is first increased from the
+     * benchmark's minimum until a call takes at least a millisecond, then the benchmark is warmed up and measured.
+     *
+     * @param benchmark the benchmark to run
+     * @return the result
+     * @throws Exception if the benchmark fails
+     */
+    public Result run(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        try {
+            int ops = benchmark.getMinimumOps();
+            while (ops < Integer.MAX_VALUE / 2) {
+                long start = System.nanoTime();
+                sink += benchmark.run(ops);
+                if (System.nanoTime() - start >= 1000000L) {
+                    break;
+                }
+                ops *= 2;
+            }
+            long total = 0;
+            long end = System.currentTimeMillis() + warmupMillis;
+            while (System.currentTimeMillis() < end) {
+                sink += benchmark.run(ops);
+            }
+            double[] opsPerSecond = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long count = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    sink += benchmark.run(ops);
+                    count += ops;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < iterationMillis * 1000000L);
+                opsPerSecond[i] = count * 1.0e9 / elapsed;
+                total += count;
+            }
+            return new Result(benchmark.getName(), opsPerSecond, total);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private static List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new SampleResultBenchmark());
+        benchmarks.add(new CompoundVariableBenchmark());
+        benchmarks.add(new HashTreeBenchmark());
+        benchmarks.add(new StatCalculatorBenchmark());
+        benchmarks.add(new CSVSaveServiceBenchmark());
+        benchmarks.add(new HTTPHC4SamplerBenchmark());
+        benchmarks.add(new JMeterThreadBenchmark());
+        for (int threads : THREADS) {
+            benchmarks.add(new ThroughputControllerBenchmark(threads));
+        }
+        for (int threads : THREADS) {
+            benchmarks.add(new CounterConfigBenchmark(threads));
+        }
+        return benchmarks;
+    }
+
+    private static boolean isSelected(String name, List<String> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String f : filters) {
+            if (name.indexOf(f) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void initializeJMeter() {
+        String file = "testfiles/jmetertest.properties"; // $NON-NLS-1$
+        String home = new File(System.getProperty("user.dir")).getParent(); // $NON-NLS-1$
+        JMeterUtils.setJMeterHome(home);
+        System.setProperty("jmeter.home", home); // $NON-NLS-1$
+        try {
+            new JMeterUtils().initializeProperties(file);
+        } catch (MissingResourceException e) {
+            System.out.println("** Can't find resources - continuing anyway **");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String output = "benchmark.csv"; // $NON-NLS-1$
+        long warmup = 2000;
+        int iterations = 5;
+        long iterationMillis = 1000;
+        List<String> filters = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-o".equals(arg) && i + 1 < args.length) { // $NON-NLS-1$
+                output = args[++i];
+            } else if ("-w".equals(arg) && i + 1 < args.length) { // $NON-NLS-1$
+                warmup = Long.parseLong(args[++i]);
+            } else if ("-i".equals(arg) && i + 1 < args.length) { // $NON-NLS-1$
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("-t".equals(arg) && i + 1 < args.length) { // $NON-NLS-1$
+                iterationMillis = Long.parseLong(args[++i]);
+            } else if (arg.length() > 0 && arg.charAt(0) != '-') {
+                filters.add(arg);
+            } else {
+                System.err.println("Usage: BenchmarkRunner [-o results.csv] [-w warmupMillis]"
+                        + " [-i iterations] [-t iterationMillis] [name ...]");
+                System.exit(1);
+            }
+        }
+        initializeJMeter();
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, iterationMillis);
+        List<String> lines = new ArrayList<String>();
+        lines.add(HEADER);
+        boolean failed = false;
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (!isSelected(benchmark.getName(), filters)) {
+                continue;
+            }
+            System.out.println("Running " + benchmark.getName());
+            try {
+                Result result = runner.run(benchmark);
+                String line = result.toCSV();
+                System.out.println(line);
+                lines.add(line);
+            } catch (Exception e) {
+                System.err.println("Benchmark " + benchmark.getName() + " failed: " + e);
+                e.printStackTrace();
+                failed = true;
+            }
+        }
+        write(new File(output), lines);
+        System.out.println("Results written to " + new File(output).getAbsolutePath());
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static void write(File file, List<String> lines) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); // $NON-NLS-1$
+        try {
+            for (String line : lines) {
+                pw.println(line);
+            }
+        } finally {
+            pw.close();
+        }
+    }
+}
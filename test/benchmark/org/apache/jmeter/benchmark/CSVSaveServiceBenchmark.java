@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.save.CSVSaveService;
+
+/**
+ * Measures the conversion of a sample to a line of a CSV results file.
+ */
+public class CSVSaveServiceBenchmark extends Benchmark {
+
+    private SampleEvent event;
+
+    @Override
+    public void setUp() {
+        SampleResult res = new SampleResult(System.currentTimeMillis(), 123);
+        res.setSampleLabel("label, with a comma"); // $NON-NLS-1$
+        res.setResponseCodeOK();
+        res.setResponseMessageOK();
+        res.setSuccessful(true);
+        res.setThreadName("Thread Group 1-1"); // $NON-NLS-1$
+        res.setDataType(SampleResult.TEXT);
+        res.setBytes(1024);
+        res.setSaveConfig(new SampleSaveConfiguration());
+        event = new SampleEvent(res, "Thread Group"); // $NON-NLS-1$
+    }
+
+    @Override
+    public long run(int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            sum += CSVSaveService.resultToDelimitedString(event).length();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Measures the evaluation of a string containing variable references and function calls.
+ */
+public class CompoundVariableBenchmark extends Benchmark {
+
+    private CompoundVariable variable;
+
+    @Override
+    public void setUp() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        vars.put("host", "localhost"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("path", "/index.html"); // $NON-NLS-1$ $NON-NLS-2$
+        JMeterContextService.getContext().setVariables(vars);
+        variable = new CompoundVariable("http://${host}/${path}?thread=${__threadNum}&id=${__counter(TRUE,)}"); // $NON-NLS-1$
+    }
+
+    @Override
+    public long run(int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            sum += variable.execute().length();
+        }
+        return sum;
+    }
+}
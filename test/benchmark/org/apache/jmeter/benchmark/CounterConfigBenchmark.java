@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.modifiers.CounterConfig;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Measures a Counter which is shared by all the threads (i.e. not per user).
+ */
+public class CounterConfigBenchmark extends ThreadedBenchmark {
+
+    private CounterConfig counter;
+
+    public CounterConfigBenchmark(int threads) {
+        super(threads);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        counter = new CounterConfig();
+        counter.setVarName("counter"); // $NON-NLS-1$
+        counter.setStart(1);
+        counter.setIncrement(1);
+        counter.setEnd(""); // $NON-NLS-1$
+        counter.setIsPerUser(false);
+        super.setUp();
+    }
+
+    @Override
+    protected void threadStarted(int thread) {
+        JMeterContextService.getContext().setVariables(new JMeterVariables());
+    }
+
+    @Override
+    protected void operation(int thread) {
+        counter.iterationStart(null);
+    }
+}
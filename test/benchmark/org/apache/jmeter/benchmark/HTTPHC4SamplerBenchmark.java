@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.protocol.http.control.HttpMirrorNioServer;
+import org.apache.jmeter.protocol.http.control.HttpMirrorServer;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerFactory;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Measures a GET request made with the HttpClient 4 implementation against a
+ * local HttpMirrorServer, including the building of the request.
+ * The non-blocking mirror server is used, so that connections are kept alive.
+ * The port of the mirror server is set by the property benchmark.mirror.port (default 8183).
+ */
+public class HTTPHC4SamplerBenchmark extends Benchmark {
+
+    private HttpMirrorServer server;
+
+    private HTTPSamplerBase sampler;
+
+    @Override
+    public void setUp() throws Exception {
+        server = startMirror();
+        sampler = createSampler();
+    }
+
+    @Override
+    public long run(int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            SampleResult res = sampler.sample();
+            if (!res.isSuccessful()) {
+                throw new IllegalStateException("Request failed: " + res.getResponseCode() + " " + res.getResponseMessage());
+            }
+            sum += res.getBytes();
+        }
+        return sum;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        sampler.threadFinished();
+        stopMirror(server);
+    }
+
+    static int getMirrorPort() {
+        return JMeterUtils.getPropDefault("benchmark.mirror.port", 8183); // $NON-NLS-1$
+    }
+
+    static HTTPSamplerBase createSampler() {
+        HTTPSamplerBase sampler = HTTPSamplerFactory.newInstance(HTTPSamplerFactory.IMPL_HTTP_CLIENT4);
+        sampler.setName("GET mirror"); // $NON-NLS-1$
+        sampler.setProtocol("http"); // $NON-NLS-1$
+        sampler.setDomain("localhost"); // $NON-NLS-1$
+        sampler.setPort(getMirrorPort());
+        sampler.setPath("/benchmark?name=value"); // $NON-NLS-1$
+        sampler.setMethod(HTTPSamplerBase.GET);
+        sampler.setUseKeepAlive(true);
+        sampler.addArgument("parameter", "some value"); // $NON-NLS-1$ $NON-NLS-2$
+        return sampler;
+    }
+
+    /**
+     * Starts the mirror server and waits until it is running.
+     */
+    static HttpMirrorServer startMirror() throws Exception {
+        int port = getMirrorPort();
+        HttpMirrorServer server = new HttpMirrorNioServer(port, -1, 0);
+        server.start();
+        for (int i = 0; i < 10; i++) { // Wait up to 1 second
+            Thread.sleep(100);
+            Exception e = server.getException();
+            if (e != null) {
+                throw new Exception("Could not start mirror server on port: " + port + ". " + e);
+            }
+            if (server.isAlive()) {
+                break;
+            }
+        }
+        return server;
+    }
+
+    /**
+     * Stops the mirror server and waits for it to release the port.
+     */
+    static void stopMirror(HttpMirrorServer server) throws InterruptedException {
+        server.stopServer();
+        server.join(5000);
+    }
+}
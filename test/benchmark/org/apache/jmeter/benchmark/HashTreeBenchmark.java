@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.HashTreeTraverser;
+import org.apache.jorphan.collections.ListedHashTree;
+
+/**
+ * Measures the traversal of a test plan sized HashTree, as done when compiling
+ * and searching the test plan.
+ */
+public class HashTreeBenchmark extends Benchmark {
+
+    private static final int WIDTH = 10;
+
+    private ListedHashTree tree;
+
+    @Override
+    public void setUp() {
+        tree = new ListedHashTree();
+        for (int i = 0; i < WIDTH; i++) {
+            String a = "node" + i; // $NON-NLS-1$
+            tree.add(a);
+            for (int j = 0; j < WIDTH; j++) {
+                String b = a + "-" + j; // $NON-NLS-1$
+                tree.add(a, b);
+                for (int k = 0; k < WIDTH; k++) {
+                    tree.getTree(a).add(b, b + "-" + k); // $NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    @Override
+    public long run(int ops) {
+        Counter counter = new Counter();
+        for (int i = 0; i < ops; i++) {
+            tree.traverse(counter);
+        }
+        return counter.count;
+    }
+
+    private static class Counter implements HashTreeTraverser {
+        private long count;
+
+        public void addNode(Object node, HashTree subTree) {
+            count++;
+        }
+
+        public void subtractNode() {
+        }
+
+        public void processPath() {
+        }
+    }
+}
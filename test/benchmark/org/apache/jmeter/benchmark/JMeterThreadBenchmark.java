@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.engine.TurnElementsOn;
+import org.apache.jmeter.protocol.http.control.HttpMirrorServer;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.threads.JMeterThread;
+import org.apache.jmeter.threads.JMeterThreadMonitor;
+import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jmeter.threads.TestCompiler;
+import org.apache.jmeter.threads.ThreadGroup;
+import org.apache.jorphan.collections.ListedHashTree;
+
+/**
+ * Measures the complete JMeterThread sampling loop: the controller, the HttpClient 4
+ * sampler against a local HttpMirrorServer and the notification of a sample listener.
+ * Each call runs a thread group with a single thread which loops once per operation.
+ */
+public class JMeterThreadBenchmark extends Benchmark {
+
+    private HttpMirrorServer server;
+
+    @Override
+    public void setUp() throws Exception {
+        server = HTTPHC4SamplerBenchmark.startMirror();
+    }
+
+    @Override
+    public long run(int ops) {
+        LoopController loop = new LoopController();
+        loop.setLoops(ops);
+        loop.setContinueForever(false);
+        ThreadGroup group = new ThreadGroup();
+        group.setName("Benchmark"); // $NON-NLS-1$
+        group.setNumThreads(1);
+        group.setSamplerController(loop);
+        CountingListener listener = new CountingListener();
+
+        ListedHashTree tree = new ListedHashTree();
+        tree.add(group, HTTPHC4SamplerBenchmark.createSampler());
+        tree.add(group, listener);
+        tree.traverse(new TurnElementsOn());
+        TestCompiler.initialize();
+
+        JMeterThread thread = new JMeterThread(tree, new JMeterThreadMonitor() {
+            public void threadFinished(JMeterThread t) {
+            }
+        }, new ListenerNotifier());
+        thread.setThreadGroup(group);
+        thread.setThreadNum(0);
+        thread.setThreadName("Benchmark 1-1"); // $NON-NLS-1$
+        thread.run(); // in this thread
+        if (listener.count.get() != ops) {
+            throw new IllegalStateException("Expected " + ops + " samples, got " + listener.count.get());
+        }
+        return listener.count.get();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        HTTPHC4SamplerBenchmark.stopMirror(server);
+    }
+
+    private static class CountingListener extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicLong count = new AtomicLong();
+
+        public void sampleOccurred(SampleEvent e) {
+            if (e.getResult().isSuccessful()) {
+                count.incrementAndGet();
+            }
+        }
+
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Measures the construction and population of a SampleResult, as done by every sampler.
+ */
+public class SampleResultBenchmark extends Benchmark {
+
+    private static final byte[] RESPONSE = new byte[1024];
+
+    @Override
+    public long run(int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            SampleResult res = new SampleResult();
+            res.setSampleLabel("label"); // $NON-NLS-1$
+            res.sampleStart();
+            res.setResponseData(RESPONSE);
+            res.setDataType(SampleResult.TEXT);
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+            res.setSuccessful(true);
+            res.sampleEnd();
+            sum += res.getBytes();
+        }
+        return sum;
+    }
+}
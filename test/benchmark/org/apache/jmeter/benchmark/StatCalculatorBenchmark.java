@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jorphan.math.StatCalculatorLong;
+
+/**
+ * Measures adding response times to a StatCalculator, as done by the Aggregate Report
+ * and the Summary Report.
+ */
+public class StatCalculatorBenchmark extends Benchmark {
+
+    private StatCalculatorLong calculator;
+
+    @Override
+    public void setUp() {
+        calculator = new StatCalculatorLong();
+    }
+
+    @Override
+    public long run(int ops) {
+        for (int i = 0; i < ops; i++) {
+            calculator.addValue(Long.valueOf(i % 2000));
+        }
+        return calculator.getCount();
+    }
+}
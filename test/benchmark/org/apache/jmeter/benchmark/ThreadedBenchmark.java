@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A benchmark which performs its operations in a fixed number of threads,
+ * to measure how shared state scales under contention.
+ * The threads are started by {@link #setUp()}, and each call to {@link #run(int)}
+ * shares the operations between them.
+ */
+public abstract class ThreadedBenchmark extends Benchmark {
+
+    private final int threads;
+
+    private Thread[] workers;
+
+    private CyclicBarrier startBarrier;
+
+    private CyclicBarrier endBarrier;
+
+    private volatile int ops;
+
+    private volatile boolean stopped;
+
+    private volatile Throwable failure;
+
+    /**
+     * @param threads the number of threads which perform the operations
+     */
+    protected ThreadedBenchmark(int threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public String getName() {
+        return super.getName() + "-" + threads; // $NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     * Each thread performs at least 1000 operations per call, to make the cost
+     * of starting and stopping the threads negligible.
+     */
+    @Override
+    public int getMinimumOps() {
+        return threads * 1000;
+    }
+
+    /**
+     * Called once by each thread before it performs any operations.
+     *
+     * @param thread the index of the thread
+     * @throws Exception if the thread cannot be set up
+     */
+    protected void threadStarted(int thread) throws Exception {
+    }
+
+    /**
+     * Performs a single operation.
+     *
+     * @param thread the index of the thread
+     * @throws Exception if the operation fails
+     */
+    protected abstract void operation(int thread) throws Exception;
+
+    @Override
+    public void setUp() throws Exception {
+        startBarrier = new CyclicBarrier(threads + 1);
+        endBarrier = new CyclicBarrier(threads + 1);
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            workers[i] = new Thread(getName() + "-" + i) { // $NON-NLS-1$
+                @Override
+                public void run() {
+                    try {
+                        threadStarted(thread);
+                        while (true) {
+                            startBarrier.await();
+                            if (stopped) {
+                                return;
+                            }
+                            int count = ops / threads + (thread < ops % threads ? 1 : 0);
+                            for (int j = 0; j < count; j++) {
+                                operation(thread);
+                            }
+                            endBarrier.await();
+                        }
+                    } catch (Throwable e) { // reported by run()
+                        failure = e;
+                        startBarrier.reset();
+                        endBarrier.reset();
+                    }
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public long run(int count) throws Exception {
+        ops = count;
+        startBarrier.await();
+        endBarrier.await();
+        if (failure != null) {
+            throw new IllegalStateException("Benchmark thread failed", failure);
+        }
+        return count;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        stopped = true;
+        if (failure == null) {
+            startBarrier.await();
+        }
+        for (Thread t : workers) {
+            t.join(5000);
+        }
+    }
+}
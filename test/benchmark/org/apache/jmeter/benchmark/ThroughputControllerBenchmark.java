@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.benchmark;
+
+import org.apache.jmeter.control.ThroughputController;
+
+/**
+ * Measures a Throughput Controller which is shared by all the threads of a group
+ * (i.e. not per thread), as each thread starts an iteration.
+ */
+public class ThroughputControllerBenchmark extends ThreadedBenchmark {
+
+    private final ThroughputController[] controllers;
+
+    public ThroughputControllerBenchmark(int threads) {
+        super(threads);
+        controllers = new ThroughputController[threads];
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        ThroughputController shared = new ThroughputController();
+        shared.setStyle(ThroughputController.BYPERCENT);
+        shared.setPercentThroughput(50);
+        shared.setPerThread(false);
+        shared.testStarted();
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i] = (ThroughputController) shared.clone(); // each thread has a clone
+        }
+        super.setUp();
+    }
+
+    @Override
+    protected void operation(int thread) {
+        ThroughputController controller = controllers[thread];
+        controller.iterationStart(null);
+        controller.isDone();
+    }
+}
@@ -213,4 +213,42 @@ public class TestThroughputController extends JMeterTestCase {
             }
             sub_1.testEnded();
         }
+
+        public void testSharedByPercentAcrossThreads() throws Exception {
+            final int threads = 8;
+            final int iterations = 1000;
+            // Expected result, computed by a single thread
+            ThroughputController single = new ThroughputController();
+            single.setStyle(ThroughputController.BYPERCENT);
+            single.setPercentThroughput(33);
+            single.setPerThread(false);
+            single.testStarted();
+            for (int i = 0; i < threads * iterations; i++) {
+                single.iterationStart(null);
+            }
+
+            ThroughputController shared = new ThroughputController();
+            shared.setStyle(ThroughputController.BYPERCENT);
+            shared.setPercentThroughput(33);
+            shared.setPerThread(false);
+            shared.testStarted();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final ThroughputController clone = (ThroughputController) shared.clone();
+                workers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < iterations; i++) {
+                            clone.iterationStart(null);
+                        }
+                    }
+                };
+                workers[t].start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+            assertEquals(single.getExecutions(), shared.getExecutions());
+            assertEquals(2640, shared.getExecutions()); // 33% of 8000
+        }
 }
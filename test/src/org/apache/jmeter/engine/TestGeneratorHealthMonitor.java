@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+
+public class TestGeneratorHealthMonitor extends TestCase {
+
+    public TestGeneratorHealthMonitor(String name) {
+        super(name);
+    }
+
+    private static class Collector extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SampleResult> results = Collections.synchronizedList(new ArrayList<SampleResult>());
+
+        public void sampleOccurred(SampleEvent e) {
+            results.add(e.getResult());
+        }
+
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    public void testSamplesAreReported() throws Exception {
+        Collector collector = new Collector();
+        List<SampleListener> listeners = new ArrayList<SampleListener>();
+        listeners.add(collector);
+        GeneratorHealthMonitor monitor = new GeneratorHealthMonitor(200, 20, 10000, listeners);
+        monitor.start();
+        Thread.sleep(1000);
+        monitor.stop();
+        int count = collector.results.size();
+        assertTrue("Expected at least 2 samples, got " + count, count >= 2);
+        Thread.sleep(300);
+        assertEquals("Samples reported after stop", count, collector.results.size());
+        SampleResult res = collector.results.get(0);
+        assertEquals(GeneratorHealthMonitor.LABEL, res.getSampleLabel());
+        assertTrue(res.isSuccessful());
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().startsWith("lag="));
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf(" gc=") > 0);
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf(" heap=") > 0);
+    }
+
+    public void testLagAboveLimitFails() throws Exception {
+        GeneratorHealthMonitor monitor = new GeneratorHealthMonitor(1000, 100, 50, new ArrayList<SampleListener>());
+        SampleResult ok = monitor.createSample(50);
+        assertTrue(ok.isSuccessful());
+        assertEquals(50, ok.getTime());
+        SampleResult late = monitor.createSample(51);
+        assertFalse(late.isSuccessful());
+        assertEquals("Overloaded", late.getResponseCode());
+        assertEquals(51, late.getTime());
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        assertNull(GeneratorHealthMonitor.startIfEnabled(new ArrayList<Object>()));
+    }
+}
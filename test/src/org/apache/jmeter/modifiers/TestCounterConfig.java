@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.modifiers;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+
+public class TestCounterConfig extends TestCase {
+
+    public TestCounterConfig(String name) {
+        super(name);
+    }
+
+    private static CounterConfig createCounter(long start, String end, long incr) {
+        CounterConfig config = new CounterConfig();
+        config.setVarName("c");
+        config.setStart(start);
+        config.setEnd(end);
+        config.setIncrement(incr);
+        config.setIsPerUser(false);
+        return config;
+    }
+
+    public void testGlobalCounterWraps() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        JMeterContextService.getContext().setVariables(vars);
+        CounterConfig config = createCounter(1, "5", 2);
+        String[] expected = { "1", "3", "5", "1", "3", "5", "1" };
+        for (int i = 0; i < expected.length; i++) {
+            config.iterationStart(null);
+            assertEquals("Iteration " + i, expected[i], vars.get("c"));
+        }
+    }
+
+    public void testGlobalCounterIsUniqueAcrossThreads() throws Exception {
+        final int threads = 8;
+        final int iterations = 1000;
+        final CounterConfig config = createCounter(1, "", 1);
+        final Set<String> values = Collections.synchronizedSet(new HashSet<String>());
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    JMeterVariables vars = new JMeterVariables();
+                    JMeterContextService.getContext().setVariables(vars);
+                    for (int i = 0; i < iterations; i++) {
+                        config.iterationStart(null);
+                        values.add(vars.get("c"));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        assertEquals(threads * iterations, values.size());
+        assertTrue(values.contains("1"));
+        assertTrue(values.contains(Integer.toString(threads * iterations)));
+    }
+}
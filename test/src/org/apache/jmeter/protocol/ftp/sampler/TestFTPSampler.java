@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.apache.jmeter.protocol.ftp.sampler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.util.JOrphanUtils;
+
+public class TestFTPSampler extends JMeterTestCase {
+
+    private static final String CONTENT = "Hello FTP";
+
+    private FtpServer server;
+
+    private FTPSampler sampler;
+
+    public TestFTPSampler(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        server = new FtpServer("user", "secret");
+        server.start();
+        sampler = new FTPSampler();
+        sampler.setName("ftp");
+        sampler.setServer("localhost");
+        sampler.setPort(Integer.toString(server.getPort()));
+        sampler.setProperty(FTPSampler.REMOTE_FILENAME, "file.txt");
+        sampler.setProperty(FTPSampler.SAVE_RESPONSE, true);
+        sampler.setProperty(ConfigTestElement.USERNAME, "user");
+        sampler.setProperty(ConfigTestElement.PASSWORD, "secret");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        sampler.threadFinished();
+        server.close();
+    }
+
+    private void assertDownloaded(SampleResult res) {
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        assertEquals(CONTENT, res.getResponseDataAsString());
+    }
+
+    public void testNoKeepAlive() throws Exception {
+        assertDownloaded(sampler.sample(null));
+        assertDownloaded(sampler.sample(null));
+        assertEquals(2, server.getConnectionCount());
+        assertEquals(2, server.getLoginCount());
+    }
+
+    public void testKeepAliveReusesSession() throws Exception {
+        sampler.setProperty(FTPSampler.KEEP_ALIVE, true);
+        assertDownloaded(sampler.sample(null));
+        assertDownloaded(sampler.sample(null));
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, server.getLoginCount());
+    }
+
+    public void testKeepAliveFileTypeOnlySentWhenChanged() throws Exception {
+        sampler.setProperty(FTPSampler.KEEP_ALIVE, true);
+        sampler.setProperty(FTPSampler.BINARY_MODE, true);
+        assertDownloaded(sampler.sample(null));
+        assertDownloaded(sampler.sample(null));
+        assertEquals(1, server.getTypeCount());
+        sampler.setProperty(FTPSampler.BINARY_MODE, false);
+        assertDownloaded(sampler.sample(null));
+        assertEquals(2, server.getTypeCount());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    public void testKeepAliveAfterFailedTransfer() throws Exception {
+        sampler.setProperty(FTPSampler.KEEP_ALIVE, true);
+        sampler.setProperty(FTPSampler.REMOTE_FILENAME, "missing.txt");
+        SampleResult res = sampler.sample(null);
+        assertFalse(res.isSuccessful());
+        assertEquals("550", res.getResponseCode());
+        sampler.setProperty(FTPSampler.REMOTE_FILENAME, "file.txt");
+        assertDownloaded(sampler.sample(null));
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    public void testKeepAliveDifferentPasswordUsesNewSession() throws Exception {
+        sampler.setProperty(FTPSampler.KEEP_ALIVE, true);
+        assertDownloaded(sampler.sample(null));
+        sampler.setProperty(ConfigTestElement.PASSWORD, "wrong");
+        SampleResult res = sampler.sample(null);
+        assertFalse("The session of another password must not be reused", res.isSuccessful());
+        assertEquals("530", res.getResponseCode());
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    public void testMD5() throws Exception {
+        sampler.setProperty(FTPSampler.MD5, true);
+        SampleResult res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        assertEquals(JOrphanUtils.baToHexString(MessageDigest.getInstance("MD5").digest(CONTENT.getBytes("US-ASCII"))),
+                res.getResponseDataAsString());
+        assertEquals(CONTENT.length(), res.getBytes());
+    }
+
+    /**
+     * Minimal passive mode FTP server which serves {@link #CONTENT} as file.txt.
+     */
+    private static class FtpServer extends Thread {
+        private final ServerSocket serverSocket;
+
+        private final String user;
+
+        private final String password;
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private final AtomicInteger logins = new AtomicInteger();
+
+        private final AtomicInteger types = new AtomicInteger();
+
+        FtpServer(String user, String password) throws IOException {
+            super("FtpServer");
+            setDaemon(true);
+            this.user = user;
+            this.password = password;
+            serverSocket = new ServerSocket(0);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return connections.get();
+        }
+
+        int getLoginCount() {
+            return logins.get();
+        }
+
+        int getTypeCount() {
+            return types.get();
+        }
+
+        void close() {
+            JOrphanUtils.closeQuietly(serverSocket);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    new Thread("FtpServer connection") {
+                        @Override
+                        public void run() {
+                            try {
+                                converse(socket);
+                            } catch (IOException e) {
+                                // client went away
+                            } finally {
+                                JOrphanUtils.closeQuietly(socket);
+                            }
+                        }
+                    }.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void converse(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            ServerSocket data = null;
+            String givenUser = null;
+            try {
+                reply(out, "220 localhost FTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase(Locale.ENGLISH);
+                    String argument = line.indexOf(' ') > 0 ? line.substring(line.indexOf(' ') + 1) : "";
+                    if (command.startsWith("USER")) {
+                        givenUser = argument;
+                        reply(out, "331 Password required");
+                    } else if (command.startsWith("PASS")) {
+                        if (user.equals(givenUser) && password.equals(argument)) {
+                            logins.incrementAndGet();
+                            reply(out, "230 Logged in");
+                        } else {
+                            reply(out, "530 Login incorrect");
+                        }
+                    } else if (command.startsWith("TYPE")) {
+                        types.incrementAndGet();
+                        reply(out, "200 Type set");
+                    } else if (command.startsWith("PASV")) {
+                        JOrphanUtils.closeQuietly(data);
+                        data = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                        int port = data.getLocalPort();
+                        reply(out, "227 Entering Passive Mode (127,0,0,1," + (port >> 8) + "," + (port & 0xff) + ")");
+                    } else if (command.startsWith("RETR")) {
+                        if (!"file.txt".equals(argument) || data == null) {
+                            reply(out, "550 No such file");
+                        } else {
+                            reply(out, "150 Opening data connection");
+                            Socket transfer = data.accept();
+                            try {
+                                transfer.getOutputStream().write(CONTENT.getBytes("US-ASCII"));
+                            } finally {
+                                JOrphanUtils.closeQuietly(transfer);
+                            }
+                            reply(out, "226 Transfer complete");
+                        }
+                        JOrphanUtils.closeQuietly(data);
+                        data = null;
+                    } else if (command.startsWith("QUIT")) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else {
+                        reply(out, "200 OK");
+                    }
+                }
+            } finally {
+                JOrphanUtils.closeQuietly(data);
+            }
+        }
+
+        private static void reply(OutputStream out, String reply) throws IOException {
+            out.write((reply + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+        }
+    }
+}
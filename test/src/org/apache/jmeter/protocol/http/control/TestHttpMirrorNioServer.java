@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+public class TestHttpMirrorNioServer extends TestCase {
+    private static final String ISO_8859_1 = "ISO-8859-1"; // $NON-NLS-1$
+
+    private static final int HTTP_SERVER_PORT = 8182;
+
+    private HttpMirrorNioServer server;
+
+    private Socket socket;
+
+    public TestHttpMirrorNioServer(String name) {
+        super(name);
+    }
+
+    private void startServer(int responseLength, long latency) throws Exception {
+        server = new HttpMirrorNioServer(HTTP_SERVER_PORT, responseLength, latency);
+        server.start();
+        // Wait until the server is accepting connections
+        for (int i = 0; i < 50; i++) {
+            assertNull(server.getException());
+            try {
+                socket = new Socket("localhost", HTTP_SERVER_PORT);
+                socket.setSoTimeout(5000);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        fail("Could not connect to the server");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (socket != null) {
+            socket.close();
+        }
+        if (server != null) {
+            server.stopServer();
+            server.join(5000);
+        }
+    }
+
+    private void send(String request) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(ISO_8859_1));
+        out.flush();
+    }
+
+    /*
+     * Reads one response, using its Content-Length; returns the headers and body
+     */
+    private String[] readResponse() throws IOException {
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        int state = 0;
+        while (state < 4) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            headers.write(b);
+            state = (b == '\r' && (state == 0 || state == 2)) || (b == '\n' && (state == 1 || state == 3))
+                ? state + 1 : (b == '\r' ? 1 : 0);
+        }
+        String head = headers.toString(ISO_8859_1);
+        String contentLength = HttpMirrorNioServer.getHeader(head, "Content-Length");
+        assertNotNull(head, contentLength);
+        byte[] body = new byte[Integer.parseInt(contentLength)];
+        int read = 0;
+        while (read < body.length) {
+            int n = in.read(body, read, body.length - read);
+            if (n < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            read += n;
+        }
+        return new String[] { head, new String(body, ISO_8859_1) };
+    }
+
+    public void testKeepAlive() throws Exception {
+        startServer(-1, 0);
+        String request = "GET /one HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        send(request);
+        String[] response = readResponse();
+        assertTrue(response[0].startsWith("HTTP/1.1 200 OK"));
+        assertEquals(request, response[1]);
+
+        request = "GET /two HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        send(request);
+        assertEquals(request, readResponse()[1]);
+        assertEquals(1, server.getConnectionCount());
+        // the response is counted after it has been written, so the client may see it first
+        for (int i = 0; i < 100 && server.getRequestCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    public void testPipelining() throws Exception {
+        startServer(-1, 0);
+        String first = "POST /a HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello";
+        String second = "POST /b HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "3\r\nabc\r\n2;x=y\r\nde\r\n0\r\n\r\n";
+        String third = "GET /c HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        send(first + second + third);
+        assertEquals(first, readResponse()[1]);
+        assertEquals(second, readResponse()[1]);
+        assertEquals(third, readResponse()[1]);
+    }
+
+    public void testSplitRequest() throws Exception {
+        startServer(-1, 0);
+        send("POST /a HTTP/1.1\r\nContent-Le");
+        Thread.sleep(50);
+        send("ngth: 3\r\n\r\nx");
+        Thread.sleep(50);
+        send("yz");
+        assertEquals("POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nxyz", readResponse()[1]);
+    }
+
+    public void testResponseLengthAndHeaders() throws Exception {
+        startServer(1000, 0);
+        send("GET / HTTP/1.1\r\nX-SetCookie: a=b\r\n\r\n");
+        String[] response = readResponse();
+        assertEquals(1000, response[1].length());
+        assertEquals("a=b", HttpMirrorNioServer.getHeader(response[0], "Set-Cookie"));
+
+        send("GET / HTTP/1.1\r\nX-ResponseLength: 10\r\n\r\n");
+        assertEquals("aaaaaaaaaa", readResponse()[1]);
+    }
+
+    public void testLatency() throws Exception {
+        startServer(0, 200);
+        long start = System.currentTimeMillis();
+        send("GET / HTTP/1.1\r\n\r\nGET / HTTP/1.1\r\nX-Sleep: 100\r\n\r\n");
+        readResponse();
+        long first = System.currentTimeMillis() - start;
+        readResponse();
+        long second = System.currentTimeMillis() - start;
+        assertTrue("First response after " + first + "ms", first >= 190);
+        assertTrue("Second response after " + second + "ms", second >= 290);
+    }
+
+    public void testConnectionClose() throws Exception {
+        startServer(-1, 0);
+        send("GET / HTTP/1.0\r\n\r\n");
+        String[] response = readResponse();
+        assertEquals("close", HttpMirrorNioServer.getHeader(response[0], "Connection"));
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    private void assertBadRequest(String request) throws Exception {
+        send(request);
+        String[] response = readResponse();
+        assertTrue(response[0], response[0].startsWith("HTTP/1.1 400 Bad Request"));
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    private void reconnect() throws IOException {
+        socket.close();
+        socket = new Socket("localhost", HTTP_SERVER_PORT);
+        socket.setSoTimeout(5000);
+    }
+
+    public void testInvalidLengths() throws Exception {
+        startServer(-1, 0);
+        assertBadRequest("POST / HTTP/1.1\r\nContent-Length: -10\r\n\r\n");
+        reconnect();
+        assertBadRequest("POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n");
+        reconnect();
+        assertBadRequest("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n-5\r\nabc\r\n0\r\n\r\n");
+        reconnect();
+        assertBadRequest("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n7fffffff\r\nabc\r\n");
+        reconnect();
+        assertBadRequest("GET / HTTP/1.1\r\nX-ResponseLength: 2000000000\r\n\r\n");
+        // The server is still running
+        reconnect();
+        String request = "GET / HTTP/1.1\r\n\r\n";
+        send(request);
+        assertEquals(request, readResponse()[1]);
+        assertNull(server.getException());
+    }
+
+    public void testFindRequestEnd() throws Exception {
+        byte[] buf = "0\r\n\r\n".getBytes(ISO_8859_1);
+        assertEquals(HttpMirrorNioServer.BAD_REQUEST,
+                HttpMirrorNioServer.findRequestEnd(buf, 0, 0, "POST / HTTP/1.1\r\nContent-Length: 99999999999\r\n", 0));
+        assertEquals(5, HttpMirrorNioServer.findRequestEnd(buf, 0, buf.length,
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n", 0));
+        buf = "ffff\r\nab".getBytes(ISO_8859_1);
+        assertEquals(-1, HttpMirrorNioServer.findRequestEnd(buf, 0, buf.length,
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n", 0));
+    }
+
+    public void testGetHeader() {
+        String headers = "GET / HTTP/1.1\r\nHost: localhost\r\ncontent-length:  12 \r\n\r\n";
+        assertEquals("localhost", HttpMirrorNioServer.getHeader(headers, "Host"));
+        assertEquals("12", HttpMirrorNioServer.getHeader(headers, "Content-Length"));
+        assertNull(HttpMirrorNioServer.getHeader(headers, "Content"));
+        assertNull(HttpMirrorNioServer.getHeader(headers, "GET / HTTP/1.1\r\nHost"));
+    }
+}
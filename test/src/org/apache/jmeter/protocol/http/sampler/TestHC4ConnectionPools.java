@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.util.EntityUtils;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.protocol.http.control.HttpMirrorServer;
+import org.apache.jmeter.protocol.http.control.TestHTTPMirrorThread;
+
+public class TestHC4ConnectionPools extends JMeterTestCase {
+
+    private static final int MIRROR_PORT = 8083; // Different from the other mirror tests
+
+    public TestHC4ConnectionPools(String name) {
+        super(name);
+    }
+
+    // This is used to emulate @before class and @after class
+    public static Test suite(){
+        TestSuite testSuite = new TestSuite(TestHC4ConnectionPools.class);
+        return new TestSetup(testSuite){
+            private HttpMirrorServer httpServer;
+
+            @Override
+            protected void setUp() throws Exception {
+                httpServer = TestHTTPMirrorThread.startHttpMirror(MIRROR_PORT);
+            }
+
+            @Override
+            protected void tearDown() throws Exception {
+                httpServer.stopServer();
+                httpServer = null;
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        HC4ConnectionPools.closeAll();
+    }
+
+    private void get(DefaultHttpClient client) throws Exception {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + MIRROR_PORT + "/")); // $NON-NLS-1$ $NON-NLS-2$
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        EntityUtils.consume(response.getEntity()); // releases the connection
+    }
+
+    public void testSharedByThreadGroup() throws Exception {
+        final PoolingClientConnectionManager manager =
+            HC4ConnectionPools.getConnectionManager(SchemeRegistryFactory.createDefault());
+        assertSame(manager, HC4ConnectionPools.getConnectionManager(SchemeRegistryFactory.createDefault()));
+
+        HC4ConnectionPools.resetLeaseTime();
+        get(new DefaultHttpClient(manager));
+        assertTrue(HC4ConnectionPools.getLeaseTime() >= 0);
+        assertTrue(HC4ConnectionPools.getStatistics(manager).startsWith("Pool: wait=")); // $NON-NLS-1$
+        assertEquals(0, manager.getTotalStats().getLeased());
+
+        final Exception[] failure = new Exception[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // The other thread has no thread group either, so it shares the pool
+                    assertSame(manager, HC4ConnectionPools.getConnectionManager(SchemeRegistryFactory.createDefault()));
+                    get(new DefaultHttpClient(manager));
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertNull(failure[0]);
+        assertEquals(0, manager.getTotalStats().getLeased());
+    }
+
+    public void testCloseAll() throws Exception {
+        PoolingClientConnectionManager manager =
+            HC4ConnectionPools.getConnectionManager(SchemeRegistryFactory.createDefault());
+        HC4ConnectionPools.closeAll();
+        assertNotSame(manager, HC4ConnectionPools.getConnectionManager(SchemeRegistryFactory.createDefault()));
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.sampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.protocol.http.control.Header;
+import org.apache.jmeter.protocol.http.control.HeaderManager;
+import org.apache.jmeter.protocol.http.control.HttpMirrorNioServer;
+import org.apache.jmeter.protocol.http.util.HTTPConstants;
+import org.apache.jmeter.util.JMeterUtils;
+
+public class TestHTTPNioImpl extends JMeterTestCase {
+
+    private static final String ISO_8859_1 = "ISO-8859-1"; // $NON-NLS-1$
+
+    private static final int MIRROR_PORT = 8084; // Different from the other mirror tests
+
+    private static HttpMirrorNioServer httpServer;
+
+    private HTTPSamplerProxy sampler;
+
+    public TestHTTPNioImpl(String name) {
+        super(name);
+    }
+
+    // This is used to emulate @before class and @after class
+    public static Test suite(){
+        TestSuite testSuite = new TestSuite(TestHTTPNioImpl.class);
+        return new TestSetup(testSuite){
+            @Override
+            protected void setUp() throws Exception {
+                httpServer = new HttpMirrorNioServer(MIRROR_PORT, -1, 0);
+                httpServer.start();
+                // Wait until the server is accepting connections
+                for (int i = 0; i < 50; i++) {
+                    assertNull(httpServer.getException());
+                    try {
+                        new Socket("localhost", MIRROR_PORT).close(); // $NON-NLS-1$
+                        return;
+                    } catch (IOException e) {
+                        Thread.sleep(20);
+                    }
+                }
+                fail("Could not connect to the mirror server");
+            }
+
+            @Override
+            protected void tearDown() throws Exception {
+                httpServer.stopServer();
+                httpServer.join(5000);
+                httpServer = null;
+            }
+        };
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        sampler = (HTTPSamplerProxy) HTTPSamplerFactory.newInstance(HTTPSamplerFactory.IMPL_NIO);
+        sampler.setProtocol("http"); // $NON-NLS-1$
+        sampler.setDomain("localhost"); // $NON-NLS-1$
+        sampler.setPort(MIRROR_PORT);
+        sampler.setPath("/test/nio?x=1"); // $NON-NLS-1$
+        sampler.setMethod(HTTPConstants.GET);
+        sampler.setUseKeepAlive(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sampler.threadFinished();
+    }
+
+    public void testGetKeepsConnectionAlive() throws Exception {
+        long connections = 0;
+        for (int i = 0; i < 3; i++) {
+            HTTPSampleResult res = (HTTPSampleResult) sampler.sample();
+            assertTrue(res.getResponseMessage(), res.isSuccessful());
+            assertEquals("200", res.getResponseCode()); // $NON-NLS-1$
+            assertEquals("OK", res.getResponseMessage()); // $NON-NLS-1$
+            assertTrue(res.getResponseHeaders().startsWith("HTTP/1.1 200 OK\n")); // $NON-NLS-1$
+            assertEquals("text/plain", res.getContentType()); // $NON-NLS-1$
+            String body = new String(res.getResponseData(), ISO_8859_1);
+            assertTrue(body, body.startsWith("GET /test/nio?x=1 HTTP/1.1\r\n")); // $NON-NLS-1$
+            assertTrue(body, body.indexOf("Host: localhost:" + MIRROR_PORT + "\r\n") > 0); // $NON-NLS-1$ $NON-NLS-2$
+            assertEquals(body.length(), res.getBodySize());
+            assertTrue(res.getHeadersSize() > 0);
+            assertTrue(res.getLatency() <= res.getTime());
+            if (i == 0) {
+                connections = httpServer.getConnectionCount();
+            }
+        }
+        // The later requests are sent on the first connection
+        assertEquals(connections, httpServer.getConnectionCount());
+    }
+
+    public void testPost() throws Exception {
+        sampler.setMethod(HTTPConstants.POST);
+        sampler.setPath("/post"); // $NON-NLS-1$
+        sampler.addArgument("name", "value 1"); // $NON-NLS-1$ $NON-NLS-2$
+        sampler.addArgument("other", "2"); // $NON-NLS-1$ $NON-NLS-2$
+        HTTPSampleResult res = (HTTPSampleResult) sampler.sample();
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        String body = new String(res.getResponseData(), ISO_8859_1);
+        assertTrue(body, body.startsWith("POST /post HTTP/1.1\r\n")); // $NON-NLS-1$
+        assertTrue(body, body.indexOf("Content-Type: application/x-www-form-urlencoded\r\n") > 0); // $NON-NLS-1$
+        assertTrue(body, body.endsWith("\r\n\r\nname=value+1&other=2")); // $NON-NLS-1$
+        assertEquals("name=value+1&other=2", res.getQueryString()); // $NON-NLS-1$
+    }
+
+    public void testResponseTimeout() throws Exception {
+        HeaderManager headerManager = new HeaderManager();
+        headerManager.add(new Header("X-Sleep", "2000")); // $NON-NLS-1$ $NON-NLS-2$
+        sampler.setHeaderManager(headerManager);
+        sampler.setResponseTimeout("200"); // $NON-NLS-1$
+        HTTPSampleResult res = (HTTPSampleResult) sampler.sample();
+        assertFalse(res.isSuccessful());
+        assertTrue(res.getResponseCode(), res.getResponseCode().indexOf("SocketTimeoutException") > 0); // $NON-NLS-1$
+        assertTrue(res.getTime() < 2000);
+    }
+
+    public void testConnectionRefused() throws Exception {
+        sampler.setPort(MIRROR_PORT + 1);
+        HTTPSampleResult res = (HTTPSampleResult) sampler.sample();
+        assertFalse(res.isSuccessful());
+        assertTrue(res.getResponseCode(), res.getResponseCode().indexOf("ConnectException") > 0); // $NON-NLS-1$
+    }
+
+    public void testInFlightWindow() throws Exception {
+        JMeterUtils.setProperty("httpclient.nio.max_in_flight", "3"); // $NON-NLS-1$ $NON-NLS-2$
+        try {
+            HTTPSamplerProxy async = (HTTPSamplerProxy) HTTPSamplerFactory.newInstance(HTTPSamplerFactory.IMPL_NIO);
+            async.setName("async"); // $NON-NLS-1$
+            async.setDomain("localhost"); // $NON-NLS-1$
+            async.setPort(MIRROR_PORT);
+            async.setPath("/async"); // $NON-NLS-1$
+            async.setMethod(HTTPConstants.GET);
+            async.setUseKeepAlive(true);
+            HeaderManager headerManager = new HeaderManager();
+            headerManager.add(new Header("X-Sleep", "300")); // $NON-NLS-1$ $NON-NLS-2$
+            async.setHeaderManager(headerManager);
+            try {
+                long start = System.currentTimeMillis();
+                // The first requests return at once, while the window fills up
+                assertNull(async.sample());
+                assertNull(async.sample());
+                assertTrue(System.currentTimeMillis() - start < 300);
+                // The third waits for the first response
+                HTTPSampleResult res = (HTTPSampleResult) async.sample();
+                assertNotNull(res);
+                assertTrue(res.getResponseMessage(), res.isSuccessful());
+                assertEquals("async", res.getSampleLabel()); // $NON-NLS-1$
+                assertTrue(res.getTime() >= 300);
+                String body = new String(res.getResponseData(), ISO_8859_1);
+                assertTrue(body, body.startsWith("GET /async HTTP/1.1\r\n")); // $NON-NLS-1$
+                // The three requests were in flight together, so the wait was about one response time
+                assertTrue(System.currentTimeMillis() - start < 900);
+            } finally {
+                async.threadFinished();
+            }
+        } finally {
+            JMeterUtils.setProperty("httpclient.nio.max_in_flight", "1"); // $NON-NLS-1$ $NON-NLS-2$
+        }
+    }
+
+    /**
+     * Sends the response to one request, and then keeps the connection open until the client closes it.
+     */
+    private ServerSocket startCannedServer(final String response) throws IOException {
+        final ServerSocket server = new ServerSocket(0);
+        Thread thread = new Thread("canned response server") { // $NON-NLS-1$
+            @Override
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        InputStream in = socket.getInputStream();
+                        int matched = 0;
+                        while (matched < 4) { // read up to the blank line
+                            int b = in.read();
+                            if (b < 0) {
+                                return;
+                            }
+                            matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write(response.getBytes(ISO_8859_1));
+                        out.flush();
+                        while (in.read() >= 0) {
+                            // wait for the client to close
+                        }
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private HTTPSampleResult sampleCanned(String response) throws Exception {
+        ServerSocket server = startCannedServer(response);
+        try {
+            sampler.setPort(server.getLocalPort());
+            sampler.setResponseTimeout("10000"); // $NON-NLS-1$
+            HTTPSampleResult res = (HTTPSampleResult) sampler.sample();
+            assertFalse(res.isSuccessful());
+            // The sample must fail as soon as the response is read, not when the timeout expires
+            assertTrue(res.getTime() < 5000);
+            return res;
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testNegativeContentLength() throws Exception {
+        HTTPSampleResult res = sampleCanned("HTTP/1.1 200 OK\r\nContent-Length: -5\r\n\r\nhello"); // $NON-NLS-1$
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf("Invalid Content-Length: -5") > 0); // $NON-NLS-1$
+        res = sampleCanned("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\nhello"); // $NON-NLS-1$
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf("Invalid Content-Length: -1") > 0); // $NON-NLS-1$
+    }
+
+    public void testOversizedContentLength() throws Exception {
+        HTTPSampleResult res = sampleCanned("HTTP/1.1 200 OK\r\nContent-Length: 4294967296\r\n\r\nhello"); // $NON-NLS-1$
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf("Invalid Content-Length") > 0); // $NON-NLS-1$
+    }
+
+    public void testOversizedChunk() throws Exception {
+        byte[] buf = "7ffffffe\r\nabc".getBytes(ISO_8859_1); // $NON-NLS-1$
+        assertEquals(-1, HttpNioConnection.findChunkedEnd(buf, 0, buf.length));
+        HTTPSampleResult res = sampleCanned("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nabc\r\n"); // $NON-NLS-1$
+        assertTrue(res.getResponseMessage(), res.getResponseMessage().indexOf("Invalid chunk size") > 0); // $NON-NLS-1$
+    }
+
+    public void testChunked() throws Exception {
+        byte[] buf = "5\r\nhello\r\n7;ext=1\r\n, world\r\n0\r\nTrailer: x\r\n\r\nnext".getBytes(ISO_8859_1); // $NON-NLS-1$
+        int end = HttpNioConnection.findChunkedEnd(buf, 0, buf.length);
+        assertEquals(buf.length - 4, end);
+        assertEquals("hello, world", new String(HttpNioConnection.decodeChunked(buf, 0, end), ISO_8859_1)); // $NON-NLS-1$
+        assertEquals(-1, HttpNioConnection.findChunkedEnd(buf, 0, 12));
+        assertEquals(-1, HttpNioConnection.findChunkedEnd(buf, 0, end - 1));
+    }
+
+    public void testIsIdempotent() throws Exception {
+        assertTrue(HTTPNioImpl.isIdempotent(HTTPConstants.GET));
+        assertTrue(HTTPNioImpl.isIdempotent(HTTPConstants.PUT));
+        assertTrue(HTTPNioImpl.isIdempotent(HTTPConstants.DELETE));
+        assertFalse(HTTPNioImpl.isIdempotent(HTTPConstants.POST));
+        assertFalse(HTTPNioImpl.isIdempotent("PATCH")); // $NON-NLS-1$
+        assertFalse(HTTPNioImpl.isIdempotent("PROPFIND")); // $NON-NLS-1$
+    }
+
+    public void testParseHeaders() throws Exception {
+        String head = "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nSet-Cookie: a=1\r\nSet-Cookie: b=2\r\n\r\n"; // $NON-NLS-1$
+        assertEquals(404, HttpNioConnection.getStatusCode(head));
+        assertEquals("0", HttpNioConnection.getHeader(head, "content-length")); // $NON-NLS-1$ $NON-NLS-2$
+        assertEquals("b=2", HttpNioConnection.getHeader(head, "Set-Cookie")); // $NON-NLS-1$ $NON-NLS-2$
+        assertEquals(3, HTTPNioImpl.parseHeaders(head).size());
+        try {
+            HttpNioConnection.getStatusCode("garbage\r\n\r\n"); // $NON-NLS-1$
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.http.util.accesslog;
+
+import junit.framework.TestCase;
+
+public class TestLogReplayScheduler extends TestCase {
+
+    public TestLogReplayScheduler(String name) {
+        super(name);
+    }
+
+    public void testDueTimes() throws Exception {
+        LogReplayScheduler sched = new LogReplayScheduler(1.0);
+        assertEquals(5000, sched.getDueTime(100000, 5000)); // first entry defines the origin
+        assertEquals(5000, sched.getDueTime(100000, 9000));
+        assertEquals(6000, sched.getDueTime(101000, 5100));
+        assertEquals(65000, sched.getDueTime(160000, 5100));
+    }
+
+    public void testSpeed() throws Exception {
+        LogReplayScheduler sched = new LogReplayScheduler(5.0);
+        assertEquals(0, sched.getDueTime(1000000, 0));
+        assertEquals(200, sched.getDueTime(1001000, 0));
+        assertEquals(12000, sched.getDueTime(1060000, 0));
+    }
+
+    public void testLag() throws Exception {
+        LogReplayScheduler sched = new LogReplayScheduler(2.0);
+        sched.recordLag(0);
+        sched.recordLag(10);
+        sched.recordLag(30);
+        sched.recordLag(0);
+        assertEquals(4, sched.getScheduledCount());
+        assertEquals(2, sched.getLateCount());
+        assertEquals(30, sched.getMaxLag());
+        assertEquals(10.0, sched.getMeanLag(), 0.001);
+    }
+
+    public void testInvalidSpeed() throws Exception {
+        try {
+            new LogReplayScheduler(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -53,6 +53,16 @@ public class TestTCLogParser  extends JMeterTestCase {
             assertTrue("URL is a query", tclp.checkURL(URL2));
         }
 
+        public void testParseTimestamp() throws Exception {
+            TCLogParser tcp = new TCLogParser();
+            long t1 = tcp.parseTimestamp(URL1);
+            // 08/Jan/2003:07:03:54 -0500 == 12:03:54 UTC
+            assertEquals(1042027434000L, t1);
+            assertEquals(-1, tcp.parseTimestamp("/addrbook/"));
+            assertEquals(-1, tcp.parseTimestamp("[not a date] \"GET / HTTP/1.1\""));
+            assertEquals(-1, tcp.getLastTimestamp());
+        }
+
         public void testHEAD() throws Exception {
             String res = tclp.cleanURL(TEST3);
             assertEquals("/addrbook/", res);
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.java.sampler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleResult;
+
+public class TestJavaSampler extends JMeterTestCase {
+
+    /** The callbacks of the operations started by {@link ManualAsyncClient} */
+    private static final List<AsyncJavaSamplerClient.Callback> started =
+        new CopyOnWriteArrayList<AsyncJavaSamplerClient.Callback>();
+
+    /**
+     * A client whose operations are completed by the test.
+     */
+    public static class ManualAsyncClient extends AbstractAsyncJavaSamplerClient {
+        public void startTest(JavaSamplerContext context, Callback callback) {
+            started.add(callback);
+        }
+    }
+
+    /**
+     * A client whose operations complete before startTest returns.
+     */
+    public static class ImmediateAsyncClient extends AbstractAsyncJavaSamplerClient {
+        public void startTest(JavaSamplerContext context, Callback callback) {
+            callback.sampleCompleted(createResult("immediate")); // $NON-NLS-1$
+        }
+    }
+
+    private JavaSampler sampler;
+
+    public TestJavaSampler(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        started.clear();
+        sampler = new JavaSampler();
+        sampler.setName("Java Request"); // $NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sampler.testEnded();
+    }
+
+    private static SampleResult createResult(String label) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(label);
+        res.setSuccessful(true);
+        return res;
+    }
+
+    public void testOperationsInFlight() throws Exception {
+        sampler.setClassname(ManualAsyncClient.class.getName());
+        sampler.setMaxInFlight("3"); // $NON-NLS-1$
+        assertNull(sampler.sample(null));
+        assertNull(sampler.sample(null));
+        assertEquals(2, started.size());
+        started.get(1).sampleCompleted(createResult("second")); // $NON-NLS-1$
+        // A result is available, so the sampler does not wait
+        assertEquals("second", sampler.sample(null).getSampleLabel()); // $NON-NLS-1$
+        assertEquals(3, started.size());
+
+        // Now 3 operations are in flight, so the sampler waits for one to complete
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                started.get(0).sampleCompleted(createResult("first")); // $NON-NLS-1$
+            }
+        }.start();
+        assertEquals("first", sampler.sample(null).getSampleLabel()); // $NON-NLS-1$
+        assertEquals(4, started.size());
+    }
+
+    public void testOneInFlightUsesRunTest() throws Exception {
+        sampler.setClassname(ImmediateAsyncClient.class.getName());
+        SampleResult res = sampler.sample(null);
+        assertNotNull(res);
+        assertEquals("immediate", res.getSampleLabel()); // $NON-NLS-1$
+    }
+
+    public void testImmediateCompletion() throws Exception {
+        sampler.setClassname(ImmediateAsyncClient.class.getName());
+        sampler.setMaxInFlight("10"); // $NON-NLS-1$
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(sampler.sample(null));
+        }
+    }
+
+    public void testInterruptWhileWaiting() throws Exception {
+        sampler.setClassname(ManualAsyncClient.class.getName());
+        sampler.setMaxInFlight("2"); // $NON-NLS-1$
+        assertNull(sampler.sample(null));
+        assertFalse(sampler.interrupt());
+        new Thread() {
+            @Override
+            public void run() {
+                // Keep trying until the sampler has started waiting
+                while (!sampler.interrupt()) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }.start();
+        assertNull(sampler.sample(null));
+    }
+}
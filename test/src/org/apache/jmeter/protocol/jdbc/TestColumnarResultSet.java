@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class TestColumnarResultSet extends TestCase {
+
+    public TestColumnarResultSet(String name) {
+        super(name);
+    }
+
+    public void testRows() throws Exception {
+        ColumnarResultSet rs = new ColumnarResultSet(new String[] { "ID", "NAME" });
+        assertEquals(0, rs.size());
+        for (int i = 0; i < 100; i++) { // enough to force the columns to grow
+            int row = rs.addRow();
+            assertEquals(i, row);
+            rs.setValue(row, 0, Integer.valueOf(i));
+            rs.setValue(row, 1, "name" + i);
+        }
+        assertEquals(100, rs.size());
+        assertEquals(Integer.valueOf(42), rs.get(42).get("ID"));
+        assertEquals("name99", rs.getValue(99, "NAME"));
+        assertNull(rs.get(0).get("UNKNOWN"));
+        assertEquals(2, rs.get(0).size());
+        assertEquals("[ID, NAME]", rs.getColumnNames().toString());
+    }
+
+    public void testRowEqualsHashMap() throws Exception {
+        ColumnarResultSet rs = new ColumnarResultSet(new String[] { "A", "B" });
+        int row = rs.addRow();
+        rs.setValue(row, 0, "x");
+        rs.setValue(row, 1, null);
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("A", "x");
+        expected.put("B", null);
+        assertEquals(expected, rs.get(0));
+        assertEquals(expected.hashCode(), rs.get(0).hashCode());
+        assertTrue(rs.get(0).containsKey("B"));
+    }
+
+    public void testDuplicateColumnNames() throws Exception {
+        // last column wins, as with the previous one HashMap per row
+        ColumnarResultSet rs = new ColumnarResultSet(new String[] { "C", "C" });
+        int row = rs.addRow();
+        rs.setValue(row, 0, "first");
+        rs.setValue(row, 1, "second");
+        assertEquals("second", rs.get(0).get("C"));
+        assertEquals(1, rs.get(0).size());
+    }
+
+    public void testReadOnly() throws Exception {
+        ColumnarResultSet rs = new ColumnarResultSet(new String[] { "A" });
+        rs.addRow();
+        try {
+            rs.get(0).put("A", "y");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+        }
+        Map.Entry<String, Object> entry = rs.get(0).entrySet().iterator().next();
+        try {
+            entry.setValue("y");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            rs.get(1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+}
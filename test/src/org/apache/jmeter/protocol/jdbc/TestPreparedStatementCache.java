@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestPreparedStatementCache extends TestCase {
+
+    /** Statements created by the dummy connection, in creation order */
+    private final List<PreparedStatement> created = new ArrayList<PreparedStatement>();
+
+    /** Statements that have been closed */
+    private final List<PreparedStatement> closed = new ArrayList<PreparedStatement>();
+
+    public TestPreparedStatementCache(String name) {
+        super(name);
+    }
+
+    private PreparedStatement newStatement() {
+        // CallableStatement extends PreparedStatement, so this serves for both
+        final PreparedStatement[] self = new PreparedStatement[1];
+        self[0] = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { CallableStatement.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("close")) {
+                            closed.add(self[0]);
+                        }
+                        return null;
+                    }
+                });
+        created.add(self[0]);
+        return self[0];
+    }
+
+    private Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { Connection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().startsWith("prepare")) {
+                            return newStatement();
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(newConnection(), 10);
+        PreparedStatement p1 = cache.getStatement("select 1", false);
+        assertSame(p1, cache.getStatement("select 1", false));
+        cache.getStatement("select 2", false);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+        assertEquals("hits=1 misses=2 size=2", cache.toString());
+    }
+
+    public void testEvictionClosesLeastRecentlyUsed() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(newConnection(), 2);
+        PreparedStatement p1 = cache.getStatement("q1", false);
+        PreparedStatement p2 = cache.getStatement("q2", false);
+        cache.getStatement("q1", false); // q2 is now the least recently used
+        cache.getStatement("q3", false);
+        assertEquals(2, cache.size());
+        assertEquals(1, closed.size());
+        assertSame(p2, closed.get(0));
+        assertSame(p1, cache.getStatement("q1", false));
+    }
+
+    public void testClose() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(newConnection(), 5);
+        cache.getStatement("q1", false);
+        cache.release();
+        cache.getStatement("q2", true);
+        cache.release();
+        cache.close();
+        assertEquals(0, cache.size());
+        assertEquals(created.size(), closed.size());
+    }
+
+    public void testCloseWhileInUse() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(newConnection(), 5);
+        cache.getStatement("q1", false);
+        cache.close(); // e.g. evicted by another thread
+        assertEquals(0, closed.size());
+        // prepared after the cache was closed, but still closed on release
+        cache.getStatement("q2", false);
+        cache.release();
+        assertEquals(0, closed.size());
+        cache.release();
+        assertEquals(2, created.size());
+        assertEquals(created.size(), closed.size());
+        assertEquals(0, cache.size());
+    }
+
+    public void testReleaseKeepsStatementsOpen() throws Exception {
+        PreparedStatementCache cache = new PreparedStatementCache(newConnection(), 5);
+        PreparedStatement p1 = cache.getStatement("q1", false);
+        cache.release();
+        assertEquals(0, closed.size());
+        assertSame(p1, cache.getStatement("q1", false));
+        cache.release();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.jdbc.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentConnectionPool extends TestCase {
+
+    private static final String URL = "jdbc:jmetertestpool:db"; // $NON-NLS-1$
+
+    /** Number of physical connections opened by the dummy driver */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /** Number of physical connections closed */
+    private final AtomicInteger closed = new AtomicInteger();
+
+    /** Number of rollbacks on all physical connections */
+    private final AtomicInteger rollbacks = new AtomicInteger();
+
+    private Driver driver;
+
+    public TestConcurrentConnectionPool(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        driver = (Driver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { Driver.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("acceptsURL")) {
+                            return Boolean.valueOf(URL.equals(args[0]));
+                        }
+                        if (name.equals("connect")) {
+                            return URL.equals(args[0]) ? newConnection() : null;
+                        }
+                        if (name.equals("jdbcCompliant")) {
+                            return Boolean.FALSE;
+                        }
+                        if (name.equals("getMajorVersion") || name.equals("getMinorVersion")) {
+                            return Integer.valueOf(1);
+                        }
+                        return null;
+                    }
+                });
+        DriverManager.registerDriver(driver);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private Connection newConnection() {
+        opened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { Connection.class }, new InvocationHandler() {
+                    private boolean isClosed;
+                    private boolean autoCommit = true;
+                    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            if (!isClosed) {
+                                closed.incrementAndGet();
+                            }
+                            isClosed = true;
+                        } else if (name.equals("isClosed")) {
+                            return Boolean.valueOf(isClosed);
+                        } else if (name.equals("getAutoCommit")) {
+                            return Boolean.valueOf(autoCommit);
+                        } else if (name.equals("setAutoCommit")) {
+                            autoCommit = ((Boolean) args[0]).booleanValue();
+                        } else if (name.equals("getTransactionIsolation")) {
+                            return Integer.valueOf(isolation);
+                        } else if (name.equals("setTransactionIsolation")) {
+                            isolation = ((Integer) args[0]).intValue();
+                        } else if (name.equals("rollback")) {
+                            rollbacks.incrementAndGet();
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private ConcurrentConnectionPool newPool(int max, long timeout, long maxLifetime) {
+        return newPool(true, max, timeout, maxLifetime, 0);
+    }
+
+    private ConcurrentConnectionPool newPool(boolean autocommit, int max, long timeout, long maxLifetime,
+            long trimInterval) {
+        return new ConcurrentConnectionPool("test", "java.lang.Object", URL, "", "", // $NON-NLS-1$
+                autocommit, max, timeout, "", 0, maxLifetime, -1, trimInterval);
+    }
+
+    public void testConnectionIsReused() throws Exception {
+        ConcurrentConnectionPool pool = newPool(2, 1000, 0);
+        Connection c1 = pool.getConnection();
+        assertEquals(1, pool.getActiveCount());
+        c1.close();
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        // Same proxy, so per-connection caches keep working
+        assertSame(c1, pool.getConnection());
+        assertEquals(1, opened.get());
+        assertFalse(c1.isClosed());
+        pool.dispose();
+    }
+
+    public void testStatistics() throws Exception {
+        ConcurrentConnectionPool pool = newPool(2, 1000, 0);
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        assertNotSame(c1, c2);
+        PooledConnectionStatistics stats = (PooledConnectionStatistics) c2;
+        assertEquals(2, stats.getActiveCount());
+        assertEquals(0, stats.getIdleCount());
+        assertTrue(stats.getPoolWaitTime() >= 0);
+        c1.close();
+        c2.close();
+        pool.dispose();
+        assertEquals(2, closed.get());
+    }
+
+    public void testTimeoutWhenExhausted() throws Exception {
+        ConcurrentConnectionPool pool = newPool(1, 50, 0);
+        Connection c1 = pool.getConnection();
+        try {
+            pool.getConnection();
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+        c1.close();
+        pool.getConnection().close();
+        pool.dispose();
+    }
+
+    public void testReturnedConnectionCannotBeUsed() throws Exception {
+        ConcurrentConnectionPool pool = newPool(1, 50, 0);
+        Connection c1 = pool.getConnection();
+        c1.close();
+        c1.close(); // must not release the permit twice
+        try {
+            c1.createStatement();
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+        Connection c2 = pool.getConnection();
+        try {
+            pool.getConnection();
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+        c2.close();
+        pool.dispose();
+    }
+
+    public void testMaxLifetime() throws Exception {
+        ConcurrentConnectionPool pool = newPool(1, 1000, 1);
+        Connection c1 = pool.getConnection();
+        Thread.sleep(10);
+        c1.close();
+        assertEquals(1, closed.get());
+        assertEquals(0, pool.getIdleCount());
+        pool.getConnection().close();
+        assertEquals(2, opened.get());
+        pool.dispose();
+    }
+
+    public void testReleaseRestoresState() throws Exception {
+        ConcurrentConnectionPool pool = newPool(1, 1000, 0);
+        Connection c1 = pool.getConnection();
+        c1.setAutoCommit(false);
+        c1.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        c1.close();
+        assertEquals(1, rollbacks.get());
+        Connection c2 = pool.getConnection();
+        assertSame(c1, c2);
+        assertTrue(c2.getAutoCommit());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, c2.getTransactionIsolation());
+        c2.close();
+        // Nothing to roll back in auto-commit mode
+        assertEquals(1, rollbacks.get());
+        pool.dispose();
+    }
+
+    public void testReleaseRollsBackWithoutAutoCommit() throws Exception {
+        ConcurrentConnectionPool pool = newPool(false, 1, 1000, 0, 0);
+        Connection c1 = pool.getConnection();
+        assertFalse(c1.getAutoCommit());
+        c1.close();
+        assertEquals(1, rollbacks.get());
+        assertFalse(pool.getConnection().getAutoCommit());
+        pool.dispose();
+    }
+
+    public void testTrimIdleConnections() throws Exception {
+        ConcurrentConnectionPool pool = newPool(true, 2, 1000, 0, 50);
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        c1.close();
+        c2.close();
+        assertEquals(2, pool.getIdleCount());
+        Thread.sleep(100);
+        // The next borrow trims the connections which were idle for a whole interval
+        Connection c3 = pool.getConnection();
+        assertEquals(2, closed.get());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(3, opened.get());
+        c3.close();
+        pool.dispose();
+    }
+}
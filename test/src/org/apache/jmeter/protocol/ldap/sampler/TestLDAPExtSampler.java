@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.apache.jmeter.protocol.ldap.sampler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.util.XMLBuffer;
+
+public class TestLDAPExtSampler extends TestCase {
+
+    /** Number of entries found by the search */
+    private static final int ENTRIES = 10;
+
+    /** Page size used by the directory if the paged results control is sent */
+    private int pageSize;
+
+    /** Index of the next entry to return */
+    private int next;
+
+    /** Count limits of the searches made */
+    private final List<Long> countLimits = new ArrayList<Long>();
+
+    private Control[] requestControls;
+
+    private Control[] responseControls;
+
+    public TestLDAPExtSampler(String name) {
+        super(name);
+    }
+
+    /**
+     * A directory which returns {@link #ENTRIES} entries, in pages if the paged results
+     * control is set, and which enforces the count limit of each search as a server does.
+     */
+    private LdapContext newContext() {
+        return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { LdapContext.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                        String name = method.getName();
+                        if (name.equals("setRequestControls")) {
+                            requestControls = (Control[]) args[0];
+                        } else if (name.equals("getResponseControls")) {
+                            return responseControls;
+                        } else if (name.equals("search")) {
+                            return search((SearchControls) args[2]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private NamingEnumeration<SearchResult> search(SearchControls controls) throws Exception {
+        countLimits.add(Long.valueOf(controls.getCountLimit()));
+        boolean paged = requestControls != null && requestControls.length > 0
+                && requestControls[0] instanceof PagedResultsControl;
+        int end = paged ? Math.min(next + pageSize, ENTRIES) : ENTRIES;
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        for (; next < end; next++) {
+            results.add(new SearchResult("cn=entry" + next, null, new BasicAttributes("cn", "entry" + next)));
+        }
+        if (paged) {
+            byte[] cookie = next < ENTRIES ? new byte[] { 1 } : new byte[0];
+            responseControls = new Control[] { new PagedResultsResponseControl(
+                    PagedResultsResponseControl.OID, false, encodeResponse(cookie)) };
+        }
+        return new Results(results, controls.getCountLimit());
+    }
+
+    /** BER encoding of the paged results response value, with a size of 0 */
+    private static byte[] encodeResponse(byte[] cookie) {
+        byte[] value = new byte[7 + cookie.length];
+        value[0] = 0x30; // SEQUENCE
+        value[1] = (byte) (5 + cookie.length);
+        value[2] = 0x02; // INTEGER
+        value[3] = 1;
+        value[4] = 0;
+        value[5] = 0x04; // OCTET STRING
+        value[6] = (byte) cookie.length;
+        System.arraycopy(cookie, 0, value, 7, cookie.length);
+        return value;
+    }
+
+    private static class Results implements NamingEnumeration<SearchResult> {
+        private final Iterator<SearchResult> iterator;
+
+        private final long countLimit;
+
+        private long returned;
+
+        Results(List<SearchResult> results, long countLimit) {
+            this.iterator = results.iterator();
+            this.countLimit = countLimit;
+        }
+
+        public boolean hasMore() throws NamingException {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            if (countLimit > 0 && returned >= countLimit) {
+                throw new SizeLimitExceededException("[LDAP: error code 4 - Sizelimit Exceeded]");
+            }
+            return true;
+        }
+
+        public SearchResult next() {
+            returned++;
+            return iterator.next();
+        }
+
+        public boolean hasMoreElements() {
+            return iterator.hasNext();
+        }
+
+        public SearchResult nextElement() {
+            return next();
+        }
+
+        public void close() {
+        }
+    }
+
+    private String stream(LDAPExtSampler sampler) throws NamingException {
+        XMLBuffer xmlb = new XMLBuffer();
+        sampler.streamSearchResults(xmlb, newContext(), new SampleResult());
+        assertNull("The request controls should be cleared", requestControls);
+        return xmlb.toString();
+    }
+
+    private static LDAPExtSampler newSampler(String countLimit, String pageSize) {
+        LDAPExtSampler sampler = new LDAPExtSampler();
+        sampler.setProperty(LDAPExtSampler.SEARCHBASE, "dc=example");
+        sampler.setProperty(LDAPExtSampler.SEARCHFILTER, "(cn=*)");
+        sampler.setCountlim(countLimit);
+        sampler.setPageSize(pageSize);
+        sampler.setMaxRetained("2");
+        sampler.setAttrs("cn");
+        return sampler;
+    }
+
+    private static void assertTag(String xml, String tag, int value) {
+        String expected = "<" + tag + ">" + value + "</" + tag + ">";
+        assertTrue("Expected " + expected + " in " + xml, xml.indexOf(expected) >= 0);
+    }
+
+    public void testStreamAll() throws Exception {
+        String xml = stream(newSampler("0", ""));
+        assertTag(xml, "entries", ENTRIES);
+        assertTag(xml, "retained", 2);
+        assertTag(xml, "pages", 1);
+    }
+
+    public void testPagedAll() throws Exception {
+        pageSize = 3;
+        String xml = stream(newSampler("0", "3"));
+        assertTag(xml, "entries", ENTRIES);
+        assertTag(xml, "pages", 4);
+    }
+
+    public void testCountLimitAcrossPages() throws Exception {
+        pageSize = 3;
+        String xml = stream(newSampler("5", "3"));
+        assertTag(xml, "entries", 5);
+        assertTag(xml, "pages", 2);
+        // the second page only asks for the remaining entries
+        assertEquals(2, countLimits.size());
+        assertEquals(5, countLimits.get(0).longValue());
+        assertEquals(2, countLimits.get(1).longValue());
+    }
+
+    public void testCountLimitOnPageBoundary() throws Exception {
+        pageSize = 3;
+        String xml = stream(newSampler("6", "3"));
+        assertTag(xml, "entries", 6);
+        assertTag(xml, "pages", 2);
+    }
+
+    public void testCountLimitWithoutPaging() throws Exception {
+        String xml = stream(newSampler("4", ""));
+        assertTag(xml, "entries", 4);
+        assertTag(xml, "pages", 1);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.ldap.sampler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+import junit.framework.TestCase;
+
+public class TestLdapContextPool extends TestCase {
+
+    /** Number of contexts opened by the pool */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /** Number of contexts closed */
+    private final AtomicInteger closed = new AtomicInteger();
+
+    /** If true, the check of an idle context fails as if the connection was lost */
+    private volatile boolean connectionLost;
+
+    public TestLdapContextPool(String name) {
+        super(name);
+    }
+
+    private LdapContextPool newPool(int max, long timeout, long checkIdle) {
+        return new LdapContextPool("localhost", "", "dc=example", "cn=user", "secret", "", false, // $NON-NLS-1$
+                max, timeout, checkIdle) {
+            @Override
+            protected DirContext connect() {
+                return newContext();
+            }
+        };
+    }
+
+    private DirContext newContext() {
+        opened.incrementAndGet();
+        return (DirContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { DirContext.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws NamingException {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            closed.incrementAndGet();
+                        } else if (name.equals("getAttributes") && connectionLost) {
+                            throw new CommunicationException("connection closed");
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    public void testContextIsReused() throws Exception {
+        LdapContextPool pool = newPool(2, 1000, 60000);
+        LdapContextPool.PooledContext pc1 = pool.borrow();
+        assertEquals(1, pool.getActiveCount());
+        pool.release(pc1, false);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        assertSame(pc1.getContext(), pool.borrow().getContext());
+        assertEquals(1, opened.get());
+        pool.close();
+    }
+
+    public void testStatistics() throws Exception {
+        LdapContextPool pool = newPool(2, 1000, 60000);
+        LdapContextPool.PooledContext pc1 = pool.borrow();
+        LdapContextPool.PooledContext pc2 = pool.borrow();
+        assertNotSame(pc1.getContext(), pc2.getContext());
+        assertEquals(2, pc2.getActiveCount());
+        assertEquals(0, pc2.getIdleCount());
+        assertTrue(pc2.getWaitTime() >= 0);
+        pool.release(pc1, false);
+        pool.release(pc2, false);
+        pool.close();
+        assertEquals(2, closed.get());
+    }
+
+    public void testTimeoutWhenExhausted() throws Exception {
+        LdapContextPool pool = newPool(1, 50, 60000);
+        LdapContextPool.PooledContext pc1 = pool.borrow();
+        try {
+            pool.borrow();
+            fail("Expected NamingException");
+        } catch (NamingException expected) {
+        }
+        pool.release(pc1, false);
+        pool.release(pool.borrow(), false);
+        pool.close();
+    }
+
+    public void testDiscardedContextIsReplaced() throws Exception {
+        LdapContextPool pool = newPool(1, 1000, 60000);
+        LdapContextPool.PooledContext pc1 = pool.borrow();
+        pool.release(pc1, true);
+        assertEquals(1, closed.get());
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(pc1.getContext(), pool.borrow().getContext());
+        assertEquals(2, opened.get());
+        pool.close();
+    }
+
+    public void testIdleContextIsChecked() throws Exception {
+        LdapContextPool pool = newPool(1, 1000, 0);
+        LdapContextPool.PooledContext pc1 = pool.borrow();
+        pool.release(pc1, false);
+        Thread.sleep(10);
+        // The check succeeds, so the context is reused
+        pc1 = pool.borrow();
+        assertEquals(1, opened.get());
+        pool.release(pc1, false);
+        Thread.sleep(10);
+        connectionLost = true;
+        LdapContextPool.PooledContext pc2 = pool.borrow();
+        assertNotSame(pc1.getContext(), pc2.getContext());
+        assertEquals(2, opened.get());
+        assertEquals(1, closed.get());
+        pool.release(pc2, false);
+        pool.close();
+    }
+
+    public void testConnectionFailure() {
+        assertTrue(LdapContextPool.isConnectionFailure(new CommunicationException()));
+        assertFalse(LdapContextPool.isConnectionFailure(new NamingException()));
+    }
+}
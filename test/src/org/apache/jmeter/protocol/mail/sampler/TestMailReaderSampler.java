@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.mail.sampler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.util.JOrphanUtils;
+
+public class TestMailReaderSampler extends JMeterTestCase {
+
+    private File base;
+
+    private File inbox;
+
+    private MailReaderSampler sampler;
+
+    public TestMailReaderSampler(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        base = File.createTempFile("mailreader", "");
+        base.delete();
+        inbox = new File(base, "INBOX");
+        assertTrue(inbox.mkdirs());
+        sampler = new MailReaderSampler();
+        sampler.setName("mail");
+        sampler.setServerType("file");
+        sampler.setServer(base.getAbsolutePath());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        sampler.threadFinished();
+        File[] files = inbox.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        inbox.delete();
+        base.delete();
+    }
+
+    private String writeMessage(int number) throws IOException {
+        String message = "From: a@example.com\r\nTo: b@example.com\r\nSubject: Message " + number
+            + "\r\n\r\nBody " + number + "\r\n";
+        OutputStream out = new FileOutputStream(new File(inbox, number + ".msg"));
+        try {
+            out.write(message.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return message;
+    }
+
+    public void testAllMessages() throws Exception {
+        writeMessage(1);
+        writeMessage(2);
+        SampleResult res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        assertEquals(2, res.getSubResults().length);
+        assertTrue(res.getSubResults()[1].getResponseDataAsString().contains("Body 2"));
+        assertEquals(2, sampler.sample(null).getSubResults().length);
+    }
+
+    public void testMailboxKeyHidesPassword() throws Exception {
+        sampler.setPassword("secret");
+        String key = sampler.getMailboxKey();
+        assertFalse(key, key.contains("secret"));
+        sampler.setPassword("other");
+        assertFalse(key.equals(sampler.getMailboxKey()));
+    }
+
+    public void testNewMessagesOnly() throws Exception {
+        sampler.setNewMessagesOnly(true);
+        sampler.setKeepAlive(true);
+        writeMessage(1);
+        writeMessage(2);
+        SampleResult res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        assertEquals(2, res.getSubResults().length);
+
+        res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        assertEquals(0, res.getSubResults().length);
+
+        writeMessage(3);
+        res = sampler.sample(null);
+        assertEquals(1, res.getSubResults().length);
+        assertEquals("Message 3", res.getSubResults()[0].getSampleLabel());
+        assertEquals("3 messages found\n1 new messages\n", res.getResponseDataAsString());
+    }
+
+    public void testNewMessagesOnlyWithLimit() throws Exception {
+        sampler.setNewMessagesOnly(true);
+        sampler.setNumMessages(1);
+        writeMessage(1);
+        writeMessage(2);
+        assertEquals("Message 1", sampler.sample(null).getSubResults()[0].getSampleLabel());
+        assertEquals("Message 2", sampler.sample(null).getSubResults()[0].getSampleLabel());
+        assertEquals(0, sampler.sample(null).getSubResults().length);
+    }
+
+    public void testHeadersOnly() throws Exception {
+        sampler.setHeadersOnly(true);
+        writeMessage(1);
+        SampleResult res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        String data = res.getSubResults()[0].getResponseDataAsString();
+        assertTrue(data, data.contains("Subject: Message 1"));
+        assertFalse(data, data.contains("Body 1"));
+    }
+
+    public void testMD5() throws Exception {
+        sampler.setMD5(true);
+        byte[] message = writeMessage(1).getBytes("US-ASCII");
+        SampleResult res = sampler.sample(null);
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+        SampleResult child = res.getSubResults()[0];
+        String expected = JOrphanUtils.baToHexString(MessageDigest.getInstance("MD5").digest(message));
+        assertEquals(expected, child.getResponseDataAsString());
+        assertEquals(message.length, child.getBytes());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.smtp.sampler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jorphan.util.JOrphanUtils;
+
+public class TestSmtpSampler extends JMeterTestCase {
+
+    private SmtpServer server;
+
+    private SmtpSampler sampler;
+
+    public TestSmtpSampler(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        server = new SmtpServer();
+        server.start();
+        sampler = new SmtpSampler();
+        sampler.setName("smtp");
+        sampler.setProperty(SmtpSampler.SERVER, "localhost");
+        sampler.setProperty(SmtpSampler.SERVER_PORT, Integer.toString(server.getPort()));
+        sampler.setProperty(SmtpSampler.MAIL_FROM, "from@example.com");
+        sampler.setProperty(SmtpSampler.RECEIVER_TO, "to@example.com");
+        sampler.setProperty(SmtpSampler.SUBJECT, "Test");
+        sampler.setProperty(SmtpSampler.MESSAGE, "Body");
+        sampler.setProperty(SmtpSampler.PLAIN_BODY, true);
+        sampler.setProperty(new CollectionProperty(SmtpSampler.HEADER_FIELDS, new ArrayList<Object>()));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        sampler.threadFinished();
+        server.close();
+    }
+
+    private void assertSent(SampleResult res) {
+        assertTrue(res.getResponseMessage(), res.isSuccessful());
+    }
+
+    public void testKeepAliveReusesConnection() throws Exception {
+        sampler.setProperty(SmtpSampler.KEEP_ALIVE, true);
+        SampleResult first = sampler.sample(null);
+        assertSent(first);
+        assertTrue(first.getResponseHeaders(), first.getResponseHeaders().contains("Connection-Reused: false"));
+        SampleResult second = sampler.sample(null);
+        assertSent(second);
+        assertTrue(second.getResponseHeaders(), second.getResponseHeaders().contains("Connection-Reused: true"));
+        assertEquals(0, second.getLatency());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(2, server.getMessageCount());
+    }
+
+    public void testKeepAliveMaxMessages() throws Exception {
+        sampler.setProperty(SmtpSampler.KEEP_ALIVE, true);
+        sampler.setProperty(SmtpSampler.KEEP_ALIVE_MESSAGES, "2");
+        sampler.setProperty(SmtpSampler.MESSAGES_PER_SAMPLE, "2");
+        assertSent(sampler.sample(null));
+        assertSent(sampler.sample(null));
+        // each sample reaches the limit, so the connection is not reused
+        assertEquals(2, server.getConnectionCount());
+        assertEquals(4, server.getMessageCount());
+    }
+
+    public void testNoKeepAlive() throws Exception {
+        assertSent(sampler.sample(null));
+        assertSent(sampler.sample(null));
+        assertEquals(2, server.getConnectionCount());
+        assertEquals(2, server.getMessageCount());
+    }
+
+    public void testDifferentServerSettingsUseNewConnection() throws Exception {
+        sampler.setProperty(SmtpSampler.KEEP_ALIVE, true);
+        assertSent(sampler.sample(null));
+        sampler.setProperty(SmtpSampler.SERVER, "127.0.0.1");
+        assertSent(sampler.sample(null));
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    /**
+     * Minimal SMTP server which accepts every message.
+     */
+    private static class SmtpServer extends Thread {
+        private final ServerSocket serverSocket;
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private final AtomicInteger messages = new AtomicInteger();
+
+        SmtpServer() throws IOException {
+            super("SmtpServer");
+            setDaemon(true);
+            serverSocket = new ServerSocket(0);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return connections.get();
+        }
+
+        int getMessageCount() {
+            return messages.get();
+        }
+
+        void close() {
+            JOrphanUtils.closeQuietly(serverSocket);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    new Thread("SmtpServer connection") {
+                        @Override
+                        public void run() {
+                            try {
+                                converse(socket);
+                            } catch (IOException e) {
+                                // client went away
+                            } finally {
+                                JOrphanUtils.closeQuietly(socket);
+                            }
+                        }
+                    }.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void converse(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase(Locale.ENGLISH);
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-localhost\r\n250 8BITMIME");
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // discard the message
+                    }
+                    messages.incrementAndGet();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(OutputStream out, String reply) throws IOException {
+            out.write((reply + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.smtp.sampler.protocol;
+
+import junit.framework.TestCase;
+
+public class TestSendMailCommand extends TestCase {
+
+    public TestSendMailCommand(String name) {
+        super(name);
+    }
+
+    private static SendMailCommand command(String username, String password) {
+        SendMailCommand command = new SendMailCommand();
+        command.setSmtpServer("smtp.example.com");
+        command.setSmtpPort("25");
+        command.setUseAuthentication(true);
+        command.setUsername(username);
+        command.setPassword(password);
+        return command;
+    }
+
+    public void testConnectionKeyHidesPassword() throws Exception {
+        String key = command("user", "secret").getConnectionKey();
+        assertTrue(key, key.contains("user@smtp.example.com:25"));
+        assertFalse(key, key.contains("secret"));
+    }
+
+    public void testConnectionKeyDependsOnCredentials() throws Exception {
+        assertEquals(command("user", "secret").getConnectionKey(), command("user", "secret").getConnectionKey());
+        assertFalse(command("user", "secret").getConnectionKey().equals(command("user", "other").getConnectionKey()));
+        assertFalse(command("user", "secret").getConnectionKey().equals(command("other", "secret").getConnectionKey()));
+    }
+}
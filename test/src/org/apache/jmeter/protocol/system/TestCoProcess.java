@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.protocol.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.config.Argument;
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.samplers.SampleResult;
+
+public class TestCoProcess extends TestCase {
+
+    /** Echoes each request in upper case; a request of "exit" stops the script, "sleep" does not reply */
+    private static final String SCRIPT =
+        "while read len; do" // $NON-NLS-1$
+        + " req=$(dd bs=1 count=$len 2>/dev/null);" // $NON-NLS-1$
+        + " if [ \"$req\" = exit ]; then exit 0; fi;" // $NON-NLS-1$
+        + " if [ \"$req\" = sleep ]; then sleep 10; fi;" // $NON-NLS-1$
+        + " rep=$(printf '%s' \"$req\" | tr a-z A-Z);" // $NON-NLS-1$
+        + " printf '3 %d\\n%s' ${#rep} \"$rep\";" // $NON-NLS-1$
+        + " done"; // $NON-NLS-1$
+
+    private CoProcess coProcess;
+
+    public TestCoProcess(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        if (!new File("/bin/sh").exists()) { // $NON-NLS-1$
+            return;
+        }
+        List<String> command = new ArrayList<String>();
+        command.add("/bin/sh"); // $NON-NLS-1$
+        command.add("-c"); // $NON-NLS-1$
+        command.add(SCRIPT);
+        coProcess = new CoProcess(command, new File(System.getProperty("user.dir")), new HashMap<String, String>()); // $NON-NLS-1$
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (coProcess != null) {
+            coProcess.close();
+        }
+    }
+
+    public void testExchange() throws Exception {
+        if (coProcess == null) {
+            return; // Unix only
+        }
+        for (int i = 0; i < 3; i++) {
+            SampleResult res = new SampleResult();
+            res.sampleStart();
+            CoProcess.Reply reply = coProcess.exchange(("hello " + i).getBytes("UTF-8"), 5000, res);
+            assertEquals(3, reply.getReturnCode());
+            assertEquals("HELLO " + i, new String(reply.getData(), "UTF-8"));
+            assertTrue(res.getLatency() >= 0);
+        }
+        assertEquals(3, coProcess.getRequestCount());
+        assertTrue(coProcess.isAlive());
+    }
+
+    public void testProcessExits() throws Exception {
+        if (coProcess == null) {
+            return;
+        }
+        try {
+            coProcess.exchange("exit".getBytes("UTF-8"), 5000, new SampleResult());
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        Thread.sleep(100);
+        assertFalse(coProcess.isAlive());
+    }
+
+    public void testTimeout() throws Exception {
+        if (coProcess == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            coProcess.exchange("sleep".getBytes("UTF-8"), 200, new SampleResult());
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertEquals("No reply within 200ms", expected.getMessage());
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        Thread.sleep(100);
+        assertFalse(coProcess.isAlive());
+    }
+
+    public void testReplyTooLong() throws Exception {
+        if (coProcess == null) {
+            return;
+        }
+        List<String> command = new ArrayList<String>();
+        command.add("/bin/sh"); // $NON-NLS-1$
+        command.add("-c"); // $NON-NLS-1$
+        command.add("read len; printf '0 2000000000\\n'; sleep 10"); // $NON-NLS-1$
+        CoProcess bad = new CoProcess(command, new File(System.getProperty("user.dir")), new HashMap<String, String>()); // $NON-NLS-1$
+        try {
+            bad.exchange("x".getBytes("UTF-8"), 5000, new SampleResult());
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("system.coprocess.max_reply") >= 0);
+        } finally {
+            bad.close();
+        }
+    }
+
+    public void testSamplerRestartsProcess() throws Exception {
+        if (coProcess == null) {
+            return;
+        }
+        SystemSampler sampler = new SystemSampler();
+        sampler.setName("co"); // $NON-NLS-1$
+        sampler.setCommand("/bin/sh"); // $NON-NLS-1$
+        Arguments args = new Arguments();
+        args.addArgument(new Argument("", "-c")); // $NON-NLS-1$ $NON-NLS-2$
+        args.addArgument(new Argument("", SCRIPT)); // $NON-NLS-1$
+        sampler.setArguments(args);
+        sampler.setEnvironmentVariables(new Arguments());
+        sampler.setCheckReturnCode(true);
+        sampler.setExpectedReturnCode(3);
+        sampler.setCoProcess(true);
+        sampler.setTimeout("5000"); // $NON-NLS-1$
+        try {
+            sampler.setRequest("abc"); // $NON-NLS-1$
+            SampleResult res = sampler.sample(null);
+            assertTrue(res.isSuccessful());
+            assertEquals("ABC", res.getResponseDataAsString());
+            assertTrue(res.getResponseHeaders().startsWith("Co-Process-Started: true"));
+
+            res = sampler.sample(null);
+            assertTrue(res.isSuccessful());
+            assertTrue(res.getResponseHeaders().startsWith("Co-Process-Started: false"));
+            assertTrue(res.getResponseHeaders().endsWith("Requests: 2"));
+
+            sampler.setRequest("exit"); // $NON-NLS-1$
+            res = sampler.sample(null);
+            assertFalse(res.isSuccessful());
+
+            sampler.setRequest("def"); // $NON-NLS-1$
+            res = sampler.sample(null);
+            assertTrue(res.isSuccessful());
+            assertEquals("DEF", res.getResponseDataAsString());
+            assertTrue(res.getResponseHeaders().startsWith("Co-Process-Started: true"));
+        } finally {
+            sampler.threadFinished();
+        }
+    }
+
+    public void testSamplerStartFailure() throws Exception {
+        SystemSampler sampler = new SystemSampler();
+        sampler.setName("co"); // $NON-NLS-1$
+        sampler.setCommand("/nonexistent/command"); // $NON-NLS-1$
+        sampler.setArguments(new Arguments());
+        sampler.setEnvironmentVariables(new Arguments());
+        sampler.setCoProcess(true);
+        sampler.setRequest("abc"); // $NON-NLS-1$
+        try {
+            long before = System.currentTimeMillis();
+            SampleResult res = sampler.sample(null);
+            assertFalse(res.isSuccessful());
+            assertTrue("The sample should have started", res.getStartTime() >= before);
+            assertTrue(res.getEndTime() >= res.getStartTime());
+            assertTrue(res.getResponseHeaders().startsWith("Co-Process-Started: false"));
+        } finally {
+            sampler.threadFinished();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.report;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.save.CSVSaveService;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.visualizers.SamplingStatCalculator;
+
+public class TestParallelResultLoader extends JMeterTestCase {
+
+    private static final long START = 1350000000000L;
+
+    private File file;
+
+    public TestParallelResultLoader(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("TestParallelResultLoader", ".csv");
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            SampleSaveConfiguration config = new SampleSaveConfiguration();
+            writer.println(CSVSaveService.printableFieldNamesToString(config));
+            for (int i = 0; i < 2000; i++) {
+                SampleResult res = new SampleResult(START + i * 37, (i * 7919) % 500);
+                res.setSampleLabel("label" + (i % 3));
+                res.setSuccessful(i % 11 != 0);
+                res.setResponseCode("200");
+                res.setThreadName("Thread 1-" + (i % 5));
+                res.setBytes(100 + i % 50);
+                res.setSaveConfig(config);
+                writer.println(CSVSaveService.resultToDelimitedString(new SampleEvent(res, "Thread Group")));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testParallelMatchesSequential() throws Exception {
+        ParallelResultLoader sequential = new ParallelResultLoader(file.getAbsolutePath(), 1, 1000, Long.MAX_VALUE);
+        assertTrue(sequential.load());
+        // Tiny ranges, so the file is split into many parts
+        ParallelResultLoader parallel = new ParallelResultLoader(file.getAbsolutePath(), 4, 1000, 1000);
+        assertTrue(parallel.load());
+
+        Map<String, SamplingStatCalculator> expected = sequential.getStatistics();
+        Map<String, SamplingStatCalculator> actual = parallel.getStatistics();
+        assertEquals(3, expected.size());
+        assertEquals(expected.keySet(), actual.keySet());
+        long total = 0;
+        for (String label : expected.keySet()) {
+            SamplingStatCalculator e = expected.get(label);
+            SamplingStatCalculator a = actual.get(label);
+            total += a.getCount();
+            assertEquals(label, e.getCount(), a.getCount());
+            assertEquals(label, e.getErrorCount(), a.getErrorCount());
+            assertEquals(label, e.getMin(), a.getMin());
+            assertEquals(label, e.getMax(), a.getMax());
+            assertEquals(label, e.getMean(), a.getMean(), 0.000001);
+            assertEquals(label, e.getStandardDeviation(), a.getStandardDeviation(), 0.000001);
+            assertEquals(label, e.getMedian(), a.getMedian());
+            assertEquals(label, e.getPercentPoint(0.9), a.getPercentPoint(0.9));
+            assertEquals(label, e.getRate(), a.getRate(), 0.000001);
+            assertEquals(label, e.getKBPerSecond(), a.getKBPerSecond(), 0.000001);
+
+            SampleTimeSeries es = sequential.getTimeSeries().get(label);
+            SampleTimeSeries as = parallel.getTimeSeries().get(label);
+            assertEquals(label, es.size(), as.size());
+            for (int i = 0; i < es.size(); i++) {
+                assertEquals(es.getStartTime(i), as.getStartTime(i));
+                assertEquals(es.getCount(i), as.getCount(i));
+                assertEquals(es.getErrorCount(i), as.getErrorCount(i));
+                assertEquals(es.getMeanElapsed(i), as.getMeanElapsed(i), 0.000001);
+            }
+        }
+        assertEquals(2000, total);
+        assertEquals(sequential.getStartTimestamp(), parallel.getStartTimestamp());
+        assertEquals(sequential.getEndTimestamp(), parallel.getEndTimestamp());
+    }
+
+    public void testQuotedLineBreakOnChunkBoundary() throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        String header;
+        try {
+            SampleSaveConfiguration config = new SampleSaveConfiguration();
+            header = CSVSaveService.printableFieldNamesToString(config);
+            writer.println(header);
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                message.append("line ").append(i).append('\n');
+            }
+            for (int i = 0; i < 21; i++) {
+                SampleResult res = new SampleResult(START + i * 37, 10 + i);
+                res.setSampleLabel("label");
+                res.setResponseCode("200");
+                // The middle record is long enough to contain the split point
+                res.setResponseMessage(i == 10 ? message.toString() : "OK");
+                res.setThreadName("Thread 1-1");
+                res.setSaveConfig(config);
+                writer.println(CSVSaveService.resultToDelimitedString(new SampleEvent(res, "Thread Group")));
+            }
+        } finally {
+            writer.close();
+        }
+        long dataLength = file.length() - header.length() - System.getProperty("line.separator").length();
+        // Two ranges, split half way through the data, i.e. inside the quoted message
+        ParallelResultLoader loader = new ParallelResultLoader(file.getAbsolutePath(), 2, 1000, dataLength / 2);
+        assertTrue(loader.load());
+        SamplingStatCalculator calc = loader.getStatistics().get("label");
+        assertEquals(21, calc.getCount());
+        ParallelResultLoader sequential = new ParallelResultLoader(file.getAbsolutePath(), 1, 1000, Long.MAX_VALUE);
+        assertTrue(sequential.load());
+        SamplingStatCalculator expected = sequential.getStatistics().get("label");
+        assertEquals(expected.getMin(), calc.getMin());
+        assertEquals(expected.getMax(), calc.getMax());
+        assertEquals(expected.getMean(), calc.getMean(), 0.000001);
+    }
+
+    public void testXmlIsNotLoaded() throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        writer.close();
+        assertFalse(new ParallelResultLoader(file.getAbsolutePath(), 2, 1000, 1).load());
+    }
+}
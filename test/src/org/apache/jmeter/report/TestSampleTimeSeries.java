@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.report;
+
+import junit.framework.TestCase;
+
+public class TestSampleTimeSeries extends TestCase {
+
+    public TestSampleTimeSeries(String name) {
+        super(name);
+    }
+
+    public void testAdd() {
+        SampleTimeSeries series = new SampleTimeSeries(1000);
+        assertEquals(0, series.size());
+        series.add(10500, 100, 1, 0);
+        series.add(10999, 300, 1, 1);
+        series.add(12000, 50, 1, 0);
+        assertEquals(3, series.size());
+        assertEquals(10000, series.getStartTime(0));
+        assertEquals(2, series.getCount(0));
+        assertEquals(1, series.getErrorCount(0));
+        assertEquals(200.0, series.getMeanElapsed(0), 0.0);
+        assertEquals(2.0, series.getThroughput(0), 0.0);
+        assertEquals(0, series.getCount(1));
+        assertEquals(0.0, series.getMeanElapsed(1), 0.0);
+        assertEquals(1, series.getCount(2));
+    }
+
+    public void testAddEarlierAndGrow() {
+        SampleTimeSeries series = new SampleTimeSeries(10);
+        series.add(5000, 1, 1, 0);
+        series.add(1000, 2, 1, 0); // before the first interval
+        series.add(9990, 3, 1, 0); // beyond the initial capacity
+        assertEquals(900, series.size());
+        assertEquals(1000, series.getStartTime(0));
+        assertEquals(1, series.getCount(0));
+        assertEquals(1, series.getCount(400));
+        assertEquals(3.0, series.getMeanElapsed(899), 0.0);
+        try {
+            series.getCount(900);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    public void testMerge() {
+        SampleTimeSeries a = new SampleTimeSeries(1000);
+        a.add(5000, 10, 1, 0);
+        a.add(6000, 20, 1, 0);
+        SampleTimeSeries b = new SampleTimeSeries(1000);
+        b.add(3000, 30, 2, 1);
+        b.add(6500, 40, 1, 1);
+        a.merge(b);
+        assertEquals(4, a.size());
+        assertEquals(3000, a.getStartTime(0));
+        assertEquals(2, a.getCount(0));
+        assertEquals(0, a.getCount(1));
+        assertEquals(1, a.getCount(2));
+        assertEquals(2, a.getCount(3));
+        assertEquals(1, a.getErrorCount(3));
+        assertEquals(30.0, a.getMeanElapsed(3), 0.0);
+        a.merge(new SampleTimeSeries(1000));
+        assertEquals(4, a.size());
+        try {
+            a.merge(new SampleTimeSeries(10));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+
+public class TestAsynchStatisticalSampleSender extends JMeterTestCase {
+
+    private static final List<SampleEvent> received = Collections.synchronizedList(new ArrayList<SampleEvent>());
+
+    private static volatile String endedHost;
+
+    public TestAsynchStatisticalSampleSender(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() {
+        received.clear();
+        endedHost = null;
+    }
+
+    /*
+     * Serialised with the sender, as it would be when sent to the server
+     */
+    private static class RecordingListener implements RemoteSampleListener, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public void testStarted() {
+        }
+
+        public void testStarted(String host) {
+        }
+
+        public void testEnded() {
+        }
+
+        public void testEnded(String host) {
+            endedHost = host;
+        }
+
+        public void processBatch(List<SampleEvent> samples) throws RemoteException {
+            received.addAll(samples);
+        }
+
+        public void sampleOccurred(SampleEvent e) {
+        }
+
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    // Simulate the RMI transfer, which calls readResolve and so starts the flusher
+    private static SampleSender createSender() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(new AsynchStatisticalSampleSender(new RecordingListener()));
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        return (SampleSender) ois.readObject();
+    }
+
+    private static SampleEvent createEvent(String label, String group, long elapsed, boolean success) {
+        SampleResult res = new SampleResult(System.currentTimeMillis(), elapsed);
+        res.setSampleLabel(label);
+        res.setSuccessful(success);
+        return new SampleEvent(res, group);
+    }
+
+    public void testAllSamplesAreSent() throws Exception {
+        final SampleSender sender = createSender();
+        final int threads = 4;
+        final int samples = 260; // more than the default threshold
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String label = "label" + (t % 2);
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < samples; i++) {
+                        sender.sampleOccurred(createEvent(label, "group", 10, i % 10 != 0));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+        }
+        sender.testEnded("host");
+        assertEquals("host", endedHost);
+
+        int count = 0;
+        int errors = 0;
+        long elapsed = 0;
+        synchronized (received) {
+            for (SampleEvent e : received) {
+                assertEquals("group", e.getThreadGroup());
+                SampleResult res = e.getResult();
+                count += res.getSampleCount();
+                errors += res.getErrorCount();
+                elapsed += res.getTime();
+            }
+        }
+        assertEquals(threads * samples, count);
+        assertEquals(threads * samples / 10, errors);
+        assertEquals(threads * samples * 10L, elapsed);
+    }
+
+    public void testNoSamples() throws Exception {
+        SampleSender sender = createSender();
+        sender.testEnded("host");
+        assertEquals("host", endedHost);
+        assertEquals(0, received.size());
+    }
+}
@@ -24,11 +24,26 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.apache.jmeter.control.GenericController;
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.engine.event.LoopIterationEvent;
+import org.apache.jmeter.engine.event.LoopIterationListener;
 import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.junit.stubs.TestSampler;
+import org.apache.jmeter.samplers.Sampler;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.TestPlan;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.threads.TestCompiler;
+import org.apache.jmeter.threads.ThreadGroup;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+import org.apache.jorphan.collections.SearchByClass;
 
 public class TestSaveService extends JMeterTestCase {
     
@@ -148,6 +163,135 @@ public class TestSaveService extends JMeterTestCase {
 
     }
 
+    public void testBinaryCache() throws Exception {
+        File jmx = File.createTempFile("TestSaveService", ".jmx");
+        File cache = new File(jmx.getPath() + ".cache");
+        String previous = JMeterUtils.getPropDefault("testplan.binary_cache", "false");
+        JMeterUtils.setProperty("testplan.binary_cache", "true");
+        try {
+            copy(findTestFile("testfiles/GuiTest.jmx"), jmx);
+            HashTree parsed = SaveService.loadTree(jmx);
+            assertNotNull(parsed);
+            assertTrue("Cache should have been created", cache.isFile());
+
+            HashTree cached = SaveService.loadTree(jmx);
+            assertNotNull(cached);
+            assertEquals(toXml(parsed), toXml(cached));
+
+            // Changing the content invalidates the cache
+            copy(findTestFile("testfiles/SimpleTestPlan.jmx"), jmx);
+            HashTree changed = SaveService.loadTree(jmx);
+            InputStream in = new FileInputStream(findTestFile("testfiles/SimpleTestPlan.jmx"));
+            try {
+                assertEquals(toXml(SaveService.loadTree(in)), toXml(changed));
+            } finally {
+                in.close();
+            }
+        } finally {
+            JMeterUtils.setProperty("testplan.binary_cache", previous);
+            jmx.delete();
+            cache.delete();
+        }
+    }
+
+    public void testRunCachedTree() throws Exception {
+        LoopController loop = (LoopController) element(new LoopController(), "LoopControlPanel");
+        loop.setLoops(2);
+        loop.setContinueForever(false);
+        ThreadGroup group = (ThreadGroup) element(new ThreadGroup(), "ThreadGroupGui");
+        group.setName("group");
+        group.setSamplerController(loop);
+        TestElement inner = element(new GenericController(), "LogicControllerGui");
+        inner.setName("inner");
+        HashTree tree = new ListedHashTree();
+        HashTree groupTree = tree.add(element(new TestPlan("plan"), "TestPlanGui")).add(group);
+        groupTree.add(inner).add(new Object[] { sampler("one"), sampler("two") });
+        groupTree.add(sampler("three"));
+
+        File jmx = File.createTempFile("TestSaveService", ".jmx");
+        File cache = new File(jmx.getPath() + ".cache");
+        String previous = JMeterUtils.getPropDefault("testplan.binary_cache", "false");
+        JMeterUtils.setProperty("testplan.binary_cache", "true");
+        try {
+            FileOutputStream out = new FileOutputStream(jmx);
+            try {
+                SaveService.saveTree(tree, out);
+            } finally {
+                out.close();
+            }
+            List<String> parsed = run(SaveService.loadTree(jmx));
+            assertTrue("Cache should have been created", cache.isFile());
+            List<String> cached = run(SaveService.loadTree(jmx));
+            assertEquals(Arrays.asList(new String[] { "1", "one", "two", "three", "2", "one", "two", "three" }),
+                    parsed);
+            assertEquals(parsed, cached);
+        } finally {
+            JMeterUtils.setProperty("testplan.binary_cache", previous);
+            jmx.delete();
+            cache.delete();
+        }
+    }
+
+    private static TestElement element(TestElement element, String guiClass) {
+        element.setProperty(TestElement.TEST_CLASS, element.getClass().getName());
+        element.setProperty(TestElement.GUI_CLASS, guiClass);
+        return element;
+    }
+
+    private static TestElement sampler(String name) {
+        return element(new TestSampler(name), "TestBeanGUI");
+    }
+
+    /**
+     * Runs the thread group of the tree as JMeterThread does,
+     * recording the iterations and the names of the samplers.
+     */
+    private static List<String> run(HashTree tree) throws Exception {
+        SearchByClass<ThreadGroup> search = new SearchByClass<ThreadGroup>(ThreadGroup.class);
+        tree.traverse(search);
+        ThreadGroup group = search.getSearchResults().iterator().next();
+        HashTree groupTree = search.getSubTree(group);
+        TestCompiler.initialize();
+        TestCompiler compiler = new TestCompiler(groupTree, new JMeterVariables());
+        groupTree.traverse(compiler);
+        final List<String> events = new ArrayList<String>();
+        group.initialize();
+        group.addIterationListener(new LoopIterationListener() {
+            public void iterationStart(LoopIterationEvent iterEvent) {
+                events.add(String.valueOf(iterEvent.getIteration()));
+            }
+        });
+        for (int i = 0; i < 100 && !group.isDone(); i++) {
+            Sampler sampler = group.next();
+            if (sampler != null) {
+                compiler.configureSampler(sampler).getSampler().sample(null);
+                events.add(sampler.getName());
+            }
+        }
+        return events;
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        InputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static String toXml(HashTree tree) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SaveService.saveTree(tree, out);
+        return out.toString("UTF-8");
+    }
+
     public void testClasses(){
         List<String> missingClasses = SaveService.checkClasses();
         if(missingClasses.size()>0) {
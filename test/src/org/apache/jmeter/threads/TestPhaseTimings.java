@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.config.ConfigTestElement;
+
+public class TestPhaseTimings extends TestCase {
+
+    public TestPhaseTimings(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PhaseTimings.clear();
+    }
+
+    public void testStatsAreSharedByName() throws Exception {
+        ConfigTestElement e1 = new ConfigTestElement();
+        e1.setName("extractor");
+        ConfigTestElement e2 = new ConfigTestElement(); // e.g. clone used by another thread
+        e2.setName("extractor");
+        PhaseTimings.Stat s1 = PhaseTimings.getStat("Group", PhaseTimings.Phase.POST_PROCESSOR, e1);
+        PhaseTimings.Stat s2 = PhaseTimings.getStat("Group", PhaseTimings.Phase.POST_PROCESSOR, e2);
+        assertSame(s1, s2);
+        assertEquals("extractor (ConfigTestElement)", s1.getElement());
+        assertNotSame(s1, PhaseTimings.getStat("Other", PhaseTimings.Phase.POST_PROCESSOR, e1));
+        assertNotSame(s1, PhaseTimings.getStat("Group", PhaseTimings.Phase.ASSERTION, e1));
+        s1.add(1000);
+        s2.add(2000);
+        assertEquals(2, s1.getCount());
+        assertEquals(3000, s1.getNanos());
+    }
+
+    public void testSummary() throws Exception {
+        ConfigTestElement fast = new ConfigTestElement();
+        fast.setName("fast");
+        ConfigTestElement slow = new ConfigTestElement();
+        slow.setName("slow");
+        PhaseTimings.getStat("Group", PhaseTimings.Phase.PRE_PROCESSOR, fast).add(1000000L);
+        PhaseTimings.getStat("Group", PhaseTimings.Phase.ASSERTION, slow).add(5000000L);
+        PhaseTimings.getStat("Group", PhaseTimings.Phase.ASSERTION, slow).add(5000000L);
+        List<PhaseTimings.Stat> stats = PhaseTimings.getStats();
+        assertEquals(2, stats.size());
+        assertEquals("slow (ConfigTestElement)", stats.get(0).getElement());
+        String summary = PhaseTimings.getSummary();
+        assertTrue(summary, summary.indexOf("Group: pre_processor=1 timer=0 sampler=0 post_processor=0 assertion=10 listener=0") > 0);
+        assertTrue(summary, summary.indexOf("Group / ASSERTION / slow (ConfigTestElement): count=2 total=10ms mean=5000us") > 0);
+        assertTrue(summary, summary.indexOf("slow") < summary.indexOf("fast"));
+    }
+
+    public void testVariableNames() throws Exception {
+        assertEquals("phase_sampler_us", PhaseTimings.Phase.SAMPLER.getVariableName());
+        assertEquals("phase_listener_us", PhaseTimings.Phase.LISTENER.getVariableName());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.net.ssl.SSLSession;
+
+import junit.framework.TestCase;
+
+public class TestSSLHandshakeCounter extends TestCase {
+
+    public TestSSLHandshakeCounter(String name) {
+        super(name);
+    }
+
+    private static int nextId = 0;
+
+    private static synchronized byte[] newId() {
+        nextId++;
+        return new byte[] { (byte) (nextId >> 8), (byte) nextId, 42 };
+    }
+
+    private static SSLSession newSession() {
+        return newSession(newId());
+    }
+
+    private static SSLSession newSession(final byte[] id) {
+        return (SSLSession) Proxy.newProxyInstance(TestSSLHandshakeCounter.class.getClassLoader(),
+                new Class[] { SSLSession.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getId".equals(method.getName())) { // $NON-NLS-1$
+                    return id;
+                }
+                if ("getPeerHost".equals(method.getName())) { // $NON-NLS-1$
+                    return "localhost"; // $NON-NLS-1$
+                }
+                if ("getPeerPort".equals(method.getName())) { // $NON-NLS-1$
+                    return Integer.valueOf(443);
+                }
+                if ("hashCode".equals(method.getName())) { // $NON-NLS-1$
+                    return Integer.valueOf(System.identityHashCode(proxy));
+                }
+                if ("equals".equals(method.getName())) { // $NON-NLS-1$
+                    return Boolean.valueOf(proxy == args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testFullAndResumed() throws Exception {
+        long full = SSLHandshakeCounter.getFullHandshakes();
+        long resumed = SSLHandshakeCounter.getResumedHandshakes();
+        long totalFull = SSLHandshakeCounter.getTotalFullHandshakes();
+
+        SSLSession session = newSession();
+        SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+        SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+        SSLHandshakeCounter.countHandshake(newSession(), SSLHandshakeCounter.getCounts());
+
+        assertEquals(full + 2, SSLHandshakeCounter.getFullHandshakes());
+        assertEquals(resumed + 1, SSLHandshakeCounter.getResumedHandshakes());
+        assertTrue(SSLHandshakeCounter.getTotalFullHandshakes() >= totalFull + 2);
+    }
+
+    public void testResumedWithNewSessionObject() throws Exception {
+        long full = SSLHandshakeCounter.getFullHandshakes();
+        long resumed = SSLHandshakeCounter.getResumedHandshakes();
+
+        byte[] id = newId();
+        SSLHandshakeCounter.countHandshake(newSession(id), SSLHandshakeCounter.getCounts());
+        SSLHandshakeCounter.countHandshake(newSession(id.clone()), SSLHandshakeCounter.getCounts());
+
+        assertEquals(full + 1, SSLHandshakeCounter.getFullHandshakes());
+        assertEquals(resumed + 1, SSLHandshakeCounter.getResumedHandshakes());
+    }
+
+    public void testSessionWithoutIdIsFull() throws Exception {
+        long full = SSLHandshakeCounter.getFullHandshakes();
+        long resumed = SSLHandshakeCounter.getResumedHandshakes();
+
+        SSLSession session = newSession(new byte[0]);
+        SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+        SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+
+        assertEquals(full + 2, SSLHandshakeCounter.getFullHandshakes());
+        assertEquals(resumed, SSLHandshakeCounter.getResumedHandshakes());
+    }
+
+    public void testCountsArePerThread() throws Exception {
+        final SSLSession session = newSession();
+        final long full = SSLHandshakeCounter.getFullHandshakes();
+        final long[] otherFull = new long[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+                otherFull[0] = SSLHandshakeCounter.getFullHandshakes();
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(1, otherFull[0]);
+        assertEquals(full, SSLHandshakeCounter.getFullHandshakes());
+        // The session is shared, so a handshake in this thread resumes it
+        long resumed = SSLHandshakeCounter.getResumedHandshakes();
+        SSLHandshakeCounter.countHandshake(session, SSLHandshakeCounter.getCounts());
+        assertEquals(resumed + 1, SSLHandshakeCounter.getResumedHandshakes());
+    }
+}
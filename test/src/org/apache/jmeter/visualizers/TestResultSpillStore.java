@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.visualizers;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+public class TestResultSpillStore extends TestCase {
+
+    private ResultSpillStore store;
+
+    public TestResultSpillStore(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        store = new ResultSpillStore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.close();
+    }
+
+    private static SampleResult makeResult(String label, boolean success, String body) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(label);
+        res.setSuccessful(success);
+        res.setResponseData(body, null);
+        return res;
+    }
+
+    public void testAddAndGet() throws Exception {
+        assertEquals(0, store.size());
+        for (int i = 0; i < 1000; i++) { // more than the initial capacity
+            assertEquals(i, store.add(makeResult("label" + (i % 3), i % 7 != 0, "body " + i)));
+        }
+        assertEquals(1000, store.size());
+        assertTrue(store.getFileLength() > 0);
+        assertEquals("label1", store.getLabel(10));
+        assertFalse(store.isSuccessful(14));
+        assertTrue(store.isSuccessful(15));
+        SampleResult res = store.get(999);
+        assertEquals("label0", res.getSampleLabel());
+        assertEquals("body 999", res.getResponseDataAsString());
+        res = store.get(0);
+        assertEquals("body 0", res.getResponseDataAsString());
+        assertFalse(res.isSuccessful());
+    }
+
+    public void testLabelsAreShared() throws Exception {
+        store.add(makeResult(new String("label"), true, ""));
+        store.add(makeResult(new String("label"), true, ""));
+        assertSame(store.getLabel(0), store.getLabel(1));
+    }
+
+    public void testBadIndex() throws Exception {
+        store.add(makeResult("label", true, ""));
+        try {
+            store.get(1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            store.getLabel(-1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+}
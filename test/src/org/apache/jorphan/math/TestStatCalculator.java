@@ -151,4 +151,31 @@ public class TestStatCalculator extends TestCase {
         assertEquals(12.0, calc.getSum());
         assertEquals(0.5773502691896255, calc.getStandardDeviation());
     }
+
+    @SuppressWarnings("boxing")
+    public void testMerge(){
+        StatCalculatorLong all = new StatCalculatorLong();
+        StatCalculatorLong calc2 = new StatCalculatorLong();
+        for (long i = 1; i <= 10; i++) {
+            all.addValue(i);
+            (i % 2 == 0 ? calc : calc2).addValue(i);
+        }
+        all.addValue(12L, 3); // aggregate sample
+        calc2.addValue(12L, 3);
+        all.addBytes(150);
+        calc.addBytes(100);
+        calc2.addBytes(50);
+        calc.merge(calc2);
+        assertEquals(all.getCount(), calc.getCount());
+        assertEquals(all.getSum(), calc.getSum());
+        assertEquals(all.getMean(), calc.getMean(), 0.0000001);
+        assertEquals(all.getStandardDeviation(), calc.getStandardDeviation(), 0.0000001);
+        assertEquals(all.getMin(), calc.getMin());
+        assertEquals(all.getMax(), calc.getMax());
+        assertEquals(all.getMedian(), calc.getMedian());
+        assertEquals(all.getPercentPoint(0.9), calc.getPercentPoint(0.9));
+        assertEquals(150, calc.getTotalBytes());
+        calc.merge(new StatCalculatorLong());
+        assertEquals(all.getCount(), calc.getCount());
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.reflect;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestClassIndex extends TestCase {
+
+    private File indexFile;
+
+    private static final String DEPS = "deps"; // $NON-NLS-1$
+
+    private File jar;
+
+    public TestClassIndex(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        indexFile = File.createTempFile("classindex", ".txt");
+        indexFile.delete();
+        jar = File.createTempFile("classindex", ".jar");
+        writeJar(10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        indexFile.delete();
+        jar.delete();
+    }
+
+    private void writeJar(int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(jar);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String key() {
+        return ClassIndex.getSearchKey(new Class[] { Serializable.class }, false, null, ".gui.", false);
+    }
+
+    public void testSearchKey() throws Exception {
+        assertEquals(key(), key());
+        assertFalse(key().equals(ClassIndex.getSearchKey(new Class[] { Serializable.class }, true, null, ".gui.", false)));
+        assertFalse(key().equals(ClassIndex.getSearchKey(new Class[] { Serializable.class }, false, ".gui.", null, false)));
+        assertNull(ClassIndex.getSearchKey(new Class[] { Serializable.class }, false, "\t", null, false));
+    }
+
+    public void testPutGet() throws Exception {
+        ClassIndex index = new ClassIndex(indexFile);
+        assertNull(index.get(jar, key(), DEPS));
+        index.put(jar, key(), DEPS, Arrays.asList(new String[] { "a.B", "c.D" }));
+        assertEquals(Arrays.asList(new String[] { "a.B", "c.D" }), index.get(jar, key(), DEPS));
+        assertNull(index.get(jar, ClassIndex.getSearchKey(new Class[] { Runnable.class }, false, null, null, false), DEPS));
+        assertEquals(1, index.getHits());
+        assertEquals(2, index.getMisses());
+        // A change in another jar, e.g. one containing a parent class, invalidates the entry
+        assertNull(index.get(jar, key(), "other"));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        ClassIndex index = new ClassIndex(indexFile);
+        index.put(jar, key(), DEPS, Arrays.asList(new String[] { "a.B", "c.D" }));
+        index.put(jar, "empty", DEPS, Arrays.asList(new String[0]));
+        index.save();
+        assertTrue(indexFile.exists());
+
+        ClassIndex reloaded = new ClassIndex(indexFile);
+        assertEquals(2, reloaded.size());
+        assertEquals(Arrays.asList(new String[] { "a.B", "c.D" }), reloaded.get(jar, key(), DEPS));
+        List<String> empty = reloaded.get(jar, "empty", DEPS);
+        assertNotNull(empty);
+        assertEquals(0, empty.size());
+    }
+
+    public void testChangedJarIsNotUsed() throws Exception {
+        ClassIndex index = new ClassIndex(indexFile);
+        index.put(jar, key(), DEPS, Arrays.asList(new String[] { "a.B" }));
+        writeJar(20);
+        assertNull(index.get(jar, key(), DEPS));
+    }
+
+    public void testMissingJarIsDropped() throws Exception {
+        ClassIndex index = new ClassIndex(indexFile);
+        index.put(jar, key(), DEPS, Arrays.asList(new String[] { "a.B" }));
+        jar.delete();
+        index.save();
+        assertEquals(0, new ClassIndex(indexFile).size());
+    }
+
+    public void testUnknownFormatIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(indexFile);
+        try {
+            out.write("something else\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertEquals(0, new ClassIndex(indexFile).size());
+    }
+
+    public void testDependencyKey() throws Exception {
+        File other = File.createTempFile("classindex", ".jar");
+        try {
+            List<File> jars = Arrays.asList(new File[] { jar, other, other.getParentFile() });
+            String key = ClassIndex.getDependencyKey(jars);
+            assertEquals(key, ClassIndex.getDependencyKey(jars));
+            FileOutputStream out = new FileOutputStream(other);
+            try {
+                out.write(new byte[5]);
+            } finally {
+                out.close();
+            }
+            assertFalse(key.equals(ClassIndex.getDependencyKey(jars)));
+        } finally {
+            other.delete();
+        }
+    }
+
+    public void testSaveLeavesNoTemporaryFiles() throws Exception {
+        ClassIndex index = new ClassIndex(indexFile);
+        index.put(jar, key(), DEPS, Arrays.asList(new String[] { "a.B" }));
+        index.save();
+        final String prefix = indexFile.getName();
+        String[] left = indexFile.getParentFile().list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && name.endsWith(".tmp");
+            }
+        });
+        assertEquals(0, left.length);
+    }
+}
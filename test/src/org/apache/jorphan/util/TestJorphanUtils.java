@@ -308,6 +308,11 @@ public class TestJorphanUtils extends TestCase {
         assertEqualsArray("0f107f8081ff".getBytes("UTF-8"),JOrphanUtils.baToHexBytes(new byte[]{15,16,127,-128,-127,-1}));
     }
 
+    public void testSha1Hex() throws Exception{
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",JOrphanUtils.sha1Hex("abc"));
+        assertEquals(JOrphanUtils.sha1Hex("null"),JOrphanUtils.sha1Hex(null));
+    }
+
     private void assertEqualsArray(byte[] expected, byte[] actual){
         assertEquals("arrays must be same length",expected.length, actual.length);
         for(int i=0; i < expected.length; i++){